@@ -31,9 +31,12 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.regex.Pattern;
 
@@ -48,6 +51,17 @@ public class XMLElementImpl implements IXMLElement
 
     private static final long serialVersionUID = -8246368851862398576L;
 
+    /**
+     * The system property that, when set to {@code true}, restricts {@link #getFirstChildNamed(String)} to the
+     * direct children of an element.
+     */
+    public static final String DIRECT_CHILDREN_PROPERTY = "izpack.xml.directchildren";
+
+    /**
+     * Determines if {@link #getFirstChildNamed(String)} only searches the direct children.
+     */
+    private static volatile boolean directChildren = Boolean.getBoolean(DIRECT_CHILDREN_PROPERTY);
+
     /**
      * The dom element embedded by the XMLElement
      */
@@ -65,6 +79,12 @@ public class XMLElementImpl implements IXMLElement
      */
     private List<IXMLElement> childrenList;
 
+    /**
+     * The children elements, indexed by name.
+     * It is generated from the childrenList as it is called.
+     */
+    private Map<String, List<IXMLElement>> childrenIndex;
+
     /**
      * Create a new root element in a new document.
      *
@@ -126,6 +146,30 @@ public class XMLElementImpl implements IXMLElement
         this.element = (Element) node;
     }
 
+    /**
+     * Determines if {@link #getFirstChildNamed(String)} only searches the direct children of an element.
+     * <p/>
+     * By default, the first descendant with the name is returned, as for {@link Element#getElementsByTagName}. This
+     * searches the whole subtree, so descriptors that only ever look up direct children can opt in to the indexed,
+     * direct lookup. This defaults to the value of the {@link #DIRECT_CHILDREN_PROPERTY} system property.
+     *
+     * @param direct if {@code true}, only search the direct children
+     */
+    public static void setDirectChildren(boolean direct)
+    {
+        directChildren = direct;
+    }
+
+    /**
+     * Determines if {@link #getFirstChildNamed(String)} only searches the direct children of an element.
+     *
+     * @return {@code true} if only the direct children are searched
+     */
+    public static boolean isDirectChildren()
+    {
+        return directChildren;
+    }
+
     @Override
     public String getName()
     {
@@ -172,6 +216,7 @@ public class XMLElementImpl implements IXMLElement
         {
             hasChanged = false;
             childrenList = new ArrayList<IXMLElement>();
+            childrenIndex = null;
             for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling())
             {
                 if (child.getNodeType() == Node.ELEMENT_NODE)
@@ -182,6 +227,35 @@ public class XMLElementImpl implements IXMLElement
         }
     }
 
+    /**
+     * Returns the children elements with the given name.
+     * <p/>
+     * The index is built on first use, and shares the wrappers of the children list.
+     *
+     * @param name the name of the children
+     * @return the children, in document order. The list must not be modified
+     */
+    private List<IXMLElement> getIndexedChildren(String name)
+    {
+        initChildrenList();
+        if (childrenIndex == null)
+        {
+            childrenIndex = new HashMap<String, List<IXMLElement>>();
+            for (IXMLElement child : childrenList)
+            {
+                List<IXMLElement> children = childrenIndex.get(child.getName());
+                if (children == null)
+                {
+                    children = new ArrayList<IXMLElement>(1);
+                    childrenIndex.put(child.getName(), children);
+                }
+                children.add(child);
+            }
+        }
+        List<IXMLElement> children = childrenIndex.get(name);
+        return (children != null) ? children : Collections.<IXMLElement>emptyList();
+    }
+
     @Override
     public int getChildrenCount()
     {
@@ -206,27 +280,36 @@ public class XMLElementImpl implements IXMLElement
     @Override
     public IXMLElement getFirstChildNamed(String name)
     {
-        XMLElementImpl res = null;
-        NodeList nodeList = element.getElementsByTagName(name);
-        if (nodeList.getLength() > 0)
+        List<IXMLElement> children = getIndexedChildren(name);
+        if (directChildren)
+        {
+            return children.isEmpty() ? null : children.get(0);
+        }
+        Node first = null;
+        for (Node child = element.getFirstChild(); child != null && first == null; child = child.getNextSibling())
         {
-            res = new XMLElementImpl(nodeList.item(0));
+            if (child.getNodeType() == Node.ELEMENT_NODE)
+            {
+                if (name.equals(child.getNodeName()))
+                {
+                    break;
+                }
+                // descendants of preceding siblings come first in document order. item(0) stops at the first
+                // match, whereas getLength() would walk the whole subtree
+                first = ((Element) child).getElementsByTagName(name).item(0);
+            }
+        }
+        if (first == null)
+        {
+            return children.isEmpty() ? null : children.get(0);
         }
-        return res;
+        return new XMLElementImpl(first);
     }
 
     @Override
     public List<IXMLElement> getChildrenNamed(String name)
     {
-        List<IXMLElement> res = new ArrayList<IXMLElement>();
-        for (IXMLElement child : getChildren())
-        {
-            if (child.getName() != null && child.getName().equals(name))
-            {
-                res.add(new XMLElementImpl(child.getElement()));
-            }
-        }
-        return res;
+        return new ArrayList<IXMLElement>(getIndexedChildren(name));
     }
 
     @Override
@@ -351,6 +434,7 @@ public class XMLElementImpl implements IXMLElement
     @Override
     public void setContent(String content)
     {
+        hasChanged = true;
         Node child;
         while ((child = this.element.getFirstChild()) != null)
         {
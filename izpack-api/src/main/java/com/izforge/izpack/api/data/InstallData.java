@@ -71,6 +71,16 @@ public interface InstallData
     String INSTALLER_MODE_CONSOLE = "console";
     String INSTALLER_MODE_GUI = "gui";
 
+    /**
+     * The no. of threads used by unpackers that extract files concurrently. Defaults to the no. of processors.
+     */
+    String UNPACKER_THREADS = "UNPACKER_THREADS";
+
+    /**
+     * If <tt>true</tt>, files whose size and digest match those of the installed file are not extracted again.
+     */
+    String SKIP_UNCHANGED_FILES = "SKIP_UNCHANGED_FILES";
+
     /**
      * Sets a variable to the specified value.
      * <p/>
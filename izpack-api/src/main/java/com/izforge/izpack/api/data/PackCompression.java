@@ -28,7 +28,8 @@ import java.util.Map;
  */
 public enum PackCompression
 {
-    DEFAULT("default"), GZIP("gz"), BZIP2("bzip2"), XZ("xz"), LZMA("lzma"), DEFLATE("deflate");
+    DEFAULT("default"), GZIP("gz"), BZIP2("bzip2"), XZ("xz"), LZMA("lzma"), DEFLATE("deflate"), LZ4("lz4"),
+    SNAPPY("snappy");
 
     private static Map<String, PackCompression> lookupByName;
 
@@ -29,6 +29,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -44,6 +46,11 @@ public class PackFile implements Serializable
 {
     private static final long serialVersionUID = -834377078706854909L;
 
+    /**
+     * The algorithm of the content digest returned by {@link #getDigest()}.
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
     @SuppressWarnings("unused")
     private static AtomicInteger nextInstanceId = new AtomicInteger(0);
     private final int instanceId;
@@ -132,6 +139,28 @@ public class PackFile implements Serializable
      */
     private String condition = null;
 
+    /**
+     * The {@link #DIGEST_ALGORITHM} digest of the file content, or {@code null} if none was recorded.
+     */
+    private byte[] digest;
+
+    /**
+     * The POSIX permission bits to add to the installed file, or {@code 0} if none.
+     */
+    private int mode = 0;
+
+    /**
+     * The format the file is compressed with in the pack stream, or {@code null} if it is compressed with the
+     * installer-wide {@link Info#getCompressionFormat() format}.
+     */
+    private PackCompression compression;
+
+    /**
+     * The offset of the file within the solid block it is compressed in, or {@code -1} if it is compressed on its
+     * own.
+     */
+    private long blockOffset = -1;
+
     /**
      * Constructs and initializes from a source file.
      *
@@ -230,6 +259,46 @@ public class PackFile implements Serializable
                 additionals, pack200Properties);
     }
 
+    /**
+     * Constructs a <tt>PackFile</tt> from the details recorded in a pack index.
+     * <p/>
+     * Unlike the other constructors, the source file need not exist, as this is used at installation time.
+     *
+     * @param src                the file which this PackFile describes, at compile time
+     * @param relativeSourcePath the path relative to the compiletime's basedirectory. May be {@code null}
+     * @param target             the path to install the file to, using '/' as the file separator
+     * @param osList             OS constraints. May be {@code null}
+     * @param override           what to do when the file already exists
+     * @param overrideRenameTo   the mapper expression to rename the file with, if it already exists. May be
+     *                           {@code null}
+     * @param blockable          whether or not the file might be blocked by the operating system
+     * @param additionals        additional attributes. May be {@code null}
+     * @param pack200Properties  the Pack200 packer settings, or {@code null} if the file isn't a Pack200 jar
+     * @param length             the length of the file in bytes
+     * @param mtime              the last-modification time of the file
+     * @param isDirectory        determines if the file is a directory
+     */
+    public PackFile(File src, String relativeSourcePath, String target, List<OsModel> osList, OverrideType override,
+                    String overrideRenameTo, Blockable blockable, Map additionals,
+                    Map<String, String> pack200Properties, long length, long mtime, boolean isDirectory)
+    {
+        instanceId = nextInstanceId.getAndIncrement();
+        this.packedFile = src;
+        this.relativePath = relativeSourcePath;
+        this.targetPath = target;
+        this.osConstraints = osList;
+        this.override = override;
+        this.overrideRenameTo = overrideRenameTo;
+        this.blockable = blockable;
+        this.additionals = additionals;
+        this.pack200Jar = pack200Properties != null;
+        this.pack200Properties = pack200Properties;
+        this.length = length;
+        this.size = length;
+        this.mtime = mtime;
+        this.isDirectory = isDirectory;
+    }
+
     /**
      * Get the unique ID compiled into this object
      * @return the unique ID
@@ -251,6 +320,8 @@ public class PackFile implements Serializable
         // update packed size and offset in order for unpacking to work correctly
         size = linkedPackFile.size;
         streamOffset = linkedPackFile.streamOffset;
+        blockOffset = linkedPackFile.blockOffset;
+        digest = linkedPackFile.digest;
     }
 
     public String getStreamResourceName()
@@ -420,6 +491,123 @@ public class PackFile implements Serializable
         return pack200Properties;
     }
 
+    /**
+     * Returns the digest of the file content, calculated when the file was packaged.
+     *
+     * @return the {@link #DIGEST_ALGORITHM} digest, or {@code null} if none was recorded
+     */
+    public byte[] getDigest()
+    {
+        return digest;
+    }
+
+    /**
+     * Sets the digest of the file content.
+     *
+     * @param digest the {@link #DIGEST_ALGORITHM} digest. May be {@code null}
+     */
+    public void setDigest(byte[] digest)
+    {
+        this.digest = digest;
+    }
+
+    /**
+     * Returns the POSIX permission bits to add to the installed file.
+     * <p/>
+     * These are determined at compile time; e.g. {@code 0111} (<tt>a+x</tt>) for files that are marked executable.
+     *
+     * @return the octal permission bits, or {@code 0} if the permissions of the installed file aren't changed
+     */
+    public int getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Sets the POSIX permission bits to add to the installed file.
+     *
+     * @param mode the octal permission bits, or {@code 0} to leave the permissions of the installed file unchanged
+     */
+    public void setMode(int mode)
+    {
+        this.mode = mode;
+    }
+
+    /**
+     * Returns the format the file is compressed with in the pack stream.
+     *
+     * @return the compression format, or {@code null} if the file is compressed with the installer-wide
+     *         {@link Info#getCompressionFormat() format}
+     */
+    public PackCompression getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * Sets the format the file is compressed with in the pack stream.
+     * <p/>
+     * This is used to store files that don't benefit from compression as is, i.e. with
+     * {@link PackCompression#DEFAULT}, when the installer otherwise compresses pack files.
+     *
+     * @param compression the compression format, or {@code null} to use the installer-wide format
+     */
+    public void setCompression(PackCompression compression)
+    {
+        this.compression = compression;
+    }
+
+    /**
+     * Determines if the file is compressed together with other small files in a solid block.
+     * <p/>
+     * The {@link #getStreamOffset() stream offset} and {@link #size() size} of such a file are those of the block,
+     * and its content starts at the {@link #getBlockOffset() block offset} in the decompressed block.
+     *
+     * @return {@code true} if the file is in a solid block
+     */
+    public boolean isInBlock()
+    {
+        return blockOffset != -1;
+    }
+
+    /**
+     * Returns the offset of the file within the decompressed solid block it is stored in.
+     *
+     * @return the offset, or {@code -1} if the file is not in a solid block
+     */
+    public long getBlockOffset()
+    {
+        return blockOffset;
+    }
+
+    /**
+     * Sets the offset of the file within the decompressed solid block it is stored in.
+     *
+     * @param blockOffset the offset, or {@code -1} if the file is not in a solid block
+     */
+    public void setBlockOffset(long blockOffset)
+    {
+        this.blockOffset = blockOffset;
+    }
+
+    /**
+     * Creates a message digest to calculate content digests with.
+     *
+     * @return a new {@link #DIGEST_ALGORITHM} message digest
+     */
+    public static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
     public void setLoosePackInfo(boolean loose)
     {
         if (loose)
@@ -94,6 +94,19 @@ public class PackInfo implements Serializable
         colour = PackColor.WHITE;
     }
 
+    /**
+     * Constructs a <tt>PackInfo</tt> for an existing pack.
+     * <p/>
+     * This is used to hold the files of a pack read from a pack index at installation time.
+     *
+     * @param pack the pack
+     */
+    public PackInfo(Pack pack)
+    {
+        this.pack = pack;
+        colour = PackColor.WHITE;
+    }
+
     public void setOsConstraints(List<OsModel> osConstraints)
     {
         pack.setOsConstraints(osConstraints);
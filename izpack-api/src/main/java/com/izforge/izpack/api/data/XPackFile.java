@@ -27,6 +27,7 @@ import com.izforge.izpack.api.data.binding.OsModel;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link PackFile} that includes the file position in the installation media.
@@ -74,6 +75,35 @@ public class XPackFile extends PackFile implements Comparable<XPackFile>
         this.setCondition(file.getCondition());
     }
 
+    /**
+     * Constructs an <tt>XPackFile</tt> from the details recorded in a pack index.
+     *
+     * @param src                the file which this PackFile describes, at compile time
+     * @param relativeSourcePath the path relative to the compiletime's basedirectory. May be {@code null}
+     * @param target             the path to install the file to, using '/' as the file separator
+     * @param osList             OS constraints. May be {@code null}
+     * @param override           what to do when the file already exists
+     * @param overrideRenameTo   the mapper expression to rename the file with, if it already exists. May be
+     *                           {@code null}
+     * @param blockable          whether or not the file might be blocked by the operating system
+     * @param additionals        additional attributes. May be {@code null}
+     * @param pack200Properties  the Pack200 packer settings, or {@code null} if the file isn't a Pack200 jar
+     * @param length             the length of the file in bytes
+     * @param mtime              the last-modification time of the file
+     * @param isDirectory        determines if the file is a directory
+     * @param position           the position of the file in the archive
+     * @see PackFile#PackFile(File, String, String, List, OverrideType, String, Blockable, Map, Map, long, long, boolean)
+     */
+    public XPackFile(File src, String relativeSourcePath, String target, List<OsModel> osList, OverrideType override,
+                     String overrideRenameTo, Blockable blockable, Map additionals,
+                     Map<String, String> pack200Properties, long length, long mtime, boolean isDirectory,
+                     long position)
+    {
+        super(src, relativeSourcePath, target, osList, override, overrideRenameTo, blockable, additionals,
+              pack200Properties, length, mtime, isDirectory);
+        this.position = position;
+    }
+
     /**
      * Returns the position of the file in the archive.
      *
@@ -0,0 +1,37 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.api.event;
+
+/**
+ * A {@link ProgressListener} that is also notified of the no. of bytes processed in the current step.
+ * <p/>
+ * When installing, a step is a pack. Byte counts track the work done more closely than sub-step (file) counts, when
+ * a pack contains a few large files.
+ */
+public interface ByteProgressListener extends ProgressListener
+{
+    /**
+     * Invoked to notify progress of the current step in bytes.
+     *
+     * @param bytes      the no. of bytes processed so far
+     * @param totalBytes the total no. of bytes the step will process
+     */
+    void byteProgress(long bytes, long totalBytes);
+}
@@ -26,6 +26,7 @@ import com.izforge.izpack.api.adaptator.impl.XMLElementImpl;
 import com.izforge.izpack.api.adaptator.impl.XMLParser;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -128,4 +129,111 @@ public class XMLElementTest
         List<IXMLElement> list = element.getChildrenNamed("modifier");
         Assert.assertEquals(7, list.size());
     }
+
+    @Test
+    public void testGetFirstChildNamedSearchesDescendants()
+    {
+        IXMLElement author = root.getFirstChildNamed("author");
+        Assert.assertNotNull(author);
+        Assert.assertEquals("Julien Ponge (project founder)", author.getAttribute("name"));
+        Assert.assertNull(root.getFirstChildNamed("nosuchelement"));
+    }
+
+    @Test
+    public void testGetFirstChildNamedDirectChildren()
+    {
+        XMLElementImpl.setDirectChildren(true);
+        try
+        {
+            Assert.assertNull(root.getFirstChildNamed("author"));
+            Assert.assertSame(root.getChildAtIndex(0), root.getFirstChildNamed("info"));
+            Assert.assertNotNull(root.getChildAtIndex(0).getFirstChildNamed("authors").getFirstChildNamed("author"));
+        }
+        finally
+        {
+            XMLElementImpl.setDirectChildren(false);
+        }
+    }
+
+    @Test
+    public void testGetChildrenNamedAfterChanges()
+    {
+        Assert.assertEquals(0, root.getChildrenNamed("child").size());
+        IXMLElement element = new XMLElementImpl("child", root);
+        root.addChild(element);
+        Assert.assertEquals(1, root.getChildrenNamed("child").size());
+        Assert.assertNotNull(root.getFirstChildNamed("child"));
+
+        // the returned list is a copy, so modifying it must not affect the element
+        root.getChildrenNamed("child").clear();
+        Assert.assertEquals(1, root.getChildrenNamed("child").size());
+
+        root.removeChild(root.getFirstChildNamed("child"));
+        Assert.assertEquals(0, root.getChildrenNamed("child").size());
+        Assert.assertNull(root.getFirstChildNamed("child"));
+    }
+
+    /**
+     * Measures the lookups the compiler performs on the packs of a large generated descriptor, and prints the
+     * result to standard output.
+     * <p/>
+     * This is only run if the <tt>izpack.benchmark</tt> system property is <tt>true</tt>.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void measureChildLookup() throws Exception
+    {
+        Assume.assumeTrue("Benchmarks are only run with -Dizpack.benchmark=true",
+                          Boolean.getBoolean("izpack.benchmark"));
+        int packs = 200;
+        int files = 200;
+        StringBuilder xml = new StringBuilder("<installation version=\"5.0\"><packs>");
+        for (int i = 0; i < packs; ++i)
+        {
+            xml.append("<pack name=\"pack").append(i).append("\" required=\"no\">");
+            for (int j = 0; j < files; ++j)
+            {
+                xml.append("<file src=\"file").append(j).append(".txt\" targetdir=\"$INSTALL_PATH\">")
+                        .append("<os family=\"unix\"/></file>");
+            }
+            xml.append("<description>Pack ").append(i).append("</description>");
+            xml.append("<parsable targetfile=\"$INSTALL_PATH/file0.txt\"/>");
+            xml.append("</pack>");
+        }
+        xml.append("</packs></installation>");
+        IXMLElement installation = new XMLParser().parse(xml.toString());
+
+        for (boolean direct : new boolean[]{false, true})
+        {
+            XMLElementImpl.setDirectChildren(direct);
+            try
+            {
+                long start = System.nanoTime();
+                int found = 0;
+                for (IXMLElement pack : installation.getFirstChildNamed("packs").getChildrenNamed("pack"))
+                {
+                    Assert.assertNotNull(pack.getFirstChildNamed("description"));
+                    found += pack.getChildrenNamed("parsable").size();
+                    found += pack.getChildrenNamed("executable").size();
+                    for (IXMLElement file : pack.getChildrenNamed("file"))
+                    {
+                        found += file.getChildrenNamed("os").size();
+                        if (file.getFirstChildNamed("additionaldata") != null)
+                        {
+                            ++found;
+                        }
+                    }
+                }
+                long millis = (System.nanoTime() - start) / 1000000;
+                Assert.assertEquals(packs * (files + 1), found);
+                System.out.println("Looking up the children of " + packs * files + " files "
+                                           + (direct ? "(direct children only) " : "") + "took " + millis + "ms");
+            }
+            finally
+            {
+                XMLElementImpl.setDirectChildren(false);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -35,6 +35,8 @@ import com.izforge.izpack.api.installer.DataValidator.Status;
 import com.izforge.izpack.api.merge.Mergeable;
 import com.izforge.izpack.api.resource.Resources;
 import com.izforge.izpack.api.rules.Condition;
+import com.izforge.izpack.api.rules.ConditionReference;
+import com.izforge.izpack.api.rules.ConditionWithMultipleOperands;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.SubstitutionType;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
@@ -55,6 +57,7 @@ import com.izforge.izpack.core.data.DynamicInstallerRequirementValidatorImpl;
 import com.izforge.izpack.core.data.DynamicVariableImpl;
 import com.izforge.izpack.core.resource.ResourceManager;
 import com.izforge.izpack.core.rules.process.PackSelectionCondition;
+import com.izforge.izpack.core.rules.process.RefCondition;
 import com.izforge.izpack.core.variable.*;
 import com.izforge.izpack.core.variable.filters.CaseStyleFilter;
 import com.izforge.izpack.core.variable.filters.LocationFilter;
@@ -78,6 +81,7 @@ import com.izforge.izpack.panels.userinput.field.FieldReader;
 import com.izforge.izpack.panels.userinput.field.SimpleChoiceReader;
 import com.izforge.izpack.panels.userinput.field.UserInputPanelSpec;
 import com.izforge.izpack.panels.userinput.field.button.ButtonFieldReader;
+import com.izforge.izpack.util.FilePermissions;
 import com.izforge.izpack.util.FileUtil;
 import com.izforge.izpack.util.JavaVersion;
 import com.izforge.izpack.util.OsConstraintHelper;
@@ -1320,6 +1324,11 @@ public class CompilerConfig extends Thread
 
     private void processExecutableChildren(PackInfo pack, List<IXMLElement> childrenNamed) throws CompilerException
     {
+        Map<String, List<PackFile>> packFiles = null;
+        if (!childrenNamed.isEmpty())
+        {
+            packFiles = getPackFilesByTarget(pack);
+        }
         for (IXMLElement executableNode : childrenNamed)
         {
             String target = executableNode.getAttribute("targetfile");
@@ -1391,6 +1400,7 @@ public class CompilerConfig extends Thread
             {
                 addNewExecutableFile(pack, target, conditionId, osList, executionStage, type, mainClass,
                         onFailure, keepFile, argsList);
+                setExecutableMode(packFiles, target, type);
                 logMarkFileExecutable(target);
             }
             for (IXMLElement fileSetElement : executableNode.getChildrenNamed("fileset"))
@@ -1401,12 +1411,58 @@ public class CompilerConfig extends Thread
                 {
                     addNewExecutableFile(pack, filePath, conditionId, osList, executionStage, type, mainClass,
                             onFailure, keepFile, argsList);
+                    setExecutableMode(packFiles, filePath, type);
                     logMarkFileExecutable(filePath);
                 }
             }
         }
     }
 
+    /**
+     * Returns the files of a pack, keyed on target path.
+     *
+     * @param pack the pack
+     * @return the pack files, keyed on target path
+     */
+    private Map<String, List<PackFile>> getPackFilesByTarget(PackInfo pack)
+    {
+        Map<String, List<PackFile>> result = new HashMap<String, List<PackFile>>();
+        for (PackFile packFile : pack.getPackFiles())
+        {
+            if (!packFile.isDirectory())
+            {
+                List<PackFile> files = result.get(packFile.getTargetPath());
+                if (files == null)
+                {
+                    files = new ArrayList<PackFile>();
+                    result.put(packFile.getTargetPath(), files);
+                }
+                files.add(packFile);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records that the pack files installed to the target of a binary executable must be made executable, so that
+     * the installer can set the executable flag as the files are unpacked.
+     *
+     * @param packFiles the pack files, keyed on target path
+     * @param target    the executable target path
+     * @param type      the executable type
+     */
+    private void setExecutableMode(Map<String, List<PackFile>> packFiles, String target, int type)
+    {
+        List<PackFile> files = packFiles.get(target);
+        if (type == ExecutableFile.BIN && files != null)
+        {
+            for (PackFile packFile : files)
+            {
+                packFile.setMode(packFile.getMode() | FilePermissions.EXECUTE);
+            }
+        }
+    }
+
     private void addNewExecutableFile(PackInfo pack, String target, String condition, List<OsModel> osList,
             int executionStage, int type, String mainClass, int onFailure, boolean keepFile, List<String> argsList
             ) throws CompilerException
@@ -3925,7 +3981,8 @@ public class CompilerConfig extends Thread
         boolean failure = false;
         for (String conditionId : referringElements.keySet())
         {
-            if (rules.getCondition(conditionId) == null)
+            Condition condition = rules.getCondition(conditionId);
+            if (condition == null)
             {
                 List<IXMLElement> elList = referringElements.get(conditionId);
                 for (IXMLElement element : elList)
@@ -3935,10 +3992,80 @@ public class CompilerConfig extends Thread
                     failure = true;
                 }
             }
+            else
+            {
+                precompileCondition(conditionId, condition);
+            }
         }
         return failure;
     }
 
+    /**
+     * Stores the condition compiled from an expression with the installer conditions, keyed on the expression,
+     * so that the installer doesn't need to parse it.
+     * <p/>
+     * Expressions referring to conditions that aren't stored with the installer, such as the built-in platform and
+     * pack selection conditions, are left to the installer to parse, as it creates those conditions itself.
+     * <p/>
+     * The compiled condition is stored via a {@link RefCondition} identified by the expression, as it may be shared
+     * with other conditions, and so must keep its own identifier.
+     *
+     * @param expression the expression
+     * @param condition  the condition compiled from the expression
+     */
+    private void precompileCondition(String expression, Condition condition)
+    {
+        Map<String, Condition> conditions = packager.getRules();
+        if (!conditions.containsKey(expression) && !isStoredCondition(condition, conditions)
+                && isComposedOfStoredConditions(condition, conditions))
+        {
+            RefCondition reference = new RefCondition(rules);
+            reference.setId(expression);
+            reference.setReferencedCondition(condition);
+            conditions.put(expression, reference);
+        }
+    }
+
+    /**
+     * Determines if a condition is only made up of conditions stored with the installer.
+     *
+     * @param condition  the condition
+     * @param conditions the conditions stored with the installer
+     * @return <tt>true</tt> if the condition only refers to stored conditions
+     */
+    private boolean isComposedOfStoredConditions(Condition condition, Map<String, Condition> conditions)
+    {
+        if (condition instanceof ConditionReference)
+        {
+            Condition referenced = ((ConditionReference) condition).getReferencedCondition();
+            return isStoredCondition(referenced, conditions) || isComposedOfStoredConditions(referenced, conditions);
+        }
+        else if (condition instanceof ConditionWithMultipleOperands)
+        {
+            for (Condition operand : ((ConditionWithMultipleOperands) condition).getOperands())
+            {
+                if (!isStoredCondition(operand, conditions) && !isComposedOfStoredConditions(operand, conditions))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Determines if a condition is stored with the installer.
+     *
+     * @param condition  the condition
+     * @param conditions the conditions stored with the installer
+     * @return <tt>true</tt> if the condition is stored with the installer
+     */
+    private static boolean isStoredCondition(Condition condition, Map<String, Condition> conditions)
+    {
+        return condition != null && conditions.get(condition.getId()) == condition;
+    }
+
     private void checkReferencedConditions()
     {
         boolean failure = checkReferencedConditions(referencedConditions, assertionHelper);
@@ -20,15 +20,14 @@
 package com.izforge.izpack.compiler.container.provider;
 
 import com.izforge.izpack.compiler.data.CompilerData;
+import com.izforge.izpack.compiler.packager.impl.InstallerJarOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.picocontainer.injectors.Provider;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.jar.JarOutputStream;
 import java.util.zip.Deflater;
 
 /**
@@ -38,7 +37,7 @@ import java.util.zip.Deflater;
  */
 public class JarOutputStreamProvider implements Provider
 {
-    public JarOutputStream provide(CompilerData compilerData)
+    public ZipArchiveOutputStream provide(CompilerData compilerData)
     {
         try
         {
@@ -47,7 +46,7 @@ public class JarOutputStreamProvider implements Provider
             {
                 Files.createDirectories(file.getParent());
             }
-            JarOutputStream jarOutputStream =  new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+            ZipArchiveOutputStream jarOutputStream = new InstallerJarOutputStream(file);
             int level = compilerData.getComprLevel();
             if (level >= 0 && level < 10)
             {
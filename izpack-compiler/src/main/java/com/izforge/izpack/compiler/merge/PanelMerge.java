@@ -19,8 +19,11 @@
 
 package com.izforge.izpack.compiler.merge;
 
+import com.izforge.izpack.api.exception.MergeException;
 import com.izforge.izpack.api.merge.Mergeable;
 import com.izforge.izpack.installer.gui.IzPanel;
+import com.izforge.izpack.merge.ArchiveMergeable;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
 import java.io.File;
 import java.io.FileFilter;
@@ -32,7 +35,7 @@ import java.util.List;
  *
  * @author Anthonin Bonnefoy
  */
-public class PanelMerge implements Mergeable
+public class PanelMerge implements ArchiveMergeable
 {
     private final List<Mergeable> packageMerge;
     private final Class<IzPanel> panelClass;
@@ -83,6 +86,25 @@ public class PanelMerge implements Mergeable
         }
     }
 
+    /**
+     * Merges the panel packages to an archive.
+     *
+     * @param outputStream the archive
+     * @throws MergeException if a package cannot be merged to an archive
+     */
+    @Override
+    public void merge(ZipArchiveOutputStream outputStream)
+    {
+        for (Mergeable mergeable : packageMerge)
+        {
+            if (!(mergeable instanceof ArchiveMergeable))
+            {
+                throw new MergeException("Cannot merge " + mergeable + " to an archive");
+            }
+            ((ArchiveMergeable) mergeable).merge(outputStream);
+        }
+    }
+
     public Class<IzPanel> getPanelClass()
     {
         return panelClass;
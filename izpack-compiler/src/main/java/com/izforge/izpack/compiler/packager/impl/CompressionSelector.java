@@ -0,0 +1,156 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.api.data.PackCompression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Selects the compression format of a pack file, so that files that don't benefit from compression are stored as
+ * is.
+ * <p/>
+ * A file is considered incompressible if its extension denotes an already compressed format, such as an archive,
+ * image or media file, or if samples of its content don't deflate to less than {@link #MAX_RATIO} of their size.
+ * The samples are compressed with {@link Deflater#BEST_SPEED}, which is a cheap lower bound on what the pack
+ * compression formats achieve.
+ *
+ * @see Packager#setAdaptiveCompression(boolean)
+ */
+class CompressionSelector
+{
+    /**
+     * The size of each content sample.
+     */
+    static final int SAMPLE_SIZE = 16 * 1024;
+
+    /**
+     * The maximum number of samples taken from a file.
+     */
+    static final int SAMPLES = 4;
+
+    /**
+     * The compressed to uncompressed size ratio above which a file is stored as is.
+     */
+    static final double MAX_RATIO = 0.9;
+
+    /**
+     * The extensions of files that are already compressed.
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<String>(Arrays.asList(
+            // archives
+            "7z", "apk", "bz2", "cab", "ear", "gz", "jar", "jmod", "lz", "lzma", "rar", "rpm", "deb", "sar", "tbz2",
+            "tgz", "txz", "war", "xz", "z", "zip", "zst",
+            // images
+            "gif", "jpeg", "jpg", "png", "webp",
+            // media
+            "aac", "avi", "flac", "m4a", "m4v", "mkv", "mov", "mp3", "mp4", "mpeg", "mpg", "ogg", "wma", "wmv",
+            // documents and fonts
+            "docx", "odt", "ods", "odp", "pptx", "woff", "woff2", "xlsx"));
+
+    /**
+     * Returns the format to compress a file with.
+     *
+     * @param file   the file
+     * @param format the installer-wide compression format
+     * @return {@link PackCompression#DEFAULT} if the file is incompressible, otherwise {@code format}
+     * @throws IOException if the file cannot be sampled
+     */
+    static PackCompression select(Path file, PackCompression format) throws IOException
+    {
+        if (format == PackCompression.DEFAULT || isCompressedType(file) || !isCompressible(file))
+        {
+            return PackCompression.DEFAULT;
+        }
+        return format;
+    }
+
+    /**
+     * Determines if the extension of a file denotes an already compressed format.
+     *
+     * @param file the file
+     * @return {@code true} if the file is already compressed
+     */
+    static boolean isCompressedType(Path file)
+    {
+        String name = file.getFileName().toString();
+        int index = name.lastIndexOf('.');
+        return index != -1 && COMPRESSED_EXTENSIONS.contains(name.substring(index + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Determines if samples of the content of a file compress to less than {@link #MAX_RATIO} of their size.
+     * <p/>
+     * Up to {@link #SAMPLES} samples are taken, evenly spaced from the start to the end of the file.
+     *
+     * @param file the file
+     * @return {@code true} if the file is worth compressing
+     * @throws IOException if the file cannot be read
+     */
+    static boolean isCompressible(Path file) throws IOException
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long length = channel.size();
+            if (length == 0)
+            {
+                return false;
+            }
+            int samples = (int) Math.min(SAMPLES, (length + SAMPLE_SIZE - 1) / SAMPLE_SIZE);
+            long stride = (samples > 1) ? (length - SAMPLE_SIZE) / (samples - 1) : 0;
+            ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+            byte[] output = new byte[SAMPLE_SIZE];
+            long sampled = 0;
+            long compressed = 0;
+            for (int i = 0; i < samples; ++i)
+            {
+                sample.clear();
+                long position = i * stride;
+                while (sample.hasRemaining() && channel.read(sample, position + sample.position()) > 0)
+                {
+                    // read the whole sample, or up to the end of the file
+                }
+                deflater.reset();
+                deflater.setInput(sample.array(), 0, sample.position());
+                deflater.finish();
+                while (!deflater.finished())
+                {
+                    compressed += deflater.deflate(output);
+                }
+                sampled += sample.position();
+            }
+            return compressed < sampled * MAX_RATIO;
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+}
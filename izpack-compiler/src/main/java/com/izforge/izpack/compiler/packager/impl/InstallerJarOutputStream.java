@@ -0,0 +1,108 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import org.apache.commons.compress.archivers.zip.JarMarker;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a jar of the installer.
+ * <p/>
+ * Entries of jars merged into the installer, most of which make up the skeleton installer, are copied as they are
+ * compressed in their jar, via {@link #addRawArchiveEntry}.
+ * <p/>
+ * Like a {@link java.util.jar.JarOutputStream}, this marks the first entry as belonging to a jar, and rejects entries
+ * with the same name. The jar is written to a file, so that the sizes of entries are written to their headers, and
+ * entries larger than 4GB are supported.
+ */
+public class InstallerJarOutputStream extends ZipArchiveOutputStream
+{
+    /**
+     * The names of the entries written, to detect duplicates.
+     */
+    private final Set<String> names = new HashSet<String>();
+
+
+    /**
+     * Constructs an {@code InstallerJarOutputStream}.
+     *
+     * @param file the jar to write
+     * @throws IOException if the jar cannot be created
+     */
+    public InstallerJarOutputStream(Path file) throws IOException
+    {
+        super(file);
+    }
+
+    /**
+     * Begins writing a new entry, closing the current entry if it is open.
+     *
+     * @param entry the entry
+     * @throws ZipException if an entry with the same name has already been written
+     * @throws IOException  for any I/O error
+     */
+    @Override
+    public void putArchiveEntry(ZipArchiveEntry entry) throws IOException
+    {
+        addName(entry);
+        super.putArchiveEntry(entry);
+    }
+
+    /**
+     * Writes an entry whose data is already compressed.
+     *
+     * @param entry     the entry. Its method, sizes and CRC must be set
+     * @param rawStream the compressed data
+     * @throws ZipException if an entry with the same name has already been written
+     * @throws IOException  for any I/O error
+     */
+    @Override
+    public void addRawArchiveEntry(ZipArchiveEntry entry, InputStream rawStream) throws IOException
+    {
+        addName(entry);
+        super.addRawArchiveEntry(entry, rawStream);
+    }
+
+    /**
+     * Registers the name of an entry, marking the first entry as belonging to a jar.
+     *
+     * @param entry the entry
+     * @throws ZipException if an entry with the same name has already been written
+     */
+    private void addName(ZipArchiveEntry entry) throws ZipException
+    {
+        if (names.isEmpty())
+        {
+            entry.addAsFirstExtraField(JarMarker.getInstance());
+        }
+        if (!names.add(entry.getName()))
+        {
+            throw new ZipException("duplicate entry: " + entry.getName());
+        }
+    }
+}
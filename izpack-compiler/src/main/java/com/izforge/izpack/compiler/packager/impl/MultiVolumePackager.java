@@ -30,20 +30,24 @@ import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.core.io.FileSpanningOutputStream;
+import com.izforge.izpack.core.io.PackIndexWriter;
+import com.izforge.izpack.core.io.VolumeBlockIndex;
 import com.izforge.izpack.api.data.PackInfo;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
-import java.util.jar.JarOutputStream;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
 
 
 /**
@@ -67,6 +71,10 @@ import java.util.zip.ZipEntry;
  * </packaging>
  * }
  * </pre>
+ * Pack data is compressed in independent blocks of <em>blocksize</em> bytes (1 MiB by default), and the location of
+ * each block is recorded in <em>volumes.info</em>. This allows the installer to read only the volumes and blocks
+ * containing the selected packs. A <em>blocksize</em> of <tt>0</tt> compresses all pack data as a single stream,
+ * which must be read sequentially.
  *
  * @author Dennis Reil, <Dennis.Reil@reddot.de>
  * @author Tim Anderson
@@ -84,11 +92,22 @@ public class MultiVolumePackager extends PackagerBase
      */
     private long maxVolumeSize = FileSpanningOutputStream.DEFAULT_VOLUME_SIZE;
 
+    /**
+     * The no. of uncompressed bytes in each independently compressed block, or <tt>0</tt> to compress all pack data
+     * as a single stream.
+     */
+    private int blockSize = FileSpanningOutputStream.DEFAULT_BLOCK_SIZE;
+
     /**
      * The configuration attribute to specify the volume size.
      */
     private static final String VOLUME_SIZE = "volumesize";
 
+    /**
+     * The configuration attribute to specify the block size.
+     */
+    private static final String BLOCK_SIZE = "blocksize";
+
     /**
      * The configuration attribute to specify the first volume free space size.
      */
@@ -110,9 +129,10 @@ public class MultiVolumePackager extends PackagerBase
      * @param mergeableResolver the mergeable resolver
      * @param compilerData      the compiler data
      */
-    public MultiVolumePackager(Properties properties, PackagerListener listener, JarOutputStream installerJar,
-                               MergeManager mergeManager, CompilerPathResolver pathResolver,
-                               MergeableResolver mergeableResolver, CompilerData compilerData, RulesEngine rulesEngine)
+    public MultiVolumePackager(Properties properties, PackagerListener listener,
+                               ZipArchiveOutputStream installerJar, MergeManager mergeManager,
+                               CompilerPathResolver pathResolver, MergeableResolver mergeableResolver,
+                               CompilerData compilerData, RulesEngine rulesEngine)
     {
         super(properties, listener, installerJar, mergeManager, pathResolver, mergeableResolver,
               compilerData, rulesEngine);
@@ -142,12 +162,29 @@ public class MultiVolumePackager extends PackagerBase
         maxVolumeSize = size;
     }
 
+    /**
+     * Sets the no. of uncompressed bytes in each independently compressed block.
+     * <p/>
+     * Defaults to {@link FileSpanningOutputStream#DEFAULT_BLOCK_SIZE}.
+     *
+     * @param size the block size, or <tt>0</tt> to compress all pack data as a single stream
+     */
+    public void setBlockSize(int size)
+    {
+        if (size < 0)
+        {
+            throw new IllegalArgumentException("Argument 'size' is invalid: " + size);
+        }
+        blockSize = size;
+    }
+
     /**
      * Parses configuration information.
      * <p/>
      * This determines the {@link #setMaxFirstVolumeSize(long) maximum size of the first volume}, and
      * {@link #setMaxVolumeSize(long) maximum size of subsequent volumes} from the <em>firstvolumefreespace</em>
-     * and <em>volumesize</em> attributes.
+     * and <em>volumesize</em> attributes, the {@link #setBlockSize(int) block size} from the <em>blocksize</em>
+     * attribute, and whether {@link #setDigest(boolean) digests} are recorded from the <em>digest</em> attribute.
      *
      * @param data the xml-element packaging from the install.xml
      */
@@ -160,6 +197,8 @@ public class MultiVolumePackager extends PackagerBase
 
             setMaxFirstVolumeSize(size - freeSpace);
             setMaxVolumeSize(size);
+            setBlockSize(Integer.parseInt(data.getAttribute(BLOCK_SIZE, Integer.toString(blockSize))));
+            setDigest(Boolean.parseBoolean(data.getAttribute(DIGEST, Boolean.toString(isDigest()))));
         }
     }
 
@@ -171,13 +210,14 @@ public class MultiVolumePackager extends PackagerBase
      * @throws IOException for any I/O error
      */
     @Override
-    protected void writePacks(JarOutputStream installerJar) throws IOException
+    protected void writePacks(ZipArchiveOutputStream installerJar) throws IOException
     {
         String classname = getClass().getSimpleName();
 
         // propagate the configuration to the variables, for debugging purposes
         getVariables().setProperty(classname + "." + FIRST_VOLUME_FREE_SPACE, Long.toString(maxFirstVolumeSize));
         getVariables().setProperty(classname + "." + VOLUME_SIZE, Long.toString(maxVolumeSize));
+        getVariables().setProperty(classname + "." + BLOCK_SIZE, Integer.toString(blockSize));
 
         List<PackInfo> packs = getPacksList();
         final int count = packs.size();
@@ -186,25 +226,33 @@ public class MultiVolumePackager extends PackagerBase
         logger.fine("First volume size: " + maxFirstVolumeSize);
         logger.fine("Subsequent volume size: " + maxVolumeSize);
 
+        logger.fine("Block size: " + blockSize);
+
         File volume = new File(getInfo().getInstallerBase() + ".pak").getAbsoluteFile();
-        int volumes = writePacks(installerJar, packs, volume);
+        FileSpanningOutputStream stream = writePacks(installerJar, packs, volume);
+        int volumes = stream.getVolumes();
+        VolumeBlockIndex index = stream.getBlockIndex();
 
         // write metadata for reading in volumes
         logger.fine("Written " + volumes + " volumes");
 
-        installerJar.putNextEntry(new ZipEntry(RESOURCES_PATH + "volumes.info"));
+        installerJar.putArchiveEntry(new ZipArchiveEntry(RESOURCES_PATH + "volumes.info"));
         ObjectOutputStream out = new ObjectOutputStream(installerJar);
         out.writeInt(volumes);
         out.writeUTF(volume.getName());
+        out.writeBoolean(index != null);
+        if (index != null)
+        {
+            logger.fine("Written " + index.getBlocks() + " blocks");
+            index.write(out);
+        }
         out.flush();
-        installerJar.closeEntry();
+        installerJar.closeArchiveEntry();
 
         // Now that we know sizes, write pack metadata to primary jar.
-        installerJar.putNextEntry(new ZipEntry(PACKSINFO_RESOURCE_PATH));
-        out = new ObjectOutputStream(installerJar);
-        out.writeObject(packs);
-        out.flush();
-        installerJar.closeEntry();
+        installerJar.putArchiveEntry(new ZipArchiveEntry(PACKSINFO_RESOURCE_PATH));
+        new PackIndexWriter(installerJar).write(packs);
+        installerJar.closeArchiveEntry();
     }
 
     /**
@@ -212,11 +260,13 @@ public class MultiVolumePackager extends PackagerBase
      *
      * @param packs  the packs to write
      * @param volume the first volume
-     * @return the no. of volumes written
+     * @return the closed volumes stream
      */
-    private int writePacks(JarOutputStream installerJar, List<PackInfo> packs, File volume) throws IOException
+    private FileSpanningOutputStream writePacks(ZipArchiveOutputStream installerJar, List<PackInfo> packs,
+                                                File volume) throws IOException
     {
-        FileSpanningOutputStream volumes = new FileSpanningOutputStream(volume, maxFirstVolumeSize, maxVolumeSize);
+        FileSpanningOutputStream volumes = new FileSpanningOutputStream(volume, maxFirstVolumeSize, maxVolumeSize,
+                                                                        blockSize);
         File targetDir = volume.getParentFile();
         if (targetDir == null)
         {
@@ -230,7 +280,7 @@ public class MultiVolumePackager extends PackagerBase
 
         volumes.flush();
         volumes.close();
-        return volumes.getVolumes();
+        return volumes;
     }
 
     /**
@@ -243,7 +293,7 @@ public class MultiVolumePackager extends PackagerBase
      * @param targetDir the target directory for loosefiles
      * @throws IOException for any I/O error
      */
-    private void writePack(JarOutputStream installerJar, PackInfo packInfo, FileSpanningOutputStream volumes, File targetDir) throws IOException
+    private void writePack(ZipArchiveOutputStream installerJar, PackInfo packInfo, FileSpanningOutputStream volumes, File targetDir) throws IOException
     {
         Pack pack = packInfo.getPack();
         pack.setFileSize(0);
@@ -251,15 +301,16 @@ public class MultiVolumePackager extends PackagerBase
         String name = pack.getName();
         sendMsg("Writing Pack: " + name, PackagerListener.MSG_VERBOSE);
         logger.fine("Writing Pack: " + name);
-        ZipEntry entry = new ZipEntry(RESOURCES_PATH + "packs/pack-" + name);
+        ZipArchiveEntry entry = new ZipArchiveEntry(RESOURCES_PATH + "packs/pack-" + name);
 
-        installerJar.putNextEntry(entry);
+        installerJar.putArchiveEntry(entry);
         ObjectOutputStream packStream = new ObjectOutputStream(installerJar);
 
         writePackFiles(packInfo, volumes, pack, packStream, targetDir);
 
         // Cleanup
         packStream.flush();
+        installerJar.closeArchiveEntry();
     }
 
     /**
@@ -332,7 +383,12 @@ public class MultiVolumePackager extends PackagerBase
         // write the file to the volumes
         int volumeCount = volumes.getVolumes();
 
-        FileInputStream in = FileUtils.openInputStream(file);
+        MessageDigest digest = isDigest() ? PackFile.createDigest() : null;
+        InputStream in = FileUtils.openInputStream(file);
+        if (digest != null)
+        {
+            in = new DigestInputStream(in, digest);
+        }
         try
         {
             long bytesWritten = IOUtils.copyLarge(in, volumes);
@@ -353,6 +409,10 @@ public class MultiVolumePackager extends PackagerBase
             {
                 throw new IOException("File size mismatch when reading " + file);
             }
+            if (digest != null)
+            {
+                packFile.setDigest(digest.digest());
+            }
         }
         finally
         {
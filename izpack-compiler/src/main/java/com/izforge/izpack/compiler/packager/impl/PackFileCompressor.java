@@ -0,0 +1,516 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.api.data.PackCompression;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.util.NoCloseOutputStream;
+import com.izforge.izpack.util.StreamSupport;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compresses pack files on a pool of worker threads.
+ * <p/>
+ * Each file or {@link SolidBlock} is compressed into its own buffer, which is held in memory up to
+ * {@link #MEMORY_THRESHOLD} bytes and spilled to a temporary file beyond that. The buffers are handed back by
+ * {@link #next()} in submission order, so that the caller can append them to the pack stream in exactly the order
+ * the sequential packager would have used.
+ * <p/>
+ * The number of files in flight is bounded, so {@link #isFull()} must be checked before each {@link #submit}.
+ *
+ * @see Packager
+ */
+class PackFileCompressor implements Closeable
+{
+    /**
+     * The size above which compressed data is spilled to a temporary file.
+     */
+    static final int MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(PackFileCompressor.class.getName());
+
+    /**
+     * The worker threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The maximum no. of files that may be in flight.
+     */
+    private final int maxPending;
+
+    /**
+     * Determines if the content digest of each file is recorded.
+     */
+    private final boolean digest;
+
+    /**
+     * Determines if incompressible files are stored as is.
+     */
+    private final boolean adaptive;
+
+    /**
+     * The submitted files, in submission order.
+     */
+    private final Deque<Future<CompressedPackFile>> pending = new ArrayDeque<>();
+
+    /**
+     * The pack files that have been submitted but not yet returned by {@link #next()}.
+     */
+    private final Set<PackFile> pendingFiles = new HashSet<>();
+
+    /**
+     * Constructs a <tt>PackFileCompressor</tt>.
+     *
+     * @param threads  the number of worker threads
+     * @param digest   if <tt>true</tt>, record the content digest of each file
+     * @param adaptive if <tt>true</tt>, store incompressible files as is
+     */
+    PackFileCompressor(int threads, boolean digest, boolean adaptive)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "izpack-compress-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        maxPending = threads * 2;
+        this.digest = digest;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Determines if no more files may be submitted until {@link #next()} has been called.
+     *
+     * @return <tt>true</tt> if the maximum number of files are in flight
+     */
+    boolean isFull()
+    {
+        return pending.size() >= maxPending;
+    }
+
+    /**
+     * Determines if there are no files in flight.
+     *
+     * @return <tt>true</tt> if there are no files in flight
+     */
+    boolean isEmpty()
+    {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Determines if a pack file has been submitted, but not yet returned by {@link #next()}.
+     *
+     * @param packFile the pack file
+     * @return <tt>true</tt> if the pack file is in flight
+     */
+    boolean isPending(PackFile packFile)
+    {
+        return pendingFiles.contains(packFile);
+    }
+
+    /**
+     * Submits a file for compression.
+     *
+     * @param packFile the pack file
+     * @param file     the file to compress
+     * @param format   the compression format
+     * @throws IllegalStateException if the compressor is full
+     */
+    void submit(final PackFile packFile, final Path file, final PackCompression format)
+    {
+        submit(Collections.singletonList(packFile), new Compression()
+        {
+            @Override
+            public long compress(OutputStream output) throws IOException
+            {
+                return PackFileCompressor.compress(packFile, file, format, digest, adaptive, output);
+            }
+        });
+    }
+
+    /**
+     * Submits a solid block for compression.
+     *
+     * @param block  the block
+     * @param format the compression format
+     * @throws IllegalStateException if the compressor is full
+     */
+    void submit(final SolidBlock block, final PackCompression format)
+    {
+        submit(block.getPackFiles(), new Compression()
+        {
+            @Override
+            public long compress(OutputStream output) throws IOException
+            {
+                return PackFileCompressor.compress(block, format, digest, output);
+            }
+        });
+    }
+
+    /**
+     * Submits pack files for compression.
+     *
+     * @param packFiles   the pack files
+     * @param compression compresses the pack files to a buffer
+     * @throws IllegalStateException if the compressor is full
+     */
+    private void submit(final List<PackFile> packFiles, final Compression compression)
+    {
+        if (isFull())
+        {
+            throw new IllegalStateException("Too many files in flight");
+        }
+        Future<CompressedPackFile> future = executor.submit(new Callable<CompressedPackFile>()
+        {
+            @Override
+            public CompressedPackFile call() throws Exception
+            {
+                DeferredFileOutputStream buffer = DeferredFileOutputStream.builder()
+                        .setThreshold(MEMORY_THRESHOLD)
+                        .setPrefix("izpack-compress")
+                        .setSuffix(".tmp")
+                        .get();
+                try
+                {
+                    long size;
+                    try
+                    {
+                        size = compression.compress(buffer);
+                    }
+                    finally
+                    {
+                        buffer.close();
+                    }
+                    return new CompressedPackFile(packFiles, buffer, size);
+                }
+                catch (IOException | RuntimeException exception)
+                {
+                    delete(buffer);
+                    throw exception;
+                }
+            }
+        });
+        pending.add(future);
+        pendingFiles.addAll(packFiles);
+    }
+
+    /**
+     * Waits for the oldest submitted file or block to be compressed.
+     * <p/>
+     * The returned instance must be closed in order to release its buffer.
+     *
+     * @return the compressed file
+     * @throws IOException           if the file cannot be compressed
+     * @throws IllegalStateException if there are no files in flight
+     */
+    CompressedPackFile next() throws IOException
+    {
+        Future<CompressedPackFile> future = pending.poll();
+        if (future == null)
+        {
+            throw new IllegalStateException("No files in flight");
+        }
+        try
+        {
+            CompressedPackFile result = future.get();
+            pendingFiles.removeAll(result.getPackFiles());
+            return result;
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing pack files");
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Stops the worker threads, discarding any files in flight.
+     * <p/>
+     * Files in flight are waited for, so that their temporary files can be removed.
+     */
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+        for (Future<CompressedPackFile> future : pending)
+        {
+            try
+            {
+                future.get().close();
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch (ExecutionException ignore)
+            {
+                // the packager is already failing
+            }
+        }
+        pending.clear();
+        pendingFiles.clear();
+    }
+
+    /**
+     * Compresses a pack file to a stream.
+     * <p/>
+     * This is shared by the sequential and parallel packaging modes, so that both produce the same bytes.
+     * <p/>
+     * If requested, the {@link PackFile#setDigest(byte[]) content digest} is calculated from the bytes as they are
+     * compressed, so the file is only read once.
+     * <p/>
+     * If adaptive compression is requested, the file is stored as is if the {@link CompressionSelector} finds it
+     * incompressible, and the format used is recorded as the {@link PackFile#setCompression compression} of the
+     * pack file.
+     *
+     * @param packFile the pack file
+     * @param file     the file to compress
+     * @param format   the installer-wide compression format
+     * @param digest   if <tt>true</tt>, record the content digest of the file
+     * @param adaptive if <tt>true</tt>, store the file as is if it is incompressible
+     * @param output   the stream to write to. This is not closed
+     * @return the number of compressed bytes written
+     * @throws IOException for any I/O error, or if the file length doesn't match that of the pack file
+     */
+    static long compress(PackFile packFile, Path file, PackCompression format, boolean digest, boolean adaptive,
+                         OutputStream output) throws IOException
+    {
+        if (adaptive && format != PackCompression.DEFAULT)
+        {
+            format = CompressionSelector.select(file, format);
+            packFile.setCompression(format);
+        }
+        MessageDigest messageDigest = digest ? PackFile.createDigest() : null;
+        CountingOutputStream proxyOutputStream = new CountingOutputStream(new NoCloseOutputStream(output));
+        try (OutputStream finalStream = StreamSupport.compressedOutput(format, proxyOutputStream))
+        {
+            OutputStream target = (messageDigest != null)
+                    ? new DigestOutputStream(finalStream, messageDigest) : finalStream;
+            long bytesWritten = Files.copy(file, target);
+            if (bytesWritten != packFile.length())
+            {
+                throw new IOException("File size mismatch when reading " + file);
+            }
+        }
+        if (messageDigest != null)
+        {
+            packFile.setDigest(messageDigest.digest());
+        }
+        return proxyOutputStream.getByteCount();
+    }
+
+    /**
+     * Compresses a solid block to a stream.
+     * <p/>
+     * The files of the block are written one after the other to a single compressed stream, so that they share
+     * the compression dictionary. If requested, the content digest of each file is recorded.
+     *
+     * @param block  the block
+     * @param format the compression format
+     * @param digest if <tt>true</tt>, record the content digest of each file
+     * @param output the stream to write to. This is not closed
+     * @return the number of compressed bytes written
+     * @throws IOException for any I/O error, or if a file length doesn't match that of its pack file
+     */
+    static long compress(SolidBlock block, PackCompression format, boolean digest, OutputStream output)
+            throws IOException
+    {
+        List<PackFile> packFiles = block.getPackFiles();
+        List<Path> files = block.getFiles();
+        CountingOutputStream proxyOutputStream = new CountingOutputStream(new NoCloseOutputStream(output));
+        try (OutputStream finalStream = StreamSupport.compressedOutput(format, proxyOutputStream))
+        {
+            OutputStream target = new NoCloseOutputStream(finalStream);
+            for (int i = 0; i < packFiles.size(); ++i)
+            {
+                PackFile packFile = packFiles.get(i);
+                Path file = files.get(i);
+                MessageDigest messageDigest = digest ? PackFile.createDigest() : null;
+                long bytesWritten = Files.copy(file, (messageDigest != null)
+                        ? new DigestOutputStream(target, messageDigest) : target);
+                if (bytesWritten != packFile.length())
+                {
+                    throw new IOException("File size mismatch when reading " + file);
+                }
+                if (messageDigest != null)
+                {
+                    packFile.setDigest(messageDigest.digest());
+                }
+            }
+        }
+        return proxyOutputStream.getByteCount();
+    }
+
+    /**
+     * Deletes the temporary file backing a buffer, if any.
+     *
+     * @param buffer the buffer
+     */
+    private static void delete(DeferredFileOutputStream buffer)
+    {
+        Path path = buffer.getPath();
+        if (!buffer.isInMemory() && path != null)
+        {
+            try
+            {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException exception)
+            {
+                logger.log(Level.WARNING, "Failed to delete " + path, exception);
+            }
+        }
+    }
+
+    /**
+     * Compresses pack files to a buffer.
+     */
+    private interface Compression
+    {
+        /**
+         * Compresses the pack files to a stream.
+         *
+         * @param output the stream to write to. This is not closed
+         * @return the number of compressed bytes written
+         * @throws IOException for any I/O error
+         */
+        long compress(OutputStream output) throws IOException;
+    }
+
+    /**
+     * The compressed data of a pack file, or of the pack files of a solid block.
+     */
+    static class CompressedPackFile implements Closeable
+    {
+        /**
+         * The pack files.
+         */
+        private final List<PackFile> packFiles;
+
+        /**
+         * The compressed data.
+         */
+        private final DeferredFileOutputStream buffer;
+
+        /**
+         * The number of compressed bytes.
+         */
+        private final long size;
+
+        /**
+         * Constructs a <tt>CompressedPackFile</tt>.
+         *
+         * @param packFiles the pack files
+         * @param buffer    the compressed data
+         * @param size      the number of compressed bytes
+         */
+        CompressedPackFile(List<PackFile> packFiles, DeferredFileOutputStream buffer, long size)
+        {
+            this.packFiles = packFiles;
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        /**
+         * Returns the pack files.
+         *
+         * @return the pack file, or the pack files of a solid block in block order
+         */
+        List<PackFile> getPackFiles()
+        {
+            return packFiles;
+        }
+
+        /**
+         * Returns the number of compressed bytes.
+         *
+         * @return the number of compressed bytes
+         */
+        long getSize()
+        {
+            return size;
+        }
+
+        /**
+         * Writes the compressed data to a stream.
+         *
+         * @param output the stream to write to
+         * @throws IOException for any I/O error
+         */
+        void writeTo(OutputStream output) throws IOException
+        {
+            buffer.writeTo(output);
+        }
+
+        /**
+         * Releases the buffer.
+         */
+        @Override
+        public void close()
+        {
+            delete(buffer);
+        }
+    }
+}
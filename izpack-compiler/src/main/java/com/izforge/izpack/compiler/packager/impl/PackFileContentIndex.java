@@ -0,0 +1,165 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.api.data.PackFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indexes stored pack files by content, so that files with identical bytes can be stored once and
+ * back-referenced, regardless of their source path.
+ * <p/>
+ * Files are only hashed once a second file of the same length is seen, so builds without duplicates
+ * don't pay for an extra read of every file.
+ */
+class PackFileContentIndex
+{
+    /**
+     * The first stored file of each length, until a second file of that length is seen.
+     */
+    private final Map<Long, StoredFile> unhashed = new HashMap<>();
+
+    /**
+     * Stored files keyed on their digest, for lengths that have more than one file.
+     */
+    private final Map<ByteBuffer, PackFile> hashed = new HashMap<>();
+
+    /**
+     * The lengths of the files in {@link #hashed}.
+     */
+    private final Set<Long> hashedLengths = new HashSet<>();
+
+    /**
+     * The number of duplicates found.
+     */
+    private int duplicates;
+
+    /**
+     * The number of uncompressed bytes not stored due to duplicates.
+     */
+    private long savedBytes;
+
+    /**
+     * Returns a stored pack file with the same content as a file, or registers the file as stored.
+     *
+     * @param packFile the pack file
+     * @param file     the source file
+     * @return the stored pack file with the same content, or {@code null} if there is none and
+     * {@code packFile} has been registered as stored
+     * @throws IOException if a file cannot be read
+     */
+    PackFile getStoredFile(PackFile packFile, Path file) throws IOException
+    {
+        long length = packFile.length();
+        StoredFile first = unhashed.remove(length);
+        if (first == null && !hashedLengths.contains(length))
+        {
+            unhashed.put(length, new StoredFile(packFile, file));
+            return null;
+        }
+        if (first != null)
+        {
+            hashedLengths.add(length);
+            hashed.put(digest(first.file, length), first.packFile);
+        }
+        ByteBuffer digest = digest(file, length);
+        PackFile stored = hashed.get(digest);
+        if (stored != null)
+        {
+            duplicates++;
+            savedBytes += length;
+        }
+        else
+        {
+            hashed.put(digest, packFile);
+        }
+        return stored;
+    }
+
+    /**
+     * Returns the number of duplicates found.
+     *
+     * @return the number of duplicates
+     */
+    int getDuplicates()
+    {
+        return duplicates;
+    }
+
+    /**
+     * Returns the number of uncompressed bytes not stored due to duplicates.
+     *
+     * @return the number of bytes saved
+     */
+    long getSavedBytes()
+    {
+        return savedBytes;
+    }
+
+    /**
+     * Calculates the digest of a file, prefixed with its length.
+     *
+     * @param file   the file
+     * @param length the file length
+     * @return the digest
+     * @throws IOException if the file cannot be read
+     */
+    private static ByteBuffer digest(Path file, long length) throws IOException
+    {
+        MessageDigest digest = PackFile.createDigest();
+        digest.update(ByteBuffer.allocate(8).putLong(0, length));
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file))
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /**
+     * A stored file that hasn't been hashed yet.
+     */
+    private static class StoredFile
+    {
+        private final PackFile packFile;
+
+        private final Path file;
+
+        StoredFile(PackFile packFile, Path file)
+        {
+            this.packFile = packFile;
+            this.file = file;
+        }
+    }
+}
@@ -30,15 +30,16 @@ import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
+import com.izforge.izpack.core.io.PackIndexWriter;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.util.NoCloseOutputStream;
-import com.izforge.izpack.util.StreamSupport;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.io.output.CountingOutputStream;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -49,15 +50,47 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Pack200;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 
 /**
  * The packager class. The packager is used by the compiler to put files into an
  * installer, and create the actual installer files.
+ * <p/>
+ * By default, pack files are compressed one after another on the compiling thread. The <em>threads</em> option
+ * compresses them on a pool of worker threads instead, while still writing them in their original order, so the
+ * resulting packs are byte-identical to those of a sequential build:
+ * <pre>
+ * {@code
+ * <packaging>
+ *       <packager class="com.izforge.izpack.compiler.packager.impl.Packager">
+ *           <!-- 0 uses one thread per available processor -->
+ *           <options threads="4"/>
+ *       </packager>
+ * </packaging>
+ * }
+ * </pre>
+ * Files with identical content are stored once and back-referenced, even if they come from different source paths.
+ * This can be disabled with <tt>&lt;options deduplicate="false"/&gt;</tt>.
+ * <p/>
+ * If the pack files are compressed, each pack is stored in the jar without further compression, so that the unpacker
+ * can seek directly to a file's stream offset when it skips files or follows back references, instead of inflating
+ * everything in front of it. This can be forced on or off with <tt>&lt;options randomaccess="true|false"/&gt;</tt>.
+ * <p/>
+ * A digest of each file is recorded as it is compressed, and verified by the unpacker as the file is extracted.
+ * This can be disabled with <tt>&lt;options digest="false"/&gt;</tt>.
+ * <p/>
+ * With <tt>&lt;options adaptivecompression="true"/&gt;</tt>, files that don't benefit from compression, such as jars,
+ * images and media files, are stored as is rather than with the installer's compression format. The choice is
+ * recorded per file, so the unpacker doesn't have to decompress them again.
+ * <p/>
+ * With <tt>&lt;options solidblocksize="1048576"/&gt;</tt>, runs of consecutive small files are compressed together
+ * in solid blocks of about that many bytes, so that they share a compression dictionary and stream header. Each file
+ * records its offset in the decompressed block, and the unpacker decompresses each block once.
  *
  * @author Julien Ponge
  * @author Chadwick McHenry
@@ -66,8 +99,79 @@ public class Packager extends PackagerBase
 {
     private static final Logger logger = Logger.getLogger(Packager.class.getName());
 
+    /**
+     * The configuration attribute to specify the number of compression threads.
+     */
+    private static final String THREADS = "threads";
+
+    /**
+     * The configuration attribute to enable or disable content based deduplication of pack files.
+     */
+    private static final String DEDUPLICATE = "deduplicate";
+
+    /**
+     * The configuration attribute to specify if packs are stored uncompressed in the jar, for random access.
+     */
+    private static final String RANDOM_ACCESS = "randomaccess";
+
+    /**
+     * The configuration attribute to enable or disable storing incompressible files as is.
+     */
+    private static final String ADAPTIVE_COMPRESSION = "adaptivecompression";
+
+    /**
+     * The configuration attribute to specify the size of solid blocks.
+     */
+    private static final String SOLID_BLOCK_SIZE = "solidblocksize";
+
+    /**
+     * Files up to this fraction of the solid block size are compressed in solid blocks.
+     */
+    private static final int SOLID_FILE_FRACTION = 16;
+
     private final CompilerData compilerData;
 
+    /**
+     * The number of threads used to compress pack files.
+     */
+    private int threads = 1;
+
+    /**
+     * Determines if files with identical content are stored once.
+     */
+    private boolean deduplicate = true;
+
+    /**
+     * Determines if packs are stored uncompressed in the jar. If {@code null}, this is determined by the pack
+     * compression format.
+     */
+    private Boolean randomAccess;
+
+    /**
+     * Determines if incompressible files are stored as is.
+     */
+    private boolean adaptiveCompression = false;
+
+    /**
+     * The number of files stored as is, because they are incompressible.
+     */
+    private int uncompressedFiles;
+
+    /**
+     * The uncompressed size of solid blocks, or <tt>0</tt> if files are compressed individually.
+     */
+    private int solidBlockSize = 0;
+
+    /**
+     * The number of solid blocks written.
+     */
+    private int solidBlocks;
+
+    /**
+     * The number of files written in solid blocks.
+     */
+    private int solidFiles;
+
     /**
      * Constructs a <tt>Packager</tt>.
      *
@@ -79,7 +183,7 @@ public class Packager extends PackagerBase
      * @param mergeableResolver the mergeable resolver
      * @param compilerData      the compiler data
      */
-    public Packager(Properties properties, PackagerListener listener, JarOutputStream jarOutputStream,
+    public Packager(Properties properties, PackagerListener listener, ZipArchiveOutputStream jarOutputStream,
                     MergeManager mergeManager, CompilerPathResolver pathResolver, MergeableResolver mergeableResolver,
                     CompilerData compilerData, RulesEngine rulesEngine)
     {
@@ -88,7 +192,132 @@ public class Packager extends PackagerBase
         this.compilerData = compilerData;
     }
 
-    private JarOutputStream getJarOutputStream(Path jarFile) throws IOException
+    /**
+     * Sets the number of threads used to compress pack files.
+     * <p/>
+     * Defaults to <tt>1</tt>, which compresses files on the calling thread.
+     *
+     * @param threads the number of threads. If <tt>0</tt>, one thread per available processor is used
+     */
+    public void setThreads(int threads)
+    {
+        if (threads < 0)
+        {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+        }
+        this.threads = (threads == 0) ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Returns the number of threads used to compress pack files.
+     *
+     * @return the number of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Determines if files with identical content from different source paths are stored once.
+     * <p/>
+     * Defaults to <tt>true</tt>. This has no effect if packs are written to separate jars.
+     *
+     * @param deduplicate if <tt>true</tt>, store files with identical content once
+     */
+    public void setDeduplicate(boolean deduplicate)
+    {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Determines if files with identical content from different source paths are stored once.
+     *
+     * @return <tt>true</tt> if files with identical content are stored once
+     */
+    public boolean isDeduplicate()
+    {
+        return deduplicate;
+    }
+
+    /**
+     * Determines if packs are stored in the jar without compression, so that pack files can be accessed at their
+     * stream offset without inflating the preceding files.
+     * <p/>
+     * Defaults to {@code null}, which stores packs uncompressed if the pack files are already compressed.
+     *
+     * @param randomAccess if <tt>true</tt>, store packs without compression. May be {@code null}
+     */
+    public void setRandomAccess(Boolean randomAccess)
+    {
+        this.randomAccess = randomAccess;
+    }
+
+    /**
+     * Determines if packs are stored in the jar without compression.
+     *
+     * @return <tt>true</tt> if packs are stored without compression
+     */
+    public boolean isRandomAccess()
+    {
+        if (randomAccess != null)
+        {
+            return randomAccess;
+        }
+        return getInfo() != null && getInfo().getCompressionFormat() != PackCompression.DEFAULT;
+    }
+
+    /**
+     * Determines if files that don't benefit from compression are stored as is.
+     * <p/>
+     * Defaults to <tt>false</tt>. This has no effect if the pack files aren't compressed.
+     *
+     * @param adaptiveCompression if <tt>true</tt>, store incompressible files as is
+     */
+    public void setAdaptiveCompression(boolean adaptiveCompression)
+    {
+        this.adaptiveCompression = adaptiveCompression;
+    }
+
+    /**
+     * Determines if files that don't benefit from compression are stored as is.
+     *
+     * @return <tt>true</tt> if incompressible files are stored as is
+     */
+    public boolean isAdaptiveCompression()
+    {
+        return adaptiveCompression;
+    }
+
+    /**
+     * Sets the uncompressed size of the solid blocks that small files are compressed in.
+     * <p/>
+     * Consecutive files of up to 1/16 of this size are compressed together, until the block reaches this size.
+     * Defaults to <tt>0</tt>, which compresses each file individually. This has no effect if the pack files aren't
+     * compressed.
+     *
+     * @param solidBlockSize the block size, in bytes, or <tt>0</tt> to disable solid blocks
+     */
+    public void setSolidBlockSize(int solidBlockSize)
+    {
+        if (solidBlockSize < 0)
+        {
+            throw new IllegalArgumentException("Invalid solid block size: " + solidBlockSize);
+        }
+        this.solidBlockSize = solidBlockSize;
+    }
+
+    /**
+     * Returns the uncompressed size of the solid blocks that small files are compressed in.
+     *
+     * @return the block size, in bytes, or <tt>0</tt> if solid blocks are disabled
+     */
+    public int getSolidBlockSize()
+    {
+        return solidBlockSize;
+    }
+
+    private ZipArchiveOutputStream getJarOutputStream(Path jarFile) throws IOException
     {
         Files.deleteIfExists(jarFile);
         if (compilerData.isMkdirs())
@@ -96,7 +325,7 @@ public class Packager extends PackagerBase
             Files.createDirectories(jarFile.getParent());
         }
 
-        JarOutputStream jarOutputStream = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(jarFile)));
+        ZipArchiveOutputStream jarOutputStream = new InstallerJarOutputStream(jarFile);
 
         int level = compilerData.getComprLevel();
         if (level >= 0 && level < 10)
@@ -116,7 +345,7 @@ public class Packager extends PackagerBase
      * @throws IOException for any I/O error
      */
     @Override
-    protected void writePacks(JarOutputStream installerJar) throws IOException
+    protected void writePacks(ZipArchiveOutputStream installerJar) throws IOException
     {
         List<PackInfo> packs = getPacksList();
         final int num = packs.size();
@@ -127,147 +356,254 @@ public class Packager extends PackagerBase
 
         List<PackFile> pack200Files = new ArrayList<>();
 
+        // Index to back reference files with the same content, but a different path
+        PackFileContentIndex contentIndex = (deduplicate && !packSeparateJars()) ? new PackFileContentIndex() : null;
+        long savedSize = 0;
+
+        boolean stored = isRandomAccess();
+
         // Force UTF-8 encoding in order to have proper ZipEntry names.
         int packNumber = 0;
         final IXMLElement root = new XMLElementImpl("packs");
 
-        for (PackInfo packInfo : packs)
+        PackCompression comprFormat = getInfo().getCompressionFormat();
+        PackFileCompressor compressor = null;
+        if (threads > 1)
         {
-            final Pack pack = packInfo.getPack();
-            pack.setFileSize(0);
-
-            sendMsg("Writing Pack " + packNumber + ": " + pack.getName(), PackagerListener.MSG_VERBOSE);
+            sendMsg("Compressing pack files using " + threads + " threads", PackagerListener.MSG_VERBOSE);
+            compressor = new PackFileCompressor(threads, isDigest(), adaptiveCompression);
+        }
+        uncompressedFiles = 0;
+        solidBlocks = 0;
+        solidFiles = 0;
 
-            final ZipEntry entry;
-            final String streamResourceName = "packs/pack-" + pack.getName();
-            final JarOutputStream packJar;
-            if (packSeparateJars())
-            {
-                // TODO REFACTOR : Use a mergeManager for each packages that will be added to the main merger
-                Path jarFile = Paths.get(getInfo().getInstallerBase() + ".pack-" + pack.getName() + ".jar");
-                packJar = getJarOutputStream(jarFile);
-                entry = new ZipEntry(streamResourceName);
-            }
-            else
+        try
+        {
+            for (PackInfo packInfo : packs)
             {
-                packJar = installerJar;
-                entry = new ZipEntry(RESOURCES_PATH + streamResourceName);
-            }
+                final Pack pack = packInfo.getPack();
+                pack.setFileSize(0);
 
-            packJar.putNextEntry(entry);
-            packJar.flush(); // flush before we start counting
+                sendMsg("Writing Pack " + packNumber + ": " + pack.getName(), PackagerListener.MSG_VERBOSE);
 
-            try (CountingOutputStream packOutputStream = new CountingOutputStream(new NoCloseOutputStream(packJar)))
-            {
-                for (PackFile packFile : packInfo.getPackFiles())
+                final ZipArchiveEntry entry;
+                final String streamResourceName = "packs/pack-" + pack.getName();
+                final ZipArchiveOutputStream packJar;
+                if (packSeparateJars())
                 {
-                    boolean addFile = !pack.isLoose();
-                    Path file = packInfo.getFile(packFile).toPath();
-
-                    boolean pack200 = packFile.isPack200Jar();
+                    // TODO REFACTOR : Use a mergeManager for each packages that will be added to the main merger
+                    Path jarFile = Paths.get(getInfo().getInstallerBase() + ".pack-" + pack.getName() + ".jar");
+                    packJar = getJarOutputStream(jarFile);
+                    entry = new ZipArchiveEntry(streamResourceName);
+                }
+                else
+                {
+                    packJar = installerJar;
+                    entry = new ZipArchiveEntry(RESOURCES_PATH + streamResourceName);
+                }
 
-                    // use a back reference if file was in previous pack, and in
-                    // same jar
-                    PackFile linkedPackFile = storedFiles.get(file);
+                Path packData = null;
+                CRC32 packCrc = new CRC32();
+                OutputStream packTarget;
+                if (stored)
+                {
+                    // stored entries need their size and CRC up front, so the pack is written to a temporary file
+                    packData = Files.createTempFile("izpack-pack", ".tmp");
+                    packTarget = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(packData)),
+                                                         packCrc);
+                }
+                else
+                {
+                    packJar.putArchiveEntry(entry);
+                    packJar.flush(); // flush before we start counting
+                    packTarget = new NoCloseOutputStream(packJar);
+                }
 
-                    if (linkedPackFile != null && !packSeparateJars())
+                try (CountingOutputStream packOutputStream = new CountingOutputStream(packTarget))
+                {
+                    SolidBlock block = null;
+                    for (PackFile packFile : packInfo.getPackFiles())
                     {
-                        // Save backreference link
-                        logger.fine("File " + packFile.getTargetPath() + " is a backreference, linked to " + linkedPackFile.getTargetPath());
-                        packFile.setLinkedPackFile(linkedPackFile);
-                        addFile = false;
-                    }
+                        boolean addFile = !pack.isLoose();
+                        Path file = packInfo.getFile(packFile).toPath();
 
-                    if (addFile && !packFile.isDirectory())
-                    {
+                        boolean pack200 = packFile.isPack200Jar();
+
+                        // use a back reference if file was in previous pack, and in
+                        // same jar
+                        PackFile linkedPackFile = storedFiles.get(file);
+                        boolean sameContent = false;
+                        if (linkedPackFile == null && contentIndex != null && addFile && !packFile.isDirectory()
+                                && !pack200)
+                        {
+                            linkedPackFile = contentIndex.getStoredFile(packFile, file);
+                            sameContent = linkedPackFile != null;
+                        }
 
-                        if (pack200)
+                        if (linkedPackFile != null && !packSeparateJars())
                         {
-                            /*
-                             * Warning!
-                             *
-                             * Pack200 archives must be stored in separated streams,
-                             * as the Pack200 unpacker reads the entire stream...
-                             *
-                             * See http://java.sun.com/javase/6/docs/api/java/util/jar/Pack200.Unpacker.html
-                             */
-                            packFile.setStreamResourceName("packs/pack200-" + packFile.getId());
-                            packFile.setStreamOffset(0);
-                            pack200Files.add(packFile);
+                            if (block != null && block.contains(linkedPackFile))
+                            {
+                                writeBlock(block, comprFormat, compressor, packOutputStream);
+                                block = null;
+                            }
+
+                            // the offset and size of the linked file are only known once it has been written
+                            while (compressor != null && compressor.isPending(linkedPackFile))
+                            {
+                                writeNext(compressor, packOutputStream);
+                            }
+
+                            // Save backreference link
+                            logger.fine("File " + packFile.getTargetPath() + " is a backreference, linked to " + linkedPackFile.getTargetPath()
+                                    + (sameContent ? " (same content)" : ""));
+                            packFile.setLinkedPackFile(linkedPackFile);
+                            packFile.setCompression(linkedPackFile.getCompression());
+                            addFile = false;
+                            if (sameContent && !packFile.isInBlock())
+                            {
+                                savedSize += packFile.size();
+                            }
                         }
-                        else
+
+                        if (addFile && !packFile.isDirectory())
                         {
-                            packFile.setStreamResourceName(streamResourceName);
-                            packFile.setStreamOffset(packOutputStream.getByteCount()); // get the position
 
-                            PackCompression comprFormat = getInfo().getCompressionFormat();
-                            CountingOutputStream proxyOutputStream = new CountingOutputStream(new NoCloseOutputStream(packOutputStream));
-                            try (OutputStream finalStream = StreamSupport.compressedOutput(comprFormat, proxyOutputStream))
+                            if (pack200)
+                            {
+                                /*
+                                 * Warning!
+                                 *
+                                 * Pack200 archives must be stored in separated streams,
+                                 * as the Pack200 unpacker reads the entire stream...
+                                 *
+                                 * See http://java.sun.com/javase/6/docs/api/java/util/jar/Pack200.Unpacker.html
+                                 */
+                                packFile.setStreamResourceName("packs/pack200-" + packFile.getId());
+                                packFile.setStreamOffset(0);
+                                pack200Files.add(packFile);
+                            }
+                            else
                             {
-                                long bytesWritten = Files.copy(file, finalStream);
-                                if (bytesWritten != packFile.length())
+                                packFile.setStreamResourceName(streamResourceName);
+                                if (isSolid(packFile, file, comprFormat))
+                                {
+                                    if (block == null)
+                                    {
+                                        block = new SolidBlock();
+                                    }
+                                    block.add(packFile, file);
+                                    if (block.getLength() >= solidBlockSize)
+                                    {
+                                        writeBlock(block, comprFormat, compressor, packOutputStream);
+                                        block = null;
+                                    }
+                                }
+                                else
                                 {
-                                    throw new IOException("File size mismatch when reading " + file);
+                                    // blocks are written before the files that follow them, so they stay consecutive
+                                    if (block != null)
+                                    {
+                                        writeBlock(block, comprFormat, compressor, packOutputStream);
+                                        block = null;
+                                    }
+                                    writeFile(packFile, file, comprFormat, compressor, packOutputStream);
                                 }
                             }
-                            packFile.setSize(proxyOutputStream.getByteCount());
-                            logger.fine("File " + packFile.getTargetPath() + " added compressed as " + comprFormat.toName()
-                                    + " (" + packFile.length() + " -> " + packFile.size() + " bytes)");
+
+                            storedFiles.put(file, packFile);
                         }
 
-                        storedFiles.put(file, packFile);
+                        // even if not written, it counts towards pack size
+                        pack.addFileSize(packFile.length());
                     }
 
-                    // even if not written, it counts towards pack size
-                    pack.addFileSize(packFile.length());
-                }
+                    if (block != null)
+                    {
+                        writeBlock(block, comprFormat, compressor, packOutputStream);
+                    }
+                    while (compressor != null && !compressor.isEmpty())
+                    {
+                        writeNext(compressor, packOutputStream);
+                    }
+
+                    if (pack.getFileSize() > pack.getSize())
+                    {
+                        pack.setSize(pack.getFileSize());
+                    }
 
-                if (pack.getFileSize() > pack.getSize())
+                    // Cleanup
+                    packOutputStream.flush();
+                    packOutputStream.close();
+                    if (stored)
+                    {
+                        writeStoredEntry(packJar, entry, packData, packCrc.getValue());
+                    }
+                    packJar.closeArchiveEntry();
+                }
+                finally
                 {
-                    pack.setSize(pack.getFileSize());
+                    if (packData != null)
+                    {
+                        Files.deleteIfExists(packData);
+                    }
+                    packJar.flush();
+                    // close pack specific jar if required
+                    if (packSeparateJars())
+                    {
+                        packJar.close();
+                    }
                 }
 
-                // Cleanup
-                packOutputStream.flush();
-                packOutputStream.close();
-                packJar.closeEntry();
-            }
-            finally
-            {
-                packJar.flush();
-                // close pack specific jar if required
-                if (packSeparateJars())
+                IXMLElement child = new XMLElementImpl("pack", root);
+                child.setAttribute("name", pack.getName());
+                child.setAttribute("size", Long.toString(pack.getSize()));
+                child.setAttribute("fileSize", Long.toString(pack.getFileSize()));
+                if (pack.getLangPackId() != null)
                 {
-                    packJar.close();
+                    child.setAttribute("id", pack.getLangPackId());
                 }
-            }
+                root.addChild(child);
 
-            IXMLElement child = new XMLElementImpl("pack", root);
-            child.setAttribute("name", pack.getName());
-            child.setAttribute("size", Long.toString(pack.getSize()));
-            child.setAttribute("fileSize", Long.toString(pack.getFileSize()));
-            if (pack.getLangPackId() != null)
+                packNumber++;
+            }
+        }
+        finally
+        {
+            if (compressor != null)
             {
-                child.setAttribute("id", pack.getLangPackId());
+                compressor.close();
             }
-            root.addChild(child);
+        }
 
-            packNumber++;
+        if (uncompressedFiles > 0)
+        {
+            sendMsg("Stored " + uncompressedFiles + " incompressible files without " + comprFormat.toName()
+                    + " compression");
         }
 
-        // Now that we know sizes, write pack metadata to primary jar.
-        installerJar.putNextEntry(new ZipEntry(PACKSINFO_RESOURCE_PATH));
-        try (ObjectOutputStream out = new ObjectOutputStream(new NoCloseOutputStream(installerJar)))
+        if (solidBlocks > 0)
         {
-            out.writeObject(packs);
+            sendMsg("Compressed " + solidFiles + " small files in " + solidBlocks + " solid blocks");
         }
-        installerJar.closeEntry();
+
+        if (contentIndex != null && contentIndex.getDuplicates() > 0)
+        {
+            sendMsg("Stored " + contentIndex.getDuplicates() + " files with duplicate content as back references, saving "
+                    + contentIndex.getSavedBytes() + " bytes (" + savedSize + " bytes compressed)");
+        }
+
+        // Now that we know sizes, write pack metadata to primary jar.
+        installerJar.putArchiveEntry(new ZipArchiveEntry(PACKSINFO_RESOURCE_PATH));
+        new PackIndexWriter(installerJar).write(packs);
+        installerJar.closeArchiveEntry();
 
         for (PackFile pack200PackFile : pack200Files)
         {
+            String name = RESOURCES_PATH + pack200PackFile.getStreamResourceName();
+            installerJar.putArchiveEntry(new ZipArchiveEntry(name));
             try
             {
-                installerJar.putNextEntry(new ZipEntry(RESOURCES_PATH + pack200PackFile.getStreamResourceName()));
                 Path tmpfile = Files.createTempFile("izpack-compress", ".pack200");
                 try (OutputStream tmpOut = Files.newOutputStream(tmpfile);
                      BufferedOutputStream bufferedOut = new BufferedOutputStream(tmpOut))
@@ -292,12 +628,174 @@ public class Packager extends PackagerBase
             }
             finally
             {
-                installerJar.closeEntry();
+                installerJar.closeArchiveEntry();
                 installerJar.flush();
             }
         }
     }
 
+    /**
+     * Writes a pack to the jar as an uncompressed entry.
+     *
+     * @param packJar  the jar to write to
+     * @param entry    the pack entry
+     * @param packData the file containing the pack stream
+     * @param crc      the CRC-32 of the pack stream
+     * @throws IOException for any I/O error
+     */
+    private void writeStoredEntry(ZipArchiveOutputStream packJar, ZipArchiveEntry entry, Path packData, long crc)
+            throws IOException
+    {
+        long size = Files.size(packData);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc);
+        packJar.putArchiveEntry(entry);
+        Files.copy(packData, packJar);
+    }
+
+    /**
+     * Determines if a file is small enough to be compressed in a solid block.
+     *
+     * @param packFile the pack file
+     * @param file     the file to read its content from
+     * @param format   the compression format
+     * @return <tt>true</tt> if the file should be added to a solid block
+     */
+    private boolean isSolid(PackFile packFile, Path file, PackCompression format)
+    {
+        return solidBlockSize > 0 && format != PackCompression.DEFAULT
+                && packFile.length() <= solidBlockSize / SOLID_FILE_FRACTION
+                && !(adaptiveCompression && CompressionSelector.isCompressedType(file));
+    }
+
+    /**
+     * Compresses a file to the pack stream, or submits it to the compressor.
+     *
+     * @param packFile         the pack file
+     * @param file             the file to read its content from
+     * @param format           the compression format
+     * @param compressor       the compressor, or {@code null} if files are compressed on the calling thread
+     * @param packOutputStream the pack stream
+     * @throws IOException for any I/O error
+     */
+    private void writeFile(PackFile packFile, Path file, PackCompression format, PackFileCompressor compressor,
+                           CountingOutputStream packOutputStream) throws IOException
+    {
+        if (compressor != null)
+        {
+            // the offset is assigned when the compressed data is written, in submission order
+            if (compressor.isFull())
+            {
+                writeNext(compressor, packOutputStream);
+            }
+            compressor.submit(packFile, file, format);
+        }
+        else
+        {
+            packFile.setStreamOffset(packOutputStream.getByteCount()); // get the position
+            packFile.setSize(PackFileCompressor.compress(packFile, file, format, isDigest(), adaptiveCompression,
+                                                         packOutputStream));
+            logAdded(packFile);
+        }
+    }
+
+    /**
+     * Compresses a solid block to the pack stream, or submits it to the compressor.
+     * <p/>
+     * A block holding a single file gains nothing over compressing the file on its own, so the file is written
+     * individually.
+     *
+     * @param block            the block
+     * @param format           the compression format
+     * @param compressor       the compressor, or {@code null} if files are compressed on the calling thread
+     * @param packOutputStream the pack stream
+     * @throws IOException for any I/O error
+     */
+    private void writeBlock(SolidBlock block, PackCompression format, PackFileCompressor compressor,
+                            CountingOutputStream packOutputStream) throws IOException
+    {
+        List<PackFile> packFiles = block.getPackFiles();
+        if (packFiles.size() == 1)
+        {
+            PackFile packFile = packFiles.get(0);
+            packFile.setBlockOffset(-1);
+            writeFile(packFile, block.getFiles().get(0), format, compressor, packOutputStream);
+        }
+        else if (compressor != null)
+        {
+            if (compressor.isFull())
+            {
+                writeNext(compressor, packOutputStream);
+            }
+            compressor.submit(block, format);
+        }
+        else
+        {
+            long offset = packOutputStream.getByteCount();
+            long size = PackFileCompressor.compress(block, format, isDigest(), packOutputStream);
+            setWritten(packFiles, offset, size);
+        }
+    }
+
+    /**
+     * Appends the next file compressed by a {@link PackFileCompressor} to the pack stream.
+     *
+     * @param compressor       the compressor
+     * @param packOutputStream the pack stream
+     * @throws IOException for any I/O error
+     */
+    private void writeNext(PackFileCompressor compressor, CountingOutputStream packOutputStream) throws IOException
+    {
+        try (PackFileCompressor.CompressedPackFile compressed = compressor.next())
+        {
+            long offset = packOutputStream.getByteCount(); // get the position
+            compressed.writeTo(packOutputStream);
+            setWritten(compressed.getPackFiles(), offset, compressed.getSize());
+        }
+    }
+
+    /**
+     * Records the stream offset and size of pack files once they have been written.
+     *
+     * @param packFiles the pack file, or the pack files of a solid block
+     * @param offset    the offset of the compressed data in the pack stream
+     * @param size      the number of compressed bytes
+     */
+    private void setWritten(List<PackFile> packFiles, long offset, long size)
+    {
+        for (PackFile packFile : packFiles)
+        {
+            packFile.setStreamOffset(offset);
+            packFile.setSize(size);
+        }
+        PackFile first = packFiles.get(0);
+        if (first.isInBlock())
+        {
+            solidBlocks++;
+            solidFiles += packFiles.size();
+            logger.fine("Solid block of " + packFiles.size() + " files starting with " + first.getTargetPath()
+                    + " added compressed as " + getInfo().getCompressionFormat().toName() + " (" + size + " bytes)");
+        }
+        else
+        {
+            logAdded(first);
+        }
+    }
+
+    private void logAdded(PackFile packFile)
+    {
+        PackCompression comprFormat = getInfo().getCompressionFormat();
+        if (packFile.getCompression() != null && packFile.getCompression() != comprFormat)
+        {
+            comprFormat = packFile.getCompression();
+            uncompressedFiles++;
+        }
+        logger.fine("File " + packFile.getTargetPath() + " added compressed as " + comprFormat.toName()
+                + " (" + packFile.length() + " -> " + packFile.size() + " bytes)");
+    }
+
     private Pack200.Packer createPack200Packer(PackFile packFile)
     {
         Pack200.Packer packer = Pack200.newPacker();
@@ -310,8 +808,36 @@ public class Packager extends PackagerBase
         return packer;
     }
 
+    /**
+     * Parses configuration information.
+     * <p/>
+     * This determines the {@link #setThreads(int) number of compression threads} from the <em>threads</em>
+     * attribute, {@link #setDeduplicate(boolean) deduplication} from the <em>deduplicate</em> attribute,
+     * {@link #setRandomAccess(Boolean) random access} from the <em>randomaccess</em> attribute,
+     * {@link #setDigest(boolean) digests} from the <em>digest</em> attribute,
+     * {@link #setAdaptiveCompression(boolean) adaptive compression} from the <em>adaptivecompression</em>
+     * attribute, and the {@link #setSolidBlockSize(int) solid block size} from the <em>solidblocksize</em>
+     * attribute.
+     *
+     * @param data the xml-element packaging from the install.xml
+     */
     @Override
     public void addConfigurationInformation(IXMLElement data)
     {
+        if (data != null)
+        {
+            setThreads(Integer.parseInt(data.getAttribute(THREADS, Integer.toString(threads))));
+            setDeduplicate(Boolean.parseBoolean(data.getAttribute(DEDUPLICATE, Boolean.toString(deduplicate))));
+            setDigest(Boolean.parseBoolean(data.getAttribute(DIGEST, Boolean.toString(isDigest()))));
+            setAdaptiveCompression(Boolean.parseBoolean(
+                    data.getAttribute(ADAPTIVE_COMPRESSION, Boolean.toString(adaptiveCompression))));
+            setSolidBlockSize(Integer.parseInt(data.getAttribute(SOLID_BLOCK_SIZE,
+                                                                 Integer.toString(solidBlockSize))));
+            String value = data.getAttribute(RANDOM_ACCESS);
+            if (value != null)
+            {
+                setRandomAccess(Boolean.valueOf(value));
+            }
+        }
     }
 }
@@ -28,6 +28,7 @@ import com.izforge.izpack.api.data.DynamicVariable;
 import com.izforge.izpack.api.data.GUIPrefs;
 import com.izforge.izpack.api.data.Info;
 import com.izforge.izpack.api.data.InstallerRequirement;
+import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.data.PackInfo;
 import com.izforge.izpack.api.data.Panel;
 import com.izforge.izpack.api.exception.CompilerException;
@@ -44,6 +45,8 @@ import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.util.FileUtil;
 import com.izforge.izpack.util.NoCloseOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
@@ -58,9 +61,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
-import java.util.zip.ZipEntry;
 
 /**
  * The packager base class. The packager interface <code>IPackager</code> is used by the compiler to put files into an installer, and
@@ -79,6 +80,11 @@ public abstract class PackagerBase implements IPackager
 
     protected static final String PACKSINFO_RESOURCE_PATH = RESOURCES_PATH + "packs.info";
 
+    /**
+     * The configuration attribute to enable or disable pack file digests.
+     */
+    protected static final String DIGEST = "digest";
+
     /**
      * Variables.
      */
@@ -92,7 +98,7 @@ public abstract class PackagerBase implements IPackager
     /**
      * Executable zipped output stream. First to open, last to close.
      */
-    private final JarOutputStream installerJar;
+    private final ZipArchiveOutputStream installerJar;
 
     /**
      * The merge manager.
@@ -181,6 +187,11 @@ public abstract class PackagerBase implements IPackager
     private final List<DynamicInstallerRequirementValidator> dynamicInstallerRequirements =
             new ArrayList<>();
 
+    /**
+     * Determines if a content digest is recorded for each pack file.
+     */
+    private boolean digest = true;
+
     /**
      * Constructs a <tt>PackagerBase</tt>.
      *
@@ -192,7 +203,7 @@ public abstract class PackagerBase implements IPackager
      * @param mergeableResolver the mergeable resolver
      * @param compilerData      the compiler data
      */
-    public PackagerBase(Properties properties, PackagerListener listener, JarOutputStream installerJar,
+    public PackagerBase(Properties properties, PackagerListener listener, ZipArchiveOutputStream installerJar,
                         MergeManager mergeManager, CompilerPathResolver pathResolver,
                         MergeableResolver mergeableResolver, CompilerData compilerData,
                         RulesEngine rulesEngine)
@@ -385,6 +396,29 @@ public abstract class PackagerBase implements IPackager
         return info != null && info.getWebDirURL() != null;
     }
 
+    /**
+     * Determines if a {@link PackFile#DIGEST_ALGORITHM} digest of each pack file is recorded as it is written, so
+     * that the unpacker can verify the extracted content.
+     * <p/>
+     * Defaults to <tt>true</tt>.
+     *
+     * @param digest if <tt>true</tt>, record pack file digests
+     */
+    public final void setDigest(boolean digest)
+    {
+        this.digest = digest;
+    }
+
+    /**
+     * Determines if a digest of each pack file is recorded.
+     *
+     * @return <tt>true</tt> if pack file digests are recorded
+     */
+    public final boolean isDigest()
+    {
+        return digest;
+    }
+
     private List<DynamicVariable> buildVariableList()
     {
         DependencyGraph<DynamicVariable> graph = new DependencyGraph<>();
@@ -457,6 +491,9 @@ public abstract class PackagerBase implements IPackager
 
     /**
      * Write skeleton installer to the installer jar.
+     * <p/>
+     * Classes merged from jars are copied as they are compressed in their jar, unless they are neither stored nor
+     * deflated.
      */
     protected final void writeSkeletonInstaller()
     {
@@ -498,7 +535,7 @@ public abstract class PackagerBase implements IPackager
      */
     protected final void writeInstallerObject(String entryName, Object object) throws IOException
     {
-        installerJar.putNextEntry(new ZipEntry(RESOURCES_PATH + entryName));
+        installerJar.putArchiveEntry(new ZipArchiveEntry(RESOURCES_PATH + entryName));
         try (ObjectOutputStream out = new ObjectOutputStream(new NoCloseOutputStream(installerJar)))
         {
             out.writeObject(object);
@@ -510,7 +547,7 @@ public abstract class PackagerBase implements IPackager
         }
         finally
         {
-            installerJar.closeEntry();
+            installerJar.closeArchiveEntry();
         }
     }
 
@@ -528,21 +565,21 @@ public abstract class PackagerBase implements IPackager
             URL url = stringURLEntry.getValue();
             try (InputStream in = url.openStream())
             {
-                ZipEntry newEntry = new ZipEntry(RESOURCES_PATH + stringURLEntry.getKey());
+                ZipArchiveEntry newEntry = new ZipArchiveEntry(RESOURCES_PATH + stringURLEntry.getKey());
                 long dateTime = FileUtil.getFileDateTime(url);
                 if (dateTime != -1)
                 {
                     newEntry.setTime(dateTime);
                 }
 
+                installerJar.putArchiveEntry(newEntry);
                 try
                 {
-                    installerJar.putNextEntry(newEntry);
                     IOUtils.copy(in, installerJar);
                 }
                 finally
                 {
-                    installerJar.closeEntry();
+                    installerJar.closeArchiveEntry();
                 }
             }
         }
@@ -553,7 +590,7 @@ public abstract class PackagerBase implements IPackager
      *
      * @throws IOException for any I/O error
      */
-    protected abstract void writePacks(JarOutputStream installerJar) throws IOException;
+    protected abstract void writePacks(ZipArchiveOutputStream installerJar) throws IOException;
 
     /**
      * Dispatches a message to the listeners.
@@ -0,0 +1,107 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.api.data.PackFile;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A run of consecutive small pack files that are compressed together as a single stream.
+ * <p/>
+ * Each file added is assigned its {@link PackFile#setBlockOffset(long) offset} within the uncompressed block. Once
+ * the block is written, all of its files share the stream offset and size of the compressed block.
+ *
+ * @see Packager#setSolidBlockSize(int)
+ */
+class SolidBlock
+{
+    /**
+     * The pack files, in block order.
+     */
+    private final List<PackFile> packFiles = new ArrayList<>();
+
+    /**
+     * The files to read the content of the pack files from.
+     */
+    private final List<Path> files = new ArrayList<>();
+
+    /**
+     * The uncompressed length of the block.
+     */
+    private long length;
+
+    /**
+     * Adds a file to the end of the block.
+     *
+     * @param packFile the pack file
+     * @param file     the file to read its content from
+     */
+    void add(PackFile packFile, Path file)
+    {
+        packFile.setBlockOffset(length);
+        packFiles.add(packFile);
+        files.add(file);
+        length += packFile.length();
+    }
+
+    /**
+     * Determines if a pack file has been added to the block.
+     *
+     * @param packFile the pack file
+     * @return <tt>true</tt> if the pack file is in the block
+     */
+    boolean contains(PackFile packFile)
+    {
+        return packFiles.contains(packFile);
+    }
+
+    /**
+     * Returns the pack files.
+     *
+     * @return the pack files, in block order
+     */
+    List<PackFile> getPackFiles()
+    {
+        return packFiles;
+    }
+
+    /**
+     * Returns the files to read the content of the pack files from.
+     *
+     * @return the files, in block order
+     */
+    List<Path> getFiles()
+    {
+        return files;
+    }
+
+    /**
+     * Returns the uncompressed length of the block.
+     *
+     * @return the length, in bytes
+     */
+    long getLength()
+    {
+        return length;
+    }
+}
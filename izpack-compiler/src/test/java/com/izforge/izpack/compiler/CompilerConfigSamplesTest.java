@@ -20,7 +20,14 @@
 package com.izforge.izpack.compiler;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
+import java.io.ObjectInputStream;
+import java.util.List;
+import java.util.Map;
 import java.util.jar.JarFile;
 import java.util.zip.ZipFile;
 
@@ -29,8 +36,15 @@ import org.hamcrest.core.IsNot;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackInfo;
+import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.compiler.container.TestCompilerContainer;
+import com.izforge.izpack.core.rules.logic.AndCondition;
+import com.izforge.izpack.core.rules.logic.OrCondition;
+import com.izforge.izpack.core.rules.process.RefCondition;
 import com.izforge.izpack.core.container.AbstractContainer;
+import com.izforge.izpack.core.io.PackIndexReader;
 import com.izforge.izpack.matcher.ZipMatcher;
 import com.izforge.izpack.test.Container;
 import com.izforge.izpack.test.InstallFile;
@@ -110,4 +124,82 @@ public class CompilerConfigSamplesTest
                 "resources/vars",
                 "com/izforge/izpack/img/JFrameIcon.png"));
     }
-}
\ No newline at end of file
+
+    /**
+     * Verifies that expressions made up of user-defined conditions are compiled into the installer, and that those
+     * referring to built-in conditions are left to the installer.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    @InstallFile("samples/conditions/expressions.xml")
+    @SuppressWarnings("unchecked")
+    public void installerShouldContainCompiledExpressions() throws Exception
+    {
+        compilerConfig.executeCompiler();
+        jar = testContainer.getComponent(JarFile.class);
+        Map<String, Condition> rules;
+        try (ObjectInputStream in = new ObjectInputStream(jar.getInputStream(jar.getEntry("resources/rules"))))
+        {
+            rules = (Map<String, Condition>) in.readObject();
+        }
+
+        Condition or = getReferencedCondition(rules, "@setup.standard || !setup.expert");
+        assertThat(or, instanceOf(OrCondition.class));
+        assertSame(rules.get("setup.standard"), ((OrCondition) or).getOperands().get(0));
+        assertEquals("setup.standard", rules.get("setup.standard").getId());
+        assertThat(getReferencedCondition(rules, "setup.standard+setup.expert"), instanceOf(AndCondition.class));
+        assertFalse(rules.containsKey("izpack.windowsinstall|setup.expert"));
+    }
+
+    /**
+     * Returns the condition compiled from an expression, stored with the installer conditions.
+     *
+     * @param rules      the installer conditions
+     * @param expression the expression
+     * @return the compiled condition
+     */
+    private static Condition getReferencedCondition(Map<String, Condition> rules, String expression)
+    {
+        Condition condition = rules.get(expression);
+        assertThat(condition, instanceOf(RefCondition.class));
+        assertEquals(expression, condition.getId());
+        return ((RefCondition) condition).getReferencedCondition();
+    }
+
+    /**
+     * Verifies that files installed as binary executables are marked as such, so that the installer can set their
+     * executable flag as they are unpacked.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    @InstallFile("samples/executables/executables.xml")
+    @SuppressWarnings("unchecked")
+    public void installerShouldMarkExecutableFiles() throws Exception
+    {
+        compilerConfig.executeCompiler();
+        jar = testContainer.getComponent(JarFile.class);
+        PackInfo pack;
+        try (PackIndexReader in = new PackIndexReader(jar.getInputStream(jar.getEntry("resources/packs.info"))))
+        {
+            pack = in.readPackInfo(0);
+        }
+
+        int files = 0;
+        for (PackFile packFile : pack.getPackFiles())
+        {
+            if (packFile.getTargetPath().endsWith("run.sh"))
+            {
+                assertEquals(0111, packFile.getMode());
+                files++;
+            }
+            else if (packFile.getTargetPath().endsWith("readme.txt"))
+            {
+                assertEquals(0, packFile.getMode());
+                files++;
+            }
+        }
+        assertEquals(2, files);
+    }
+}
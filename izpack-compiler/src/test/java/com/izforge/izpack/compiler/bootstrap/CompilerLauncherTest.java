@@ -27,12 +27,12 @@ import com.izforge.izpack.compiler.logging.MavenStyleLogFormatter;
 import com.izforge.izpack.compiler.packager.impl.AbstractPackagerTest;
 import com.izforge.izpack.test.Container;
 import com.izforge.izpack.test.junit.PicoRunner;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.hamcrest.core.IsNull;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.Properties;
-import java.util.jar.JarOutputStream;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -79,7 +79,7 @@ public class CompilerLauncherTest
                         baseDir + "/target/output.jar",
                         true)
         );
-        JarOutputStream jarOutputStream = compilerContainer.getComponent(JarOutputStream.class);
+        ZipArchiveOutputStream jarOutputStream = compilerContainer.getComponent(ZipArchiveOutputStream.class);
         assertThat(jarOutputStream, IsNull.notNullValue());
     }
 
@@ -23,11 +23,11 @@ import com.izforge.izpack.api.data.PackCompression;
 import com.izforge.izpack.compiler.container.provider.JarOutputStreamProvider;
 import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.packager.impl.AbstractPackagerTest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.util.jar.JarOutputStream;
-import java.util.zip.ZipEntry;
 
 /**
  * Test compressor stream
@@ -48,9 +48,9 @@ public class CompressorTest
                 false);
         data.setComprFormat(PackCompression.BZIP2.toName());
         JarOutputStreamProvider jarOutputStreamProvider = new JarOutputStreamProvider();
-        JarOutputStream jarOutputStream = jarOutputStreamProvider.provide(data);
-        ZipEntry zipEntry = new ZipEntry("test");
+        ZipArchiveOutputStream jarOutputStream = jarOutputStreamProvider.provide(data);
+        ZipArchiveEntry zipEntry = new ZipArchiveEntry("test");
         zipEntry.setComment("bzip2");
-        jarOutputStream.putNextEntry(zipEntry);
+        jarOutputStream.putArchiveEntry(zipEntry);
     }
 }
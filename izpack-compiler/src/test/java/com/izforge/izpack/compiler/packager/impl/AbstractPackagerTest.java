@@ -24,7 +24,9 @@ import com.izforge.izpack.api.data.Blockable;
 import com.izforge.izpack.api.data.OverrideType;
 import com.izforge.izpack.api.data.Pack;
 import com.izforge.izpack.api.data.PackInfo;
+import com.izforge.izpack.core.io.PackIndexReader;
 import com.izforge.izpack.merge.MergeManager;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Before;
@@ -38,7 +40,6 @@ import java.net.URL;
 import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyString;
@@ -68,7 +69,7 @@ public abstract class AbstractPackagerTest
     @Test
     public void noSplash() throws IOException
     {
-        PackagerBase packager = createPackager(Mockito.mock(JarOutputStream.class), mergeManager);
+        PackagerBase packager = createPackager(Mockito.mock(ZipArchiveOutputStream.class), mergeManager);
         packager.writeManifest();
 
         verify(mergeManager).addResourceToMerge(anyString(), eq("META-INF/MANIFEST.MF"));
@@ -77,7 +78,7 @@ public abstract class AbstractPackagerTest
     @Test
     public void noGuiPrefs() throws IOException
     {
-        PackagerBase packager = createPackager(Mockito.mock(JarOutputStream.class), mergeManager);
+        PackagerBase packager = createPackager(Mockito.mock(ZipArchiveOutputStream.class), mergeManager);
         packager.writeManifest();
 
         verify(mergeManager).addResourceToMerge(anyString(), anyString());
@@ -129,7 +130,7 @@ public abstract class AbstractPackagerTest
      * @param mergeManager the merge manager
      * @return a new packager
      */
-    protected abstract PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager);
+    protected abstract PackagerBase createPackager(ZipArchiveOutputStream jar, MergeManager mergeManager);
 
     /**
      * Verifies that the pack size is calculated correctly.
@@ -144,7 +145,7 @@ public abstract class AbstractPackagerTest
     {
         File jar = File.createTempFile("installer", ".jar");
 
-        JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+        ZipArchiveOutputStream output = new ZipArchiveOutputStream(jar);
         PackagerBase packager = createPackager(output, mergeManager);
 
         PackInfo packInfo = new PackInfo("Core", "Core", null, true, false, null, true, size);
@@ -160,10 +161,10 @@ public abstract class AbstractPackagerTest
 
         InputStream jarEntry = getJarEntry("resources/packs.info", jar);
 
-        ObjectInputStream packStream = new ObjectInputStream(jarEntry);
-        List<PackInfo> packsInfo = (List<PackInfo>) packStream.readObject();
-        assertEquals(1, packsInfo.size());
-        Pack pack = packsInfo.get(0).getPack();
+        PackIndexReader packStream = new PackIndexReader(jarEntry);
+        List<Pack> packs = packStream.getPacks();
+        assertEquals(1, packs.size());
+        Pack pack = packs.get(0);
         assertEquals(expectedSize, pack.getSize());
         assertEquals(expectedFileSize, fileSize);
 
@@ -0,0 +1,221 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.compiler.packager.impl;
+
+import com.izforge.izpack.merge.jar.JarMerge;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link InstallerJarOutputStream}.
+ */
+public class InstallerJarOutputStreamTest
+{
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Verifies that entries merged from a jar are copied as they are compressed in the jar, alongside entries
+     * written to the stream, and that the first entry is marked as belonging to a jar.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testCopyRawEntries() throws IOException
+    {
+        byte[] text = createText();
+        byte[] stored = "stored content".getBytes(StandardCharsets.UTF_8);
+
+        // compress the source jar less than the installer jar, so that copied entries can be distinguished
+        File source = temporaryFolder.newFile("source.jar");
+        JarOutputStream sourceJar = new JarOutputStream(new FileOutputStream(source));
+        sourceJar.setLevel(Deflater.BEST_SPEED);
+        sourceJar.putNextEntry(new ZipEntry("com/foo/Deflated.class"));
+        sourceJar.write(text);
+        sourceJar.closeEntry();
+        sourceJar.putNextEntry(createStoredEntry("com/foo/stored.txt", stored));
+        sourceJar.write(stored);
+        sourceJar.closeEntry();
+        sourceJar.close();
+
+        File installer = temporaryFolder.newFile("installer.jar");
+        InstallerJarOutputStream installerJar = new InstallerJarOutputStream(installer.toPath());
+        installerJar.setLevel(Deflater.BEST_COMPRESSION);
+        installerJar.putArchiveEntry(new ZipArchiveEntry("resources/text"));
+        installerJar.write(text);
+        installerJar.closeArchiveEntry();
+        installerJar.putArchiveEntry(new ZipArchiveEntry(createStoredEntry("resources/stored", stored)));
+        installerJar.write(stored);
+        installerJar.closeArchiveEntry();
+        Map<OutputStream, List<String>> mergeContent = new HashMap<OutputStream, List<String>>();
+        new JarMerge(source.getPath(), "com/foo/", "com/foo/", mergeContent).merge(installerJar);
+        installerJar.close();
+
+        JarFile sourceFile = new JarFile(source);
+        JarFile installerFile = new JarFile(installer);
+        try
+        {
+            assertEquals(4, installerFile.size());
+            assertArrayEquals(text, read(installerFile, "resources/text"));
+            assertArrayEquals(stored, read(installerFile, "resources/stored"));
+            assertArrayEquals(text, read(installerFile, "com/foo/Deflated.class"));
+            assertArrayEquals(stored, read(installerFile, "com/foo/stored.txt"));
+
+            ZipEntry sourceEntry = sourceFile.getEntry("com/foo/Deflated.class");
+            ZipEntry copied = installerFile.getEntry("com/foo/Deflated.class");
+            ZipEntry recompressed = installerFile.getEntry("resources/text");
+            assertEquals(ZipEntry.DEFLATED, copied.getMethod());
+            assertEquals(sourceEntry.getCompressedSize(), copied.getCompressedSize());
+            assertTrue(recompressed.getCompressedSize() < copied.getCompressedSize());
+            assertEquals(ZipEntry.STORED, installerFile.getEntry("com/foo/stored.txt").getMethod());
+
+            // the first entry is marked as belonging to a jar
+            byte[] extra = Collections.list(installerFile.entries()).get(0).getExtra();
+            assertEquals((byte) 0xFE, extra[0]);
+            assertEquals((byte) 0xCA, extra[1]);
+        }
+        finally
+        {
+            sourceFile.close();
+            installerFile.close();
+        }
+    }
+
+    /**
+     * Verifies that entries with the same name are rejected, whether they are written or copied.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testDuplicateEntry() throws IOException
+    {
+        InstallerJarOutputStream installerJar = new InstallerJarOutputStream(
+                temporaryFolder.newFile("installer.jar").toPath());
+        try
+        {
+            installerJar.putArchiveEntry(new ZipArchiveEntry("com/foo/Foo.class"));
+            installerJar.closeArchiveEntry();
+            try
+            {
+                installerJar.putArchiveEntry(new ZipArchiveEntry("com/foo/Foo.class"));
+                fail("Expected ZipException");
+            }
+            catch (ZipException expected)
+            {
+                // expected
+            }
+            try
+            {
+                ZipArchiveEntry entry = new ZipArchiveEntry(createStoredEntry("com/foo/Foo.class", new byte[0]));
+                installerJar.addRawArchiveEntry(entry, new ByteArrayInputStream(new byte[0]));
+                fail("Expected ZipException");
+            }
+            catch (ZipException expected)
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            installerJar.close();
+        }
+    }
+
+    /**
+     * Creates compressible text.
+     *
+     * @return the text
+     */
+    private static byte[] createText()
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; ++i)
+        {
+            text.append("line ").append(i % 100).append(" of the text to compress\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates an entry to store uncompressed.
+     *
+     * @param name    the entry name
+     * @param content the entry content
+     * @return a new entry
+     */
+    private static ZipEntry createStoredEntry(String name, byte[] content)
+    {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+        return entry;
+    }
+
+    /**
+     * Reads an entry of a jar.
+     *
+     * @param jarFile the jar
+     * @param name    the entry name
+     * @return the entry content
+     * @throws IOException for any I/O error
+     */
+    private static byte[] read(JarFile jarFile, String name) throws IOException
+    {
+        InputStream in = jarFile.getInputStream(jarFile.getEntry(name));
+        try
+        {
+            return IOUtils.toByteArray(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -27,10 +27,10 @@ import com.izforge.izpack.compiler.data.CompilerData;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.mockito.Mockito;
 
 import java.util.Properties;
-import java.util.jar.JarOutputStream;
 
 /**
  * Tests the {@link MultiVolumePackager}.
@@ -48,7 +48,7 @@ public class MultiVolumePackagerTest extends AbstractPackagerTest
      * @return a new packager
      */
     @Override
-    protected PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager)
+    protected PackagerBase createPackager(ZipArchiveOutputStream jar, MergeManager mergeManager)
     {
         Properties properties = new Properties();
         CompilerPathResolver pathResolver = Mockito.mock(CompilerPathResolver.class);
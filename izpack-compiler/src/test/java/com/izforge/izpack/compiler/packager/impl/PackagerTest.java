@@ -19,9 +19,13 @@
 
 package com.izforge.izpack.compiler.packager.impl;
 
+import com.izforge.izpack.api.adaptator.IXMLElement;
+import com.izforge.izpack.api.adaptator.impl.XMLElementImpl;
 import com.izforge.izpack.api.data.Blockable;
 import com.izforge.izpack.api.data.Info;
 import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.PackCompression;
+import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.data.PackInfo;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.compiler.data.CompilerData;
@@ -30,17 +34,35 @@ import com.izforge.izpack.compiler.packager.IPackager;
 import com.izforge.izpack.merge.MergeManager;
 import com.izforge.izpack.merge.resolve.MergeableResolver;
 import com.izforge.izpack.test.util.TestHelper;
+import com.izforge.izpack.util.StreamSupport;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
-import java.util.jar.JarOutputStream;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -60,7 +82,7 @@ public class PackagerTest extends AbstractPackagerTest
      * @return a new packager
      */
     @Override
-    protected PackagerBase createPackager(JarOutputStream jar, MergeManager mergeManager)
+    protected PackagerBase createPackager(ZipArchiveOutputStream jar, MergeManager mergeManager)
     {
         Properties properties = new Properties();
         CompilerPathResolver pathResolver = mock(CompilerPathResolver.class);
@@ -87,7 +109,7 @@ public class PackagerTest extends AbstractPackagerTest
 
         PackInfo packInfo = createPackInfo("Core", file1, file2);
 
-        JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(installerJar));
+        ZipArchiveOutputStream jarOutputStream = new ZipArchiveOutputStream(installerJar);
         IPackager packager = createPackager(jarOutputStream, mock(MergeManager.class));
         packager.addPack(packInfo);
 
@@ -101,6 +123,405 @@ public class PackagerTest extends AbstractPackagerTest
         System.out.println("Writing pack of " + packSize + " KiB took " + timeDiff + "ms");
     }
 
+    /**
+     * Verifies that packs written using several compression threads are byte-identical to those written
+     * sequentially, including back references and files larger than the in-memory buffer.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testParallelCompressionIsByteIdentical() throws Exception
+    {
+        File dir = temporaryFolder.newFolder("files");
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            File file = new File(dir, "text" + i + ".txt");
+            FileUtils.writeStringToFile(file, StringUtils.repeat("line " + i + "\n", i * 100),
+                                        StandardCharsets.UTF_8);
+            files.add(file);
+        }
+        files.add(TestHelper.createFile(dir, "large.dat", PackFileCompressor.MEMORY_THRESHOLD + 1024));
+        files.add(files.get(3)); // back reference within the pack
+
+        byte[] sequential = writePack(1, files);
+        byte[] parallel = writePack(4, files);
+        assertArrayEquals(sequential, parallel);
+    }
+
+    /**
+     * Verifies that files with identical content but different source paths are stored once, and linked
+     * through back references.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDuplicateContentIsBackReferenced() throws Exception
+    {
+        File file1 = TestHelper.createFile(temporaryFolder.newFolder("a"), "lib.jar", 4096);
+        File file2 = new File(temporaryFolder.newFolder("b"), "lib.jar");
+        FileUtils.copyFile(file1, file2);
+        File other = TestHelper.createFile(temporaryFolder.getRoot(), "other.jar", 4096);
+
+        PackInfo base = createPackInfo("Base", file1);
+        PackInfo extra = createPackInfo("Extra", file2, other);
+
+        File installerJar = temporaryFolder.newFile("installer.jar");
+        IPackager packager = createPackager(new ZipArchiveOutputStream(installerJar),
+                                            mock(MergeManager.class));
+        packager.addPack(base);
+        packager.addPack(extra);
+        packager.createInstaller();
+
+        PackFile stored = base.getPackFiles().iterator().next();
+        Iterator<PackFile> iterator = extra.getPackFiles().iterator();
+        PackFile duplicate = iterator.next();
+        PackFile unique = iterator.next();
+        assertFalse(stored.isBackReference());
+        assertTrue(duplicate.isBackReference());
+        assertSame(stored, duplicate.getLinkedPackFile());
+        assertFalse(unique.isBackReference());
+
+        try (JarFile jar = new JarFile(installerJar))
+        {
+            assertEquals(4096, jar.getEntry("resources/packs/pack-Extra").getSize());
+        }
+    }
+
+    /**
+     * Verifies that content based deduplication can be disabled.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDeduplicationDisabled() throws Exception
+    {
+        File file1 = TestHelper.createFile(temporaryFolder.newFolder("a"), "lib.jar", 4096);
+        File file2 = new File(temporaryFolder.newFolder("b"), "lib.jar");
+        FileUtils.copyFile(file1, file2);
+        PackInfo packInfo = createPackInfo("Core", file1, file2);
+
+        File installerJar = temporaryFolder.newFile("installer.jar");
+        Packager packager = (Packager) createPackager(new ZipArchiveOutputStream(installerJar),
+                                                      mock(MergeManager.class));
+        packager.setDeduplicate(false);
+        packager.addPack(packInfo);
+        packager.createInstaller();
+
+        for (PackFile packFile : packInfo.getPackFiles())
+        {
+            assertFalse(packFile.isBackReference());
+        }
+    }
+
+    /**
+     * Verifies that packs of compressed files are stored without compression in the jar, so that the unpacker can
+     * seek to a file's stream offset.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testRandomAccessPacks() throws Exception
+    {
+        File file1 = TestHelper.createFile(temporaryFolder.getRoot(), "f1.dat", 10000);
+        File file2 = TestHelper.createFile(temporaryFolder.getRoot(), "f2.dat", 20000);
+
+        checkPackMethod(PackCompression.DEFAULT, null, ZipEntry.DEFLATED, file1, file2);
+        checkPackMethod(PackCompression.GZIP, null, ZipEntry.STORED, file1, file2);
+        checkPackMethod(PackCompression.GZIP, false, ZipEntry.DEFLATED, file1, file2);
+        checkPackMethod(PackCompression.DEFAULT, true, ZipEntry.STORED, file1, file2);
+        checkPackMethod(PackCompression.LZ4, null, ZipEntry.STORED, file1, file2);
+        checkPackMethod(PackCompression.SNAPPY, null, ZipEntry.STORED, file1, file2);
+    }
+
+    /**
+     * Verifies that a content digest is recorded for each pack file, in both sequential and parallel modes, and
+     * that back references share the digest of the file they link to.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDigests() throws Exception
+    {
+        File file1 = TestHelper.createFile(temporaryFolder.getRoot(), "f1.dat", 10000);
+        File file2 = TestHelper.createFile(temporaryFolder.getRoot(), "f2.dat", 20000);
+        for (int threads : new int[]{1, 4})
+        {
+            PackInfo packInfo = createPackInfo("Core", file1, file2, file1);
+            File installerJar = File.createTempFile("installer", ".jar", temporaryFolder.getRoot());
+            Packager packager = (Packager) createPackager(new ZipArchiveOutputStream(installerJar),
+                                                          mock(MergeManager.class));
+            packager.getInfo().setCompressionFormat(PackCompression.GZIP);
+            packager.setThreads(threads);
+            packager.addPack(packInfo);
+            packager.createInstaller();
+
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                byte[] expected = PackFile.createDigest().digest(FileUtils.readFileToByteArray(packFile.getFile()));
+                assertArrayEquals(expected, packFile.getDigest());
+            }
+        }
+
+        PackInfo packInfo = createPackInfo("Core", file1);
+        Packager packager = (Packager) createPackager(new ZipArchiveOutputStream(
+                File.createTempFile("installer", ".jar", temporaryFolder.getRoot())), mock(MergeManager.class));
+        packager.setDigest(false);
+        packager.addPack(packInfo);
+        packager.createInstaller();
+        assertNull(packInfo.getPackFiles().iterator().next().getDigest());
+    }
+
+    /**
+     * Verifies that adaptive compression stores incompressible files as is, in both sequential and parallel modes,
+     * and that each file can be read back with its own compression.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testAdaptiveCompression() throws Exception
+    {
+        File random = TestHelper.createFile(temporaryFolder.getRoot(), "random.dat", 20000);
+        File jar = TestHelper.createFile(temporaryFolder.getRoot(), "lib.jar", 10000);
+        File text = temporaryFolder.newFile("text.txt");
+        FileUtils.writeStringToFile(text, StringUtils.repeat("some text\n", 2000), StandardCharsets.UTF_8);
+
+        for (int threads : new int[]{1, 4})
+        {
+            PackInfo packInfo = createPackInfo("Core", random, jar, text, random);
+            File installerJar = File.createTempFile("installer", ".jar", temporaryFolder.getRoot());
+            Packager packager = (Packager) createPackager(new ZipArchiveOutputStream(installerJar),
+                                                          mock(MergeManager.class));
+            packager.getInfo().setCompressionFormat(PackCompression.GZIP);
+            packager.setAdaptiveCompression(true);
+            packager.setThreads(threads);
+            packager.addPack(packInfo);
+            packager.createInstaller();
+
+            List<PackFile> packFiles = new ArrayList<>(packInfo.getPackFiles());
+            assertEquals(PackCompression.DEFAULT, packFiles.get(0).getCompression());
+            assertEquals(PackCompression.DEFAULT, packFiles.get(1).getCompression());
+            assertEquals(PackCompression.GZIP, packFiles.get(2).getCompression());
+            assertTrue(packFiles.get(3).isBackReference());
+            assertEquals(PackCompression.DEFAULT, packFiles.get(3).getCompression());
+            assertTrue(packFiles.get(2).size() < text.length());
+
+            try (JarFile installer = new JarFile(installerJar))
+            {
+                ZipEntry entry = installer.getEntry("resources/packs/pack-Core");
+                for (PackFile packFile : packFiles.subList(0, 3))
+                {
+                    try (InputStream in = installer.getInputStream(entry))
+                    {
+                        assertEquals(packFile.getStreamOffset(), in.skip(packFile.getStreamOffset()));
+                        InputStream data = StreamSupport.compressedInput(
+                                packFile.getCompression(), new BoundedInputStream(in, packFile.size()));
+                        assertArrayEquals(FileUtils.readFileToByteArray(packInfo.getFile(packFile)),
+                                          IOUtils.toByteArray(data));
+                    }
+                }
+            }
+        }
+
+        // without adaptive compression, the installer-wide format is used
+        PackInfo packInfo = createPackInfo("Core", random);
+        Packager packager = (Packager) createPackager(new ZipArchiveOutputStream(
+                File.createTempFile("installer", ".jar", temporaryFolder.getRoot())), mock(MergeManager.class));
+        packager.getInfo().setCompressionFormat(PackCompression.GZIP);
+        packager.addPack(packInfo);
+        packager.createInstaller();
+        assertNull(packInfo.getPackFiles().iterator().next().getCompression());
+    }
+
+    /**
+     * Verifies that consecutive small files are compressed in solid blocks, in both sequential and parallel modes,
+     * and that each file can be read back from its block.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSolidBlocks() throws Exception
+    {
+        File dir = temporaryFolder.newFolder("files");
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            File file = new File(dir, "text" + i + ".txt");
+            FileUtils.writeStringToFile(file, StringUtils.repeat("line " + i + "\n", i * 5), StandardCharsets.UTF_8);
+            files.add(file);
+        }
+        files.add(5, TestHelper.createFile(dir, "large.dat", 4096));
+
+        for (int threads : new int[]{1, 4})
+        {
+            PackInfo packInfo = createPackInfo("Core", files.toArray(new File[files.size()]));
+            File installerJar = File.createTempFile("installer", ".jar", temporaryFolder.getRoot());
+            Packager packager = (Packager) createPackager(new ZipArchiveOutputStream(installerJar),
+                                                          mock(MergeManager.class));
+            packager.getInfo().setCompressionFormat(PackCompression.GZIP);
+            packager.setSolidBlockSize(4096);
+            packager.setThreads(threads);
+            packager.addPack(packInfo);
+            packager.createInstaller();
+
+            List<PackFile> packFiles = new ArrayList<>(packInfo.getPackFiles());
+            long blockOffset = 0;
+            for (int i = 0; i < 5; i++)
+            {
+                PackFile packFile = packFiles.get(i);
+                assertTrue(packFile.isInBlock());
+                assertEquals(blockOffset, packFile.getBlockOffset());
+                assertEquals(packFiles.get(0).getStreamOffset(), packFile.getStreamOffset());
+                assertEquals(packFiles.get(0).size(), packFile.size());
+                blockOffset += packFile.length();
+            }
+            assertFalse(packFiles.get(5).isInBlock());
+            assertTrue(packFiles.get(6).isInBlock());
+            assertEquals(0, packFiles.get(6).getBlockOffset());
+            assertTrue(packFiles.get(6).getStreamOffset() > packFiles.get(5).getStreamOffset());
+
+            try (JarFile jar = new JarFile(installerJar))
+            {
+                ZipEntry entry = jar.getEntry("resources/packs/pack-Core");
+                for (PackFile packFile : packFiles)
+                {
+                    try (InputStream in = jar.getInputStream(entry))
+                    {
+                        assertEquals(packFile.getStreamOffset(), in.skip(packFile.getStreamOffset()));
+                        InputStream data = StreamSupport.compressedInput(
+                                PackCompression.GZIP, new BoundedInputStream(in, packFile.size()));
+                        if (packFile.isInBlock())
+                        {
+                            assertEquals(packFile.getBlockOffset(), data.skip(packFile.getBlockOffset()));
+                            data = new BoundedInputStream(data, packFile.length());
+                        }
+                        assertArrayEquals(FileUtils.readFileToByteArray(packInfo.getFile(packFile)),
+                                          IOUtils.toByteArray(data));
+                    }
+                    byte[] expected = PackFile.createDigest().digest(FileUtils.readFileToByteArray(packFile.getFile()));
+                    assertArrayEquals(expected, packFile.getDigest());
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies that the <em>threads</em> option configures the number of compression threads.
+     */
+    @Test
+    public void testThreadsConfiguration()
+    {
+        Packager packager = (Packager) createPackager(mock(ZipArchiveOutputStream.class), mock(MergeManager.class));
+        assertEquals(1, packager.getThreads());
+
+        IXMLElement options = new XMLElementImpl("options");
+        options.setAttribute("threads", "3");
+        packager.addConfigurationInformation(options);
+        assertEquals(3, packager.getThreads());
+
+        options.setAttribute("threads", "0");
+        packager.addConfigurationInformation(options);
+        assertEquals(Runtime.getRuntime().availableProcessors(), packager.getThreads());
+
+        assertTrue(packager.isDeduplicate());
+        options.setAttribute("deduplicate", "false");
+        packager.addConfigurationInformation(options);
+        assertFalse(packager.isDeduplicate());
+
+        assertTrue(packager.isDigest());
+        options.setAttribute("digest", "false");
+        packager.addConfigurationInformation(options);
+        assertFalse(packager.isDigest());
+
+        assertFalse(packager.isAdaptiveCompression());
+        options.setAttribute("adaptivecompression", "true");
+        packager.addConfigurationInformation(options);
+        assertTrue(packager.isAdaptiveCompression());
+
+        assertEquals(0, packager.getSolidBlockSize());
+        options.setAttribute("solidblocksize", "65536");
+        packager.addConfigurationInformation(options);
+        assertEquals(65536, packager.getSolidBlockSize());
+    }
+
+    /**
+     * Verifies the compression method of a pack entry, and that each pack file can be read by skipping to its
+     * stream offset.
+     *
+     * @param compression    the pack compression format
+     * @param randomAccess   the random access option. May be {@code null}
+     * @param expectedMethod the expected compression method of the pack entry
+     * @param files          the files to pack
+     * @throws Exception for any error
+     */
+    private void checkPackMethod(PackCompression compression, Boolean randomAccess, int expectedMethod,
+                                 File... files) throws Exception
+    {
+        File installerJar = File.createTempFile("installer", ".jar", temporaryFolder.getRoot());
+        PackInfo packInfo = createPackInfo("Core", files);
+        Packager packager = (Packager) createPackager(new ZipArchiveOutputStream(installerJar),
+                                                      mock(MergeManager.class));
+        packager.getInfo().setCompressionFormat(compression);
+        packager.setRandomAccess(randomAccess);
+        packager.addPack(packInfo);
+        packager.createInstaller();
+
+        try (JarFile jar = new JarFile(installerJar))
+        {
+            ZipEntry entry = jar.getEntry("resources/packs/pack-Core");
+            assertEquals(expectedMethod, entry.getMethod());
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                try (InputStream in = jar.getInputStream(entry))
+                {
+                    assertEquals(packFile.getStreamOffset(), in.skip(packFile.getStreamOffset()));
+                    InputStream data = StreamSupport.compressedInput(
+                            compression, new BoundedInputStream(in, packFile.size()));
+                    assertArrayEquals(FileUtils.readFileToByteArray(packInfo.getFile(packFile)),
+                                      IOUtils.toByteArray(data));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a GZIP compressed pack, and returns the pack stream together with the serialized pack information.
+     *
+     * @param threads the number of compression threads
+     * @param files   the files to pack
+     * @return the pack stream followed by the pack information
+     * @throws Exception for any error
+     */
+    private byte[] writePack(int threads, List<File> files) throws Exception
+    {
+        File installerJar = temporaryFolder.newFile("installer-" + threads + ".jar");
+        PackInfo packInfo = new PackInfo("Core", null, "", true, false, null, true, 0);
+        for (int i = 0; i < files.size(); i++)
+        {
+            File file = files.get(i);
+            packInfo.addFile(file.getParentFile(), file, "$INSTALL_PATH/" + i + "/" + file.getName(), null,
+                             OverrideType.OVERRIDE_TRUE, null, Blockable.BLOCKABLE_NONE, null, null, null);
+        }
+
+        Packager packager = (Packager) createPackager(new ZipArchiveOutputStream(installerJar),
+                                                      mock(MergeManager.class));
+        packager.getInfo().setCompressionFormat(PackCompression.GZIP);
+        packager.setThreads(threads);
+        packager.addPack(packInfo);
+        packager.createInstaller();
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (JarFile jar = new JarFile(installerJar))
+        {
+            IOUtils.copy(jar.getInputStream(jar.getEntry("resources/packs/pack-Core")), result);
+            for (PackFile packFile : packInfo.getPackFiles())
+            {
+                result.write((packFile.getStreamOffset() + ":" + packFile.size() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return result.toByteArray();
+    }
+
     private PackInfo createPackInfo(String name, File... files) throws IOException {
 
         PackInfo packInfo = new PackInfo(name, null, "", true, false, null, true, calculateTotalSize(files));
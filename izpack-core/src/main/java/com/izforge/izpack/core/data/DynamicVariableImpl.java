@@ -23,9 +23,12 @@
 
 package com.izforge.izpack.core.data;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,7 +39,16 @@ import com.izforge.izpack.api.rules.Condition;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.variable.PlainValue;
-
+import com.izforge.izpack.core.variable.ValueImpl;
+
+/**
+ * Default implementation of the {@link DynamicVariable} interface.
+ * <p/>
+ * The result of resolving the value is cached along with its inputs: the values of the variables the value
+ * {@link Value#getVarRefs() refers to}, and the state of any {@link ValueImpl#getSourceFiles files} it is read from.
+ * The value is only resolved again once one of these changes, so that values which run commands, or read files or the
+ * registry, aren't re-evaluated on every refresh. Filters are always applied, as their inputs aren't known.
+ */
 public class DynamicVariableImpl implements DynamicVariable
 {
     private static final long serialVersionUID = -7985397187206803090L;
@@ -60,6 +72,16 @@ public class DynamicVariableImpl implements DynamicVariable
     private transient String currentValue;
     private transient boolean checked = false;
 
+    /**
+     * The inputs {@link #resolvedValue} was resolved from, or {@code null} if there is no cached value.
+     */
+    private transient List<String> resolvedInputs;
+
+    /**
+     * The cached result of resolving the value.
+     */
+    private transient String resolvedValue;
+
     public DynamicVariableImpl() {}
 
     public DynamicVariableImpl(String name, String value) {
@@ -142,7 +164,7 @@ public class DynamicVariableImpl implements DynamicVariable
 
         try
         {
-            newValue = value.resolve(substitutors);
+            newValue = resolve(substitutors);
 
             if (checkonce)
             {
@@ -167,6 +189,56 @@ public class DynamicVariableImpl implements DynamicVariable
         return newValue;
     }
 
+    /**
+     * Resolves the value, unless its inputs are unchanged since it was last resolved.
+     *
+     * @param substitutors the variable substitutors
+     * @return the resolved value. May be {@code null}
+     * @throws Exception if the value cannot be resolved
+     */
+    private String resolve(VariableSubstitutor... substitutors) throws Exception
+    {
+        List<String> inputs = getInputs(substitutors);
+        if (inputs != null && inputs.equals(resolvedInputs))
+        {
+            logger.fine("Dynamic variable '" + name + "' unchanged, inputs: " + inputs);
+            return resolvedValue;
+        }
+        resolvedInputs = null;
+        resolvedValue = value.resolve(substitutors);
+        resolvedInputs = inputs;
+        return resolvedValue;
+    }
+
+    /**
+     * Returns the inputs of the value.
+     *
+     * @param substitutors the variable substitutors
+     * @return the inputs, or {@code null} if they can't be determined
+     */
+    private List<String> getInputs(VariableSubstitutor... substitutors)
+    {
+        if (!(value instanceof ValueImpl) || substitutors.length == 0)
+        {
+            return null;
+        }
+        List<String> inputs = new ArrayList<String>();
+        for (String varRef : new TreeSet<String>(value.getVarRefs()))
+        {
+            String input = "${" + varRef + "}";
+            for (VariableSubstitutor substitutor : substitutors)
+            {
+                input = substitutor.substitute(input);
+            }
+            inputs.add(varRef + "=" + input);
+        }
+        for (File file : ((ValueImpl) value).getSourceFiles(substitutors))
+        {
+            inputs.add(file.getPath() + "@" + file.lastModified() + ":" + file.length());
+        }
+        return inputs;
+    }
+
     /**
      * @return the name
      */
@@ -206,6 +278,7 @@ public class DynamicVariableImpl implements DynamicVariable
         if (value != null)
         {
             this.value = value;
+            resolvedInputs = null;
         }
     }
 
@@ -0,0 +1,294 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.handler;
+
+import com.izforge.izpack.api.event.ByteProgressListener;
+import com.izforge.izpack.api.event.ProgressListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link ProgressListener} that limits the rate at which sub-step and byte progress is passed to another listener.
+ * <p/>
+ * {@link #progress(int, String)} and {@link #byteProgress(long, long)} notifications that arrive within the interval
+ * of the last one delivered are coalesced, so that only the most recent is delivered. Any pending notification is
+ * delivered before all other notifications, so the listener always receives the final state of a step.
+ * <p/>
+ * Byte progress is only passed on if the listener is a {@link ByteProgressListener}.
+ * <p/>
+ * This class is thread safe.
+ */
+public class ThrottledProgressListener implements ByteProgressListener
+{
+    /**
+     * The default interval between notifications, in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL = 50;
+
+    /**
+     * The listener to delegate to.
+     */
+    private final ProgressListener listener;
+
+    /**
+     * The minimum interval between notifications, in nanoseconds.
+     */
+    private final long interval;
+
+    /**
+     * Supplies the current time, in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The time the last notification was delivered, in nanoseconds.
+     */
+    private long lastDelivery;
+
+    /**
+     * Determines if there is an undelivered {@link #progress(int, String)} notification.
+     */
+    private boolean stepPending;
+
+    /**
+     * The undelivered sub-step.
+     */
+    private int subStep;
+
+    /**
+     * The undelivered sub-step message.
+     */
+    private String message;
+
+    /**
+     * Determines if there is an undelivered {@link #byteProgress(long, long)} notification.
+     */
+    private boolean bytesPending;
+
+    /**
+     * The undelivered no. of bytes.
+     */
+    private long bytes;
+
+    /**
+     * The undelivered total no. of bytes.
+     */
+    private long totalBytes;
+
+    /**
+     * Constructs a <tt>ThrottledProgressListener</tt> that delivers notifications at most every
+     * {@link #DEFAULT_INTERVAL} milliseconds.
+     *
+     * @param listener the listener to delegate to
+     */
+    public ThrottledProgressListener(ProgressListener listener)
+    {
+        this(listener, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Constructs a <tt>ThrottledProgressListener</tt>.
+     *
+     * @param listener the listener to delegate to
+     * @param interval the minimum interval between notifications, in milliseconds
+     */
+    public ThrottledProgressListener(ProgressListener listener, long interval)
+    {
+        this(listener, interval, System::nanoTime);
+    }
+
+    /**
+     * Constructs a <tt>ThrottledProgressListener</tt>.
+     *
+     * @param listener the listener to delegate to
+     * @param interval the minimum interval between notifications, in milliseconds
+     * @param clock    supplies the current time, in nanoseconds
+     */
+    ThrottledProgressListener(ProgressListener listener, long interval, LongSupplier clock)
+    {
+        this.listener = listener;
+        this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.clock = clock;
+        this.lastDelivery = clock.getAsLong() - this.interval;
+    }
+
+    /**
+     * Returns the listener being delegated to.
+     *
+     * @return the listener
+     */
+    public ProgressListener getListener()
+    {
+        return listener;
+    }
+
+    /**
+     * Invoked when an action starts.
+     *
+     * @param name  the name of the action
+     * @param steps the number of steps the action consists of
+     */
+    @Override
+    public synchronized void startAction(String name, int steps)
+    {
+        flush();
+        listener.startAction(name, steps);
+    }
+
+    /**
+     * Invoked when an action finishes.
+     */
+    @Override
+    public synchronized void stopAction()
+    {
+        flush();
+        listener.stopAction();
+    }
+
+    /**
+     * Invoked when an action step starts.
+     *
+     * @param stepName the name of the step
+     * @param step     the step number
+     * @param subSteps the number of sub-steps the step consists of
+     */
+    @Override
+    public synchronized void nextStep(String stepName, int step, int subSteps)
+    {
+        flush();
+        listener.nextStep(stepName, step, subSteps);
+    }
+
+    /**
+     * Sets the number of sub-steps.
+     *
+     * @param subSteps the number of sub-steps
+     */
+    @Override
+    public synchronized void setSubStepNo(int subSteps)
+    {
+        flush();
+        listener.setSubStepNo(subSteps);
+    }
+
+    /**
+     * Invoked to notify progress.
+     * <p/>
+     * As this increments the current step, it is never coalesced.
+     *
+     * @param message a message describing the step
+     */
+    @Override
+    public synchronized void progress(String message)
+    {
+        flush();
+        listener.progress(message);
+    }
+
+    /**
+     * Invoked to notify progress.
+     * <p/>
+     * The notification is delivered if the interval has elapsed since the last, otherwise it is held until the next
+     * notification.
+     *
+     * @param subStep the sub-step which will be performed next
+     * @param message an additional message describing the sub-step
+     */
+    @Override
+    public synchronized void progress(int subStep, String message)
+    {
+        this.subStep = subStep;
+        this.message = message;
+        stepPending = true;
+        if (isDue())
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Invoked to notify progress of the current step in bytes.
+     * <p/>
+     * The notification is delivered if the interval has elapsed since the last, otherwise it is held until the next
+     * notification.
+     *
+     * @param bytes      the no. of bytes processed so far
+     * @param totalBytes the total no. of bytes the step will process
+     */
+    @Override
+    public synchronized void byteProgress(long bytes, long totalBytes)
+    {
+        if (listener instanceof ByteProgressListener)
+        {
+            this.bytes = bytes;
+            this.totalBytes = totalBytes;
+            bytesPending = true;
+            if (isDue())
+            {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Invoked when an action restarts.
+     *
+     * @param name           the name of the action
+     * @param overallMessage a message describing the overall progress
+     * @param tip            a tip describing the current progress
+     * @param steps          the number of steps the action consists of
+     */
+    @Override
+    public synchronized void restartAction(String name, String overallMessage, String tip, int steps)
+    {
+        flush();
+        listener.restartAction(name, overallMessage, tip, steps);
+    }
+
+    /**
+     * Delivers any pending notifications.
+     */
+    public synchronized void flush()
+    {
+        if (stepPending)
+        {
+            stepPending = false;
+            listener.progress(subStep, message);
+            message = null;
+        }
+        if (bytesPending)
+        {
+            bytesPending = false;
+            ((ByteProgressListener) listener).byteProgress(bytes, totalBytes);
+        }
+        lastDelivery = clock.getAsLong();
+    }
+
+    /**
+     * Determines if the interval since the last notification has elapsed.
+     *
+     * @return <tt>true</tt> if a notification may be delivered
+     */
+    private boolean isDue()
+    {
+        return clock.getAsLong() - lastDelivery >= interval;
+    }
+}
@@ -20,6 +20,7 @@ package com.izforge.izpack.core.io;
 
 import org.apache.commons.io.IOUtils;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -27,11 +28,17 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
 
 
 /**
  * An <tt>InputStream</tt> which transparently spans over multiple volumes.
+ * <p/>
+ * If the volumes were written in independently compressed blocks, and the {@link VolumeBlockIndex} is supplied,
+ * the stream can be {@link #seek(long) positioned} anywhere. Only the volume and block containing the position are
+ * read; skipped blocks are never decompressed.
  *
  * @author Dennis Reil, <Dennis.Reil@reddot.de>
  * @author Tim Anderson
@@ -45,10 +52,35 @@ public class FileSpanningInputStream extends InputStream
     private final SpanningInputStream spanningInputStream;
 
     /**
-     * The sip stream.
+     * The zip stream, or <tt>null</tt> if the volumes were written in blocks.
      */
     private GZIPInputStream zippedInputStream;
 
+    /**
+     * The block index, or <tt>null</tt> if the volumes were written as a single compressed stream.
+     */
+    private final VolumeBlockIndex index;
+
+    /**
+     * The block decompressor.
+     */
+    private Inflater inflater;
+
+    /**
+     * The buffer of compressed block data.
+     */
+    private byte[] buffer;
+
+    /**
+     * The index of the current block, or <tt>-1</tt> if no block has been read.
+     */
+    private int blockIndex = -1;
+
+    /**
+     * The no. of compressed bytes of the current block yet to be passed to the {@link #inflater}.
+     */
+    private int blockRemaining;
+
     /**
      * The absolute offset into the volumes.
      */
@@ -70,9 +102,32 @@ public class FileSpanningInputStream extends InputStream
      * @throws IOException            for any other I/O exception
      */
     public FileSpanningInputStream(File volume, int volumes) throws IOException
+    {
+        this(volume, volumes, null);
+    }
+
+    /**
+     * Constructs a <tt>FileSpanningInputStream</tt>.
+     *
+     * @param volume  the first volume to read
+     * @param volumes the no. of volumes
+     * @param index   the block index, if the volumes were written in blocks. May be <tt>null</tt>
+     * @throws CorruptVolumeException if the volume magic no. cannot be read
+     * @throws IOException            for any other I/O exception
+     */
+    public FileSpanningInputStream(File volume, int volumes, VolumeBlockIndex index) throws IOException
     {
         spanningInputStream = new SpanningInputStream(volume, volumes);
-        zippedInputStream = new GZIPInputStream(spanningInputStream);
+        this.index = index;
+        if (index == null)
+        {
+            zippedInputStream = new GZIPInputStream(spanningInputStream);
+        }
+        else
+        {
+            inflater = new Inflater(true);
+            buffer = new byte[8192];
+        }
     }
 
     /**
@@ -93,7 +148,7 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public int available() throws IOException
     {
-        return zippedInputStream.available();
+        return (zippedInputStream != null) ? zippedInputStream.available() : 0;
     }
 
     /**
@@ -104,7 +159,14 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public void close() throws IOException
     {
-        zippedInputStream.close();
+        if (zippedInputStream != null)
+        {
+            zippedInputStream.close();
+        }
+        if (inflater != null)
+        {
+            inflater.end();
+        }
         spanningInputStream.close();
     }
 
@@ -116,7 +178,16 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public int read() throws IOException
     {
-        int read = zippedInputStream.read();
+        int read;
+        if (zippedInputStream != null)
+        {
+            read = zippedInputStream.read();
+        }
+        else
+        {
+            byte[] b = new byte[1];
+            read = (readBlock(b, 0, 1) == -1) ? -1 : b[0] & 0xFF;
+        }
         if (read != -1)
         {
             ++filePointer;
@@ -135,7 +206,7 @@ public class FileSpanningInputStream extends InputStream
         int count = -1;
         while (len != 0)
         {
-            int read = zippedInputStream.read(b, off, len);
+            int read = (zippedInputStream != null) ? zippedInputStream.read(b, off, len) : readBlock(b, off, len);
             if (read == -1)
             {
                 break;
@@ -162,6 +233,13 @@ public class FileSpanningInputStream extends InputStream
     @Override
     public long skip(long n) throws IOException
     {
+        if (index != null)
+        {
+            long position = Math.min(filePointer + Math.max(n, 0), index.getLength());
+            long start = filePointer;
+            seek(position);
+            return position - start;
+        }
         long skipped = zippedInputStream.skip(n);
         long count = skipped;
         while (skipped != -1 && skipped < n)
@@ -180,6 +258,70 @@ public class FileSpanningInputStream extends InputStream
         return count;
     }
 
+    /**
+     * Determines if the stream supports {@link #seek(long) seeking} to any position.
+     *
+     * @return <tt>true</tt> if the volumes were written in blocks, and the block index was supplied
+     */
+    public boolean isSeekable()
+    {
+        return index != null;
+    }
+
+    /**
+     * Positions the stream at an absolute offset into the (uncompressed) volumes.
+     * <p/>
+     * If the stream is {@link #isSeekable() seekable}, this opens the volume and block containing the position
+     * directly, unless the position lies ahead in the current block. Otherwise, the position must not be behind the
+     * current one, and the intervening data is skipped.
+     *
+     * @param position the position
+     * @throws IOException if the position is invalid, or for any I/O error
+     */
+    public void seek(long position) throws IOException
+    {
+        if (position < 0)
+        {
+            throw new IOException("Invalid position: " + position);
+        }
+        if (index == null)
+        {
+            if (position < filePointer)
+            {
+                throw new IOException("Cannot seek backwards to " + position + " from " + filePointer);
+            }
+            long bytes = position - filePointer;
+            if (skip(bytes) != bytes)
+            {
+                throw new EOFException("Cannot seek beyond the end of the volumes: " + position);
+            }
+            return;
+        }
+        if (position > index.getLength())
+        {
+            throw new EOFException("Cannot seek beyond the end of the volumes: " + position);
+        }
+        int target = Math.min(index.getBlockIndex(position), index.getBlocks() - 1);
+        if (target < 0)
+        {
+            return;
+        }
+        if (target != blockIndex || position < filePointer)
+        {
+            openBlock(target);
+            filePointer = (long) target * index.getBlockSize();
+        }
+        while (filePointer < position)
+        {
+            int read = readBlock(buffer, 0, (int) Math.min(buffer.length, position - filePointer));
+            if (read == -1)
+            {
+                throw new EOFException("Unexpected end of volumes seeking to: " + position);
+            }
+            filePointer += read;
+        }
+    }
+
     /**
      * Returns the volume being read.
      *
@@ -190,6 +332,86 @@ public class FileSpanningInputStream extends InputStream
         return spanningInputStream.getVolume();
     }
 
+    /**
+     * Reads decompressed data from the current block, moving on to the next block when it is exhausted.
+     *
+     * @param b   the buffer into which the data is read
+     * @param off the start offset in array <code>b</code> at which the data is written
+     * @param len the maximum number of bytes to read
+     * @return the number of bytes read, or <code>-1</code> if the end of the last block has been reached
+     * @throws IOException for any I/O error
+     */
+    private int readBlock(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        while (true)
+        {
+            if (blockIndex == -1 || inflater.finished())
+            {
+                if (blockIndex + 1 >= index.getBlocks())
+                {
+                    return -1;
+                }
+                // blocks are contiguous, so the next block follows on from the current position in the volumes
+                startBlock(blockIndex + 1);
+            }
+            try
+            {
+                int read = inflater.inflate(b, off, len);
+                if (read > 0)
+                {
+                    return read;
+                }
+            }
+            catch (DataFormatException exception)
+            {
+                throw new IOException("Corrupt data in block " + blockIndex + " of " + getVolume(), exception);
+            }
+            if (!inflater.finished() && inflater.needsInput())
+            {
+                if (blockRemaining == 0)
+                {
+                    throw new EOFException("Unexpected end of block " + blockIndex + " in " + getVolume());
+                }
+                int read = spanningInputStream.read(buffer, 0, Math.min(buffer.length, blockRemaining));
+                if (read == -1)
+                {
+                    throw new EOFException("Unexpected end of volumes reading block " + blockIndex);
+                }
+                blockRemaining -= read;
+                inflater.setInput(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Opens the volume containing a block, and positions the stream at its start.
+     *
+     * @param block the block index
+     * @throws IOException for any I/O error
+     */
+    private void openBlock(int block) throws IOException
+    {
+        VolumeBlockIndex.Block location = index.getBlock(block);
+        spanningInputStream.seek(location.getVolume(), location.getOffset());
+        startBlock(block);
+    }
+
+    /**
+     * Prepares to decompress a block. The volumes must be positioned at the start of its compressed data.
+     *
+     * @param block the block index
+     */
+    private void startBlock(int block)
+    {
+        blockIndex = block;
+        blockRemaining = index.getBlock(block).getCompressedSize();
+        inflater.reset();
+    }
+
     /**
      * Returns the current position in the file.
      * This is the absolute offset into the volumes.
@@ -207,7 +429,7 @@ public class FileSpanningInputStream extends InputStream
         /**
          * The current volume stream.
          */
-        private InputStream stream;
+        private FileInputStream stream;
 
         /**
          * The base path to each volume.
@@ -370,50 +592,83 @@ public class FileSpanningInputStream extends InputStream
             }
             else
             {
-                // the next volume name
-                String volumePath = basePath + "." + (index + 1);
-                File volume = new File(volumePath);
-                boolean found = false;
-                while (!found)
+                openVolume(index + 1);
+                result = true;
+            }
+            return result;
+        }
+
+        /**
+         * Positions the stream at an offset into a volume, opening the volume if it isn't the current one.
+         *
+         * @param volume the volume index
+         * @param offset the offset into the volume, including the magic number
+         * @throws CorruptVolumeException  if the magic no. of the volume does not match that expected
+         * @throws VolumeNotFoundException if the volume was not found
+         * @throws IOException             for any other I/O error
+         */
+        public void seek(int volume, long offset) throws IOException
+        {
+            if (volume < 0 || volume >= volumes)
+            {
+                throw new IOException("Invalid volume: " + volume);
+            }
+            if (volume != index)
+            {
+                openVolume(volume);
+            }
+            stream.getChannel().position(offset);
+        }
+
+        /**
+         * Opens a volume.
+         *
+         * @param volumeIndex the volume index
+         * @throws CorruptVolumeException  if the magic no. of the volume does not match that expected
+         * @throws VolumeNotFoundException if the volume was not found
+         */
+        private void openVolume(int volumeIndex) throws IOException
+        {
+            String volumePath = (volumeIndex == 0) ? basePath : basePath + "." + volumeIndex;
+            File volume = new File(volumePath);
+            boolean found = false;
+            while (!found)
+            {
+                if (volume.exists())
                 {
-                    if (volume.exists())
+                    try
+                    {
+                        // try to open new stream to the volume
+                        IOUtils.closeQuietly(stream);
+                        stream = new FileInputStream(volume);
+                        current = volume;
+                        checkMagicNumber();
+                        found = true;
+                    }
+                    catch (CorruptVolumeException exception)
                     {
-                        try
+                        if (locator == null)
                         {
-                            // try to open new stream to next volume
-                            IOUtils.closeQuietly(stream);
-                            stream = new FileInputStream(volume);
-                            current = volume;
-                            checkMagicNumber();
-                            found = true;
+                            throw exception;
                         }
-                        catch (CorruptVolumeException exception)
+                        else
                         {
-                            if (locator == null)
-                            {
-                                throw exception;
-                            }
-                            else
-                            {
-                                volume = locator.getVolume(volume.getAbsolutePath(), true);
-                            }
+                            volume = locator.getVolume(volume.getAbsolutePath(), true);
                         }
                     }
-                    else if (locator != null)
-                    {
-                        volume = locator.getVolume(volume.getAbsolutePath(), false);
-                    }
-                    else
-                    {
-                        throw new VolumeNotFoundException("Volume not found: " + volume.getAbsolutePath(),
-                                                          volume.getAbsolutePath());
-                    }
                 }
-
-                ++index;
-                result = true;
+                else if (locator != null)
+                {
+                    volume = locator.getVolume(volume.getAbsolutePath(), false);
+                }
+                else
+                {
+                    throw new VolumeNotFoundException("Volume not found: " + volume.getAbsolutePath(),
+                                                      volume.getAbsolutePath());
+                }
             }
-            return result;
+
+            index = volumeIndex;
         }
 
         /**
@@ -25,11 +25,16 @@ import java.io.OutputStream;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * An <tt>OutputStream</tt> which transparently spans over multiple volumes. The size of the volumes and an
  * additional space for the first volume can be specified.
+ * <p/>
+ * By default, data is written as a single compressed stream, which can only be read sequentially. If a block size is
+ * specified, data is instead compressed in independent blocks of that size, and a {@link VolumeBlockIndex} is
+ * maintained so that the data can be read from any position by {@link FileSpanningInputStream#seek(long)}.
  *
  * @author Dennis Reil, <Dennis.Reil@reddot.de>
  * @author Tim Anderson
@@ -62,16 +67,42 @@ public class FileSpanningOutputStream extends OutputStream
      */
     private static final int MIN_VOLUME_SIZE = MAGIC_NUMBER_LENGTH + 1;
 
+    /**
+     * The default no. of uncompressed bytes in each block, when writing independently compressed blocks.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
     /**
      * The spanning output stream.
      */
     private SpanningOutputStream spanningOutputStream;
 
     /**
-     * The stream that .
+     * The stream that compresses data to {@link #spanningOutputStream}, or <tt>null</tt> if data is written in
+     * independently compressed blocks.
      */
     private GZIPOutputStream gzipOutputStream;
 
+    /**
+     * The uncompressed data of the current block, or <tt>null</tt> if data is written as a single compressed stream.
+     */
+    private byte[] block;
+
+    /**
+     * The no. of bytes in the current block.
+     */
+    private int blockLength;
+
+    /**
+     * The block compressor.
+     */
+    private Deflater deflater;
+
+    /**
+     * The index of written blocks.
+     */
+    private VolumeBlockIndex index;
+
     /**
      * The current offset in the (uncompressed) output stream.
      */
@@ -126,8 +157,41 @@ public class FileSpanningOutputStream extends OutputStream
      */
     public FileSpanningOutputStream(File volume, long maxFirstVolumeSize, long maxVolumeSize) throws IOException
     {
+        this(volume, maxFirstVolumeSize, maxVolumeSize, 0);
+    }
+
+    /**
+     * Constructs a <tt>FileSpanningOutputStream</tt> with specified initial volume, a maximum size for the first
+     * volume, a maximum volume size for all subsequent volumes, and a block size.
+     * <p/>
+     * If the block size is non-zero, data is compressed in independent blocks, which are recorded in the
+     * {@link #getBlockIndex() block index}.
+     *
+     * @param volume             the first volume
+     * @param maxFirstVolumeSize the maximum size of the first volume
+     * @param maxVolumeSize      the maximum volume size for subsequent volumes
+     * @param blockSize          the no. of uncompressed bytes in each block, or <tt>0</tt> to write a single
+     *                           compressed stream
+     * @throws IOException for any I/O error
+     */
+    public FileSpanningOutputStream(File volume, long maxFirstVolumeSize, long maxVolumeSize, int blockSize)
+            throws IOException
+    {
+        if (blockSize < 0)
+        {
+            throw new IllegalArgumentException("Argument 'blockSize' is invalid: " + blockSize);
+        }
         spanningOutputStream = new SpanningOutputStream(volume, maxFirstVolumeSize, maxVolumeSize);
-        gzipOutputStream = new GZIPOutputStream(spanningOutputStream);
+        if (blockSize == 0)
+        {
+            gzipOutputStream = new GZIPOutputStream(spanningOutputStream);
+        }
+        else
+        {
+            block = new byte[blockSize];
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            index = new VolumeBlockIndex(blockSize);
+        }
     }
 
     /**
@@ -137,7 +201,20 @@ public class FileSpanningOutputStream extends OutputStream
     public void close() throws IOException
     {
         flush();
-        gzipOutputStream.close();
+        if (gzipOutputStream != null)
+        {
+            gzipOutputStream.close();
+        }
+        else if (deflater != null)
+        {
+            if (blockLength != 0)
+            {
+                writeBlock();
+            }
+            deflater.end();
+            deflater = null;
+            spanningOutputStream.close();
+        }
     }
 
     /**
@@ -146,7 +223,26 @@ public class FileSpanningOutputStream extends OutputStream
     @Override
     public void write(byte[] b, int off, int len) throws IOException
     {
-        gzipOutputStream.write(b, off, len);
+        if (gzipOutputStream != null)
+        {
+            gzipOutputStream.write(b, off, len);
+        }
+        else
+        {
+            int remaining = len;
+            while (remaining != 0)
+            {
+                int count = Math.min(remaining, block.length - blockLength);
+                System.arraycopy(b, off, block, blockLength, count);
+                blockLength += count;
+                off += count;
+                remaining -= count;
+                if (blockLength == block.length)
+                {
+                    writeBlock();
+                }
+            }
+        }
         // increase filePointer by written bytes
         filePointer += len;
     }
@@ -170,20 +266,53 @@ public class FileSpanningOutputStream extends OutputStream
     @Override
     public void write(int b) throws IOException
     {
-        gzipOutputStream.write(b);
+        if (gzipOutputStream != null)
+        {
+            gzipOutputStream.write(b);
+        }
+        else
+        {
+            block[blockLength++] = (byte) b;
+            if (blockLength == block.length)
+            {
+                writeBlock();
+            }
+        }
         // increase filePointer by written byte
         filePointer++;
     }
 
     /**
-     * (non Javadoc)
+     * Flushes the stream.
+     * <p/>
+     * When writing blocks, a partially filled block is only written on {@link #close()}, as every block bar the last
+     * must be full.
      *
      * @see java.io.OutputStream#flush()
      */
     @Override
     public void flush() throws IOException
     {
-        gzipOutputStream.flush();
+        if (gzipOutputStream != null)
+        {
+            gzipOutputStream.flush();
+        }
+        else
+        {
+            spanningOutputStream.flush();
+        }
+    }
+
+    /**
+     * Returns the index of the blocks written.
+     * <p/>
+     * The index is only complete once the stream has been closed.
+     *
+     * @return the block index, or <tt>null</tt> if data is written as a single compressed stream
+     */
+    public VolumeBlockIndex getBlockIndex()
+    {
+        return index;
     }
 
     /**
@@ -206,6 +335,30 @@ public class FileSpanningOutputStream extends OutputStream
         return filePointer;
     }
 
+    /**
+     * Compresses the current block to the volumes, and adds it to the index.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void writeBlock() throws IOException
+    {
+        int volume = spanningOutputStream.getNextVolume();
+        long offset = spanningOutputStream.getNextOffset();
+        byte[] buffer = new byte[8192];
+        int compressedSize = 0;
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        while (!deflater.finished())
+        {
+            int count = deflater.deflate(buffer);
+            spanningOutputStream.write(buffer, 0, count);
+            compressedSize += count;
+        }
+        index.addBlock(volume, offset, compressedSize, blockLength);
+        blockLength = 0;
+    }
+
     /**
      * Helper to format the volume magic number.
      *
@@ -359,6 +512,26 @@ public class FileSpanningOutputStream extends OutputStream
             return index + 1;
         }
 
+        /**
+         * Returns the index of the volume that the next byte will be written to.
+         *
+         * @return the volume index
+         */
+        public int getNextVolume()
+        {
+            return (getAvailable() > 0) ? index : index + 1;
+        }
+
+        /**
+         * Returns the offset into the volume that the next byte will be written to.
+         *
+         * @return the offset, including the magic number
+         */
+        public long getNextOffset()
+        {
+            return (getAvailable() > 0) ? getByteCount() : MAGIC_NUMBER_LENGTH;
+        }
+
         /**
          * Initialises the volume.
          * <p/>
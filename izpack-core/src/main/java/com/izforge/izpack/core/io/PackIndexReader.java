@@ -0,0 +1,343 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.ExecutableFile;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackCompression;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackInfo;
+import com.izforge.izpack.api.data.ParsableFile;
+import com.izforge.izpack.api.data.UpdateCheck;
+import com.izforge.izpack.api.data.XPackFile;
+import com.izforge.izpack.api.data.binding.OsModel;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.izforge.izpack.core.io.PackIndexWriter.ARCHIVE_POSITION;
+import static com.izforge.izpack.core.io.PackIndexWriter.ATTRIBUTES;
+import static com.izforge.izpack.core.io.PackIndexWriter.BACK_REFERENCE;
+import static com.izforge.izpack.core.io.PackIndexWriter.BLOCK;
+import static com.izforge.izpack.core.io.PackIndexWriter.COMPRESSION;
+import static com.izforge.izpack.core.io.PackIndexWriter.DIGEST;
+import static com.izforge.izpack.core.io.PackIndexWriter.DIRECTORY;
+import static com.izforge.izpack.core.io.PackIndexWriter.RELATIVE_SOURCE;
+import static com.izforge.izpack.core.io.PackIndexWriter.SOURCE;
+
+/**
+ * Reads a pack index written by {@link PackIndexWriter}.
+ * <p/>
+ * Only the {@link Pack} headers are read on construction. The files of a pack are read on demand by
+ * {@link #readPackInfo(int)}, so that only one pack's files need be held in memory at a time. As the index is read
+ * sequentially, packs must be read in increasing order; the sections of packs that are passed over are skipped.
+ *
+ * @see PackIndexWriter
+ */
+public class PackIndexReader implements Closeable
+{
+    /**
+     * The stream to read from.
+     */
+    private final DataInputStream in;
+
+    /**
+     * The pack headers.
+     */
+    private final List<Pack> packs;
+
+    /**
+     * The index of the next pack section in the stream.
+     */
+    private int next;
+
+    /**
+     * Constructs a <tt>PackIndexReader</tt>, reading the pack headers.
+     *
+     * @param in the stream to read from. This is closed by {@link #close()}
+     * @throws IOException if the stream isn't a supported pack index, or for any I/O error
+     */
+    @SuppressWarnings("unchecked")
+    public PackIndexReader(InputStream in) throws IOException
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if (this.in.readInt() != PackIndexWriter.MAGIC)
+        {
+            throw new IOException("Invalid pack index");
+        }
+        int version = this.in.readUnsignedShort();
+        if (version != PackIndexWriter.VERSION)
+        {
+            throw new IOException("Unsupported pack index version: " + version);
+        }
+        ObjectInputStream headers = deserialize(readBlock());
+        packs = Collections.unmodifiableList((List<Pack>) readObject(headers));
+    }
+
+    /**
+     * Returns the pack headers.
+     *
+     * @return the pack headers, in installation order
+     */
+    public List<Pack> getPacks()
+    {
+        return packs;
+    }
+
+    /**
+     * Reads a pack's files, parsables, executables and update checks.
+     * <p/>
+     * The sections of any packs between the last pack read and this one are skipped.
+     *
+     * @param index the index of the pack in {@link #getPacks()}
+     * @return the pack info
+     * @throws IllegalArgumentException if the pack has already been read or passed over
+     * @throws IOException              for any I/O error
+     */
+    @SuppressWarnings("unchecked")
+    public PackInfo readPackInfo(int index) throws IOException
+    {
+        if (index < next || index >= packs.size())
+        {
+            throw new IllegalArgumentException("Cannot read pack " + index + ": next pack is " + next + " of "
+                                                       + packs.size());
+        }
+        while (next < index)
+        {
+            IOUtils.skipFully(in, in.readInt());
+            ++next;
+        }
+        in.readInt(); // the section length
+
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; ++i)
+        {
+            strings[i] = in.readUTF();
+        }
+
+        PackInfo result = new PackInfo(packs.get(index));
+        Map<PackFile, File> files = result.getPackFilesMap();
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i)
+        {
+            PackFile file = readFile(strings);
+            files.put(file, file.getFile());
+        }
+
+        ObjectInputStream extras = deserialize(readBlock());
+        for (ParsableFile parsable : (List<ParsableFile>) readObject(extras))
+        {
+            result.addParsable(parsable);
+        }
+        for (ExecutableFile executable : (List<ExecutableFile>) readObject(extras))
+        {
+            result.addExecutable(executable);
+        }
+        for (UpdateCheck updateCheck : (List<UpdateCheck>) readObject(extras))
+        {
+            result.addUpdateCheck(updateCheck);
+        }
+        ++next;
+        return result;
+    }
+
+    /**
+     * Closes the index.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Reads a file record.
+     *
+     * @param strings the string table of the section
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    @SuppressWarnings("unchecked")
+    private PackFile readFile(String[] strings) throws IOException
+    {
+        int flags = in.readUnsignedShort();
+        String target = readPath(strings);
+        File source = (flags & SOURCE) != 0 ? new File(readPath(strings).replace('/', File.separatorChar)) : null;
+        String relativeSource = (flags & RELATIVE_SOURCE) != 0 ? readPath(strings) : null;
+        long length = in.readLong();
+        long size = in.readLong();
+        long mtime = in.readLong();
+        String override = readString(strings);
+        String blockable = readString(strings);
+        String overrideRenameTo = readString(strings);
+        String condition = readString(strings);
+        String streamResourceName = readString(strings);
+        long streamOffset = in.readLong();
+        int mode = in.readInt();
+        PackCompression compression = (flags & COMPRESSION) != 0
+                ? PackCompression.byName(readString(strings)) : null;
+        long blockOffset = (flags & BLOCK) != 0 ? in.readLong() : -1;
+        byte[] digest = null;
+        if ((flags & DIGEST) != 0)
+        {
+            digest = new byte[in.readUnsignedShort()];
+            in.readFully(digest);
+        }
+        long position = (flags & ARCHIVE_POSITION) != 0 ? in.readLong() : 0;
+        PackFile linked = null;
+        if ((flags & BACK_REFERENCE) != 0)
+        {
+            String linkedTarget = readPath(strings);
+            String linkedStreamResourceName = readString(strings);
+            long linkedStreamOffset = in.readLong();
+            long linkedLength = in.readLong();
+            linked = new PackFile(null, null, linkedTarget, null, null, null, Blockable.BLOCKABLE_NONE, null, null,
+                                  linkedLength, -1, false);
+            linked.setSize(in.readLong());
+            linked.setStreamResourceName(linkedStreamResourceName);
+            linked.setStreamOffset(linkedStreamOffset);
+            linked.setBlockOffset(blockOffset);
+        }
+        List<OsModel> osConstraints = null;
+        Map additionals = null;
+        Map<String, String> pack200Properties = null;
+        if ((flags & ATTRIBUTES) != 0)
+        {
+            ObjectInputStream attributes = deserialize(readBlock());
+            osConstraints = (List<OsModel>) readObject(attributes);
+            additionals = (Map) readObject(attributes);
+            pack200Properties = (Map<String, String>) readObject(attributes);
+        }
+
+        OverrideType overrideType = override != null ? OverrideType.valueOf(override) : null;
+        Blockable blockableType = blockable != null ? Blockable.valueOf(blockable) : null;
+        boolean isDirectory = (flags & DIRECTORY) != 0;
+        PackFile result;
+        if ((flags & ARCHIVE_POSITION) != 0)
+        {
+            result = new XPackFile(source, relativeSource, target, osConstraints, overrideType, overrideRenameTo,
+                                   blockableType, additionals, pack200Properties, length, mtime, isDirectory,
+                                   position);
+        }
+        else
+        {
+            result = new PackFile(source, relativeSource, target, osConstraints, overrideType, overrideRenameTo,
+                                  blockableType, additionals, pack200Properties, length, mtime, isDirectory);
+        }
+        if (linked != null)
+        {
+            result.setLinkedPackFile(linked);
+        }
+        result.setSize(size);
+        result.setCondition(condition);
+        result.setStreamResourceName(streamResourceName);
+        result.setStreamOffset(streamOffset);
+        result.setDigest(digest);
+        result.setMode(mode);
+        result.setCompression(compression);
+        result.setBlockOffset(blockOffset);
+        return result;
+    }
+
+    /**
+     * Reads a path written as the table index of its parent directory, followed by its name.
+     *
+     * @param strings the string table of the section
+     * @return the path
+     * @throws IOException for any I/O error
+     */
+    private String readPath(String[] strings) throws IOException
+    {
+        String parent = readString(strings);
+        String name = in.readUTF();
+        return parent != null ? parent + name : name;
+    }
+
+    /**
+     * Reads a string table reference.
+     *
+     * @param strings the string table of the section
+     * @return the string, or {@code null} if none was written
+     * @throws IOException for any I/O error
+     */
+    private String readString(String[] strings) throws IOException
+    {
+        int index = in.readInt();
+        return index != -1 ? strings[index] : null;
+    }
+
+    /**
+     * Reads a block preceded by its length.
+     *
+     * @return the block
+     * @throws IOException for any I/O error
+     */
+    private byte[] readBlock() throws IOException
+    {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /**
+     * Returns a stream to deserialize objects from a block.
+     *
+     * @param block the block
+     * @return a new stream
+     * @throws IOException for any I/O error
+     */
+    private static ObjectInputStream deserialize(byte[] block) throws IOException
+    {
+        return new ObjectInputStream(new ByteArrayInputStream(block));
+    }
+
+    /**
+     * Reads an object, converting class resolution errors to {@code IOException}s.
+     *
+     * @param in the stream to read from
+     * @return the object
+     * @throws IOException for any I/O error
+     */
+    private static Object readObject(ObjectInputStream in) throws IOException
+    {
+        try
+        {
+            return in.readObject();
+        }
+        catch (ClassNotFoundException exception)
+        {
+            throw new IOException("Failed to read pack index: " + exception.getMessage(), exception);
+        }
+    }
+}
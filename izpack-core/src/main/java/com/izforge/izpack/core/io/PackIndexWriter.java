@@ -0,0 +1,354 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackInfo;
+import com.izforge.izpack.api.data.XPackFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the packs of an installer as a binary pack index.
+ * <p/>
+ * The index is laid out as:
+ * <ol>
+ * <li>the {@link #MAGIC} number and {@link #VERSION}</li>
+ * <li>the {@link Pack} headers, serialized as a single block</li>
+ * <li>a section for each pack, holding its files, parsables, executables and update checks</li>
+ * </ol>
+ * Each block and section is preceded by its length, so that a {@link PackIndexReader} can load the pack headers
+ * without reading any files, and skip the sections of packs that aren't being installed.
+ * <p/>
+ * A section starts with a table of the strings its file records refer to. Paths are split into their parent
+ * directory, which is stored once in the table, and their name. Rarely used attributes such as OS constraints are
+ * only written for the files that have them.
+ *
+ * @see PackIndexReader
+ */
+public class PackIndexWriter
+{
+    /**
+     * The pack index magic number, <em>IZPI</em>.
+     */
+    public static final int MAGIC = 0x495A5049;
+
+    /**
+     * The pack index format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Flag indicating that a file is a directory.
+     */
+    static final int DIRECTORY = 1;
+
+    /**
+     * Flag indicating that a file has a source path.
+     */
+    static final int SOURCE = 1 << 1;
+
+    /**
+     * Flag indicating that a file has a relative source path.
+     */
+    static final int RELATIVE_SOURCE = 1 << 2;
+
+    /**
+     * Flag indicating that a file has a content digest.
+     */
+    static final int DIGEST = 1 << 3;
+
+    /**
+     * Flag indicating that a file is a back reference.
+     */
+    static final int BACK_REFERENCE = 1 << 4;
+
+    /**
+     * Flag indicating that a file is an {@link XPackFile}.
+     */
+    static final int ARCHIVE_POSITION = 1 << 5;
+
+    /**
+     * Flag indicating that a file has OS constraints, additional attributes, or Pack200 properties.
+     */
+    static final int ATTRIBUTES = 1 << 6;
+
+    /**
+     * Flag indicating that a file has its own compression format.
+     */
+    static final int COMPRESSION = 1 << 7;
+
+    /**
+     * Flag indicating that a file is stored in a solid block.
+     */
+    static final int BLOCK = 1 << 8;
+
+    /**
+     * The stream to write to.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * Constructs a <tt>PackIndexWriter</tt>.
+     *
+     * @param out the stream to write to. This is not closed by the writer
+     */
+    public PackIndexWriter(OutputStream out)
+    {
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * Writes the index.
+     *
+     * @param packs the packs to write
+     * @throws IOException for any I/O error
+     */
+    public void write(List<PackInfo> packs) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+
+        ArrayList<Pack> headers = new ArrayList<Pack>();
+        for (PackInfo packInfo : packs)
+        {
+            headers.add(packInfo.getPack());
+        }
+        writeBlock(out, serialize(headers));
+
+        for (PackInfo packInfo : packs)
+        {
+            writeBlock(out, getSection(packInfo));
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns the section for a pack.
+     *
+     * @param packInfo the pack
+     * @return the section
+     * @throws IOException for any I/O error
+     */
+    private byte[] getSection(PackInfo packInfo) throws IOException
+    {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(records);
+        data.writeInt(packInfo.getPackFiles().size());
+        for (PackFile file : packInfo.getPackFiles())
+        {
+            writeFile(file, data, strings);
+        }
+        writeBlock(data, serialize(packInfo.getParsables(), packInfo.getExecutables(), packInfo.getUpdateChecks()));
+        data.flush();
+
+        ByteArrayOutputStream section = new ByteArrayOutputStream(records.size() + 1024);
+        DataOutputStream sectionOut = new DataOutputStream(section);
+        strings.write(sectionOut);
+        sectionOut.flush();
+        records.writeTo(section);
+        return section.toByteArray();
+    }
+
+    /**
+     * Writes a file record.
+     *
+     * @param file    the file
+     * @param data    the stream to write to
+     * @param strings the string table
+     * @throws IOException for any I/O error
+     */
+    private void writeFile(PackFile file, DataOutputStream data, StringTable strings) throws IOException
+    {
+        boolean attributes = file.osConstraints() != null || file.getAdditionals() != null
+                || file.getPack200Properties() != null;
+        int flags = (file.isDirectory() ? DIRECTORY : 0)
+                | (file.getFile() != null ? SOURCE : 0)
+                | (file.getRelativeSourcePath() != null ? RELATIVE_SOURCE : 0)
+                | (file.getDigest() != null ? DIGEST : 0)
+                | (file.isBackReference() ? BACK_REFERENCE : 0)
+                | (file instanceof XPackFile ? ARCHIVE_POSITION : 0)
+                | (attributes ? ATTRIBUTES : 0)
+                | (file.getCompression() != null ? COMPRESSION : 0)
+                | (file.isInBlock() ? BLOCK : 0);
+        data.writeShort(flags);
+        writePath(file.getTargetPath(), data, strings);
+        if (file.getFile() != null)
+        {
+            // like File serialization, store the path with a portable separator
+            writePath(file.getFile().getPath().replace(File.separatorChar, '/'), data, strings);
+        }
+        if (file.getRelativeSourcePath() != null)
+        {
+            writePath(file.getRelativeSourcePath(), data, strings);
+        }
+        data.writeLong(file.length());
+        data.writeLong(file.size());
+        data.writeLong(file.lastModified());
+        data.writeInt(strings.add(file.override() != null ? file.override().name() : null));
+        data.writeInt(strings.add(file.blockable() != null ? file.blockable().name() : null));
+        data.writeInt(strings.add(file.overrideRenameTo()));
+        data.writeInt(strings.add(file.getCondition()));
+        data.writeInt(strings.add(file.getStreamResourceName()));
+        data.writeLong(file.getStreamOffset());
+        data.writeInt(file.getMode());
+        if (file.getCompression() != null)
+        {
+            data.writeInt(strings.add(file.getCompression().toName()));
+        }
+        if (file.isInBlock())
+        {
+            data.writeLong(file.getBlockOffset());
+        }
+        if (file.getDigest() != null)
+        {
+            data.writeShort(file.getDigest().length);
+            data.write(file.getDigest());
+        }
+        if (file instanceof XPackFile)
+        {
+            data.writeLong(((XPackFile) file).getArchiveFilePosition());
+        }
+        if (file.isBackReference())
+        {
+            PackFile linked = file.getLinkedPackFile();
+            writePath(linked.getTargetPath(), data, strings);
+            data.writeInt(strings.add(linked.getStreamResourceName()));
+            data.writeLong(linked.getStreamOffset());
+            data.writeLong(linked.length());
+            data.writeLong(linked.size());
+        }
+        if (attributes)
+        {
+            writeBlock(data, serialize(file.osConstraints(), file.getAdditionals(), file.getPack200Properties()));
+        }
+    }
+
+    /**
+     * Writes a path as the table index of its parent directory, followed by its name.
+     *
+     * @param path    the path
+     * @param data    the stream to write to
+     * @param strings the string table
+     * @throws IOException for any I/O error
+     */
+    private void writePath(String path, DataOutputStream data, StringTable strings) throws IOException
+    {
+        int separator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        data.writeInt(strings.add(separator != -1 ? path.substring(0, separator + 1) : null));
+        data.writeUTF(path.substring(separator + 1));
+    }
+
+    /**
+     * Writes a block, preceded by its length.
+     *
+     * @param data  the stream to write to
+     * @param block the block to write
+     * @throws IOException for any I/O error
+     */
+    private static void writeBlock(DataOutputStream data, byte[] block) throws IOException
+    {
+        data.writeInt(block.length);
+        data.write(block);
+    }
+
+    /**
+     * Serializes objects.
+     *
+     * @param objects the objects to serialize
+     * @return the serialized objects
+     * @throws IOException for any I/O error
+     */
+    private static byte[] serialize(Object... objects) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+        for (Object object : objects)
+        {
+            objectOut.writeObject(object);
+        }
+        objectOut.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The strings referred to by the file records of a section.
+     */
+    private static class StringTable
+    {
+        /**
+         * The strings, in the order they were added.
+         */
+        private final List<String> strings = new ArrayList<String>();
+
+        /**
+         * The string indexes, keyed on string.
+         */
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        /**
+         * Adds a string, if it isn't already present.
+         *
+         * @param string the string. May be {@code null}
+         * @return the index of the string, or {@code -1} if it is {@code null}
+         */
+        public int add(String string)
+        {
+            if (string == null)
+            {
+                return -1;
+            }
+            Integer index = indexes.get(string);
+            if (index == null)
+            {
+                index = strings.size();
+                strings.add(string);
+                indexes.put(string, index);
+            }
+            return index;
+        }
+
+        /**
+         * Writes the table.
+         *
+         * @param data the stream to write to
+         * @throws IOException for any I/O error
+         */
+        public void write(DataOutputStream data) throws IOException
+        {
+            data.writeInt(strings.size());
+            for (String string : strings)
+            {
+                data.writeUTF(string);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An index of the independently compressed blocks written by a {@link FileSpanningOutputStream}.
+ * <p/>
+ * Every block bar the last holds {@link #getBlockSize()} uncompressed bytes, so the block containing any position in
+ * the uncompressed stream can be calculated directly. Each block records the volume and offset its compressed data
+ * starts at, enabling {@link FileSpanningInputStream#seek(long)} to open the right volume without reading the data
+ * before it.
+ *
+ * @see FileSpanningOutputStream
+ * @see FileSpanningInputStream
+ */
+public class VolumeBlockIndex
+{
+    /**
+     * The no. of uncompressed bytes in each block.
+     */
+    private final int blockSize;
+
+    /**
+     * The blocks, in stream order.
+     */
+    private final List<Block> blocks = new ArrayList<Block>();
+
+    /**
+     * The total no. of uncompressed bytes.
+     */
+    private long length;
+
+    /**
+     * Constructs a <tt>VolumeBlockIndex</tt>.
+     *
+     * @param blockSize the no. of uncompressed bytes in each block
+     */
+    public VolumeBlockIndex(int blockSize)
+    {
+        if (blockSize <= 0)
+        {
+            throw new IllegalArgumentException("Argument 'blockSize' is invalid: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the no. of uncompressed bytes in each block.
+     *
+     * @return the block size
+     */
+    public int getBlockSize()
+    {
+        return blockSize;
+    }
+
+    /**
+     * Returns the no. of blocks.
+     *
+     * @return the no. of blocks
+     */
+    public int getBlocks()
+    {
+        return blocks.size();
+    }
+
+    /**
+     * Returns the total no. of uncompressed bytes.
+     *
+     * @return the uncompressed length of the stream
+     */
+    public long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns a block.
+     *
+     * @param index the block index
+     * @return the block
+     */
+    public Block getBlock(int index)
+    {
+        return blocks.get(index);
+    }
+
+    /**
+     * Returns the index of the block containing a position in the uncompressed stream.
+     *
+     * @param position the uncompressed position
+     * @return the block index
+     */
+    public int getBlockIndex(long position)
+    {
+        return (int) (position / blockSize);
+    }
+
+    /**
+     * Adds a block.
+     *
+     * @param volume         the index of the volume the block starts in
+     * @param offset         the offset into the volume the block starts at
+     * @param compressedSize the no. of compressed bytes
+     * @param size           the no. of uncompressed bytes. Must be the block size for all but the last block
+     */
+    void addBlock(int volume, long offset, int compressedSize, int size)
+    {
+        blocks.add(new Block(volume, offset, compressedSize));
+        length += size;
+    }
+
+    /**
+     * Writes the index.
+     *
+     * @param out the stream to write to
+     * @throws IOException for any I/O error
+     */
+    public void write(DataOutput out) throws IOException
+    {
+        out.writeInt(blockSize);
+        out.writeLong(length);
+        out.writeInt(blocks.size());
+        for (Block block : blocks)
+        {
+            out.writeInt(block.getVolume());
+            out.writeLong(block.getOffset());
+            out.writeInt(block.getCompressedSize());
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(DataOutput)}.
+     *
+     * @param in the stream to read from
+     * @return the index
+     * @throws IOException for any I/O error
+     */
+    public static VolumeBlockIndex read(DataInput in) throws IOException
+    {
+        VolumeBlockIndex result = new VolumeBlockIndex(in.readInt());
+        result.length = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; ++i)
+        {
+            result.blocks.add(new Block(in.readInt(), in.readLong(), in.readInt()));
+        }
+        return result;
+    }
+
+    /**
+     * The location of a compressed block.
+     */
+    public static class Block
+    {
+        /**
+         * The index of the volume the block starts in.
+         */
+        private final int volume;
+
+        /**
+         * The offset into the volume the block starts at.
+         */
+        private final long offset;
+
+        /**
+         * The no. of compressed bytes.
+         */
+        private final int compressedSize;
+
+        /**
+         * Constructs a <tt>Block</tt>.
+         *
+         * @param volume         the index of the volume the block starts in
+         * @param offset         the offset into the volume the block starts at
+         * @param compressedSize the no. of compressed bytes
+         */
+        Block(int volume, long offset, int compressedSize)
+        {
+            this.volume = volume;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+        }
+
+        /**
+         * Returns the index of the volume the block starts in.
+         *
+         * @return the volume index. The first volume has index <tt>0</tt>
+         */
+        public int getVolume()
+        {
+            return volume;
+        }
+
+        /**
+         * Returns the offset into the volume that the block starts at.
+         *
+         * @return the offset, including the volume magic number
+         */
+        public long getOffset()
+        {
+            return offset;
+        }
+
+        /**
+         * Returns the no. of compressed bytes in the block. The data may continue into subsequent volumes.
+         *
+         * @return the compressed size
+         */
+        public int getCompressedSize()
+        {
+            return compressedSize;
+        }
+    }
+}
@@ -67,6 +67,28 @@ public class RulesEngineImpl implements RulesEngine
 
     private final Set<ConditionReference> refConditions = new HashSet<ConditionReference>();
 
+    /**
+     * The maximum number of compiled expressions held by {@link #expressions}.
+     */
+    static final int MAX_EXPRESSIONS = 1024;
+
+    /**
+     * Conditions compiled from expressions that aren't condition ids, least recently used first.
+     * <p/>
+     * Compiled expressions reference the conditions in {@link #conditionsMap}, so this is cleared whenever
+     * that changes.
+     */
+    private final Map<String, Condition> expressions = new LinkedHashMap<String, Condition>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Condition> eldest)
+        {
+            return size() > MAX_EXPRESSIONS;
+        }
+    };
+
     private final InstallData installData;
 
     private final ConditionContainer container;
@@ -128,6 +150,7 @@ public class RulesEngineImpl implements RulesEngine
                 resolveBuiltinConditions(condition);
             }
         }
+        clearExpressions();
     }
 
     /**
@@ -167,6 +190,7 @@ public class RulesEngineImpl implements RulesEngine
                 result.setInstallData(installData);
                 result.readFromXML(condition);
                 conditionsMap.put(id, result);
+                clearExpressions();
                 if (result instanceof ConditionReference)
                 {
                     refConditions.add((ConditionReference) result);
@@ -225,6 +249,7 @@ public class RulesEngineImpl implements RulesEngine
                     {
                         resolveBuiltinConditions(cond);
                         conditionsMap.put(condid, cond);
+                        clearExpressions();
                     }
                 }
             }
@@ -266,6 +291,9 @@ public class RulesEngineImpl implements RulesEngine
      * A condition ID as defined in the install.xml
      * A simple expression with !,+,|,\
      * A complex expression with !,&&,||,\\ - must begin with char @
+     * <p/>
+     * Expressions are only parsed the first time they are seen; the compiled conditions are cached, up to
+     * {@link #MAX_EXPRESSIONS} of them.
      *
      * @param id ID to find in the conditionMap
      * @return the condition. May be <tt>null</tt>
@@ -276,13 +304,27 @@ public class RulesEngineImpl implements RulesEngine
         Condition result = conditionsMap.get(id);
         if (result == null)
         {
-            if (id.startsWith("@"))
+            synchronized (expressions)
             {
-                result = parseComplexCondition(id.substring(1));
+                result = expressions.get(id);
             }
-            else
+            if (result == null)
             {
-                result = getConditionByExpr(new StringBuffer(id));
+                if (id.startsWith("@"))
+                {
+                    result = parseComplexCondition(id.substring(1));
+                }
+                else
+                {
+                    result = getConditionByExpr(new StringBuffer(id));
+                }
+                if (result != null)
+                {
+                    synchronized (expressions)
+                    {
+                        expressions.put(id, result);
+                    }
+                }
             }
         }
         return result;
@@ -448,6 +490,7 @@ public class RulesEngineImpl implements RulesEngine
             else
             {
                 conditionsMap.put(id, condition);
+                clearExpressions();
             }
         }
         else
@@ -851,6 +894,17 @@ public class RulesEngineImpl implements RulesEngine
         return result;
     }
 
+    /**
+     * Discards the compiled expressions, as the conditions they reference may have changed.
+     */
+    private void clearExpressions()
+    {
+        synchronized (expressions)
+        {
+            expressions.clear();
+        }
+    }
+
     /**
      * Recursively replaces any built-in conditions referenced by the supplied condition with those held by this.
      *
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016 Julien Ponge, René Krell and the IzPack team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.substitutor;
+
+import com.izforge.izpack.api.data.Variables;
+import com.izforge.izpack.api.exception.IzPackException;
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A string that has been split into literal text and variable references, so that variables can be substituted
+ * without parsing the string again.
+ * <p/>
+ * Templates are parsed by {@link VariableSubstitutorReader}, so substituting a template gives the same result as
+ * reading the string through a {@link VariableSubstitutorReader}.
+ * <p/>
+ * Strings that are substituted repeatedly, such as panel texts and target paths, are compiled once and cached by
+ * {@link #get(String, SubstitutionType, boolean)}.
+ */
+class SubstitutionTemplate
+{
+    /**
+     * The maximum number of templates held by {@link #templates}.
+     */
+    static final int MAX_TEMPLATES = 1024;
+
+    /**
+     * The maximum length of a string that is cached as a template. Longer strings are compiled each time.
+     */
+    static final int MAX_LENGTH = 4096;
+
+    /**
+     * The cached templates, keyed on string, least recently used first.
+     */
+    private static final Map<String, SubstitutionTemplate> templates
+            = new LinkedHashMap<String, SubstitutionTemplate>(16, 0.75f, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SubstitutionTemplate> eldest)
+        {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
+    /**
+     * The substitution type.
+     */
+    private final SubstitutionType type;
+
+    /**
+     * Whether braces are required for substitution.
+     */
+    private final boolean bracesRequired;
+
+    /**
+     * The segments of the string, in order.
+     */
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    /**
+     * The literal text following the last variable.
+     */
+    private final StringBuilder literal = new StringBuilder();
+
+    /**
+     * Constructs a <tt>SubstitutionTemplate</tt>.
+     *
+     * @param type           the substitution type. May be {@code null}
+     * @param bracesRequired whether braces are required for substitution
+     */
+    private SubstitutionTemplate(SubstitutionType type, boolean bracesRequired)
+    {
+        this.type = (type != null) ? type : SubstitutionType.getDefault();
+        this.bracesRequired = bracesRequired;
+    }
+
+    /**
+     * Returns the template for a string, compiling it if it isn't cached.
+     *
+     * @param str            the string
+     * @param type           the substitution type. May be {@code null}
+     * @param bracesRequired whether braces are required for substitution
+     * @return the template
+     */
+    static SubstitutionTemplate get(String str, SubstitutionType type, boolean bracesRequired)
+    {
+        if (str.length() > MAX_LENGTH)
+        {
+            return compile(str, type, bracesRequired);
+        }
+        SubstitutionTemplate result;
+        synchronized (templates)
+        {
+            result = templates.get(str);
+        }
+        if (result == null || !result.matches(type, bracesRequired))
+        {
+            result = compile(str, type, bracesRequired);
+            synchronized (templates)
+            {
+                templates.put(str, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compiles a string to a template.
+     *
+     * @param str            the string
+     * @param type           the substitution type. May be {@code null}
+     * @param bracesRequired whether braces are required for substitution
+     * @return the template
+     */
+    static SubstitutionTemplate compile(String str, SubstitutionType type, boolean bracesRequired)
+    {
+        SubstitutionTemplate result = new SubstitutionTemplate(type, bracesRequired);
+        VariableSubstitutorReader reader = new VariableSubstitutorReader(new StringReader(str), result,
+                                                                         bracesRequired);
+        try
+        {
+            int data;
+            while ((data = reader.read()) != -1)
+            {
+                result.literal.append((char) data);
+            }
+        }
+        catch (IOException exception)
+        {
+            // can't occur reading from a string
+            throw new IzPackException(exception);
+        }
+        if (result.literal.length() != 0)
+        {
+            result.segments.add(new Segment(result.literal.toString()));
+            result.literal.setLength(0);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the substitution type.
+     *
+     * @return the substitution type
+     */
+    SubstitutionType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Substitutes variables in the template.
+     *
+     * @param variables the variables
+     * @return the string with substituted variables
+     */
+    String substitute(Variables variables)
+    {
+        if (segments.size() == 1 && segments.get(0).name == null)
+        {
+            return segments.get(0).text;
+        }
+        StringBuilder result = new StringBuilder();
+        for (Segment segment : segments)
+        {
+            if (segment.name == null)
+            {
+                result.append(segment.text);
+            }
+            else
+            {
+                String value = VariableSubstitutorReader.getValue(variables, segment.name, segment.inBraces);
+                result.append((value == null) ? segment.text
+                                      : VariableSubstitutorReader.escapeSpecialChars(value, type));
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Adds a variable reference. Called by {@link VariableSubstitutorReader} during compilation.
+     *
+     * @param name       the variable name
+     * @param inBraces   whether the variable was enclosed in braces
+     * @param unresolved the text to use if the variable doesn't exist
+     */
+    void addVariable(String name, boolean inBraces, String unresolved)
+    {
+        if (literal.length() != 0)
+        {
+            segments.add(new Segment(literal.toString()));
+            literal.setLength(0);
+        }
+        segments.add(new Segment(name, inBraces, unresolved));
+    }
+
+    /**
+     * Determines if the template was compiled with the specified options.
+     *
+     * @param type           the substitution type. May be {@code null}
+     * @param bracesRequired whether braces are required for substitution
+     * @return <tt>true</tt> if the template was compiled with the options
+     */
+    private boolean matches(SubstitutionType type, boolean bracesRequired)
+    {
+        return this.type == ((type != null) ? type : SubstitutionType.getDefault())
+                && this.bracesRequired == bracesRequired;
+    }
+
+    /**
+     * A segment of a template; either literal text or a variable reference.
+     */
+    private static class Segment
+    {
+        /**
+         * The literal text, or the text to use if the variable doesn't exist.
+         */
+        private final String text;
+
+        /**
+         * The variable name, or {@code null} if this is literal text.
+         */
+        private final String name;
+
+        /**
+         * Whether the variable was enclosed in braces.
+         */
+        private final boolean inBraces;
+
+        Segment(String text)
+        {
+            this(null, false, text);
+        }
+
+        Segment(String name, boolean inBraces, String text)
+        {
+            this.name = name;
+            this.inBraces = inBraces;
+            this.text = text;
+        }
+    }
+}
@@ -17,14 +17,11 @@
 package com.izforge.izpack.core.substitutor;
 
 import com.izforge.izpack.api.data.Variables;
-import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.api.substitutor.SubstitutionType;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * Substitutes variables occurring in an input stream or a string. This implementation supports a
@@ -42,8 +39,6 @@ public class VariableSubstitutorImpl implements VariableSubstitutor, Serializabl
 {
     private static final long serialVersionUID = 3907213762447685687L;
 
-    private static final Logger logger = Logger.getLogger(VariableSubstitutorImpl.class.getName());
-
     /**
      * The replacement variables
      */
@@ -97,6 +92,9 @@ public class VariableSubstitutorImpl implements VariableSubstitutor, Serializabl
     /**
      * Substitutes the variables found in the specified string. Escapes special characters using
      * file type specific escaping if necessary.
+     * <p/>
+     * Strings are only parsed the first time they are seen; the variable references found are cached, so that
+     * strings substituted repeatedly, such as panel texts and paths, aren't parsed again.
      *
      * @param str  the string to check for variables
      * @param type the escaping type or null for plain
@@ -109,18 +107,11 @@ public class VariableSubstitutorImpl implements VariableSubstitutor, Serializabl
         {
             return null;
         }
-
-        // Create reader and write for the strings
-
-        try
-        {
-            return IOUtils.toString(new VariableSubstitutorReader(new StringReader(str), variables, type, bracesRequired));
-        }
-        catch (IOException e)
+        if (str.indexOf(VariableSubstitutorReader.getVariableStart(type)) == -1)
         {
-            logger.log(Level.SEVERE, "Error when substituting variables", e);
-            throw new IzPackException(e);
+            return str;
         }
+        return SubstitutionTemplate.get(str, type, bracesRequired).substitute(variables);
     }
 
     /**
@@ -71,31 +71,60 @@ public class VariableSubstitutorInputStream extends InputStream
     @Override
     public int read() throws IOException
     {
-        if (index == buffer.length) {
-            index = 0;
-            buffer = new byte[0];
-            if (lastSegment)
-            {
-                return -1;
-            }
-            char[] buff = new char[1024];
-            int count = 0;
-            while (count < buff.length)
+        if (index == buffer.length && !fill()) {
+            return -1;
+        }
+        return buffer[index++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+        if (index == buffer.length && !fill())
+        {
+            return -1;
+        }
+        int count = Math.min(len, buffer.length - index);
+        System.arraycopy(buffer, index, b, off, count);
+        index += count;
+        return count;
+    }
+
+    /**
+     * Reads the next segment of substituted characters into the buffer.
+     *
+     * @return <tt>false</tt> if the end of the stream has been reached
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean fill() throws IOException
+    {
+        index = 0;
+        buffer = new byte[0];
+        if (lastSegment)
+        {
+            return false;
+        }
+        char[] buff = new char[8192];
+        int count = 0;
+        while (count < buff.length)
+        {
+            int read = substitutorReader.read(buff, count, buff.length - count);
+            if (read == -1)
             {
-                int curChar = substitutorReader.read();
-                if (curChar == -1)
-                {
-                    lastSegment = true;
-                    if (count == 0) {
-                        return -1;
-                    }
-                    break;
+                lastSegment = true;
+                if (count == 0) {
+                    return false;
                 }
-                buff[count++] = (char) curChar;
+                break;
             }
-            buffer = String.valueOf(buff, 0, count).getBytes(encoding);
+            count += read;
         }
-        return buffer[index++] & 0xff;
+        buffer = String.valueOf(buff, 0, count).getBytes(encoding);
+        return true;
     }
 
     @Override
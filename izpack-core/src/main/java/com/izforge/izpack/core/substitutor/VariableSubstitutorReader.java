@@ -23,13 +23,18 @@ import com.izforge.izpack.util.IoHelper;
 import java.io.IOException;
 import java.io.PushbackReader;
 import java.io.Reader;
-import java.nio.CharBuffer;
 
 /**
  * An input reader which resolves IzPack variables on the fly
  */
 public class VariableSubstitutorReader extends Reader
 {
+    /**
+     * The maximum number of characters read from the source in one go by {@link #read(char[], int, int)}.
+     * Characters following a variable start are pushed back, so this is also the size of the pushback buffer.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
     private PushbackReader pushbackReader = null;
     /**
      * The replacement variables
@@ -37,6 +42,11 @@ public class VariableSubstitutorReader extends Reader
     private final Variables variables;
     private SubstitutionType type;
 
+    /**
+     * The template being compiled, or {@code null} if variables are being substituted.
+     */
+    private SubstitutionTemplate template;
+
     /**
      * Whether braces are required for substitution.
      */
@@ -59,32 +69,55 @@ public class VariableSubstitutorReader extends Reader
 
     public VariableSubstitutorReader(Reader source, Variables variables, SubstitutionType type)
     {
-        this.pushbackReader = new PushbackReader(source);
+        this.pushbackReader = new PushbackReader(source, CHUNK_SIZE);
         this.variables = variables;
         this.type = type;
+
+        // determine character which starts (and ends) a variable
+        variable_start = getVariableStart(type);
+        if (type == SubstitutionType.TYPE_ANT)
+        {
+            variable_end = '@';
+        }
+    }
+
+    /**
+     * Constructs a reader that records the variables read from the source in a template, rather than substituting
+     * them.
+     *
+     * @param source         the source
+     * @param template       the template to record literal text and variables in
+     * @param bracesRequired whether braces are required for substitution
+     */
+    VariableSubstitutorReader(Reader source, SubstitutionTemplate template, boolean bracesRequired)
+    {
+        this(source, null, template.getType(), bracesRequired);
+        this.template = template;
+    }
+
+    /**
+     * Returns the character which starts a variable.
+     *
+     * @param type the substitution type. May be {@code null}
+     * @return the character which starts a variable
+     */
+    static char getVariableStart(SubstitutionType type)
+    {
         if (type == null)
         {
             type = SubstitutionType.getDefault();
         }
-
-        // determine character which starts (and ends) a variable
         switch (type)
         {
             case TYPE_SHELL:
-                variable_start = '%';
-                break;
+                return '%';
 
             case TYPE_AT:
-                variable_start = '@';
-                break;
-
             case TYPE_ANT:
-                variable_start = '@';
-                variable_end = '@';
-                break;
+                return '@';
 
             default:
-                break;
+                return '$';
         }
     }
 
@@ -104,12 +137,6 @@ public class VariableSubstitutorReader extends Reader
         bracesRequired = braces;
     }
 
-
-    @Override
-    public int read(CharBuffer target) throws IOException {
-        throw new RuntimeException("Operation Not Supported");
-    }
-
     @Override
     public int read() throws IOException
     {
@@ -157,33 +184,7 @@ public class VariableSubstitutorReader extends Reader
 
         boolean variable = wasItPlausibleVariableName(data);
         String name = varNameBuffer.toString();
-        if (variable && name.length() > 0)
-        {
-            // check for environment variables
-            if (inBraces && name.startsWith("ENV[")
-                    && (name.lastIndexOf(']') == name.length() - 1))
-            {
-                varValue = IoHelper.getenv(name.substring(4, name.length() - 1));
-                if (varValue == null)
-                {
-                    varValue = "";
-                }
-            }
-            else if (inBraces && name.startsWith("SYSTEM[")
-                    && (name.lastIndexOf(']') == name.length() - 1))
-            {
-                varValue = System.getProperty(name.substring(7, name.length() - 1));
-            }
-            // TODO: Compatibility mode - to be removed in future
-            else if (inBraces && name.startsWith("SYSTEM_") && name.length() > 7)
-            {
-                varValue = System.getProperty(name.substring(7).replace('_', '.'));
-            }
-            else
-            {
-                varValue = variables.get(name);
-            }
-        }
+        boolean resolvable = variable && name.length() > 0;
 
         boolean unclosedBraces = false;
         if (data <= ' ')
@@ -201,17 +202,28 @@ public class VariableSubstitutorReader extends Reader
             pushbackReader.unread(data);
         }
 
-        if(varValue == null)
+        String unresolved = variable_start
+                + (inBraces ? "{" : "")
+                + name
+                + (inBraces && !unclosedBraces ? "}" : "")
+                + (variable_end != '\0' && variable ? variable_end : "");
+
+        if (template != null)
         {
-            varValue = variable_start
-                    + (inBraces ? "{" : "")
-                    + varNameBuffer.toString()
-                    + (inBraces && !unclosedBraces ? "}" : "")
-                    + (variable_end != '\0' && variable ? variable_end : "");
+            if (resolvable)
+            {
+                template.addVariable(name, inBraces, unresolved);
+                varValue = "";
+            }
+            else
+            {
+                varValue = unresolved;
+            }
         }
         else
         {
-            varValue = escapeSpecialChars(varValue);
+            varValue = resolvable ? getValue(variables, name, inBraces) : null;
+            varValue = (varValue == null) ? unresolved : escapeSpecialChars(varValue, type);
         }
 
         inBraces = false;
@@ -255,21 +267,65 @@ public class VariableSubstitutorReader extends Reader
         return read(cbuf, 0, cbuf.length);
     }
 
+    /**
+     * Reads characters into a portion of an array.
+     * <p/>
+     * Runs of text without variables are read from the source directly into the array. Only variables are parsed
+     * character by character.
+     *
+     * @param cbuf the destination buffer
+     * @param off  the offset at which to start storing characters
+     * @param len  the maximum number of characters to read
+     * @return the number of characters read, or {@code -1} if the end of the source has been reached
+     * @throws IOException if an I/O error occurs
+     */
     @Override
     public int read(char cbuf[], int off, int len) throws IOException {
-        int charsRead = 0;
-        for(int i=0; i<len; i++){
-            int nextChar = read();
-            if(nextChar == -1) {
-                if(charsRead == 0){
-                    charsRead = -1;
-                }
+        if (len == 0)
+        {
+            return 0;
+        }
+        int count = 0;
+        while (count < len)
+        {
+            if (varValue != null && varValueIndex < varValue.length())
+            {
+                // copy the remainder of the last substituted variable
+                int n = Math.min(len - count, varValue.length() - varValueIndex);
+                varValue.getChars(varValueIndex, varValueIndex + n, cbuf, off + count);
+                varValueIndex += n;
+                count += n;
+                continue;
+            }
+            varValue = null;
+            varValueIndex = 0;
+
+            int start = off + count;
+            int n = pushbackReader.read(cbuf, start, Math.min(len - count, CHUNK_SIZE));
+            if (n == -1)
+            {
                 break;
             }
-            charsRead = i + 1;
-            cbuf[off + i] = (char) nextChar;
+            int end = start + n;
+            int index = start;
+            while (index < end && cbuf[index] != variable_start)
+            {
+                ++index;
+            }
+            count += index - start;
+            if (index < end)
+            {
+                // push back the variable and what follows it, and parse it
+                pushbackReader.unread(cbuf, index, end - index);
+                int data = read();
+                if (data == -1)
+                {
+                    break;
+                }
+                cbuf[off + count++] = (char) data;
+            }
         }
-        return charsRead;
+        return (count == 0) ? -1 : count;
     }
 
     @Override
@@ -313,13 +369,55 @@ public class VariableSubstitutorReader extends Reader
         );
     }
 
+    /**
+     * Returns the value of a variable.
+     * <p/>
+     * Besides installer variables, this supports environment variables (<em>${ENV[name]}</em>) and system
+     * properties (<em>${SYSTEM[name]}</em>).
+     *
+     * @param variables the variables
+     * @param name      the variable name
+     * @param inBraces  whether the variable was enclosed in braces
+     * @return the value, or {@code null} if the variable doesn't exist
+     */
+    static String getValue(Variables variables, String name, boolean inBraces)
+    {
+        String value;
+        // check for environment variables
+        if (inBraces && name.startsWith("ENV[")
+                && (name.lastIndexOf(']') == name.length() - 1))
+        {
+            value = IoHelper.getenv(name.substring(4, name.length() - 1));
+            if (value == null)
+            {
+                value = "";
+            }
+        }
+        else if (inBraces && name.startsWith("SYSTEM[")
+                && (name.lastIndexOf(']') == name.length() - 1))
+        {
+            value = System.getProperty(name.substring(7, name.length() - 1));
+        }
+        // TODO: Compatibility mode - to be removed in future
+        else if (inBraces && name.startsWith("SYSTEM_") && name.length() > 7)
+        {
+            value = System.getProperty(name.substring(7).replace('_', '.'));
+        }
+        else
+        {
+            value = variables.get(name);
+        }
+        return value;
+    }
+
     /**
      * Escapes the special characters in the specified string using file type specific rules.
      *
      * @param str  the string to check for special characters
+     * @param type the file type. May be {@code null}
      * @return the string with the special characters properly escaped
      */
-    private String escapeSpecialChars(String str)
+    static String escapeSpecialChars(String str, SubstitutionType type)
     {
         StringBuffer buffer;
         int len;
@@ -23,8 +23,11 @@ package com.izforge.izpack.core.variable;
 
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 public class PlainConfigFileValue extends ConfigFileValue implements Serializable
@@ -80,6 +83,17 @@ public class PlainConfigFileValue extends ConfigFileValue implements Serializabl
         return resolve(new FileInputStream(_location_), substitutors);
     }
 
+    @Override
+    public List<File> getSourceFiles(VariableSubstitutor... substitutors)
+    {
+        String _location_ = location;
+        for (VariableSubstitutor substitutor : substitutors)
+        {
+            _location_ = substitutor.substitute(_location_);
+        }
+        return Collections.singletonList(new File(_location_));
+    }
+
     @Override
     public Set<String> getVarRefs()
     {
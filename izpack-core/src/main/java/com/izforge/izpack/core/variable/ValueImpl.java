@@ -21,6 +21,9 @@
 
 package com.izforge.izpack.core.variable;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.api.data.Value;
@@ -52,6 +55,20 @@ public abstract class ValueImpl implements Value
         this.installData = installData;
     }
 
+    /**
+     * Returns the files this value is read from.
+     * <p/>
+     * A result cached by {@link com.izforge.izpack.core.data.DynamicVariableImpl} is discarded when one of these
+     * changes, in addition to when one of the {@link #getVarRefs() referenced variables} changes.
+     *
+     * @param substitutors the substitutors used to resolve the value
+     * @return the files. Empty if the value isn't read from a file
+     */
+    public List<File> getSourceFiles(VariableSubstitutor... substitutors)
+    {
+        return Collections.emptyList();
+    }
+
     @Override
     public String toString()
     {
@@ -19,7 +19,10 @@
 
 package com.izforge.izpack.core.variable;
 
+import java.io.File;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -117,6 +120,17 @@ public class ZipEntryConfigFileValue extends ConfigFileValue
         }
     }
 
+    @Override
+    public List<File> getSourceFiles(VariableSubstitutor... substitutors)
+    {
+        String _filename_ = this.filename;
+        for (VariableSubstitutor substitutor : substitutors)
+        {
+            _filename_ = substitutor.substitute(_filename_);
+        }
+        return Collections.singletonList(new File(_filename_));
+    }
+
     @Override
     public Set<String> getVarRefs()
     {
@@ -20,28 +20,104 @@
 package com.izforge.izpack.merge;
 
 import java.io.OutputStream;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.izforge.izpack.api.merge.Mergeable;
-
 /**
  * Abstract classes for all mergeable element.
  * Contains helper methods to managed the mergeContent map.
  *
  * @author Anthonin Bonnefoy
  */
-public abstract class AbstractMerge implements Mergeable
+public abstract class AbstractMerge implements ArchiveMergeable
 {
     protected Map<OutputStream, List<String>> mergeContent;
 
+    /**
+     * Returns the names of the entries merged to an output stream.
+     * <p/>
+     * Lists created by this method support {@link List#contains(Object)} in constant time.
+     *
+     * @param outputStream the output stream
+     * @return the names of the entries merged to the output stream
+     */
     protected List<String> getMergeList(OutputStream outputStream)
     {
         if (!mergeContent.containsKey(outputStream))
         {
-            mergeContent.put(outputStream, new ArrayList<String>());
+            mergeContent.put(outputStream, new MergeList());
         }
         return mergeContent.get(outputStream);
     }
+
+    /**
+     * A list of entry names that counts the occurrences of each name, to look them up without searching the list.
+     */
+    private static class MergeList extends AbstractList<String>
+    {
+        /**
+         * The names.
+         */
+        private final List<String> names = new ArrayList<String>();
+
+        /**
+         * The number of occurrences of each name.
+         */
+        private final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        @Override
+        public String get(int index)
+        {
+            return names.get(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return names.size();
+        }
+
+        @Override
+        public boolean contains(Object name)
+        {
+            return counts.containsKey(name);
+        }
+
+        @Override
+        public void add(int index, String name)
+        {
+            names.add(index, name);
+            Integer count = counts.get(name);
+            counts.put(name, (count == null) ? 1 : count + 1);
+            ++modCount;
+        }
+
+        @Override
+        public String set(int index, String name)
+        {
+            String previous = remove(index);
+            add(index, name);
+            return previous;
+        }
+
+        @Override
+        public String remove(int index)
+        {
+            String name = names.remove(index);
+            Integer count = counts.get(name);
+            if (count == 1)
+            {
+                counts.remove(name);
+            }
+            else
+            {
+                counts.put(name, count - 1);
+            }
+            ++modCount;
+            return name;
+        }
+    }
 }
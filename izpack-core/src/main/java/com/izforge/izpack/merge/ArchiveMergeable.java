@@ -0,0 +1,38 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.merge;
+
+import com.izforge.izpack.api.merge.Mergeable;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+/**
+ * A {@link Mergeable} that can also be merged to a {@link ZipArchiveOutputStream}.
+ * <p/>
+ * The installer jar is written this way, so that entries of jars can be copied as they are compressed in the jar.
+ */
+public interface ArchiveMergeable extends Mergeable
+{
+    /**
+     * Merges the content to an archive.
+     *
+     * @param outputStream the archive
+     */
+    void merge(ZipArchiveOutputStream outputStream);
+}
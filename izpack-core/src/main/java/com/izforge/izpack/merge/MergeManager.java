@@ -26,7 +26,7 @@ import com.izforge.izpack.api.merge.Mergeable;
  *
  * @author Anthonin Bonnefoy
  */
-public interface MergeManager extends Mergeable
+public interface MergeManager extends ArchiveMergeable
 {
 
     /**
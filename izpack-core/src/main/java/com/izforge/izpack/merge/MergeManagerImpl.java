@@ -19,8 +19,10 @@
 
 package com.izforge.izpack.merge;
 
+import com.izforge.izpack.api.exception.MergeException;
 import com.izforge.izpack.api.merge.Mergeable;
 import com.izforge.izpack.merge.resolve.PathResolver;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
 import java.io.File;
 import java.io.FileFilter;
@@ -75,6 +77,26 @@ public class MergeManagerImpl implements MergeManager
         mergeableList.clear();
     }
 
+    /**
+     * Merges all resources to an archive.
+     *
+     * @param outputStream the archive
+     * @throws MergeException if a resource cannot be merged to an archive
+     */
+    @Override
+    public void merge(ZipArchiveOutputStream outputStream)
+    {
+        for (Mergeable mergeable : mergeableList)
+        {
+            if (!(mergeable instanceof ArchiveMergeable))
+            {
+                throw new MergeException("Cannot merge " + mergeable + " to an archive");
+            }
+            ((ArchiveMergeable) mergeable).merge(outputStream);
+        }
+        mergeableList.clear();
+    }
+
     @Override
     public List<File> recursivelyListFiles(FileFilter fileFilter)
     {
@@ -24,10 +24,14 @@ import com.izforge.izpack.merge.AbstractMerge;
 import com.izforge.izpack.merge.resolve.ResolveUtils;
 import com.izforge.izpack.util.FileUtil;
 import com.izforge.izpack.util.IoHelper;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipOutputStream;
@@ -131,7 +135,12 @@ public class FileMerge extends AbstractMerge
     {
         try
         {
-            copyFileToJar(sourceToCopy, outputStream);
+            for (Map.Entry<File, String> file : getFilesToMerge(outputStream).entrySet())
+            {
+                FileInputStream inputStream = new FileInputStream(file.getKey());
+                IoHelper.copyStreamToJar(inputStream, outputStream, file.getValue(), file.getKey().lastModified());
+                inputStream.close();
+            }
         }
         catch (IOException e)
         {
@@ -139,7 +148,45 @@ public class FileMerge extends AbstractMerge
         }
     }
 
-    private void copyFileToJar(File fileToCopy, ZipOutputStream outputStream) throws IOException
+    /**
+     * Merges the file, or the files of the directory, to an archive.
+     *
+     * @param outputStream the archive
+     */
+    @Override
+    public void merge(ZipArchiveOutputStream outputStream)
+    {
+        try
+        {
+            for (Map.Entry<File, String> file : getFilesToMerge(outputStream).entrySet())
+            {
+                ZipArchiveEntry entry = new ZipArchiveEntry(file.getValue());
+                entry.setTime(file.getKey().lastModified());
+                outputStream.putArchiveEntry(entry);
+                Files.copy(file.getKey().toPath(), outputStream);
+                outputStream.closeArchiveEntry();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new MergeException(e);
+        }
+    }
+
+    /**
+     * Returns the files to merge to an output stream, and registers them as merged to it.
+     *
+     * @param outputStream the output stream
+     * @return the files to merge, and their entry names
+     */
+    private Map<File, String> getFilesToMerge(OutputStream outputStream)
+    {
+        Map<File, String> result = new LinkedHashMap<File, String>();
+        addFilesToMerge(sourceToCopy, getMergeList(outputStream), result);
+        return result;
+    }
+
+    private void addFilesToMerge(File fileToCopy, List<String> mergeList, Map<File, String> result)
     {
         if (fileToCopy.isDirectory())
         {
@@ -148,22 +195,19 @@ public class FileMerge extends AbstractMerge
             {
                 for (File file : files)
                 {
-                    copyFileToJar(file, outputStream);
+                    addFilesToMerge(file, mergeList, result);
                 }
             }
         }
         else
         {
             String entryName = resolveName(fileToCopy, this.destination);
-            List<String> mergeList = getMergeList(outputStream);
             if (mergeList.contains(entryName))
             {
                 return;
             }
             mergeList.add(entryName);
-            FileInputStream inputStream = new FileInputStream(fileToCopy);
-            IoHelper.copyStreamToJar(inputStream, outputStream, entryName, fileToCopy.lastModified());
-            inputStream.close();
+            result.put(fileToCopy, entryName);
         }
     }
 
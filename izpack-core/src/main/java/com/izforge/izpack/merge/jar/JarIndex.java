@@ -0,0 +1,132 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.merge.jar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The entries of a jar, read once from its central directory.
+ * <p/>
+ * Indexes are cached by jar path, and are re-read if the size or modification time of the jar changes. This avoids
+ * re-reading the same jar for each path merged from it, or searched in it.
+ */
+final class JarIndex
+{
+    /**
+     * The cached indexes, keyed on jar path.
+     */
+    private static final Map<String, JarIndex> indexes = new ConcurrentHashMap<String, JarIndex>();
+
+    /**
+     * The size of the jar when it was indexed.
+     */
+    private final long length;
+
+    /**
+     * The modification time of the jar when it was indexed.
+     */
+    private final long lastModified;
+
+    /**
+     * The entries, in the order they appear in the jar.
+     */
+    private final List<ZipEntry> entries;
+
+    /**
+     * The entry names, in the order they appear in the jar.
+     */
+    private final List<String> names;
+
+    /**
+     * Constructs a {@code JarIndex}.
+     *
+     * @param file the jar
+     * @throws IOException if the jar cannot be read
+     */
+    private JarIndex(File file) throws IOException
+    {
+        length = file.length();
+        lastModified = file.lastModified();
+        List<ZipEntry> entries = new ArrayList<ZipEntry>();
+        List<String> names = new ArrayList<String>();
+        try (ZipFile zipFile = new ZipFile(file))
+        {
+            Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+            while (zipEntries.hasMoreElements())
+            {
+                ZipEntry entry = zipEntries.nextElement();
+                entries.add(entry);
+                names.add(entry.getName());
+            }
+        }
+        this.entries = Collections.unmodifiableList(entries);
+        this.names = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Returns the index of a jar.
+     *
+     * @param jarPath the path to the jar
+     * @return the index
+     * @throws IOException if the jar cannot be read
+     */
+    static JarIndex get(String jarPath) throws IOException
+    {
+        File file = new File(jarPath);
+        JarIndex index = indexes.get(jarPath);
+        if (index == null || index.length != file.length() || index.lastModified != file.lastModified())
+        {
+            index = new JarIndex(file);
+            indexes.put(jarPath, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the entries of the jar.
+     * <p/>
+     * The entries are shared, and must not be modified.
+     *
+     * @return the entries, in the order they appear in the jar
+     */
+    List<ZipEntry> getEntries()
+    {
+        return entries;
+    }
+
+    /**
+     * Returns the entry names of the jar.
+     *
+     * @return the entry names, in the order they appear in the jar
+     */
+    List<String> getNames()
+    {
+        return names;
+    }
+}
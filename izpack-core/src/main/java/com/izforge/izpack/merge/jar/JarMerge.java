@@ -23,32 +23,64 @@ import com.izforge.izpack.api.exception.IzPackException;
 import com.izforge.izpack.api.exception.MergeException;
 import com.izforge.izpack.merge.AbstractMerge;
 import com.izforge.izpack.util.FileUtil;
-import com.izforge.izpack.util.IoHelper;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 
 import java.io.*;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
 /**
  * Jar files merger.
+ * <p/>
+ * The entries of each jar are read once, via {@link JarIndex}. Entries that are stored uncompressed are copied
+ * verbatim, without being compressed in the target. When merged to a {@link ZipArchiveOutputStream}, compressed
+ * entries are also copied without being decompressed and recompressed.
  *
  * @author Anthonin Bonnefoy
  */
 public class JarMerge extends AbstractMerge
 {
+    /**
+     * The regular expression matching signature files.
+     */
+    private static final Pattern SIGNATURE = Pattern.compile("/?META-INF/.*\\.(SF|DSA|RSA)|/?META-INF/SIG-.*");
+
+    /**
+     * The characters that have a special meaning in regular expressions.
+     */
+    private static final String REGEXP_CHARS = "\\.[]{}()*+?^$|";
+
+    /**
+     * The size of the buffer used to copy entries.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private final String jarPath;
 
     private final String regexp;
     private final String destination;
 
+    /**
+     * The compiled {@link #regexp}.
+     */
+    private final Pattern pattern;
+
+    /**
+     * The literal prefix of all entry names that can match {@link #regexp}.
+     */
+    private final String prefix;
+
 
     /**
      * Create a new JarMerge with a destination
@@ -77,6 +109,8 @@ public class JarMerge extends AbstractMerge
             builder.append("/*(.*)");
         }
         regexp = builder.toString();
+        pattern = Pattern.compile(regexp);
+        prefix = getLiteralPrefix(regexp);
     }
 
     /**
@@ -103,6 +137,8 @@ public class JarMerge extends AbstractMerge
             builder.append("/*(.*)");
         }
         regexp = builder.toString();
+        pattern = Pattern.compile(regexp);
+        prefix = getLiteralPrefix(regexp);
     }
 
 
@@ -110,7 +146,7 @@ public class JarMerge extends AbstractMerge
     {
         try
         {
-            ArrayList<String> fileNameInZip = getFileNameInJar();
+            List<String> fileNameInZip = getFileNameInJar();
             for (String fileName : fileNameInZip)
             {
                 File file = new File(jarPath + "!/" + fileName);
@@ -131,7 +167,7 @@ public class JarMerge extends AbstractMerge
     {
         try
         {
-            ArrayList<String> fileNameInZip = getFileNameInJar();
+            List<String> fileNameInZip = getFileNameInJar();
             ArrayList<File> result = new ArrayList<File>();
             ArrayList<File> filteredResult = new ArrayList<File>();
             for (String fileName : fileNameInZip)
@@ -153,86 +189,243 @@ public class JarMerge extends AbstractMerge
         }
     }
 
-    private ArrayList<String> getFileNameInJar() throws IOException
+    private List<String> getFileNameInJar() throws IOException
     {
-        JarFile jarFile = new JarFile(jarPath);
-        ArrayList<String> arrayList = new ArrayList<String>();
-        Enumeration<JarEntry> jarEntries = jarFile.entries();
-        while (jarEntries.hasMoreElements())
-        {
-            JarEntry jarEntry = jarEntries.nextElement();
-            arrayList.add(jarEntry.getName());
-        }
-        return arrayList;
+        return JarIndex.get(jarPath).getNames();
     }
 
 
     public void merge(ZipOutputStream outputStream)
     {
-        mergeImpl(outputStream);
+        try
+        {
+            Map<ZipEntry, String> entries = getEntriesToMerge(outputStream);
+            if (!entries.isEmpty())
+            {
+                try (ZipFile jarFile = new ZipFile(jarPath))
+                {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    for (Map.Entry<ZipEntry, String> entry : entries.entrySet())
+                    {
+                        copyEntry(jarFile, entry.getKey(), outputStream, entry.getValue(), buffer);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IzPackException("Error accessing file: " + jarPath, e.getCause());
+        }
     }
 
-    private void mergeImpl(OutputStream outputStream)
+    /**
+     * Merges the matching entries of the jar to an archive.
+     * <p/>
+     * Entries that are stored or deflated are copied as they are compressed in the jar, without being decompressed
+     * and recompressed.
+     *
+     * @param outputStream the archive
+     */
+    @Override
+    public void merge(ZipArchiveOutputStream outputStream)
     {
-        Pattern pattern = Pattern.compile(regexp);
-        List<String> mergeList = getMergeList(outputStream);
-        JarFile jarFile = null;
-        JarEntry jarEntry;
         try
         {
-            jarFile = new JarFile(jarPath);
-            Enumeration<JarEntry> jarFileEntries = jarFile.entries();
+            Map<ZipEntry, String> entries = getEntriesToMerge(outputStream);
+            if (!entries.isEmpty())
+            {
+                try (org.apache.commons.compress.archivers.zip.ZipFile jarFile =
+                             org.apache.commons.compress.archivers.zip.ZipFile.builder().setPath(jarPath).get())
+                {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    for (Map.Entry<ZipEntry, String> entry : entries.entrySet())
+                    {
+                        copyEntry(jarFile, entry.getKey().getName(), outputStream, entry.getValue(), buffer);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IzPackException("Error accessing file: " + jarPath, e.getCause());
+        }
+    }
 
-            while (jarFileEntries.hasMoreElements())
+    /**
+     * Returns the entries of the jar to merge to an output stream, and registers them as merged to it.
+     *
+     * @param outputStream the output stream
+     * @return the entries to merge, and their names in the output stream, in the order of the jar
+     * @throws IOException if the jar cannot be read
+     */
+    private Map<ZipEntry, String> getEntriesToMerge(OutputStream outputStream) throws IOException
+    {
+        List<String> mergeList = getMergeList(outputStream);
+        Map<ZipEntry, String> result = new LinkedHashMap<ZipEntry, String>();
+        for (ZipEntry jarEntry : JarIndex.get(jarPath).getEntries())
+        {
+            String name = jarEntry.getName();
+            if (!name.startsWith(prefix))
             {
-                jarEntry = jarFileEntries.nextElement();
+                continue;
+            }
+            if (isManifest(name)) {
+                // Skip the JAR's manifest file to avoid
+                // overwriting it in the target JAR
+                continue;
+            }
 
-                if (isManifest(jarEntry.getName())) {
-                    // Skip the JAR's manifest file to avoid
-                    // overwriting it in the target JAR
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches() && !isSignature(name))
+            {
+                if (mergeList.contains(name))
+                {
                     continue;
                 }
+                mergeList.add(name);
 
-                Matcher matcher = pattern.matcher(jarEntry.getName());
-                if (matcher.matches() && !isSignature(jarEntry.getName()))
+                String matchFile = matcher.group(1);
+                StringBuilder dest = new StringBuilder(destination);
+                if (matchFile != null && matchFile.length() > 0)
                 {
-                    if (mergeList.contains(jarEntry.getName()))
+                    if (dest.length() > 0 && dest.charAt(dest.length() - 1) != '/')
                     {
-                        continue;
+                        dest.append('/');
                     }
-                    mergeList.add(jarEntry.getName());
-
-                    String matchFile = matcher.group(1);
-                    StringBuilder dest = new StringBuilder(destination);
-                    if (matchFile != null && matchFile.length() > 0)
-                    {
-                        if (dest.length() > 0 && dest.charAt(dest.length() - 1) != '/')
-                        {
-                            dest.append('/');
-                        }
-                        dest.append(matchFile);
-                    }
-
-                    InputStream inputStream = jarFile.getInputStream(jarEntry);
-                    IoHelper.copyStreamToJar(inputStream, (java.util.zip.ZipOutputStream) outputStream, dest.toString().replaceAll("//", "/"),
-                            jarEntry.getTime());
+                    dest.append(matchFile);
                 }
+
+                result.put(jarEntry, dest.toString().replaceAll("//", "/"));
             }
         }
-        catch (IOException e)
+        return result;
+    }
+
+    /**
+     * Copies a jar entry to the target.
+     * <p/>
+     * Entries stored uncompressed are copied verbatim, with the size and CRC from the source. Others are compressed
+     * with the default method of the target.
+     *
+     * @param jarFile      the jar
+     * @param jarEntry     the entry to copy
+     * @param outputStream the target
+     * @param name         the name of the entry in the target
+     * @param buffer       the copy buffer
+     * @throws IOException for any I/O error
+     */
+    private static void copyEntry(ZipFile jarFile, ZipEntry jarEntry, ZipOutputStream outputStream, String name,
+                                  byte[] buffer) throws IOException
+    {
+        ZipEntry entry = new ZipEntry(name);
+        if (jarEntry.getTime() != -1)
         {
-            throw new IzPackException("Error accessing file: " + jarPath, e.getCause());
+            entry.setTime(jarEntry.getTime());
+        }
+        if (jarEntry.getMethod() == ZipEntry.STORED && jarEntry.getSize() >= 0 && jarEntry.getCrc() != -1)
+        {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(jarEntry.getSize());
+            entry.setCompressedSize(jarEntry.getSize());
+            entry.setCrc(jarEntry.getCrc());
+        }
+        outputStream.putNextEntry(entry);
+        try (InputStream inputStream = jarFile.getInputStream(jarEntry))
+        {
+            copy(inputStream, outputStream, buffer);
+        }
+        outputStream.closeEntry();
+    }
+
+    /**
+     * Copies a jar entry to an archive.
+     * <p/>
+     * Entries that are stored or deflated, and not encrypted, are copied as they are compressed in the jar. Others
+     * are decompressed, and compressed with the default method of the archive.
+     *
+     * @param jarFile      the jar
+     * @param entryName    the name of the entry to copy
+     * @param outputStream the archive
+     * @param name         the name of the entry in the archive
+     * @param buffer       the copy buffer
+     * @throws IOException for any I/O error
+     */
+    private static void copyEntry(org.apache.commons.compress.archivers.zip.ZipFile jarFile, String entryName,
+                                  ZipArchiveOutputStream outputStream, String name, byte[] buffer) throws IOException
+    {
+        ZipArchiveEntry jarEntry = jarFile.getEntry(entryName);
+        if (jarEntry == null)
+        {
+            throw new ZipException("Entry not found: " + entryName);
         }
-        finally {
-            if (jarFile != null)
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        if (jarEntry.getTime() != -1)
+        {
+            entry.setTime(jarEntry.getTime());
+        }
+        int method = jarEntry.getMethod();
+        if ((method == ZipEntry.STORED || method == ZipEntry.DEFLATED)
+                && !jarEntry.getGeneralPurposeBit().usesEncryption()
+                && jarEntry.getSize() >= 0 && jarEntry.getCompressedSize() >= 0 && jarEntry.getCrc() != -1)
+        {
+            entry.setMethod(method);
+            entry.setCrc(jarEntry.getCrc());
+            entry.setSize(jarEntry.getSize());
+            entry.setCompressedSize(jarEntry.getCompressedSize());
+            try (InputStream inputStream = jarFile.getRawInputStream(jarEntry))
             {
-                try
-                {
-                    jarFile.close();
-                }
-                catch (IOException ignored) {}
+                outputStream.addRawArchiveEntry(entry, inputStream);
+            }
+        }
+        else
+        {
+            outputStream.putArchiveEntry(entry);
+            try (InputStream inputStream = jarFile.getInputStream(jarEntry))
+            {
+                copy(inputStream, outputStream, buffer);
             }
+            outputStream.closeArchiveEntry();
+        }
+    }
+
+    /**
+     * Copies a stream.
+     *
+     * @param inputStream  the stream to read
+     * @param outputStream the stream to write to
+     * @param buffer       the copy buffer
+     * @throws IOException for any I/O error
+     */
+    private static void copy(InputStream inputStream, OutputStream outputStream, byte[] buffer) throws IOException
+    {
+        int read;
+        while ((read = inputStream.read(buffer)) != -1)
+        {
+            outputStream.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Returns the literal prefix of the names that a regular expression can match.
+     * <p/>
+     * This is the expression up to its first special character. A character followed by a quantifier is optional,
+     * so is excluded.
+     *
+     * @param regexp the regular expression
+     * @return the literal prefix. May be empty
+     */
+    private static String getLiteralPrefix(String regexp)
+    {
+        int end = 0;
+        while (end < regexp.length() && REGEXP_CHARS.indexOf(regexp.charAt(end)) == -1)
+        {
+            ++end;
+        }
+        if (end > 0 && end < regexp.length() && "*+?{".indexOf(regexp.charAt(end)) != -1)
+        {
+            --end;
         }
+        return regexp.substring(0, end);
     }
 
     @Override
@@ -279,7 +472,7 @@ public class JarMerge extends AbstractMerge
      */
     private boolean isSignature(String name)
     {
-        return name.matches("/?META-INF/.*\\.(SF|DSA|RSA)") || name.matches("/?META-INF/SIG-.*");
+        return SIGNATURE.matcher(name).matches();
     }
 
     /**
@@ -24,6 +24,7 @@ package com.izforge.izpack.core.data;
 import com.izforge.izpack.api.data.*;
 import com.izforge.izpack.api.exception.InstallerException;
 import com.izforge.izpack.api.rules.Condition;
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.container.DefaultContainer;
 import com.izforge.izpack.core.rules.ConditionContainer;
 import com.izforge.izpack.core.rules.RulesEngineImpl;
@@ -637,6 +638,64 @@ public class DefaultVariablesTest
         assertEquals("newValue", variables.get(blockedVar));
     }
 
+    /**
+     * Verifies that dynamic variable values are only resolved again when the variables they refer to change.
+     */
+    @Test
+    public void testDynamicVariablesResolvedWhenInputsChange()
+    {
+        CountingValue value = new CountingValue("${a}-${b}");
+        DynamicVariableImpl var = new DynamicVariableImpl();
+        var.setName("var1");
+        var.setValue(value);
+        variables.add(var);
+        variables.set("a", "1");
+        variables.set("b", "2");
+
+        variables.refresh();
+        variables.refresh();
+        variables.refresh();
+        assertEquals("1-2", variables.get("var1"));
+        assertEquals(1, value.getResolved());
+
+        variables.set("b", "3");
+        variables.refresh();
+        variables.refresh();
+        assertEquals("1-3", variables.get("var1"));
+        assertEquals(2, value.getResolved());
+
+        // unrelated variables don't cause the value to be resolved
+        variables.set("c", "4");
+        variables.refresh();
+        assertEquals(2, value.getResolved());
+    }
+
+    /**
+     * Verifies that dynamic variables read from a file are read again when the file changes.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testDynamicVariablesFromChangedFile() throws IOException
+    {
+        File file = rootFolder.newFile("test.properties");
+        FileUtils.writeStringToFile(file, "key=value1\n", "UTF-8");
+        DynamicVariableImpl var = new DynamicVariableImpl();
+        var.setName("var1");
+        var.setValue(new PlainConfigFileValue("${dir}/test.properties", ConfigFileValue.CONFIGFILE_TYPE_OPTIONS,
+                                              null, "key", false));
+        variables.add(var);
+        variables.set("dir", rootFolder.getRoot().getPath());
+
+        variables.refresh();
+        assertEquals("value1", variables.get("var1"));
+
+        FileUtils.writeStringToFile(file, "key=value22\n", "UTF-8");
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        variables.refresh();
+        assertEquals("value22", variables.get("var1"));
+    }
+
     /**
      * Creates a dynamic variable with Checkonce set.
      *
@@ -754,4 +813,29 @@ public class DefaultVariablesTest
                 "explicit_value", variables.get("var1"));
     }
 
-}
\ No newline at end of file
+
+    /**
+     * A value that counts the number of times it is resolved.
+     */
+    private static class CountingValue extends PlainValue
+    {
+        private int resolved;
+
+        public CountingValue(String value)
+        {
+            super(value);
+        }
+
+        @Override
+        public String resolve(VariableSubstitutor... substitutors) throws Exception
+        {
+            ++resolved;
+            return super.resolve(substitutors);
+        }
+
+        public int getResolved()
+        {
+            return resolved;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.core.handler;
+
+import com.izforge.izpack.api.event.ByteProgressListener;
+import com.izforge.izpack.api.event.ProgressListener;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the {@link ThrottledProgressListener}.
+ */
+public class ThrottledProgressListenerTest
+{
+    /**
+     * Verifies that progress notifications within the interval are coalesced, and that the last is delivered before
+     * the next step starts.
+     */
+    @Test
+    public void testCoalesce()
+    {
+        ByteProgressListener listener = mock(ByteProgressListener.class);
+        ThrottledProgressListener throttled = new ThrottledProgressListener(listener, 10, () -> 0L);
+
+        throttled.startAction("Unpacking", 2);
+        throttled.nextStep("pack1", 1, 1000);
+        for (int i = 0; i < 1000; ++i)
+        {
+            throttled.progress(i, "file" + i);
+            throttled.byteProgress(i * 10, 10000);
+        }
+        verify(listener, never()).progress(anyInt(), anyString());
+
+        throttled.nextStep("pack2", 2, 1);
+        throttled.stopAction();
+
+        InOrder order = inOrder(listener);
+        order.verify(listener).startAction("Unpacking", 2);
+        order.verify(listener).nextStep("pack1", 1, 1000);
+        order.verify(listener).progress(999, "file999");
+        order.verify(listener).byteProgress(9990, 10000);
+        order.verify(listener).nextStep("pack2", 2, 1);
+        order.verify(listener).stopAction();
+        verify(listener, times(1)).progress(anyInt(), anyString());
+        verify(listener, times(1)).byteProgress(Mockito.anyLong(), Mockito.anyLong());
+    }
+
+    /**
+     * Verifies that progress is delivered immediately once the interval has elapsed.
+     */
+    @Test
+    public void testDeliverAfterInterval()
+    {
+        ProgressListener listener = mock(ProgressListener.class);
+        final AtomicLong time = new AtomicLong();
+        ThrottledProgressListener throttled = new ThrottledProgressListener(listener, 10, time::get);
+
+        throttled.progress(1, "file1");
+        verify(listener).progress(1, "file1");
+
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(9));
+        throttled.progress(2, "file2");
+        verify(listener, never()).progress(2, "file2");
+
+        time.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        throttled.progress(3, "file3");
+        verify(listener, never()).progress(2, "file2");
+        verify(listener).progress(3, "file3");
+    }
+
+    /**
+     * Verifies that step increments are never coalesced, and that byte progress is only passed to listeners that
+     * support it.
+     */
+    @Test
+    public void testStepIncrements()
+    {
+        ProgressListener listener = mock(ProgressListener.class);
+        ThrottledProgressListener throttled = new ThrottledProgressListener(listener, 10, () -> 0L);
+        for (int i = 0; i < 10; ++i)
+        {
+            throttled.progress("step");
+            throttled.byteProgress(i, 10);
+        }
+        verify(listener, times(10)).progress("step");
+    }
+}
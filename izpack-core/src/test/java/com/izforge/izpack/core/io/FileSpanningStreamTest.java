@@ -24,8 +24,17 @@ package com.izforge.izpack.core.io;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.util.Random;
@@ -46,6 +55,16 @@ public class FileSpanningStreamTest
     @Rule
     public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
+    /**
+     * The no. of volumes written by {@link #writeBlocks(File)}.
+     */
+    private int volumes;
+
+    /**
+     * The block index written by {@link #writeBlocks(File)}.
+     */
+    private VolumeBlockIndex spanningIndex;
+
     /**
      * Tests the {@link FileSpanningOutputStream#write(int)} and {@link FileSpanningInputStream#read()} methods.
      *
@@ -161,6 +180,120 @@ public class FileSpanningStreamTest
         spanningInputStream.close();
     }
 
+    /**
+     * Verifies that volumes written in blocks can be read sequentially, and that the block index can be serialized.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testBlockReadWrite() throws IOException
+    {
+        File volume = new File(temporaryFolder.getRoot(), "volume");
+        byte[] written = writeBlocks(volume);
+        VolumeBlockIndex index = copy(spanningIndex);
+        assertEquals(written.length, index.getLength());
+        assertEquals((written.length + 4095) / 4096, index.getBlocks());
+
+        FileSpanningInputStream spanningInputStream = new FileSpanningInputStream(volume, volumes, index);
+        assertTrue(spanningInputStream.isSeekable());
+        for (int i = 0; i < 100; ++i)
+        {
+            assertEquals(written[i] & 0xFF, spanningInputStream.read());
+        }
+        byte[] read = new byte[written.length - 100];
+        assertEquals(read.length, spanningInputStream.read(read));
+        assertEquals(written.length, spanningInputStream.getFilePointer());
+        for (int i = 0; i < read.length; ++i)
+        {
+            assertEquals(written[i + 100], read[i]);
+        }
+        assertEquals(-1, spanningInputStream.read());
+        assertEquals(-1, spanningInputStream.read(read));
+        spanningInputStream.close();
+    }
+
+    /**
+     * Tests the {@link FileSpanningInputStream#seek(long)} and {@link FileSpanningInputStream#skip(long)} methods
+     * for volumes written in blocks.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testBlockSeek() throws IOException
+    {
+        File volume = new File(temporaryFolder.getRoot(), "volume");
+        byte[] written = writeBlocks(volume);
+        FileSpanningInputStream spanningInputStream = new FileSpanningInputStream(volume, volumes, spanningIndex);
+
+        // seek forwards and backwards, across blocks and volumes, and within the current block
+        long[] positions = {50000, 10, 99999, 4096, 4095, 4100, 8192, 0, 65537, 70000, 12345};
+        byte[] read = new byte[8];
+        for (long position : positions)
+        {
+            spanningInputStream.seek(position);
+            assertEquals(position, spanningInputStream.getFilePointer());
+            int expected = (int) Math.min(read.length, written.length - position);
+            assertEquals(expected, spanningInputStream.read(read));
+            for (int i = 0; i < expected; ++i)
+            {
+                assertEquals(written[(int) position + i], read[i]);
+            }
+        }
+
+        // seek to the end
+        spanningInputStream.seek(written.length);
+        assertEquals(-1, spanningInputStream.read());
+
+        // skip is limited to the end of the volumes
+        spanningInputStream.seek(written.length - 10);
+        assertEquals(10, spanningInputStream.skip(100));
+        assertEquals(written.length, spanningInputStream.getFilePointer());
+
+        try
+        {
+            spanningInputStream.seek(written.length + 1);
+            fail("Expected seek beyond the end of the volumes to fail");
+        }
+        catch (EOFException expected)
+        {
+            // expected
+        }
+        spanningInputStream.close();
+    }
+
+    /**
+     * Verifies that volumes written as a single compressed stream can only seek forwards.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testSeekWithoutIndex() throws IOException
+    {
+        File volume = new File(temporaryFolder.getRoot(), "volume");
+        FileSpanningOutputStream spanningOutputStream = new FileSpanningOutputStream(volume, 1024);
+        byte[] written = new byte[10000];
+        new Random().nextBytes(written);
+        spanningOutputStream.write(written);
+        spanningOutputStream.close();
+        assertNull(spanningOutputStream.getBlockIndex());
+
+        FileSpanningInputStream spanningInputStream = new FileSpanningInputStream(
+                volume, spanningOutputStream.getVolumes());
+        assertFalse(spanningInputStream.isSeekable());
+        spanningInputStream.seek(5000);
+        assertEquals(written[5000] & 0xFF, spanningInputStream.read());
+        try
+        {
+            spanningInputStream.seek(100);
+            fail("Expected backwards seek to fail");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+        spanningInputStream.close();
+    }
+
     /**
      * Writes 10GB of random data and verifies it can be read back in.
      *
@@ -207,6 +340,58 @@ public class FileSpanningStreamTest
         spanningInputStream.close();
     }
 
+    /**
+     * Writes 100K of random data in 4K blocks, to volumes of 1K.
+     *
+     * @param volume the first volume
+     * @return the data written
+     * @throws IOException for any I/O error
+     */
+    private byte[] writeBlocks(File volume) throws IOException
+    {
+        FileSpanningOutputStream spanningOutputStream = new FileSpanningOutputStream(volume, 1024, 1024, 4096);
+        byte[] written = new byte[100000];
+        new Random().nextBytes(written);
+        spanningOutputStream.write(written, 0, 10);
+        for (int i = 10; i < 20; ++i)
+        {
+            spanningOutputStream.write(written[i]);
+        }
+        spanningOutputStream.write(written, 20, written.length - 20);
+        assertEquals(written.length, spanningOutputStream.getFilePointer());
+        spanningOutputStream.close();
+
+        volumes = spanningOutputStream.getVolumes();
+        assertTrue(volumes > 2);
+        spanningIndex = spanningOutputStream.getBlockIndex();
+        assertNotNull(spanningIndex);
+        return written;
+    }
+
+    /**
+     * Copies an index by writing it out and reading it back in.
+     *
+     * @param index the index to copy
+     * @return the copy
+     * @throws IOException for any I/O error
+     */
+    private VolumeBlockIndex copy(VolumeBlockIndex index) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        VolumeBlockIndex result = VolumeBlockIndex.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(index.getBlockSize(), result.getBlockSize());
+        assertEquals(index.getBlocks(), result.getBlocks());
+        for (int i = 0; i < index.getBlocks(); ++i)
+        {
+            assertEquals(index.getBlock(i).getVolume(), result.getBlock(i).getVolume());
+            assertEquals(index.getBlock(i).getOffset(), result.getBlock(i).getOffset());
+            assertEquals(index.getBlock(i).getCompressedSize(), result.getBlock(i).getCompressedSize());
+        }
+        return result;
+    }
+
     /**
      * Checks the existence of volumes and their expected size.
      *
@@ -22,7 +22,12 @@ package com.izforge.izpack.core.rules;
 
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -238,6 +243,77 @@ public class RulesEngineImplTest
     }
 
 
+    /**
+     * Verifies that expressions are only compiled once, and are recompiled when the conditions they refer to change.
+     */
+    @Test
+    public void testExpressionCache()
+    {
+        Condition complex = engine.getCondition("@true && !false");
+        Condition simple = engine.getCondition("true+false");
+        assertSame(complex, engine.getCondition("@true && !false"));
+        assertSame(simple, engine.getCondition("true+false"));
+        assertTrue(complex.isTrue());
+        assertFalse(simple.isTrue());
+
+        // expressions referring to undefined conditions aren't cached
+        assertNull(engine.getCondition("true+undefined"));
+        JavaCondition undefined = new JavaCondition();
+        undefined.setId("undefined");
+        engine.addCondition(undefined);
+        Condition defined = engine.getCondition("true+undefined");
+        assertNotNull(defined);
+        assertFalse(defined.isTrue());
+
+        // registering a condition discards compiled expressions
+        assertNotSame(complex, engine.getCondition("@true && !false"));
+        assertNotSame(simple, engine.getCondition("true+false"));
+    }
+
+    /**
+     * Verifies that the number of cached expressions is bounded.
+     */
+    @Test
+    public void testExpressionCacheIsBounded()
+    {
+        Condition first = engine.getCondition("@true && !false");
+        assertSame(first, engine.getCondition("@true && !false"));
+        String padding = "";
+        for (int i = 0; i < RulesEngineImpl.MAX_EXPRESSIONS; ++i)
+        {
+            assertNotNull(engine.getCondition("@true &&" + padding + "true"));
+            padding += " ";
+        }
+        Condition second = engine.getCondition("@true && !false");
+        assertNotSame(first, second);
+        assertTrue(second.isTrue());
+    }
+
+    /*
+     * Measures how long (in ms) it takes to evaluate expressions and prints the result to standard output.
+     * It is only run if the izpack.benchmark system property is true.
+     */
+    @Test
+    public void measureExpressionEvaluation()
+    {
+        assumeTrue("Benchmarks are only run with -Dizpack.benchmark=true", Boolean.getBoolean("izpack.benchmark"));
+        String[] expressions = {"@true && !false", "@!false || false && true", "@true ^ false", "true+!false",
+                                "false|true"};
+        int iterations = 100000;
+
+        long startMillis = System.currentTimeMillis();
+        for (int i = 0; i < iterations; ++i)
+        {
+            for (String expression : expressions)
+            {
+                assertTrue(engine.isConditionTrue(expression));
+            }
+        }
+        long timeDiff = System.currentTimeMillis() - startMillis;
+
+        System.out.println("Evaluating " + iterations * expressions.length + " expressions took " + timeDiff + "ms");
+    }
+
     @Test
     @SuppressWarnings({ "PointlessBooleanExpression", "unused"})
     public void testComplexNot() throws Exception
@@ -20,11 +20,19 @@
 package com.izforge.izpack.core.substitutor;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.Properties;
 
 import com.izforge.izpack.api.data.Variables;
 import com.izforge.izpack.core.data.DefaultVariables;
+import org.apache.commons.io.IOUtils;
+import org.hamcrest.CoreMatchers;
 import org.hamcrest.core.Is;
 import org.junit.Before;
 import org.junit.Test;
@@ -32,6 +40,7 @@ import org.junit.Test;
 import com.izforge.izpack.api.substitutor.SubstitutionType;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 
+import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.fail;
 
@@ -129,4 +138,157 @@ public class VariableSubstitutorImplTest
             fail("The system variable resolution of ${SYSTEM_user_dir} resulted in an invalid string '" + substituted + "\"");
         }
     }
+
+    /**
+     * Verifies that substituting strings via compiled templates, and reading in bulk, gives the same results as
+     * reading character by character.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testTemplatesAndBulkReadsMatchCharacterReads() throws Exception
+    {
+        String[] inputs = {"", "$", "$$", "${", "${}", "$}", "${MY_PROP", "${MY_PROP}", "${MY_PROP}}", "$MY_PROP$",
+                "$MY_PROP.x", "${MY_PROP }", "${MY_PROP\n}", "a ${UNDEFINED} b", "$MY_PROP2$MY_PROP", "@MY_PROP@",
+                "@{MY_PROP}@", "@MY_PROP", "@{MY_PROP", "%MY_PROP%MY_PROP2", "${ENV[UNDEFINED_ENV_VARIABLE]}x",
+                "${SYSTEM[UNDEFINED_PROPERTY]}", "<a href='$MY_PROP'>\"${PHRASE}\"</a>", "$PHRASE\t$MEANING\r\n"};
+        Properties properties = new Properties();
+        properties.put("MY_PROP", "one \\ <two> & 'three'");
+        properties.put("MY_PROP2", " \t\"2\"");
+        properties.put("PHRASE", "वसुधैव कुटुम्बकम्");
+        properties.put("MEANING", "");
+        Variables variables = new DefaultVariables(properties);
+        for (SubstitutionType type : SubstitutionType.values())
+        {
+            for (boolean braces : new boolean[]{false, true})
+            {
+                VariableSubstitutorImpl substitutor = new VariableSubstitutorImpl(variables);
+                substitutor.setBracesRequired(braces);
+                for (String input : inputs)
+                {
+                    String expected = readCharacters(
+                            new VariableSubstitutorReader(new StringReader(input), variables, type, braces));
+                    String message = input + " (" + type + ", braces=" + braces + ")";
+                    assertEquals(message, expected, substitutor.substitute(input, type));
+                    assertEquals(message, expected, substitutor.substitute(input, type)); // cached
+                    assertEquals(message, expected, IOUtils.toString(
+                            new VariableSubstitutorReader(new StringReader(input), variables, type, braces)));
+
+                    // read with a tiny buffer, so that variables span reads
+                    Reader reader = new VariableSubstitutorReader(new StringReader(input), variables, type, braces);
+                    StringBuilder result = new StringBuilder();
+                    char[] buffer = new char[2];
+                    int read;
+                    while ((read = reader.read(buffer, 0, buffer.length)) != -1)
+                    {
+                        result.append(buffer, 0, read);
+                    }
+                    assertEquals(message, expected, result.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies that large inputs, spanning several reads, are substituted.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testLargeInput() throws Exception
+    {
+        String input = createConfigFile(20000);
+        Variables variables = createConfigVariables();
+        String expected = readCharacters(new VariableSubstitutorReader(
+                new StringReader(input), variables, SubstitutionType.TYPE_PLAIN, false));
+        VariableSubstitutor substitutor = new VariableSubstitutorImpl(variables);
+        assertEquals(expected, substitutor.substitute(input));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        substitutor.substitute(new ByteArrayInputStream(input.getBytes("UTF-8")), out, SubstitutionType.TYPE_PLAIN,
+                               "UTF-8");
+        assertEquals(expected, out.toString("UTF-8"));
+        assertThat(expected, CoreMatchers.containsString("value19999"));
+    }
+
+    /*
+     * Measures how long (in ms) it takes to substitute variables in a large file and in short strings,
+     * and prints the result to standard output.
+     * It is only run if the izpack.benchmark system property is true.
+     */
+    @Test
+    public void measureSubstitutionSpeed() throws Exception
+    {
+        assumeTrue("Benchmarks are only run with -Dizpack.benchmark=true", Boolean.getBoolean("izpack.benchmark"));
+        byte[] input = createConfigFile(200000).getBytes("UTF-8");
+        VariableSubstitutorImpl substitutor = new VariableSubstitutorImpl(createConfigVariables());
+
+        long startMillis = System.currentTimeMillis();
+        for (int i = 0; i < 5; ++i)
+        {
+            substitutor.substitute(new ByteArrayInputStream(input), new ByteArrayOutputStream(),
+                                   SubstitutionType.TYPE_JAVA_PROPERTIES, "UTF-8");
+        }
+        long timeDiff = System.currentTimeMillis() - startMillis;
+        System.out.println("Substituting 5 files of " + input.length / 1024 + " KiB took " + timeDiff + "ms");
+
+        startMillis = System.currentTimeMillis();
+        for (int i = 0; i < 100000; ++i)
+        {
+            substitutor.substitute("${key" + (i % 100) + "}/lib/$key1/app.jar");
+        }
+        timeDiff = System.currentTimeMillis() - startMillis;
+        System.out.println("Substituting 100000 paths took " + timeDiff + "ms");
+    }
+
+    /**
+     * Creates a config file with a variable reference on each line.
+     *
+     * @param lines the number of lines
+     * @return the file content
+     */
+    private static String createConfigFile(int lines)
+    {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lines; ++i)
+        {
+            result.append("# a comment line without any variables in it\n");
+            result.append("property").append(i).append(" = ${key").append(i % 100).append("}/value").append(i)
+                    .append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Creates the variables referenced by {@link #createConfigFile(int)}.
+     *
+     * @return the variables
+     */
+    private static Variables createConfigVariables()
+    {
+        Properties properties = new Properties();
+        for (int i = 0; i < 100; ++i)
+        {
+            properties.put("key" + i, "/opt/app" + i);
+        }
+        return new DefaultVariables(properties);
+    }
+
+    /**
+     * Reads a reader one character at a time.
+     *
+     * @param reader the reader
+     * @return the characters read
+     * @throws IOException for any I/O error
+     */
+    private static String readCharacters(Reader reader) throws IOException
+    {
+        StringBuilder result = new StringBuilder();
+        int data;
+        while ((data = reader.read()) != -1)
+        {
+            result.append((char) data);
+        }
+        return result.toString();
+    }
 }
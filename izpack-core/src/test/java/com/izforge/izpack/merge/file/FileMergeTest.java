@@ -20,6 +20,7 @@
 package com.izforge.izpack.merge.file;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertNotNull;
 
 import java.io.File;
 import java.io.FileFilter;
@@ -28,9 +29,13 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipFile;
 
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.hamcrest.core.Is;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.izforge.izpack.matcher.MergeMatcher;
 
@@ -41,6 +46,9 @@ import com.izforge.izpack.matcher.MergeMatcher;
  */
 public class FileMergeTest
 {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private Map<OutputStream, List<String>> mergeContent = new HashMap<OutputStream, List<String>>();
 
     @Test
@@ -84,6 +92,33 @@ public class FileMergeTest
     }
 
 
+    /**
+     * Verifies that the files of a directory can be merged to an archive.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testMergeDirectoryToArchive() throws Exception
+    {
+        URL url = ClassLoader.getSystemResource("com/izforge/izpack/merge/test");
+        FileMerge fileMerge = new FileMerge(url, "my/dest/path/", mergeContent);
+        File target = temporaryFolder.newFile("target.jar");
+        ZipArchiveOutputStream outputStream = new ZipArchiveOutputStream(target);
+        fileMerge.merge(outputStream);
+        outputStream.close();
+
+        ZipFile zipFile = new ZipFile(target);
+        try
+        {
+            assertNotNull(zipFile.getEntry("my/dest/path/.placeholder"));
+            assertNotNull(zipFile.getEntry("my/dest/path/test space/vim-panel-1.0-SNAPSHOT.jar"));
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
     @Test
     public void findFileInDirectory() throws Exception
     {
@@ -20,19 +20,33 @@
 package com.izforge.izpack.merge.jar;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
 
 import org.hamcrest.core.Is;
 import org.hamcrest.core.StringContains;
@@ -200,4 +214,205 @@ public class JarMergeTest
         assertEquals("META-INF/ok2", allValues.get(1).getName());
     }
 
+    /**
+     * Verifies that entries stored uncompressed are copied verbatim, that compressed entries are copied, and that
+     * entries are only merged once to the same output.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testMergeStoredAndDeflated() throws IOException
+    {
+        byte[] stored = "stored content".getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = "deflated content".getBytes(StandardCharsets.UTF_8);
+        File jar = File.createTempFile("mergetest", ".jar");
+        jar.deleteOnExit();
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+        ZipEntry entry = new ZipEntry("com/foo/stored.txt");
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(stored.length);
+        entry.setCrc(crc.getValue());
+        stream.putNextEntry(entry);
+        stream.write(stored);
+        stream.closeEntry();
+        stream.putNextEntry(new ZipEntry("com/foo/deflated.txt"));
+        stream.write(deflated);
+        stream.closeEntry();
+        stream.putNextEntry(new ZipEntry("com/bar/other.txt"));
+        stream.closeEntry();
+        stream.close();
+
+        File target = File.createTempFile("mergetarget", ".jar");
+        target.deleteOnExit();
+        Map<OutputStream, List<String>> mergeContent = new HashMap<OutputStream, List<String>>();
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(target));
+        new JarMerge(jar.getPath(), "com/foo/", "dest", mergeContent).merge(output);
+        new JarMerge(jar.getPath(), "com/foo/", "dest", mergeContent).merge(output);
+        output.close();
+
+        ZipFile zipFile = new ZipFile(target);
+        try
+        {
+            assertEquals(2, zipFile.size());
+            ZipEntry storedEntry = zipFile.getEntry("dest/stored.txt");
+            assertEquals(ZipEntry.STORED, storedEntry.getMethod());
+            assertArrayEquals(stored, read(zipFile, storedEntry));
+            ZipEntry deflatedEntry = zipFile.getEntry("dest/deflated.txt");
+            assertEquals(ZipEntry.DEFLATED, deflatedEntry.getMethod());
+            assertArrayEquals(deflated, read(zipFile, deflatedEntry));
+            assertNull(zipFile.getEntry("dest/other.txt"));
+        }
+        finally
+        {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Verifies that entries merged to an archive are copied as they are compressed in the jar.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testMergeToArchive() throws IOException
+    {
+        byte[] text = createText();
+        byte[] stored = "stored content".getBytes(StandardCharsets.UTF_8);
+
+        // compress the jar less than the archive, so that copied entries can be distinguished
+        File jar = File.createTempFile("rawtest", ".jar");
+        jar.deleteOnExit();
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+        stream.setLevel(Deflater.BEST_SPEED);
+        stream.putNextEntry(new ZipEntry("com/foo/deflated.txt"));
+        stream.write(text);
+        stream.closeEntry();
+        ZipEntry entry = new ZipEntry("com/foo/stored.txt");
+        CRC32 crc = new CRC32();
+        crc.update(stored);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(stored.length);
+        entry.setCrc(crc.getValue());
+        stream.putNextEntry(entry);
+        stream.write(stored);
+        stream.closeEntry();
+        stream.close();
+
+        File target = File.createTempFile("rawtarget", ".jar");
+        target.deleteOnExit();
+        Map<OutputStream, List<String>> mergeContent = new HashMap<OutputStream, List<String>>();
+        ZipArchiveOutputStream output = new ZipArchiveOutputStream(target);
+        output.setLevel(Deflater.BEST_COMPRESSION);
+        output.putArchiveEntry(new ZipArchiveEntry("recompressed.txt"));
+        output.write(text);
+        output.closeArchiveEntry();
+        new JarMerge(jar.getPath(), "com/foo/", "dest", mergeContent).merge(output);
+        new JarMerge(jar.getPath(), "com/foo/", "dest", mergeContent).merge(output);
+        output.close();
+
+        ZipFile source = new ZipFile(jar);
+        ZipFile zipFile = new ZipFile(target);
+        try
+        {
+            assertEquals(3, zipFile.size());
+            ZipEntry copied = zipFile.getEntry("dest/deflated.txt");
+            assertEquals(ZipEntry.DEFLATED, copied.getMethod());
+            assertEquals(source.getEntry("com/foo/deflated.txt").getCompressedSize(), copied.getCompressedSize());
+            assertTrue(zipFile.getEntry("recompressed.txt").getCompressedSize() < copied.getCompressedSize());
+            assertArrayEquals(text, read(zipFile, copied));
+            ZipEntry storedEntry = zipFile.getEntry("dest/stored.txt");
+            assertEquals(ZipEntry.STORED, storedEntry.getMethod());
+            assertArrayEquals(stored, read(zipFile, storedEntry));
+        }
+        finally
+        {
+            source.close();
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Measures merging 15 packages of a generated jar of 15000 entries, and prints the result to standard output.
+     * <p/>
+     * This is only run if the <tt>izpack.benchmark</tt> system property is <tt>true</tt>.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void measureMerge() throws IOException
+    {
+        assumeTrue("Benchmarks are only run with -Dizpack.benchmark=true", Boolean.getBoolean("izpack.benchmark"));
+        byte[] content = new byte[4096];
+        for (int i = 0; i < content.length; ++i)
+        {
+            content[i] = (byte) ("abcdefghij".charAt(i % 10) + i % 7);
+        }
+        File jar = File.createTempFile("mergemeasure", ".jar");
+        jar.deleteOnExit();
+        JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+        for (int i = 0; i < 15; ++i)
+        {
+            for (int j = 0; j < 1000; ++j)
+            {
+                stream.putNextEntry(new ZipEntry("com/foo/package" + i + "/Class" + j + ".class"));
+                stream.write(content);
+                stream.closeEntry();
+            }
+        }
+        stream.close();
+
+        File target = File.createTempFile("mergemeasuretarget", ".jar");
+        target.deleteOnExit();
+        long start = System.currentTimeMillis();
+        Map<OutputStream, List<String>> mergeContent = new HashMap<OutputStream, List<String>>();
+        JarOutputStream output = new JarOutputStream(new FileOutputStream(target));
+        for (int i = 0; i < 15; ++i)
+        {
+            String path = "com/foo/package" + i + "/";
+            new JarMerge(jar.getPath(), path, path, mergeContent).merge(output);
+        }
+        output.close();
+        long timeDiff = System.currentTimeMillis() - start;
+
+        System.out.println("Merging 15000 entries took " + timeDiff + "ms");
+    }
+
+    /**
+     * Creates compressible text.
+     *
+     * @return the text
+     */
+    private static byte[] createText()
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; ++i)
+        {
+            text.append("line ").append(i % 100).append(" of the text to compress\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an entry of a zip file.
+     *
+     * @param zipFile the zip file
+     * @param entry   the entry
+     * @return the entry content
+     * @throws IOException for any I/O error
+     */
+    private static byte[] read(ZipFile zipFile, ZipEntry entry) throws IOException
+    {
+        InputStream in = zipFile.getInputStream(entry);
+        try
+        {
+            return IOUtils.toByteArray(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
 }
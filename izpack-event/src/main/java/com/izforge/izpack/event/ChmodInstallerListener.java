@@ -22,13 +22,14 @@
 package com.izforge.izpack.event;
 
 import java.io.File;
+import java.util.logging.Logger;
 
 import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.api.data.Pack;
 import com.izforge.izpack.api.data.PackFile;
 import com.izforge.izpack.api.exception.InstallerException;
 import com.izforge.izpack.event.AbstractProgressInstallerListener;
-import com.izforge.izpack.util.FileExecutor;
+import com.izforge.izpack.util.FilePermissions;
 import com.izforge.izpack.util.OsVersion;
 
 /**
@@ -39,6 +40,20 @@ import com.izforge.izpack.util.OsVersion;
  */
 public class ChmodInstallerListener extends AbstractProgressInstallerListener
 {
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(ChmodInstallerListener.class.getName());
+
+    /**
+     * The pending permission changes.
+     */
+    private final FilePermissions permissions = new FilePermissions();
+
+    /**
+     * Determines if permissions can be changed in-process.
+     */
+    private final boolean posix = FilePermissions.isPosixSupported();
 
     /**
      * Constructs an {@code ChmodInstallerListener}.
@@ -114,9 +129,28 @@ public class ChmodInstallerListener extends AbstractProgressInstallerListener
         }
     }
 
+    /**
+     * Applies any permission changes that have been deferred until the pack is complete.
+     *
+     * @param pack the pack
+     */
+    @Override
+    public void afterPack(Pack pack)
+    {
+        applyPermissions();
+    }
+
+    /**
+     * Changes the permissions of a file or directory.
+     * <p/>
+     * Where POSIX permissions are supported by the file system, these are changed in-process immediately. Otherwise,
+     * changes are deferred until the end of the pack, so that they can be applied with a single <tt>chmod</tt>.
+     *
+     * @param path        the file or directory
+     * @param permissions the octal permissions
+     */
     private void chmod(File path, int permissions)
     {
-        String pathSep = System.getProperty("path.separator");
         if (OsVersion.IS_WINDOWS)
         {
             throw new InstallerException("Sorry, chmod not supported yet on windows; use this class OS dependant.");
@@ -126,10 +160,21 @@ public class ChmodInstallerListener extends AbstractProgressInstallerListener
         {
             return;
         }
-        String permStr = Integer.toOctalString(permissions);
-        String[] params = {"chmod", permStr, path.getAbsolutePath()};
-        String[] output = new String[2];
-        FileExecutor fe = new FileExecutor();
-        fe.executeCommand(params, output);
+        this.permissions.set(path, permissions);
+        if (posix)
+        {
+            applyPermissions();
+        }
+    }
+
+    /**
+     * Applies pending permission changes.
+     */
+    private void applyPermissions()
+    {
+        for (File file : permissions.apply())
+        {
+            logger.warning("Failed to change permissions of " + file.getAbsolutePath());
+        }
     }
 }
@@ -26,6 +26,7 @@ import com.izforge.izpack.api.adaptator.IXMLParser;
 import com.izforge.izpack.api.adaptator.impl.XMLParser;
 import com.izforge.izpack.api.data.AutomatedInstallData;
 import com.izforge.izpack.api.data.Info;
+import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.api.resource.Locales;
 import com.izforge.izpack.installer.base.InstallerBase;
 import com.izforge.izpack.installer.data.UninstallData;
@@ -51,6 +52,10 @@ import javax.xml.transform.stream.StreamSource;
  */
 public class AutomatedInstaller implements InstallerBase
 {
+    /**
+     * The installation record attribute that overrides the {@link InstallData#UNPACKER_THREADS} variable.
+     */
+    public static final String UNPACKER_THREADS_ATTR = "unpacker-threads";
 
     /**
      * The panels.
@@ -133,6 +138,11 @@ public class AutomatedInstaller implements InstallerBase
             installData.setInstallationRecord(installRecord);
             String code = installRecord.getAttribute("langpack", "eng");
             locales.setLocale(code);
+            String threads = installRecord.getAttribute(UNPACKER_THREADS_ATTR);
+            if (threads != null)
+            {
+                installData.setVariable(InstallData.UNPACKER_THREADS, threads);
+            }
         }
 
         installData.setMessages(locales.getMessages());
@@ -7,14 +7,13 @@ import com.izforge.izpack.api.exception.ResourceException;
 import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.resource.Locales;
 import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.core.io.PackIndexReader;
 import com.izforge.izpack.util.*;
 import org.apache.commons.io.IOUtils;
 import org.picocontainer.injectors.Provider;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.net.InetAddress;
 import java.util.*;
 import java.util.logging.Level;
@@ -86,25 +85,23 @@ public abstract class AbstractInstallDataProvider implements Provider
         // We read the panels order data
         List<Panel> panelsOrder = (List<Panel>) resources.getObject("panelsOrder");
 
-        // We read the packs data
-        InputStream in = resources.getInputStream("packs.info");
-        ObjectInputStream objIn = new ObjectInputStream(in);
-        List<PackInfo> packs;
+        // We read the packs data. Only the pack headers are needed; the files are read by the unpacker
+        PackIndexReader index = new PackIndexReader(resources.getInputStream("packs.info"));
+        List<Pack> packs;
         try
         {
-            packs = (List<PackInfo>) objIn.readObject();
+            packs = index.getPacks();
         }
         finally
         {
-            IOUtils.closeQuietly(objIn);
+            IOUtils.closeQuietly(index);
         }
 
         List<Pack> availablePacks = new ArrayList<Pack>();
         List<Pack> allPacks = new ArrayList<Pack>();
 
-        for (PackInfo packInfo : packs)
+        for (Pack pack : packs)
         {
-            Pack pack = packInfo.getPack();
             allPacks.add(pack);
             if (matcher.matchesCurrentPlatform(pack.getOsConstraints()))
             {
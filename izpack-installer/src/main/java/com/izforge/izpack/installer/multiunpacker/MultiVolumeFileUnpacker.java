@@ -84,7 +84,15 @@ public class MultiVolumeFileUnpacker extends FileUnpacker
         long position = ((XPackFile) packFile).getArchiveFilePosition();
 
         long filePointer = volumes.getFilePointer();
-        if (filePointer < position)
+        if (volumes.isSeekable())
+        {
+            if (filePointer != position)
+            {
+                logger.fine("Seeking to file " + target.getName() + " (" + filePointer + "->" + position + ")");
+                volumes.seek(position);
+            }
+        }
+        else if (filePointer < position)
         {
             // need to skip to the correct position
             logger.fine("Skipping bytes to get to file " + target.getName()
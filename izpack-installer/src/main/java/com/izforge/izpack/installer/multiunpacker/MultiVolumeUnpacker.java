@@ -33,6 +33,7 @@ import com.izforge.izpack.api.handler.Prompt;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.io.FileSpanningInputStream;
+import com.izforge.izpack.core.io.VolumeBlockIndex;
 import com.izforge.izpack.core.io.VolumeLocator;
 import com.izforge.izpack.installer.data.UninstallData;
 import com.izforge.izpack.installer.event.InstallerListeners;
@@ -129,6 +130,7 @@ public class MultiVolumeUnpacker extends UnpackerBase
             objectIn = new ObjectInputStream(in);
             int volumeCount = objectIn.readInt();
             String volumeName = objectIn.readUTF();
+            VolumeBlockIndex index = objectIn.readBoolean() ? VolumeBlockIndex.read(objectIn) : null;
             logger.fine("Reading from " + volumeCount + " volumes with basename " + volumeName + " ");
 
             String mediaPath = getInstallData().getMediaPath();
@@ -142,7 +144,7 @@ public class MultiVolumeUnpacker extends UnpackerBase
             {
                 volume = locator.getVolume(volume.getAbsolutePath(), false);
             }
-            volumes = new FileSpanningInputStream(volume, volumeCount);
+            volumes = new FileSpanningInputStream(volume, volumeCount, index);
             volumes.setLocator(locator);
         }
         catch (IOException exception)
@@ -23,13 +23,18 @@ package com.izforge.izpack.installer.unpacker;
 
 import com.izforge.izpack.api.data.Blockable;
 import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.ParsableFile;
 import com.izforge.izpack.api.exception.InstallerException;
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.util.os.FileQueue;
 import com.izforge.izpack.util.os.FileQueueMove;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.logging.Logger;
 
 
@@ -68,6 +73,26 @@ public abstract class FileUnpacker
      */
     private boolean queued;
 
+    /**
+     * Determines if variables were substituted in the file as it was copied.
+     */
+    private boolean parsed;
+
+    /**
+     * The progress of the pack being unpacked. May be {@code null}
+     */
+    private PackProgress progress;
+
+    /**
+     * The parsable file to substitute variables in as the file is copied. May be {@code null}
+     */
+    private ParsableFile parsable;
+
+    /**
+     * The variable substitutor, used if {@link #parsable} is set.
+     */
+    private VariableSubstitutor substitutor;
+
     /**
      * The logger.
      */
@@ -98,6 +123,39 @@ public abstract class FileUnpacker
     public abstract void unpack(PackFile file, InputStream packInputStream, File target)
             throws IOException, InstallerException;
 
+    /**
+     * Sets the progress of the pack being unpacked, to be updated as bytes are copied.
+     *
+     * @param progress the pack progress. May be {@code null}
+     */
+    void setProgress(PackProgress progress)
+    {
+        this.progress = progress;
+    }
+
+    /**
+     * Sets the parsable file to substitute variables in as the file is copied, instead of parsing the file once it
+     * has been written.
+     *
+     * @param parsable    the parsable file. May be {@code null}
+     * @param substitutor the variable substitutor
+     */
+    void setParsable(ParsableFile parsable, VariableSubstitutor substitutor)
+    {
+        this.parsable = parsable;
+        this.substitutor = substitutor;
+    }
+
+    /**
+     * Determines if variables were substituted in the file as it was copied.
+     *
+     * @return <tt>true</tt> if a {@link #setParsable parsable file} was set and the file has been copied
+     */
+    public boolean isParsed()
+    {
+        return parsed;
+    }
+
     /**
      * Determines if the file was queued.
      *
@@ -112,16 +170,26 @@ public abstract class FileUnpacker
      * Copies an input stream to a target, setting its timestamp to that of the pack file.
      * <p/>
      * If the target is a blockable file, then a temporary file will be created, and the file queued.
+     * <p/>
+     * If the pack file has a {@link PackFile#getDigest() digest}, it is verified against the bytes as they are copied.
+     * <p/>
+     * If a {@link #setParsable parsable file} is set, variables are substituted in the bytes as they are written.
      *
      * @param file   the pack file
      * @param in     the pack file stream
      * @param target the file to write to
      * @return the number of bytes actually copied
      * @throws InterruptedIOException if the copy operation is cancelled
-     * @throws IOException            for any I/O error
+     * @throws IOException            for any I/O error, or if the copied bytes don't match the digest
      */
     protected long copy(PackFile file, InputStream in, File target) throws IOException
     {
+        MessageDigest digest = null;
+        if (file.getDigest() != null)
+        {
+            digest = PackFile.createDigest();
+            in = new DigestInputStream(in, digest);
+        }
         OutputStream out = getTarget(file, target);
         byte[] buffer = new byte[5120];
         long bytesCopied = 0;
@@ -129,14 +197,19 @@ public abstract class FileUnpacker
         logger.fine("|- Copying to file system (size: " + bytesToCopy + " bytes)");
         try
         {
+            if (parsable != null)
+            {
+                bytesCopied = substitute(buffer, in, out, bytesToCopy);
+            }
             while (bytesCopied < bytesToCopy)
             {
-                if (cancellable.isCancelled())
+                checkCancelled();
+                long copied = copy(file, buffer, in, out, bytesCopied);
+                if (progress != null)
                 {
-                    // operation cancelled
-                    throw new InterruptedIOException("Copy operation cancelled");
+                    progress.add(copied - bytesCopied);
                 }
-                bytesCopied = copy(file, buffer, in, out, bytesCopied);
+                bytesCopied = copied;
             }
         }
         finally
@@ -144,11 +217,71 @@ public abstract class FileUnpacker
             IOUtils.closeQuietly(out);
         }
 
+        if (digest != null && !MessageDigest.isEqual(file.getDigest(), digest.digest()))
+        {
+            FileUtils.deleteQuietly(tmpTarget != null ? tmpTarget : target);
+            throw new IOException("Digest mismatch when unpacking " + target + " (installer corrupted?)");
+        }
+
         postCopy(file);
+        parsed = parsable != null;
 
         return bytesCopied;
     }
 
+    /**
+     * Copies an input stream to an output stream, substituting variables in the {@link #setParsable parsable file}.
+     * <p/>
+     * This substitutes variables in the same way as {@link ScriptParser}: characters are decoded and encoded using
+     * the parsable file's encoding, or the platform default if none is specified.
+     *
+     * @param buffer      the buffer to use
+     * @param in          the pack file stream
+     * @param out         the stream to write to
+     * @param bytesToCopy the number of bytes to read from the pack file stream
+     * @return the number of bytes read from the pack file stream
+     * @throws InterruptedIOException if the copy operation is cancelled
+     * @throws IOException            for any I/O error, or if substitution fails
+     */
+    private long substitute(byte[] buffer, InputStream in, OutputStream out, long bytesToCopy)
+            throws IOException
+    {
+        logger.fine("|- Substituting variables (type: " + parsable.getType() + ")");
+        String encoding = parsable.getEncoding() != null ? parsable.getEncoding() : Charset.defaultCharset().name();
+        PackFileInputStream source = new PackFileInputStream(buffer, in, bytesToCopy);
+        Reader reader = new BufferedReader(new InputStreamReader(source, encoding), 5120);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, encoding), 5120);
+        try
+        {
+            substitutor.substitute(reader, writer, parsable.getType());
+            writer.flush();
+        }
+        catch (Exception exception)
+        {
+            if (exception instanceof IOException)
+            {
+                // read errors and cancellation are reported as they are
+                throw (IOException) exception;
+            }
+            throw new IOException("Failed to substitute variables in " + parsable.getPath(), exception);
+        }
+        return source.getBytesRead();
+    }
+
+    /**
+     * Throws an exception if the copy operation has been cancelled.
+     *
+     * @throws InterruptedIOException if the copy operation is cancelled
+     */
+    private void checkCancelled() throws InterruptedIOException
+    {
+        if (cancellable.isCancelled())
+        {
+            // operation cancelled
+            throw new InterruptedIOException("Copy operation cancelled");
+        }
+    }
+
     /**
      * Invoked after copying is complete to set the last modified timestamp, and queue blockable files.
      *
@@ -279,4 +412,67 @@ public abstract class FileUnpacker
         queued = true;
     }
 
+    /**
+     * Reads a pack file's bytes from the pack stream, for variable substitution.
+     * <p/>
+     * Reads go through {@link FileUnpacker#read(byte[], InputStream, int)}, are bounded by the length of the file,
+     * and update the pack progress.
+     */
+    private class PackFileInputStream extends InputStream
+    {
+        private final byte[] buffer;
+
+        private final InputStream in;
+
+        private final long length;
+
+        private long bytesRead;
+
+        PackFileInputStream(byte[] buffer, InputStream in, long length)
+        {
+            this.buffer = buffer;
+            this.in = in;
+            this.length = length;
+        }
+
+        public long getBytesRead()
+        {
+            return bytesRead;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (len == 0)
+            {
+                return 0;
+            }
+            if (bytesRead == length)
+            {
+                return -1;
+            }
+            checkCancelled();
+            int maxBytes = (int) Math.min(Math.min(length - bytesRead, buffer.length), len);
+            int count = FileUnpacker.this.read(buffer, in, maxBytes);
+            if (count == -1)
+            {
+                throw new IOException("Unexpected end of stream (installer corrupted?)");
+            }
+            System.arraycopy(buffer, 0, b, off, count);
+            bytesRead += count;
+            if (progress != null)
+            {
+                progress.add(count);
+            }
+            return count;
+        }
+    }
+
 }
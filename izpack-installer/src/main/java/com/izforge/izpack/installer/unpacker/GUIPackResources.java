@@ -1,11 +1,17 @@
 package com.izforge.izpack.installer.unpacker;
 
 import com.izforge.izpack.api.data.InstallData;
+import com.izforge.izpack.api.data.Pack;
 import com.izforge.izpack.api.exception.ResourceException;
 import com.izforge.izpack.api.exception.ResourceInterruptedException;
+import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.resource.Resources;
-import com.izforge.izpack.installer.web.WebRepositoryAccessor;
+import com.izforge.izpack.installer.web.WebAccessor;
+import com.izforge.izpack.installer.web.WebPackFetcher;
+import com.izforge.izpack.util.CleanupClient;
+import com.izforge.izpack.util.Housekeeper;
 import com.izforge.izpack.util.IoHelper;
+import org.apache.commons.io.IOUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -13,29 +19,59 @@ import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * {@link PackResources} implementation for the GUI-based installer.
  * <p/>
- * This supports both local and web-based pack resources.
+ * This supports both local and web-based pack resources. Web-based packs are streamed as they download, and the
+ * packs selected after the one being unpacked are downloaded in the background. The downloads are stopped, and the
+ * downloaded pack jars deleted, when the installer exits.
  */
-public class GUIPackResources extends AbstractPackResources
+public class GUIPackResources extends AbstractPackResources implements CleanupClient
 {
     /**
      * The logger.
      */
     private static final Logger logger = Logger.getLogger(GUIPackResources.class.getName());
 
+    /**
+     * The fetcher used to download web-based packs. Created on first use.
+     */
+    private WebPackFetcher fetcher;
+
     /**
      * Constructs a {@code GUIPackResources}.
      *
      * @param resources   the resources
      * @param installData the installation data
+     * @param housekeeper the house-keeper
      */
-    public GUIPackResources(Resources resources, InstallData installData)
+    public GUIPackResources(Resources resources, InstallData installData, Housekeeper housekeeper)
     {
         super(resources, installData);
+        housekeeper.registerForCleanup(this);
+    }
+
+    /**
+     * Stops any downloads, and deletes the downloaded pack jars.
+     */
+    @Override
+    public void cleanUp()
+    {
+        WebPackFetcher current;
+        synchronized (this)
+        {
+            current = fetcher;
+            fetcher = null;
+        }
+        if (current != null)
+        {
+            current.shutdown();
+        }
     }
 
     @Override
@@ -65,26 +101,23 @@ public class GUIPackResources extends AbstractPackResources
         }
         else
         {
-            String packURL = webDirURL + "/" + baseName + ".pack-" + name + ".jar";
-            logger.info("Downloading remote pack " + packURL);
-            String tempFolder = IoHelper.translatePath(installData.getInfo().getUninstallerPath()
-                    + WEB_TEMP_SUB_PATH, installData.getVariables());
-            String tempFile;
+            WebPackFetcher.Download download;
             try
             {
-                tempFile = WebRepositoryAccessor.getCachedUrl(packURL, tempFolder);
-                packLocalFile = new File(tempFile);
-            }
-            catch (InterruptedIOException exception)
-            {
-                throw new ResourceInterruptedException("Retrieval of " + webDirURL + " interrupted", exception);
+                download = fetch(name, webDirURL, installerDir, baseName);
+
+                // download the packs that follow in the background, while this one is unpacked
+                List<Pack> selected = installData.getSelectedPacks();
+                for (int i = indexOf(selected, name) + 1; i > 0 && i < selected.size(); ++i)
+                {
+                    fetch(selected.get(i).getName(), webDirURL, installerDir, baseName);
+                }
             }
             catch (IOException exception)
             {
                 throw new ResourceException("Failed to read " + webDirURL, exception);
             }
-
-            path = "jar:" + packLocalFile.getPath() + "!/packs/pack-" + name;
+            return getPackEntry(download, name);
         }
 
         try
@@ -99,4 +132,106 @@ public class GUIPackResources extends AbstractPackResources
         return result;
     }
 
+    /**
+     * Starts downloading a pack jar, if it isn't local and hasn't already been requested.
+     *
+     * @param name         the pack name
+     * @param webDirURL    the web URL to download from
+     * @param installerDir the directory containing the installer jar
+     * @param baseName     the installer base name
+     * @return the download, or {@code null} if the pack jar is local
+     * @throws IOException if the pack URL is invalid
+     */
+    private WebPackFetcher.Download fetch(String name, String webDirURL, File installerDir, String baseName)
+            throws IOException
+    {
+        String packFileName = baseName + ".pack-" + name + ".jar";
+        if (new File(installerDir, packFileName).canRead())
+        {
+            return null;
+        }
+        String packURL = webDirURL + "/" + packFileName;
+        return getFetcher().fetch(packURL, packFileName);
+    }
+
+    /**
+     * Returns the fetcher used to download pack jars, creating it if required.
+     *
+     * @return the fetcher
+     */
+    private synchronized WebPackFetcher getFetcher()
+    {
+        if (fetcher == null)
+        {
+            InstallData installData = getInstallData();
+            String tempFolder = IoHelper.translatePath(installData.getInfo().getUninstallerPath()
+                    + WEB_TEMP_SUB_PATH, installData.getVariables());
+
+            // installs the dialog used to prompt for passwords
+            new WebAccessor(null);
+            fetcher = new WebPackFetcher(new File(tempFolder), WebPackFetcher.DEFAULT_THREADS);
+        }
+        return fetcher;
+    }
+
+    /**
+     * Returns a stream to the pack entry of a pack jar, as it downloads.
+     *
+     * @param download the pack jar download
+     * @param name     the pack name
+     * @return a stream to the pack entry
+     * @throws ResourceInterruptedException if the download is interrupted
+     * @throws ResourceException            if the pack entry cannot be read
+     */
+    private InputStream getPackEntry(WebPackFetcher.Download download, String name)
+    {
+        logger.info("Downloading remote pack " + download.getURL());
+        String entryName = "packs/pack-" + name;
+        ZipInputStream result = new ZipInputStream(download.openStream());
+        boolean found = false;
+        try
+        {
+            ZipEntry entry;
+            while (!found && (entry = result.getNextEntry()) != null)
+            {
+                found = entry.getName().equals(entryName);
+            }
+        }
+        catch (InterruptedIOException exception)
+        {
+            IOUtils.closeQuietly(result);
+            throw new ResourceInterruptedException("Retrieval of " + download.getURL() + " interrupted", exception);
+        }
+        catch (IOException exception)
+        {
+            IOUtils.closeQuietly(result);
+            throw new ResourceException("Failed to read " + download.getURL(), exception);
+        }
+        if (!found)
+        {
+            IOUtils.closeQuietly(result);
+            throw new ResourceNotFoundException("Pack " + entryName + " not found in " + download.getURL());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of a pack.
+     *
+     * @param packs the packs
+     * @param name  the pack name
+     * @return the index of the pack, or {@code -1} if it isn't present
+     */
+    private static int indexOf(List<Pack> packs, String name)
+    {
+        for (int i = 0; i < packs.size(); ++i)
+        {
+            if (packs.get(i).getName().equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
 }
@@ -0,0 +1,108 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.event.ByteProgressListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the no. of bytes of a pack that have been unpacked or skipped, and notifies a {@link ByteProgressListener}.
+ * <p/>
+ * This class is thread safe, so that files extracted by worker threads can report their progress.
+ */
+class PackProgress
+{
+    /**
+     * The listener to notify.
+     */
+    private final ByteProgressListener listener;
+
+    /**
+     * The total no. of bytes in the pack.
+     */
+    private final long totalBytes;
+
+    /**
+     * The no. of bytes processed.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * The no. of bytes last reported to the listener.
+     */
+    private long reported;
+
+    /**
+     * Constructs a <tt>PackProgress</tt>.
+     *
+     * @param listener   the listener to notify
+     * @param totalBytes the total no. of bytes in the pack
+     */
+    PackProgress(ByteProgressListener listener, long totalBytes)
+    {
+        this.listener = listener;
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * Adds to the no. of bytes processed.
+     * <p/>
+     * This may be invoked from several threads. A thread can be overtaken between adding its bytes and notifying the
+     * listener, so a total lower than one already reported is dropped rather than moving the progress backwards.
+     *
+     * @param count the no. of bytes processed since the last call
+     */
+    void add(long count)
+    {
+        if (count > 0 && totalBytes > 0)
+        {
+            report(Math.min(bytes.addAndGet(count), totalBytes));
+        }
+    }
+
+    /**
+     * Marks all of the pack's bytes as processed.
+     * <p/>
+     * This accounts for any files that were processed without their bytes being reported.
+     */
+    void complete()
+    {
+        if (totalBytes > 0)
+        {
+            bytes.set(totalBytes);
+            report(totalBytes);
+        }
+    }
+
+    /**
+     * Notifies the listener of the no. of bytes processed, if it exceeds that last reported.
+     *
+     * @param processed the no. of bytes processed
+     */
+    private synchronized void report(long processed)
+    {
+        if (processed > reported)
+        {
+            reported = processed;
+            listener.byteProgress(processed, totalBytes);
+        }
+    }
+}
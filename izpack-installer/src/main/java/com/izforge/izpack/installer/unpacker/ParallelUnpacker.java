@@ -0,0 +1,494 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.InstallData;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.exception.InstallerException;
+import com.izforge.izpack.api.handler.Prompt;
+import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.core.io.PackIndexReader;
+import com.izforge.izpack.installer.data.UninstallData;
+import com.izforge.izpack.installer.event.InstallerListeners;
+import com.izforge.izpack.util.Housekeeper;
+import com.izforge.izpack.util.IoHelper;
+import com.izforge.izpack.util.PlatformModelMatcher;
+import com.izforge.izpack.util.os.FileQueue;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Unpacker that decompresses and writes files on a pool of worker threads.
+ * <p/>
+ * The installer thread reads the pack stream, and demultiplexes it into per-file chunks which are held in memory up to
+ * {@link #MEMORY_THRESHOLD} bytes, and spilled to a temporary file beyond that. The chunks are then extracted
+ * concurrently.
+ * <p/>
+ * Directory creation, uninstallation data, {@link InstallerListeners#beforeFile beforeFile} notification, progress
+ * and overwrite prompts all remain on the installer thread, in pack order. {@link InstallerListeners#afterFile
+ * afterFile} notifications are also made on the installer thread, in pack order, once the corresponding file has been
+ * written. All of a pack's files are written before its parsable and executable files are processed.
+ * <p/>
+ * Back-references, Pack200 jars, loose packs, files in solid blocks, blockable files and files whose variables are
+ * substituted on extraction are extracted by the installer thread, as for {@link Unpacker}.
+ * <p/>
+ * The number of threads is determined by the {@link InstallData#UNPACKER_THREADS} variable, defaulting to the
+ * number of available processors. A value of <tt>1</tt> extracts all files sequentially.
+ */
+public class ParallelUnpacker extends UnpackerBase
+{
+    /**
+     * The size above which file chunks are spilled to a temporary file.
+     */
+    static final int MEMORY_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(ParallelUnpacker.class.getName());
+
+    /**
+     * The files being extracted, in pack order.
+     */
+    private final Deque<PendingFile> pending = new ArrayDeque<PendingFile>();
+
+    /**
+     * The targets of the files being extracted.
+     */
+    private final Set<File> pendingTargets = new HashSet<File>();
+
+    /**
+     * Determines if extraction should be cancelled.
+     */
+    private final Cancellable cancellable;
+
+    /**
+     * The worker threads, or {@code null} if files are extracted sequentially.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The maximum no. of files that may be in flight.
+     */
+    private int maxPending;
+
+    /**
+     * Constructs a <tt>ParallelUnpacker</tt>.
+     *
+     * @param installData         the installation data
+     * @param resources           the pack resources
+     * @param rules               the rules engine
+     * @param variableSubstitutor the variable substituter
+     * @param uninstallData       the uninstallation data
+     * @param factory             the file queue factory
+     * @param housekeeper         the housekeeper
+     * @param listeners           the listeners
+     * @param prompt              the prompt
+     * @param matcher             the platform-model matcher
+     */
+    public ParallelUnpacker(InstallData installData, PackResources resources, RulesEngine rules,
+                            VariableSubstitutor variableSubstitutor, UninstallData uninstallData,
+                            FileQueueFactory factory, Housekeeper housekeeper, InstallerListeners listeners,
+                            Prompt prompt, PlatformModelMatcher matcher)
+    {
+        super(installData, resources, rules, variableSubstitutor, uninstallData, factory, housekeeper, listeners,
+              prompt, matcher);
+        cancellable = new Cancellable()
+        {
+            @Override
+            public boolean isCancelled()
+            {
+                return isInterrupted();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of threads used to extract files.
+     *
+     * @return the number of threads
+     */
+    public int getThreads()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        String value = getInstallData().getVariable(InstallData.UNPACKER_THREADS);
+        int threads = processors;
+        if (value != null && !value.trim().isEmpty())
+        {
+            try
+            {
+                threads = Integer.parseInt(value.trim());
+            }
+            catch (NumberFormatException exception)
+            {
+                logger.warning("Invalid " + InstallData.UNPACKER_THREADS + ": " + value);
+            }
+            if (threads <= 0)
+            {
+                threads = processors;
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * Unpacks the selected packs.
+     *
+     * @param index the index of the packs to unpack
+     * @param queue the file queue, or {@code null} if queuing is not supported
+     * @throws InstallerException for any error
+     * @throws IOException        if the pack index cannot be read
+     */
+    @Override
+    protected void unpack(PackIndexReader index, FileQueue queue) throws IOException
+    {
+        int threads = getThreads();
+        logger.fine("Unpacking using " + threads + " thread(s)");
+        if (threads > 1)
+        {
+            final AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "izpack-unpack-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            maxPending = threads * 2;
+        }
+        try
+        {
+            super.unpack(index, queue);
+        }
+        finally
+        {
+            discard();
+            if (executor != null)
+            {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Unpacks a pack file.
+     * <p/>
+     * If the target is still being written by an earlier file, this waits for it to complete first, so that overwrite
+     * checks see the file on disk.
+     *
+     * @param packFile        the pack file
+     * @param packInputStream the pack file input stream
+     * @param fileNo          the pack file number
+     * @param pack            the pack that the pack file comes from
+     * @param queue           the file queue, or {@code null} if queuing is not supported
+     * @throws IOException for any I/O error
+     */
+    @Override
+    protected void unpack(PackFile packFile, InputStream packInputStream, int fileNo, Pack pack, FileQueue queue)
+            throws IOException
+    {
+        if (!pending.isEmpty())
+        {
+            File target = new File(IoHelper.translatePath(packFile.getTargetPath(), getInstallData().getVariables()));
+            while (pendingTargets.contains(target))
+            {
+                completeNext();
+            }
+        }
+        super.unpack(packFile, packInputStream, fileNo, pack, queue);
+    }
+
+    /**
+     * Extracts a pack file.
+     * <p/>
+     * Files stored in the pack stream are read into a chunk and extracted by a worker thread. All other files are
+     * extracted directly.
+     *
+     * @param packFile        the pack file
+     * @param target          the file to write to
+     * @param packInputStream the pack file input stream
+     * @param pack            the pack that the pack file comes from
+     * @param queue           the file queue, or {@code null} if queuing is not supported
+     * @throws IOException for any I/O error
+     */
+    @Override
+    protected void extract(PackFile packFile, File target, InputStream packInputStream, Pack pack, FileQueue queue)
+            throws IOException
+    {
+        if (executor == null || pack.isLoose() || packFile.isBackReference() || packFile.isPack200Jar()
+                || packFile.isInBlock() || (queue != null && packFile.blockable() != Blockable.BLOCKABLE_NONE)
+                || getInlineParsable(packFile, target, queue) != null)
+        {
+            if (getListeners().isFileListener())
+            {
+                // preserve the order of afterFile notifications
+                completeAll();
+            }
+            super.extract(packFile, target, packInputStream, pack, queue);
+        }
+        else
+        {
+            if (pending.size() >= maxPending)
+            {
+                completeNext();
+            }
+            DeferredFileOutputStream chunk = read(packFile, packInputStream);
+            Future<Void> future = executor.submit(new Extractor(packFile, target, pack, chunk));
+            pending.add(new PendingFile(packFile, target, pack, future));
+            pendingTargets.add(target);
+        }
+    }
+
+    /**
+     * Waits for all of a pack's files to be written.
+     *
+     * @param pack the pack
+     * @throws IOException for any I/O error
+     */
+    @Override
+    protected void completeExtraction(Pack pack) throws IOException
+    {
+        completeAll();
+    }
+
+    /**
+     * Waits for all files in flight to be written.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void completeAll() throws IOException
+    {
+        while (!pending.isEmpty())
+        {
+            completeNext();
+        }
+    }
+
+    /**
+     * Waits for the oldest file in flight to be written, and notifies the listeners.
+     *
+     * @throws IOException for any I/O error
+     */
+    private void completeNext() throws IOException
+    {
+        PendingFile file = pending.poll();
+        pendingTargets.remove(file.target);
+        try
+        {
+            file.future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while unpacking " + file.target);
+        }
+        catch (ExecutionException exception)
+        {
+            Throwable cause = exception.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new InstallerException(cause);
+        }
+        checkInterrupt();
+        getListeners().afterFile(file.target, file.packFile, file.pack);
+    }
+
+    /**
+     * Discards any files in flight, waiting for them to complete so that their chunks are released.
+     */
+    private void discard()
+    {
+        for (PendingFile file : pending)
+        {
+            try
+            {
+                file.future.get();
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch (ExecutionException ignore)
+            {
+                // the installation is already failing
+            }
+        }
+        pending.clear();
+        pendingTargets.clear();
+    }
+
+    /**
+     * Reads the stored bytes of a pack file into a chunk.
+     *
+     * @param packFile        the pack file
+     * @param packInputStream the pack file input stream
+     * @return the chunk
+     * @throws IOException for any I/O error, or if the pack stream is truncated
+     */
+    private DeferredFileOutputStream read(PackFile packFile, InputStream packInputStream) throws IOException
+    {
+        DeferredFileOutputStream chunk = DeferredFileOutputStream.builder()
+                .setThreshold(MEMORY_THRESHOLD)
+                .setPrefix("izpack-unpack")
+                .setSuffix(".tmp")
+                .get();
+        try
+        {
+            long size = packFile.size();
+            long read;
+            try
+            {
+                read = IOUtils.copyLarge(packInputStream, chunk, 0, size);
+            }
+            finally
+            {
+                chunk.close();
+            }
+            if (read != size)
+            {
+                throw new IOException("Unexpected end of stream (installer corrupted?)");
+            }
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            delete(chunk);
+            throw exception;
+        }
+        return chunk;
+    }
+
+    /**
+     * Deletes the temporary file backing a chunk, if any.
+     *
+     * @param chunk the chunk
+     */
+    private static void delete(DeferredFileOutputStream chunk)
+    {
+        Path path = chunk.getPath();
+        if (!chunk.isInMemory() && path != null)
+        {
+            try
+            {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException exception)
+            {
+                logger.log(Level.WARNING, "Failed to delete " + path, exception);
+            }
+        }
+    }
+
+    /**
+     * Extracts a chunk to its target.
+     */
+    private class Extractor implements Callable<Void>
+    {
+        private final PackFile packFile;
+
+        private final File target;
+
+        private final Pack pack;
+
+        private final DeferredFileOutputStream chunk;
+
+        private final PackProgress progress = getPackProgress();
+
+        Extractor(PackFile packFile, File target, Pack pack, DeferredFileOutputStream chunk)
+        {
+            this.packFile = packFile;
+            this.target = target;
+            this.pack = pack;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public Void call() throws Exception
+        {
+            try (InputStream in = chunk.toInputStream())
+            {
+                FileUnpacker unpacker = createFileUnpacker(packFile, pack, null, cancellable);
+                unpacker.setProgress(progress);
+                logger.fine("|- Extracting file using " + unpacker.getClass().getName() + ")");
+                unpacker.unpack(packFile, in, target);
+            }
+            finally
+            {
+                delete(chunk);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A file in flight.
+     */
+    private static class PendingFile
+    {
+        private final PackFile packFile;
+
+        private final File target;
+
+        private final Pack pack;
+
+        private final Future<Void> future;
+
+        PendingFile(PackFile packFile, File target, Pack pack, Future<Void> future)
+        {
+            this.packFile = packFile;
+            this.target = target;
+            this.pack = pack;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.data.PackCompression;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.util.StreamSupport;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * A solid block of small pack files, compressed together in the pack stream.
+ * <p/>
+ * The compressed block is read as soon as the first of its files is reached in the pack stream, but is only
+ * decompressed when one of its files is extracted. Files that are skipped therefore cost at most one block, and a
+ * block whose files are all skipped is never decompressed.
+ */
+class SolidBlock
+{
+    /**
+     * The name of the pack stream resource the block was read from.
+     */
+    private final String streamResourceName;
+
+    /**
+     * The offset of the block in the pack stream.
+     */
+    private final long streamOffset;
+
+    /**
+     * The compression format of the block.
+     */
+    private final PackCompression compression;
+
+    /**
+     * The compressed block, or {@code null} once it has been decompressed.
+     */
+    private byte[] compressed;
+
+    /**
+     * The decompressed block, or {@code null} if it hasn't been decompressed yet.
+     */
+    private byte[] data;
+
+    /**
+     * Constructs a <tt>SolidBlock</tt>.
+     *
+     * @param file        a file of the block
+     * @param compressed  the compressed block
+     * @param compression the compression format of the block
+     */
+    private SolidBlock(PackFile file, byte[] compressed, PackCompression compression)
+    {
+        this.streamResourceName = file.getStreamResourceName();
+        this.streamOffset = file.getStreamOffset();
+        this.compressed = compressed;
+        this.compression = compression;
+    }
+
+    /**
+     * Reads the block that a file is stored in.
+     *
+     * @param file        the file. Its stream offset and size are those of the block
+     * @param in          the pack stream, positioned at the start of the block
+     * @param compression the compression format of the block
+     * @return the block
+     * @throws IOException for any I/O error, or if the pack stream is truncated
+     */
+    static SolidBlock read(PackFile file, InputStream in, PackCompression compression) throws IOException
+    {
+        byte[] compressed = new byte[(int) file.size()];
+        if (IOUtils.read(in, compressed) != compressed.length)
+        {
+            throw new IOException("Unexpected end of stream (installer corrupted?)");
+        }
+        return new SolidBlock(file, compressed, compression);
+    }
+
+    /**
+     * Determines if a file is stored in this block.
+     *
+     * @param file the file. For back references, this must be the linked file
+     * @return {@code true} if the file is stored in this block
+     */
+    boolean contains(PackFile file)
+    {
+        return file.isInBlock() && file.getStreamOffset() == streamOffset
+                && Objects.equals(file.getStreamResourceName(), streamResourceName);
+    }
+
+    /**
+     * Returns a stream to read the content of a file of the block.
+     * <p/>
+     * The block is decompressed the first time this is called.
+     *
+     * @param file the file
+     * @return the file content
+     * @throws IOException if the block cannot be decompressed, or doesn't hold the file
+     */
+    InputStream getInputStream(PackFile file) throws IOException
+    {
+        if (data == null)
+        {
+            try (InputStream in = StreamSupport.compressedInput(compression, new ByteArrayInputStream(compressed)))
+            {
+                data = IOUtils.toByteArray(in);
+            }
+            compressed = null;
+        }
+        long offset = file.getBlockOffset();
+        if (offset < 0 || offset + file.length() > data.length)
+        {
+            throw new IOException("File size mismatch when uncompressing from pack: " + file.getRelativeSourcePath());
+        }
+        return new ByteArrayInputStream(data, (int) offset, (int) file.length());
+    }
+}
@@ -22,6 +22,7 @@
 
 package com.izforge.izpack.installer.unpacker;
 
+import com.izforge.izpack.api.data.Blockable;
 import com.izforge.izpack.api.data.ExecutableFile;
 import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.api.data.OverrideType;
@@ -45,6 +46,8 @@ import com.izforge.izpack.api.resource.Resources;
 import com.izforge.izpack.api.rules.RulesEngine;
 import com.izforge.izpack.api.substitutor.VariableSubstitutor;
 import com.izforge.izpack.core.handler.ProgressHandler;
+import com.izforge.izpack.core.handler.ThrottledProgressListener;
+import com.izforge.izpack.core.io.PackIndexReader;
 import com.izforge.izpack.core.handler.PromptUIHandler;
 import com.izforge.izpack.core.resource.ResourceManager;
 import com.izforge.izpack.installer.bootstrap.Installer;
@@ -53,6 +56,7 @@ import com.izforge.izpack.installer.event.InstallerListeners;
 import com.izforge.izpack.installer.util.InstallPathHelper;
 import com.izforge.izpack.installer.util.PackHelper;
 import com.izforge.izpack.util.FileExecutor;
+import com.izforge.izpack.util.FilePermissions;
 import com.izforge.izpack.util.Housekeeper;
 import com.izforge.izpack.util.IoHelper;
 import com.izforge.izpack.util.LogUtils;
@@ -72,10 +76,14 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.jar.Attributes;
@@ -85,6 +93,7 @@ import java.util.logging.Logger;
 
 import static com.izforge.izpack.api.handler.Prompt.*;
 import static com.izforge.izpack.installer.bootstrap.Installer.INSTALLER_AUTO;
+import static com.izforge.izpack.util.Platform.Name.UNIX;
 
 
 /**
@@ -160,7 +169,12 @@ public abstract class UnpackerBase implements IUnpacker
     /**
      * The installer listener.
      */
-    private ProgressListener listener;
+    private ThrottledProgressListener listener;
+
+    /**
+     * The byte progress of the pack being unpacked.
+     */
+    private PackProgress progress;
 
     /**
      * The prompt.
@@ -205,6 +219,41 @@ public abstract class UnpackerBase implements IUnpacker
      */
     private Messages packMessages;
 
+    /**
+     * Determines if files that are identical to the installed file are skipped.
+     */
+    private boolean skipUnchanged;
+
+    /**
+     * The number of unchanged files skipped in the current pack.
+     */
+    private int unchangedFiles;
+
+    /**
+     * The number of bytes in unchanged files skipped in the current pack.
+     */
+    private long unchangedBytes;
+
+    /**
+     * The permission changes for the files of the current pack, applied once all of its files have been written.
+     */
+    private final FilePermissions permissions = new FilePermissions();
+
+    /**
+     * The parsable files of the current pack that may be substituted as they are extracted, keyed on target.
+     */
+    private Map<File, ParsableFile> inlineParsables = Collections.emptyMap();
+
+    /**
+     * The parsable files of the current pack that were substituted as they were extracted.
+     */
+    private final Set<ParsableFile> parsedInline = new HashSet<ParsableFile>();
+
+    /**
+     * The last solid block read from the pack stream of the current pack, or {@code null} if none has been read.
+     */
+    private SolidBlock block;
+
     /**
      * Constructs an <tt>UnpackerBase</tt>.
      *
@@ -248,13 +297,16 @@ public abstract class UnpackerBase implements IUnpacker
 
     /**
      * Sets the progress listener.
+     * <p/>
+     * Sub-step and byte progress notifications are passed on at most every
+     * {@link ThrottledProgressListener#DEFAULT_INTERVAL} milliseconds.
      *
      * @param listener the progress listener
      */
     @Override
     public void setProgressListener(ProgressListener listener)
     {
-        this.listener = listener;
+        this.listener = new ThrottledProgressListener(listener);
     }
 
     /**
@@ -303,20 +355,18 @@ public abstract class UnpackerBase implements IUnpacker
         logIntro();
 
         state = State.UNPACKING;
-        ObjectInputStream objIn = null;
+        PackIndexReader index = null;
         try
         {
             FileQueue queue = queueFactory.isSupported() ? queueFactory.create() : null;
 
-            InputStream in = resources.getInputStream("packs.info");
-            objIn = new ObjectInputStream(in);
-            @SuppressWarnings("unchecked") List<PackInfo> packsInfo = (List<PackInfo>) objIn.readObject();
-            objIn.close();
+            index = new PackIndexReader(resources.getInputStream("packs.info"));
 
             selectedPacks = installData.getSelectedPacks();
 
             preUnpack(selectedPacks);
-            unpack(packsInfo, queue);
+            unpack(index, queue);
+            index.close();
             postUnpack(selectedPacks, queue);
         }
         catch (Exception exception)
@@ -374,7 +424,7 @@ public abstract class UnpackerBase implements IUnpacker
         {
             cleanup();
             logEpilog();
-            IOUtils.closeQuietly(objIn);
+            IOUtils.closeQuietly(index);
         }
     }
 
@@ -481,22 +531,26 @@ public abstract class UnpackerBase implements IUnpacker
 
     /**
      * Unpacks the selected packs.
+     * <p/>
+     * The files of each pack are read from the index as the pack is reached, and released once it is unpacked.
      *
-     * @param packs the packs to unpack
+     * @param index the index of the packs to unpack
      * @param queue the file queue, or {@code null} if queuing is not supported
      * @throws ResourceInterruptedException if unpacking is cancelled
      * @throws InstallerException           for any error
+     * @throws IOException                  if the pack index cannot be read
      */
-    protected void unpack(List<PackInfo> packs, FileQueue queue) throws InstallerException
+    protected void unpack(PackIndexReader index, FileQueue queue) throws IOException
     {
+        List<Pack> packs = index.getPacks();
         int count = packs.size();
         for (int i = 0; i < count; i++)
         {
-            PackInfo packInfo = packs.get(i);
-            Pack pack = packInfo.getPack();
+            Pack pack = packs.get(i);
 
             if (shouldUnpack(pack))
             {
+                PackInfo packInfo = index.readPackInfo(i);
                 List<ParsableFile> parsables = new ArrayList<ParsableFile>();
                 List<ExecutableFile> executables = new ArrayList<ExecutableFile>();
                 List<UpdateCheck> updateChecks = new ArrayList<UpdateCheck>();
@@ -543,9 +597,15 @@ public abstract class UnpackerBase implements IUnpacker
             String stepName = getStepName(pack);
             selectedPacks = installData.getSelectedPacks();
             listener.nextStep(stepName, selectedPacks.indexOf(pack) + 1, len);
+            progress = new PackProgress(listener, getLength(packFiles));
 
             in = resources.getPackStream(pack.getName());
 
+            skipUnchanged = variables.getBoolean(InstallData.SKIP_UNCHANGED_FILES, false);
+            inlineParsables = getInlineParsables(packInfo);
+            parsedInline.clear();
+            unchangedFiles = 0;
+            unchangedBytes = 0;
             for (int i = 0; i < len; i++)
             {
                 PackFile packFile = packFiles[i];
@@ -562,9 +622,18 @@ public abstract class UnpackerBase implements IUnpacker
                     {
                         // condition is not fulfilled, so skip it in main stream
                         skip(packFile, pack, in);
+                        progress.add(packFile.length());
                     }
                 }
             }
+            completeExtraction(pack);
+            progress.complete();
+            applyPermissions();
+            if (skipUnchanged)
+            {
+                logger.info("Pack " + pack.getName() + ": skipped " + unchangedFiles + " unchanged file(s) ("
+                                    + unchangedBytes + " bytes)");
+            }
             readParsableFiles(packInfo, parsables);
             readExecutableFiles(packInfo, executables);
             readUpdateChecks(packInfo, updateChecks);
@@ -579,10 +648,41 @@ public abstract class UnpackerBase implements IUnpacker
         }
         finally
         {
+            inlineParsables = Collections.emptyMap();
+            block = null;
             IOUtils.closeQuietly(in);
         }
     }
 
+    /**
+     * Returns the byte progress of the pack being unpacked.
+     *
+     * @return the pack progress
+     */
+    PackProgress getPackProgress()
+    {
+        return progress;
+    }
+
+    /**
+     * Returns the total length of the files in a pack.
+     *
+     * @param packFiles the pack files
+     * @return the total length, in bytes
+     */
+    private static long getLength(PackFile[] packFiles)
+    {
+        long result = 0;
+        for (PackFile packFile : packFiles)
+        {
+            if (!packFile.isDirectory())
+            {
+                result += packFile.length();
+            }
+        }
+        return result;
+    }
+
     /**
      * Determines if a file should be unpacked.
      *
@@ -642,22 +742,96 @@ public abstract class UnpackerBase implements IUnpacker
 
         listener.progress(fileNo, path);
 
+        if (skipUnchanged && isUnchanged(packFile, target))
+        {
+            if (!packFile.isBackReference() && !pack.isLoose() && !packFile.isPack200Jar())
+            {
+                long size = packFile.size();
+                logger.fine("|- Unchanged - skipping pack stream by " + size + " bytes");
+                skipStored(packFile, packInputStream);
+            }
+            progress.add(packFile.length());
+            unchangedFiles++;
+            unchangedBytes += packFile.length();
+            addPermissions(packFile, target);
+        }
         // if this file exists and should not be overwritten, check what to do
-        if (target.exists() && (packFile.override() != OverrideType.OVERRIDE_TRUE) && !isOverwriteFile(packFile, target))
+        else if (target.exists() && (packFile.override() != OverrideType.OVERRIDE_TRUE) && !isOverwriteFile(packFile, target))
         {
             if (!packFile.isBackReference() && !pack.isLoose() && !packFile.isPack200Jar())
             {
                 long size = packFile.size();
                 logger.fine("|- No overwrite - skipping pack stream by " + size + " bytes");
-                skip(packInputStream, size);
+                skipStored(packFile, packInputStream);
             }
+            progress.add(packFile.length());
         } else
         {
             handleOverrideRename(packFile, target);
             extract(packFile, target, packInputStream, pack, queue);
+            addPermissions(packFile, target);
+        }
+    }
+
+    /**
+     * Queues the {@link PackFile#getMode() permissions} of a pack file to be applied to the installed file, once all
+     * of the pack's files have been written.
+     *
+     * @param packFile the pack file
+     * @param target   the installed file
+     */
+    private void addPermissions(PackFile packFile, File target)
+    {
+        if (packFile.getMode() != 0 && matcher.getCurrentPlatform().isA(UNIX))
+        {
+            permissions.add(target, packFile.getMode());
+        }
+    }
+
+    /**
+     * Applies the permissions queued for the current pack.
+     */
+    private void applyPermissions()
+    {
+        if (!permissions.isEmpty())
+        {
+            for (File file : permissions.apply())
+            {
+                logger.warning("Failed to change permissions of " + file);
+            }
         }
     }
 
+    /**
+     * Determines if an installed file is identical to a pack file, by comparing its length and
+     * {@link PackFile#getDigest() digest}.
+     *
+     * @param packFile the pack file
+     * @param target   the installed file
+     * @return {@code true} if the installed file is identical, {@code false} if it differs, doesn't exist, or the
+     *         pack file has no digest
+     * @throws IOException if the installed file cannot be read
+     */
+    protected boolean isUnchanged(PackFile packFile, File target) throws IOException
+    {
+        byte[] expected = packFile.getDigest();
+        if (expected == null || !target.isFile() || target.length() != packFile.length())
+        {
+            return false;
+        }
+        MessageDigest digest = PackFile.createDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(target))
+        {
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return MessageDigest.isEqual(expected, digest.digest());
+    }
+
     /**
      * Extracts a pack file.
      *
@@ -678,7 +852,10 @@ public abstract class UnpackerBase implements IUnpacker
         {
             FileUnpacker unpacker;
 
-            if (!pack.isLoose() && packFile.isBackReference())
+            if (!pack.isLoose() && packFile.isInBlock())
+            {
+                packStream = getBlockStream(packFile, packInputStream);
+            } else if (!pack.isLoose() && packFile.isBackReference())
             {
                 PackFile linkedPackFile = packFile.getLinkedPackFile();
                 packStream = resources.getInputStream(ResourceManager.RESOURCE_BASEPATH_DEFAULT + linkedPackFile.getStreamResourceName());
@@ -699,8 +876,23 @@ public abstract class UnpackerBase implements IUnpacker
             }
 
             unpacker = createFileUnpacker(packFile, pack, queue, cancellable);
+            unpacker.setProgress(progress);
+            ParsableFile parsable = getInlineParsable(packFile, target, queue);
+            if (parsable != null)
+            {
+                unpacker.setParsable(parsable, getVariableSubstitutor());
+            }
             logger.fine("|- Extracting file using " + unpacker.getClass().getName() + ")");
             unpacker.unpack(packFile, packStream, target);
+            if (unpacker.isParsed())
+            {
+                parsedInline.add(parsable);
+            }
+            if (packFile.isPack200Jar())
+            {
+                // Pack200 jars aren't copied, so their bytes aren't reported as they are unpacked
+                progress.add(packFile.length());
+            }
             checkInterrupt();
 
             if (!unpacker.isQueued())
@@ -717,6 +909,74 @@ public abstract class UnpackerBase implements IUnpacker
         }
     }
 
+    /**
+     * Returns the parsable file to substitute variables in as a pack file is extracted.
+     * <p/>
+     * Pack200 jars and files that may be queued are never substituted as they are extracted. Their parsable files
+     * are processed once the pack has been unpacked, as are those of files that are skipped.
+     *
+     * @param packFile the pack file
+     * @param target   the file to write to
+     * @param queue    the file queue, or {@code null} if queuing is not supported
+     * @return the parsable file, or {@code null} if the file should be extracted as is
+     */
+    protected ParsableFile getInlineParsable(PackFile packFile, File target, FileQueue queue)
+    {
+        if (inlineParsables.isEmpty() || packFile.isPack200Jar()
+                || (queue != null && packFile.blockable() != Blockable.BLOCKABLE_NONE))
+        {
+            return null;
+        }
+        return inlineParsables.get(target);
+    }
+
+    /**
+     * Returns the parsable files of a pack that may be substituted as they are extracted, keyed on target.
+     * <p/>
+     * Substitution is only done on extraction if no file listeners are registered. Otherwise, listeners would see
+     * substituted files in {@link InstallerListeners#afterFile}, and any variables they change would not be
+     * reflected, so all files are parsed once the pack has been unpacked.
+     *
+     * @param packInfo the pack info of the current pack
+     * @return the parsable files, keyed on target
+     */
+    private Map<File, ParsableFile> getInlineParsables(PackInfo packInfo)
+    {
+        Map<File, ParsableFile> result = new HashMap<File, ParsableFile>();
+        if (!listeners.isFileListener())
+        {
+            for (ParsableFile parsableFile : packInfo.getParsables())
+            {
+                if ((!parsableFile.hasCondition() || isConditionTrue(parsableFile.getCondition()))
+                        && matcher.matchesCurrentPlatform(parsableFile.getOsConstraints()))
+                {
+                    File file = new File(IoHelper.translatePath(parsableFile.getPath(), variables));
+                    if (!result.containsKey(file))
+                    {
+                        result.put(file, parsableFile);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Invoked after every file of a pack has been passed to {@link #extract} or {@link #skip}, before the pack's
+     * parsable, executable and update check information is read.
+     * <p/>
+     * This implementation does nothing. Subclasses that extract files asynchronously must ensure that all of the pack's
+     * files have been written on return.
+     *
+     * @param pack the pack
+     * @throws IOException                  for any I/O error
+     * @throws ResourceInterruptedException if installation is cancelled
+     * @throws IzPackException              for any IzPack error
+     */
+    protected void completeExtraction(Pack pack) throws IOException
+    {
+    }
+
     /**
      * Skips a pack file.
      *
@@ -731,12 +991,99 @@ public abstract class UnpackerBase implements IUnpacker
         {
             long size = packFile.size();
             logger.fine("|- Condition not fulfilled - skipping pack stream " + packFile.getTargetPath() + " by " + size + " bytes ");
+            skipStored(packFile, packInputStream);
+        }
+    }
+
+    /**
+     * Skips the stored bytes of a pack file in the pack stream.
+     * <p/>
+     * A file in a solid block reads the block, unless it has already been read, so that the other files of the block
+     * can still be extracted.
+     *
+     * @param packFile        the pack file
+     * @param packInputStream the pack stream
+     * @throws IOException if the file cannot be skipped
+     */
+    private void skipStored(PackFile packFile, InputStream packInputStream) throws IOException
+    {
+        if (packFile.isInBlock())
+        {
+            getBlock(packFile, packInputStream);
+        }
+        else
+        {
             skip(packInputStream, packFile.size());
         }
     }
 
+    /**
+     * Returns the solid block that a file is stored in, reading it from the pack stream if it isn't the current
+     * block.
+     *
+     * @param packFile        the pack file
+     * @param packInputStream the pack stream, positioned after the current block
+     * @return the block
+     * @throws IOException for any I/O error
+     */
+    private SolidBlock getBlock(PackFile packFile, InputStream packInputStream) throws IOException
+    {
+        if (block == null || !block.contains(packFile))
+        {
+            block = SolidBlock.read(packFile, packInputStream, getCompression(packFile));
+        }
+        return block;
+    }
+
+    /**
+     * Returns a stream to read the content of a file stored in a solid block.
+     * <p/>
+     * The block of a back reference is read from its own pack stream, unless it is the current block.
+     *
+     * @param packFile        the pack file
+     * @param packInputStream the pack stream
+     * @return the file content
+     * @throws IOException for any I/O error
+     */
+    private InputStream getBlockStream(PackFile packFile, InputStream packInputStream) throws IOException
+    {
+        if (!packFile.isBackReference())
+        {
+            return getBlock(packFile, packInputStream).getInputStream(packFile);
+        }
+        PackFile linkedPackFile = packFile.getLinkedPackFile();
+        SolidBlock linkedBlock = block;
+        if (linkedBlock == null || !linkedBlock.contains(linkedPackFile))
+        {
+            logger.fine("|- Backreference to solid block (offset: " + linkedPackFile.getStreamOffset() + " bytes)");
+            try (InputStream in = resources.getInputStream(ResourceManager.RESOURCE_BASEPATH_DEFAULT
+                                                                   + linkedPackFile.getStreamResourceName()))
+            {
+                skip(in, linkedPackFile.getStreamOffset());
+                linkedBlock = SolidBlock.read(linkedPackFile, in, getCompression(packFile));
+            }
+        }
+        return linkedBlock.getInputStream(packFile);
+    }
+
+    /**
+     * Returns the format a pack file is compressed with in the pack stream.
+     *
+     * @param file the pack file
+     * @return the file's own compression format if it has one, otherwise the installer-wide format
+     */
+    private PackCompression getCompression(PackFile file)
+    {
+        PackCompression result = file.getCompression();
+        return (result != null) ? result : getInstallData().getInfo().getCompressionFormat();
+    }
+
     /**
      * Creates an unpacker to unpack a pack file.
+     * <p/>
+     * Files stored with their own {@link PackFile#getCompression() compression} are unpacked with it, in preference
+     * to the installer-wide compression format. Files in solid blocks are read from the decompressed block, so are
+     * unpacked as is.
      *
      * @param file        the pack file to unpack
      * @param pack        the parent pack
@@ -748,7 +1095,7 @@ public abstract class UnpackerBase implements IUnpacker
     protected FileUnpacker createFileUnpacker(PackFile file, Pack pack, FileQueue queue, Cancellable cancellable)
             throws InstallerException
     {
-        PackCompression compressionFormat = getInstallData().getInfo().getCompressionFormat();
+        PackCompression compressionFormat = file.isInBlock() ? PackCompression.DEFAULT : getCompression(file);
         FileUnpacker unpacker;
         if (pack.isLoose())
         {
@@ -844,6 +1191,16 @@ public abstract class UnpackerBase implements IUnpacker
         return variableSubstitutor;
     }
 
+    /**
+     * Returns the installer listeners.
+     *
+     * @return the installer listeners
+     */
+    protected InstallerListeners getListeners()
+    {
+        return listeners;
+    }
+
     /**
      * Returns the prompt.
      *
@@ -1354,6 +1711,8 @@ public abstract class UnpackerBase implements IUnpacker
 
     /**
      * Initializes {@link ParsableFile parseable files} according to the current environment.
+     * <p/>
+     * Files whose variables were substituted as they were extracted are excluded.
      *
      * @param packInfo  the pack info fpor the current pack
      * @param parsables used to collect the read objects
@@ -1363,7 +1722,11 @@ public abstract class UnpackerBase implements IUnpacker
         for (ParsableFile parsableFile : packInfo.getParsables())
         {
             logger.fine("Unpacked parsable: " + parsableFile.toString());
-            if (!parsableFile.hasCondition() || isConditionTrue(parsableFile.getCondition()))
+            if (parsedInline.contains(parsableFile))
+            {
+                logger.fine("Variables already substituted on extraction");
+            }
+            else if (!parsableFile.hasCondition() || isConditionTrue(parsableFile.getCondition()))
             {
                 String path = IoHelper.translatePath(parsableFile.getPath(), variables);
                 File file = new File(path);
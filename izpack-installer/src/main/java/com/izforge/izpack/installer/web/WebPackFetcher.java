@@ -0,0 +1,671 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Downloads web pack jars in the background.
+ * <p/>
+ * Each URL is downloaded once, to a file in the download directory. Downloads are started in the order they are
+ * requested, so packs that will be needed later can be fetched while the current pack is being unpacked.
+ * <p/>
+ * A download can be read via {@link Download#openStream()} while it is still in progress; reads block until the
+ * requested data has arrived. If the connection drops, the download is resumed from where it left off using an HTTP
+ * <tt>Range</tt> request. Servers that don't support ranges resend the content from the start, and the data already
+ * downloaded is discarded.
+ */
+public class WebPackFetcher
+{
+    /**
+     * The default no. of concurrent downloads.
+     */
+    public static final int DEFAULT_THREADS = 2;
+
+    /**
+     * The maximum no. of attempts made to download a URL.
+     */
+    static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * The connect and read timeout, in milliseconds.
+     */
+    private static final int TIMEOUT = 30000;
+
+    /**
+     * The time to wait for downloads to stop on {@link #shutdown()}, in milliseconds.
+     */
+    private static final long SHUTDOWN_TIMEOUT = 2000;
+
+    /**
+     * The download buffer size.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(WebPackFetcher.class.getName());
+
+    /**
+     * The directory to download to.
+     */
+    private final File directory;
+
+    /**
+     * The download threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The downloads, keyed on URL.
+     */
+    private final Map<String, Download> downloads = new HashMap<String, Download>();
+
+    /**
+     * The delay before retrying a failed download, in milliseconds. This is multiplied by the no. of attempts made.
+     */
+    private volatile long retryDelay = 1000;
+
+    /**
+     * Constructs a <tt>WebPackFetcher</tt>.
+     *
+     * @param directory the directory to download to
+     * @param threads   the maximum no. of concurrent downloads
+     */
+    public WebPackFetcher(File directory, int threads)
+    {
+        this.directory = directory;
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "izpack-download-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the download of a URL, starting it if it hasn't already been requested.
+     *
+     * @param url      the URL to download. Characters that are illegal in URLs, such as spaces, are escaped
+     * @param fileName the name of the file to download to, in the download directory
+     * @return the download
+     * @throws IOException if the URL is invalid
+     */
+    public synchronized Download fetch(String url, String fileName) throws IOException
+    {
+        Download result = downloads.get(url);
+        if (result == null)
+        {
+            URL escapedUrl;
+            try
+            {
+                escapedUrl = new URI(null, url, null).toURL();
+            }
+            catch (URISyntaxException exception)
+            {
+                throw new IOException(exception);
+            }
+            result = new Download(escapedUrl, new File(directory, fileName));
+            downloads.put(url, result);
+            executor.execute(result);
+        }
+        return result;
+    }
+
+    /**
+     * Stops all downloads, and deletes the downloaded files.
+     * <p/>
+     * Streams reading incomplete downloads will fail once they reach the end of the downloaded data. Files that are
+     * still open, e.g. by a download that doesn't respond to interruption in time, are deleted when the JVM exits.
+     */
+    public void shutdown()
+    {
+        executor.shutdownNow();
+        try
+        {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        List<Download> list;
+        synchronized (this)
+        {
+            list = new ArrayList<Download>(downloads.values());
+        }
+        for (Download download : list)
+        {
+            File file = download.getFile();
+            if (!FileUtils.deleteQuietly(file) && file.exists())
+            {
+                file.deleteOnExit();
+            }
+        }
+        // only removed if empty
+        directory.delete();
+    }
+
+    /**
+     * Sets the delay before retrying a failed download.
+     *
+     * @param retryDelay the delay, in milliseconds. This is multiplied by the no. of attempts made
+     */
+    void setRetryDelay(long retryDelay)
+    {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * A download of a URL to a file.
+     */
+    public class Download implements Runnable
+    {
+        /**
+         * The URL to download.
+         */
+        private final URL url;
+
+        /**
+         * The file to download to.
+         */
+        private final File file;
+
+        /**
+         * The no. of bytes downloaded.
+         */
+        private long length;
+
+        /**
+         * The total no. of bytes to download, or <tt>-1</tt> if it is not known.
+         */
+        private long contentLength = -1;
+
+        /**
+         * The entity tag or last modification time of the content, used to detect it changing between attempts.
+         */
+        private String validator;
+
+        /**
+         * Determines if the download has completed successfully.
+         */
+        private boolean complete;
+
+        /**
+         * The error that terminated the download, or <tt>null</tt> if there was none.
+         */
+        private IOException error;
+
+        /**
+         * Constructs a <tt>Download</tt>.
+         *
+         * @param url  the URL to download
+         * @param file the file to download to
+         */
+        Download(URL url, File file)
+        {
+            this.url = url;
+            this.file = file;
+        }
+
+        /**
+         * Returns the URL being downloaded.
+         *
+         * @return the URL
+         */
+        public URL getURL()
+        {
+            return url;
+        }
+
+        /**
+         * Returns the file being downloaded to.
+         *
+         * @return the file
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * Returns the no. of bytes downloaded so far.
+         *
+         * @return the no. of bytes downloaded
+         */
+        public synchronized long getLength()
+        {
+            return length;
+        }
+
+        /**
+         * Determines if the download has completed successfully.
+         *
+         * @return <tt>true</tt> if the download has completed
+         */
+        public synchronized boolean isComplete()
+        {
+            return complete;
+        }
+
+        /**
+         * Returns a stream to read the download.
+         * <p/>
+         * The stream may be opened before the download has completed. Reads block until data is available, and fail
+         * if the download fails before the data is available.
+         *
+         * @return a new stream
+         */
+        public InputStream openStream()
+        {
+            return new DownloadInputStream();
+        }
+
+        /**
+         * Performs the download, retrying if it fails.
+         */
+        @Override
+        public void run()
+        {
+            try
+            {
+                File parent = file.getParentFile();
+                if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                {
+                    throw new IOException("Failed to create directory: " + parent);
+                }
+                RandomAccessFile out = new RandomAccessFile(file, "rw");
+                try
+                {
+                    out.setLength(0);
+                    int attempts = 0;
+                    while (true)
+                    {
+                        try
+                        {
+                            transfer(out);
+                            break;
+                        }
+                        catch (StatusException exception)
+                        {
+                            throw exception;
+                        }
+                        catch (InterruptedIOException exception)
+                        {
+                            if (Thread.currentThread().isInterrupted() || ++attempts >= MAX_ATTEMPTS)
+                            {
+                                throw exception;
+                            }
+                            retry(exception, attempts);
+                        }
+                        catch (IOException exception)
+                        {
+                            if (++attempts >= MAX_ATTEMPTS)
+                            {
+                                throw exception;
+                            }
+                            retry(exception, attempts);
+                        }
+                    }
+                }
+                finally
+                {
+                    out.close();
+                }
+                completed(null);
+                logger.fine("Downloaded " + url + " (" + getLength() + " bytes)");
+            }
+            catch (IOException exception)
+            {
+                logger.warning("Failed to download " + url + ": " + exception.getMessage());
+                completed(exception);
+            }
+        }
+
+        /**
+         * Downloads the URL, starting from the bytes already downloaded.
+         *
+         * @param out the file to write to
+         * @throws IOException for any I/O error
+         */
+        private void transfer(RandomAccessFile out) throws IOException
+        {
+            long offset = getLength();
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            long skip = offset;
+            if (connection instanceof HttpURLConnection)
+            {
+                HttpURLConnection http = (HttpURLConnection) connection;
+                if (offset > 0)
+                {
+                    http.setRequestProperty("Range", "bytes=" + offset + "-");
+                    if (validator != null)
+                    {
+                        http.setRequestProperty("If-Range", validator);
+                    }
+                }
+                int status = http.getResponseCode();
+                if (status == HttpURLConnection.HTTP_PARTIAL && offset > 0
+                        && isRange(http.getHeaderField("Content-Range"), offset))
+                {
+                    logger.info("Resuming download of " + url + " from byte " + offset);
+                    skip = 0;
+                }
+                else if (status == HttpURLConnection.HTTP_OK)
+                {
+                    String current = getValidator(http);
+                    if (offset > 0 && validator != null && !validator.equals(current))
+                    {
+                        throw new StatusException(url + " changed during download");
+                    }
+                    validator = current;
+                }
+                else
+                {
+                    // close the connection so it isn't reused
+                    http.disconnect();
+                    String message = "HTTP " + status + " response";
+                    if (status >= HttpURLConnection.HTTP_INTERNAL_ERROR)
+                    {
+                        throw new IOException(message);
+                    }
+                    throw new StatusException(message);
+                }
+            }
+            long size = connection.getContentLengthLong();
+            if (size >= 0)
+            {
+                setContentLength((skip == 0) ? offset + size : size);
+            }
+
+            InputStream in = connection.getInputStream();
+            try
+            {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (skip > 0)
+                {
+                    // the server doesn't support ranges, so discard the data already downloaded
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, skip));
+                    if (read == -1)
+                    {
+                        throw new EOFException("Unexpected end of " + url);
+                    }
+                    skip -= read;
+                }
+                out.seek(offset);
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                {
+                    out.write(buffer, 0, read);
+                    downloaded(read);
+                    if (Thread.currentThread().isInterrupted())
+                    {
+                        throw new InterruptedIOException("Download of " + url + " interrupted");
+                    }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+            long expected = getContentLength();
+            if (expected >= 0 && getLength() < expected)
+            {
+                throw new EOFException("Connection closed after " + getLength() + " of " + expected + " bytes of "
+                                               + url);
+            }
+        }
+
+        /**
+         * Logs a failed attempt, and waits before the next.
+         *
+         * @param exception the reason for the failure
+         * @param attempts  the no. of attempts made
+         * @throws InterruptedIOException if the thread is interrupted while waiting
+         */
+        private void retry(IOException exception, int attempts) throws InterruptedIOException
+        {
+            logger.warning("Attempt " + attempts + " to download " + url + " failed: " + exception.getMessage()
+                                   + ". Retrying");
+            try
+            {
+                Thread.sleep(retryDelay * attempts);
+            }
+            catch (InterruptedException interrupted)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Download of " + url + " interrupted");
+            }
+        }
+
+        /**
+         * Records the arrival of data, and wakes any waiting readers.
+         *
+         * @param bytes the no. of bytes downloaded
+         */
+        private synchronized void downloaded(int bytes)
+        {
+            length += bytes;
+            notifyAll();
+        }
+
+        /**
+         * Records the completion of the download, and wakes any waiting readers.
+         *
+         * @param exception the error that terminated the download, or <tt>null</tt> if it completed successfully
+         */
+        private synchronized void completed(IOException exception)
+        {
+            error = exception;
+            complete = (exception == null);
+            notifyAll();
+        }
+
+        /**
+         * Returns the total no. of bytes to download.
+         *
+         * @return the total no. of bytes, or <tt>-1</tt> if it is not known
+         */
+        private synchronized long getContentLength()
+        {
+            return contentLength;
+        }
+
+        /**
+         * Sets the total no. of bytes to download.
+         *
+         * @param contentLength the total no. of bytes
+         */
+        private synchronized void setContentLength(long contentLength)
+        {
+            this.contentLength = contentLength;
+        }
+
+        /**
+         * Waits until data is available at the specified position, or the download terminates.
+         *
+         * @param position the position to read from
+         * @return the no. of bytes downloaded. If this is not greater than <tt>position</tt>, the end of the download
+         *         has been reached
+         * @throws InterruptedIOException if the thread is interrupted while waiting
+         * @throws IOException            if the download failed before reaching the position
+         */
+        private synchronized long waitFor(long position) throws IOException
+        {
+            while (length <= position && !complete && error == null)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException exception)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for " + url);
+                }
+            }
+            if (length <= position && error != null)
+            {
+                if (error instanceof InterruptedIOException)
+                {
+                    throw new InterruptedIOException("Download of " + url + " interrupted");
+                }
+                throw new IOException("Failed to download " + url, error);
+            }
+            return length;
+        }
+
+        /**
+         * Streams the downloaded data.
+         */
+        private class DownloadInputStream extends InputStream
+        {
+            /**
+             * The file being read. Opened on the first read, as the download may not have created it yet.
+             */
+            private RandomAccessFile in;
+
+            /**
+             * The position of the next byte to read.
+             */
+            private long position;
+
+            @Override
+            public int read() throws IOException
+            {
+                byte[] b = new byte[1];
+                return (read(b, 0, 1) == -1) ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                if (len == 0)
+                {
+                    return 0;
+                }
+                long available = waitFor(position);
+                if (available <= position)
+                {
+                    return -1;
+                }
+                if (in == null)
+                {
+                    in = new RandomAccessFile(file, "r");
+                }
+                in.seek(position);
+                int read = in.read(b, off, (int) Math.min(len, available - position));
+                if (read > 0)
+                {
+                    position += read;
+                }
+                return read;
+            }
+
+            @Override
+            public int available() throws IOException
+            {
+                return (int) Math.min(Integer.MAX_VALUE, Math.max(0, getLength() - position));
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                if (in != null)
+                {
+                    in.close();
+                    in = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a <tt>Content-Range</tt> header starts at the specified offset.
+     *
+     * @param contentRange the header. May be <tt>null</tt>
+     * @param offset       the expected offset
+     * @return <tt>true</tt> if the range starts at the offset
+     */
+    private static boolean isRange(String contentRange, long offset)
+    {
+        return contentRange != null && contentRange.trim().startsWith("bytes " + offset + "-");
+    }
+
+    /**
+     * Returns the entity tag or last modification time of a response, for use in an <tt>If-Range</tt> header.
+     *
+     * @param connection the connection
+     * @return the validator, or <tt>null</tt> if the response has neither
+     */
+    private static String getValidator(HttpURLConnection connection)
+    {
+        String result = connection.getHeaderField("ETag");
+        if (result == null || result.startsWith("W/"))
+        {
+            // weak entity tags can't be used for ranges
+            result = connection.getHeaderField("Last-Modified");
+        }
+        return result;
+    }
+
+    /**
+     * Indicates an HTTP response that won't be resolved by retrying.
+     */
+    private static class StatusException extends IOException
+    {
+        private static final long serialVersionUID = 1L;
+
+        StatusException(String message)
+        {
+            super(message);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import com.izforge.izpack.api.resource.Locales;
 import com.izforge.izpack.api.resource.Messages;
 import com.izforge.izpack.api.resource.Resources;
 import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.core.io.PackIndexWriter;
 import com.izforge.izpack.core.resource.DefaultLocales;
 import com.izforge.izpack.core.resource.ResourceManager;
 import com.izforge.izpack.api.data.PackInfo;
@@ -203,9 +204,7 @@ public class AutomatedInstallDataProviderTest
     {
         List<PackInfo> packsInfo = new ArrayList<PackInfo>();
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        ObjectOutputStream objStream = new ObjectOutputStream(stream);
-        objStream.writeObject(packsInfo);
-        objStream.close();
+        new PackIndexWriter(stream).write(packsInfo);
         return new ByteArrayInputStream(stream.toByteArray());
     }
 
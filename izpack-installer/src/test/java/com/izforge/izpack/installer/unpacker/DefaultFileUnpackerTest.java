@@ -22,10 +22,26 @@
 package com.izforge.izpack.installer.unpacker;
 
 
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.ParsableFile;
+import com.izforge.izpack.api.data.Variables;
+import com.izforge.izpack.api.data.binding.OsModel;
+import com.izforge.izpack.api.substitutor.SubstitutionType;
+import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
 import com.izforge.izpack.util.os.FileQueue;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.junit.Test;
 
 import java.io.*;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -36,6 +52,113 @@ import java.io.*;
 public class DefaultFileUnpackerTest extends AbstractFileUnpackerTest
 {
 
+    /**
+     * Verifies that a file is unpacked if its content matches the pack file digest.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDigestMatch() throws Exception
+    {
+        File baseDir = temporaryFolder.getRoot();
+        File source = createSourceFile(baseDir);
+        File target = getTargetFile(baseDir);
+
+        PackFile file = createPackFile(baseDir, source, target, Blockable.BLOCKABLE_NONE);
+        file.setDigest(PackFile.createDigest().digest(FileUtils.readFileToByteArray(source)));
+
+        createUnpacker(baseDir, null).unpack(file, createPackStream(source), target);
+        checkTarget(source, target);
+    }
+
+    /**
+     * Verifies that unpacking fails, and the target is removed, if the content doesn't match the pack file digest.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDigestMismatch() throws Exception
+    {
+        File baseDir = temporaryFolder.getRoot();
+        File source = createSourceFile(baseDir);
+        File target = getTargetFile(baseDir);
+
+        PackFile file = createPackFile(baseDir, source, target, Blockable.BLOCKABLE_NONE);
+        file.setDigest(PackFile.createDigest().digest("corrupted".getBytes("UTF-8")));
+
+        try
+        {
+            createUnpacker(baseDir, null).unpack(file, createPackStream(source), target);
+            fail("Expected unpack to fail");
+        }
+        catch (IOException expected)
+        {
+            assertTrue(expected.getMessage().startsWith("Digest mismatch"));
+        }
+        assertFalse(target.exists());
+    }
+
+    /**
+     * Verifies that variables are substituted in a parsable file as it is unpacked, and that the pack file digest
+     * is verified against the unsubstituted content.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSubstituteOnUnpack() throws Exception
+    {
+        File baseDir = temporaryFolder.getRoot();
+        File source = new File(baseDir, "source.txt");
+        FileUtils.writeStringToFile(source, "home=${home}\nname=${name}\n", "UTF-8");
+        File target = getTargetFile(baseDir);
+
+        PackFile file = createPackFile(baseDir, source, target, Blockable.BLOCKABLE_NONE);
+        file.setDigest(PackFile.createDigest().digest(FileUtils.readFileToByteArray(source)));
+
+        Variables variables = new DefaultVariables();
+        variables.set("home", "/opt/app");
+        variables.set("name", "plutò");
+        ParsableFile parsable = new ParsableFile(target.getPath(), SubstitutionType.TYPE_PLAIN, "UTF-8",
+                                                 new ArrayList<OsModel>());
+
+        FileUnpacker unpacker = createUnpacker(baseDir, null);
+        unpacker.setParsable(parsable, new VariableSubstitutorImpl(variables));
+        unpacker.unpack(file, createPackStream(source), target);
+
+        assertTrue(unpacker.isParsed());
+        assertEquals("home=/opt/app\nname=plutò\n", FileUtils.readFileToString(target, "UTF-8"));
+        assertEquals(source.lastModified(), target.lastModified());
+    }
+
+    /**
+     * Verifies that unpacking a parsable file fails if the pack stream ends before the end of the file.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSubstituteTruncatedStream() throws Exception
+    {
+        File baseDir = temporaryFolder.getRoot();
+        File source = createSourceFile(baseDir);
+        File target = getTargetFile(baseDir);
+
+        PackFile file = createPackFile(baseDir, source, target, Blockable.BLOCKABLE_NONE);
+        ParsableFile parsable = new ParsableFile(target.getPath(), SubstitutionType.TYPE_PLAIN, null,
+                                                 new ArrayList<OsModel>());
+        FileUnpacker unpacker = createUnpacker(baseDir, null);
+        unpacker.setParsable(parsable, new VariableSubstitutorImpl(new DefaultVariables()));
+        try
+        {
+            unpacker.unpack(file, new ByteArrayInputStream(new byte[10]), target);
+            fail("Expected unpack to fail");
+        }
+        catch (IOException expected)
+        {
+            assertTrue(expected.getMessage().startsWith("Unexpected end of stream"));
+        }
+        assertFalse(unpacker.isParsed());
+    }
+
     /**
      * Creates a pack file stream.
      *
@@ -0,0 +1,341 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.web;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link WebPackFetcher}, using an embedded HTTP server.
+ */
+public class WebPackFetcherTest
+{
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The content served.
+     */
+    private final byte[] content = new byte[500000];
+
+    /**
+     * The <tt>Range</tt> headers of the requests received. <tt>null</tt> elements indicate requests without ranges.
+     */
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * The HTTP server.
+     */
+    private HttpServer server;
+
+    /**
+     * The fetcher.
+     */
+    private WebPackFetcher fetcher;
+
+    /**
+     * The no. of bytes to send before dropping the connection on the first request, or <tt>-1</tt> to send all.
+     */
+    private volatile int dropAfter = -1;
+
+    /**
+     * Determines if the server supports <tt>Range</tt> requests.
+     */
+    private volatile boolean rangeSupported = true;
+
+    /**
+     * If non-null, the server sends half the content, and waits on this before sending the rest.
+     */
+    private volatile CountDownLatch pause;
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        new Random().nextBytes(content);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                serve(exchange);
+            }
+        });
+        server.start();
+        fetcher = new WebPackFetcher(temporaryFolder.newFolder("downloads"), WebPackFetcher.DEFAULT_THREADS);
+        fetcher.setRetryDelay(10);
+    }
+
+    /**
+     * Cleans up after the test case.
+     */
+    @After
+    public void tearDown()
+    {
+        fetcher.shutdown();
+        server.stop(0);
+    }
+
+    /**
+     * Verifies that a URL is downloaded to a file, and only downloaded once.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testDownload() throws Exception
+    {
+        WebPackFetcher.Download download = fetcher.fetch(getURL("installer.pack-base.jar"), "base.jar");
+        assertArrayEquals(content, read(download));
+        assertTrue(download.isComplete());
+        assertArrayEquals(content, FileUtils.readFileToByteArray(download.getFile()));
+
+        assertTrue(download == fetcher.fetch(getURL("installer.pack-base.jar"), "base.jar"));
+        assertArrayEquals(content, read(download));
+        assertEquals(1, ranges.size());
+    }
+
+    /**
+     * Verifies that a download is resumed from where it left off, if the connection drops.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testResume() throws Exception
+    {
+        dropAfter = 200000;
+        WebPackFetcher.Download download = fetcher.fetch(getURL("pack.jar"), "pack.jar");
+        assertArrayEquals(content, read(download));
+
+        assertEquals(2, ranges.size());
+        assertNull(ranges.get(0));
+        assertEquals("bytes=" + dropAfter + "-", ranges.get(1));
+    }
+
+    /**
+     * Verifies that a download is completed if the connection drops and the server doesn't support ranges.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testResumeWithoutRangeSupport() throws Exception
+    {
+        dropAfter = 200000;
+        rangeSupported = false;
+        WebPackFetcher.Download download = fetcher.fetch(getURL("pack.jar"), "pack.jar");
+        assertArrayEquals(content, read(download));
+        assertArrayEquals(content, FileUtils.readFileToByteArray(download.getFile()));
+        assertEquals(2, ranges.size());
+    }
+
+    /**
+     * Verifies that shutting down deletes the downloaded files, and the download directory once empty.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testShutdownDeletesDownloads() throws Exception
+    {
+        WebPackFetcher.Download download1 = fetcher.fetch(getURL("pack1.jar"), "pack1.jar");
+        WebPackFetcher.Download download2 = fetcher.fetch(getURL("pack2.jar"), "pack2.jar");
+        assertArrayEquals(content, read(download1));
+        assertArrayEquals(content, read(download2));
+        assertTrue(download1.getFile().exists());
+        assertTrue(download2.getFile().exists());
+
+        fetcher.shutdown();
+        assertFalse(download1.getFile().exists());
+        assertFalse(download2.getFile().exists());
+        assertFalse(download1.getFile().getParentFile().exists());
+    }
+
+    /**
+     * Verifies that downloaded data can be read before the download completes.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testStreamWhileDownloading() throws Exception
+    {
+        pause = new CountDownLatch(1);
+        WebPackFetcher.Download download = fetcher.fetch(getURL("pack.jar"), "pack.jar");
+        InputStream stream = download.openStream();
+        byte[] read = new byte[content.length];
+        int half = content.length / 2;
+        int count = 0;
+        while (count < half)
+        {
+            count += stream.read(read, count, half - count);
+        }
+        assertTrue(!download.isComplete());
+
+        pause.countDown();
+        IOUtils.readFully(stream, read, count, read.length - count);
+        assertEquals(-1, stream.read());
+        stream.close();
+        assertArrayEquals(content, read);
+        assertTrue(download.isComplete());
+    }
+
+    /**
+     * Verifies that reading a download that fails throws an exception, and that missing resources aren't retried.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testNotFound() throws Exception
+    {
+        WebPackFetcher.Download download = fetcher.fetch(getURL("missing.jar"), "missing.jar");
+        try
+        {
+            read(download);
+            fail("Expected IOException");
+        }
+        catch (IOException expected)
+        {
+            // expected
+        }
+        assertEquals(1, ranges.size());
+    }
+
+    /**
+     * Serves a request.
+     *
+     * @param exchange the exchange
+     * @throws IOException for any I/O error
+     */
+    private void serve(HttpExchange exchange) throws IOException
+    {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        boolean first = ranges.isEmpty();
+        ranges.add(range);
+        if (exchange.getRequestURI().getPath().contains("missing"))
+        {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        int offset = 0;
+        exchange.getResponseHeaders().add("ETag", "\"content\"");
+        if (range != null && rangeSupported)
+        {
+            offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + offset + "-" + (content.length - 1)
+                    + "/" + content.length);
+            exchange.sendResponseHeaders(206, content.length - offset);
+        }
+        else
+        {
+            exchange.sendResponseHeaders(200, content.length);
+        }
+        OutputStream out = exchange.getResponseBody();
+        try
+        {
+            if (first && dropAfter >= 0)
+            {
+                out.write(content, 0, dropAfter);
+                out.flush();
+                // closing the exchange before the content is sent drops the connection
+                return;
+            }
+            if (pause != null)
+            {
+                int half = content.length / 2;
+                out.write(content, offset, half - offset);
+                out.flush();
+                pause.await(30, TimeUnit.SECONDS);
+                offset = half;
+            }
+            out.write(content, offset, content.length - offset);
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads a download.
+     *
+     * @param download the download
+     * @return the downloaded data
+     * @throws IOException for any I/O error
+     */
+    private byte[] read(WebPackFetcher.Download download) throws IOException
+    {
+        InputStream stream = download.openStream();
+        try
+        {
+            return IOUtils.toByteArray(stream);
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    /**
+     * Returns the URL of a resource on the server.
+     *
+     * @param name the resource name
+     * @return the URL
+     */
+    private String getURL(String name)
+    {
+        return "http://localhost:" + server.getAddress().getPort() + "/" + name;
+    }
+}
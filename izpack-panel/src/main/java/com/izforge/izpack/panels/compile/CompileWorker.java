@@ -29,17 +29,34 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
 import com.izforge.izpack.api.adaptator.IXMLElement;
 import com.izforge.izpack.api.adaptator.IXMLParser;
 import com.izforge.izpack.api.adaptator.impl.XMLParser;
@@ -84,6 +101,11 @@ public class CompileWorker implements Runnable
 
     private static final String ECLIPSE_COMPILER_CLASS = "org.eclipse.jdt.internal.compiler.batch.Main";
 
+    /**
+     * The name of the in-process compiler provided by {@link ToolProvider#getSystemJavaCompiler()}.
+     */
+    private static final String JAVA_COMPILER_NAME = "Integrated Java Compiler";
+
     private VariableSubstitutor vs;
 
     private IXMLElement spec;
@@ -367,6 +389,14 @@ public class CompileWorker implements Runnable
                             // ignore, just don't add it as a choice
                         }
                     }
+                    else if (value.equalsIgnoreCase(JAVA_COMPILER_NAME))
+                    {
+                        // only available when running on a JDK
+                        if (getSystemJavaCompiler() != null)
+                        {
+                            choiceList.add(value);
+                        }
+                    }
                     else
                     {
                         try
@@ -439,26 +469,227 @@ public class CompileWorker implements Runnable
 
         }
 
-        int job_no = 0;
+        long startMillis = System.currentTimeMillis();
 
-        while (job_it.hasNext())
+        if (this.compilerToUse.equalsIgnoreCase(JAVA_COMPILER_NAME))
+        {
+            CompileResult result = compileJobsInProcess(args);
+            if (!result.isContinue())
+            {
+                return result;
+            }
+        }
+        else
         {
-            CompilationJob job = job_it.next();
+            int job_no = 0;
 
-            this.handler.nextStep(job.getName(), job.getSize(), job_no++);
+            while (job_it.hasNext())
+            {
+                CompilationJob job = job_it.next();
 
-            CompileResult job_result = job.perform(this.compilerToUse, args);
+                this.handler.nextStep(job.getName(), job.getSize(), job_no++);
 
-            if (!job_result.isContinue())
-            {
-                return job_result;
+                CompileResult job_result = job.perform(this.compilerToUse, args);
+
+                if (!job_result.isContinue())
+                {
+                    return job_result;
+                }
             }
         }
 
-        logger.fine("Compilation finished");
+        logger.fine("Compilation finished in " + (System.currentTimeMillis() - startMillis) + "ms");
+        return new CompileResult();
+    }
+
+    /**
+     * Compiles the jobs with the in-process {@link JavaCompiler}.
+     * <p/>
+     * Jobs are compiled concurrently on a pool of at most one thread per processor. A job waits for the earlier
+     * jobs it depends on (see {@link CompilationJob#dependsOn}) to complete first. Each thread reuses a single
+     * file manager for the jobs it compiles; file managers aren't thread safe, and are reconfigured with the
+     * class path of each job.
+     * <p/>
+     * Progress and errors are reported to the handler from the calling thread, in job order.
+     *
+     * @param args the compiler arguments
+     * @return the result of the first job that shouldn't be continued, or a successful result if all jobs succeed or
+     *         there are none
+     */
+    private CompileResult compileJobsInProcess(final List<String> args)
+    {
+        if (this.jobs.isEmpty())
+        {
+            return new CompileResult();
+        }
+
+        final JavaCompiler compiler = getSystemJavaCompiler();
+        if (compiler == null)
+        {
+            List<String> cmdline = new ArrayList<String>();
+            cmdline.add(JAVA_COMPILER_NAME);
+            CompileResult result = new CompileResult(idata.getMessages().get("CompilePanel.error.compilernotfound"),
+                                                     cmdline, "", "");
+            this.handler.handleCompileError(result);
+            return result;
+        }
+
+        File outputDir = null;
+        int index = args.indexOf("-d");
+        if (index >= 0 && index + 1 < args.size())
+        {
+            outputDir = new File(args.get(index + 1));
+        }
+
+        int threads = Math.min(this.jobs.size(), Runtime.getRuntime().availableProcessors());
+        logger.fine("Compiling " + this.jobs.size() + " job(s) using " + threads + " thread(s)");
+
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "izpack-compile-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final List<StandardJavaFileManager> fileManagers
+                = Collections.synchronizedList(new ArrayList<StandardJavaFileManager>());
+        final ThreadLocal<StandardJavaFileManager> fileManager = new ThreadLocal<StandardJavaFileManager>()
+        {
+            @Override
+            protected StandardJavaFileManager initialValue()
+            {
+                StandardJavaFileManager result = compiler.getStandardFileManager(null, null, null);
+                fileManagers.add(result);
+                return result;
+            }
+        };
+
+        List<Future<CompileResult>> futures = new ArrayList<Future<CompileResult>>();
+        try
+        {
+            // jobs are started in order, so the jobs a job waits on have always been started before it
+            for (final CompilationJob job : this.jobs)
+            {
+                final List<Future<CompileResult>> prerequisites = new ArrayList<Future<CompileResult>>();
+                for (int i = 0; i < futures.size(); ++i)
+                {
+                    if (job.dependsOn(this.jobs.get(i), outputDir))
+                    {
+                        prerequisites.add(futures.get(i));
+                    }
+                }
+                futures.add(executor.submit(new Callable<CompileResult>()
+                {
+                    @Override
+                    public CompileResult call() throws Exception
+                    {
+                        for (Future<CompileResult> prerequisite : prerequisites)
+                        {
+                            try
+                            {
+                                prerequisite.get();
+                            }
+                            catch (ExecutionException ignore)
+                            {
+                                // reported by the calling thread
+                            }
+                        }
+                        return job.performInProcess(compiler, fileManager.get(), args);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < this.jobs.size(); ++i)
+            {
+                CompilationJob job = this.jobs.get(i);
+                this.handler.nextStep(job.getName(), job.getSize(), i);
+
+                CompileResult result;
+                try
+                {
+                    result = futures.get(i).get();
+                }
+                catch (ExecutionException exception)
+                {
+                    Throwable cause = exception.getCause();
+                    result = new CompileResult((cause instanceof Exception) ? (Exception) cause : exception);
+                }
+                this.handler.progress(job.getSize(), job.getName());
+
+                if (!result.isSuccess())
+                {
+                    this.handler.handleCompileError(result);
+                    if (!result.isContinue())
+                    {
+                        return result;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            return new CompileResult(exception);
+        }
+        finally
+        {
+            for (Future<CompileResult> future : futures)
+            {
+                future.cancel(false);
+            }
+            executor.shutdown();
+            closeFileManagers(executor, fileManagers);
+        }
         return new CompileResult();
     }
 
+    /**
+     * Returns the in-process Java compiler.
+     *
+     * @return the compiler, or <tt>null</tt> if the installer isn't running on a JDK
+     */
+    protected JavaCompiler getSystemJavaCompiler()
+    {
+        return ToolProvider.getSystemJavaCompiler();
+    }
+
+    /**
+     * Closes the file managers, once the jobs that are already running have completed.
+     *
+     * @param executor     the executor running the jobs
+     * @param fileManagers the file managers to close
+     */
+    private void closeFileManagers(ExecutorService executor, List<StandardJavaFileManager> fileManagers)
+    {
+        try
+        {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+            {
+                logger.fine("Waiting for running compilation jobs to complete");
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (StandardJavaFileManager fileManager : fileManagers)
+        {
+            try
+            {
+                fileManager.close();
+            }
+            catch (IOException exception)
+            {
+                logger.log(Level.FINE, "Failed to close file manager: " + exception.getMessage(), exception);
+            }
+        }
+    }
+
     private CompilationJob collectJobsRecursive(IXMLElement node, List<String> classpath)
             throws Exception
     {
@@ -703,6 +934,7 @@ public class CompileWorker implements Runnable
         public CompileResult perform(String compiler, ArrayList<String> arguments)
         {
             logger.fine("starting job " + this.name);
+            long startMillis = System.currentTimeMillis();
             // we have some maximum command line length - need to count
             int cmdline_len = 0;
 
@@ -904,11 +1136,162 @@ public class CompileWorker implements Runnable
 
             }
 
-            logger.fine("Job " + this.name + " done (" + fileno + " files compiled)");
+            logger.fine("Job " + this.name + " done (" + fileno + " files compiled in "
+                                + (System.currentTimeMillis() - startMillis) + "ms)");
 
             return new CompileResult();
         }
 
+        /**
+         * Perform this job with the in-process Java compiler.
+         * <p/>
+         * All files of the job are compiled by a single compilation task, as there is no command line length limit.
+         * The listener isn't notified, so this may be invoked from any thread.
+         *
+         * @param compiler    The compiler to use.
+         * @param fileManager The file manager to use. Must not be used concurrently by another thread.
+         * @param arguments   The compiler arguments to use.
+         * @return The result. A failed result has not yet been passed to the listener.
+         */
+        public CompileResult performInProcess(JavaCompiler compiler, StandardJavaFileManager fileManager,
+                                              List<String> arguments)
+        {
+            logger.fine("starting job " + this.name);
+            long startMillis = System.currentTimeMillis();
+
+            // always supply the class path, so that the installer's own class path isn't used
+            List<String> options = new ArrayList<String>(arguments);
+            options.add("-classpath");
+            options.add(this.classpath.isEmpty() ? "." : getClassPath());
+
+            List<String> cmdline = new ArrayList<String>(options);
+            cmdline.add(0, JAVA_COMPILER_NAME);
+            for (File file : this.files)
+            {
+                cmdline.add(file.getAbsolutePath());
+            }
+
+            StringWriter out = new StringWriter();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+            boolean success;
+            try
+            {
+                Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(this.files);
+                success = compiler.getTask(out, fileManager, diagnostics, options, null, units).call();
+            }
+            catch (RuntimeException exception)
+            {
+                // invalid options, or a failure in the compiler itself
+                logger.log(Level.FINE, "Job " + this.name + " failed: " + exception.getMessage(), exception);
+                return new CompileResult(messages.get("CompilePanel.error"), cmdline, out.toString(),
+                                         String.valueOf(exception.getMessage()));
+            }
+
+            StringBuilder err = new StringBuilder();
+            int errors = 0;
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+            {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                {
+                    errors++;
+                }
+                err.append(diagnostic).append(System.getProperty("line.separator"));
+            }
+
+            logger.fine("Job " + this.name + " done (" + this.files.size() + " files compiled in "
+                                + (System.currentTimeMillis() - startMillis) + "ms, " + errors + " errors)");
+
+            if (!success || errors > 0)
+            {
+                return new CompileResult(messages.get("CompilePanel.error"), cmdline, out.toString(),
+                                         err.toString());
+            }
+            return new CompileResult();
+        }
+
+        /**
+         * Determines if this job depends on the classes of an earlier job.
+         * <p/>
+         * This is the case if an entry of this job's class path is, or contains, a directory that the other job
+         * writes classes to. As the class path also serves as source path, the compiler could otherwise pick up,
+         * or recompile, the other job's classes while they are being written.
+         *
+         * @param other     The earlier job.
+         * @param outputDir The directory passed to the compiler with <tt>-d</tt>, or <tt>null</tt> if classes are
+         *                  written next to their sources.
+         * @return true if this job must be compiled after the other job.
+         */
+        public boolean dependsOn(CompilationJob other, File outputDir)
+        {
+            List<File> entries = new ArrayList<File>();
+            if (this.classpath.isEmpty())
+            {
+                entries.add(normalize(new File(".")));
+            }
+            else
+            {
+                for (String cp : this.classpath)
+                {
+                    entries.add(normalize(new File(cp)));
+                }
+            }
+
+            List<File> dirs = new ArrayList<File>();
+            if (outputDir != null)
+            {
+                dirs.add(normalize(outputDir));
+            }
+            else
+            {
+                for (File file : other.files)
+                {
+                    dirs.add(normalize(file).getParentFile());
+                }
+            }
+
+            for (File dir : dirs)
+            {
+                for (File parent = dir; parent != null; parent = parent.getParentFile())
+                {
+                    if (entries.contains(parent))
+                    {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Helper to make a path absolute, removing any <tt>.</tt> and <tt>..</tt> segments.
+         *
+         * @param file The path.
+         * @return The normalized absolute path.
+         */
+        private static File normalize(File file)
+        {
+            return new File(file.getAbsoluteFile().toURI().normalize());
+        }
+
+        /**
+         * Returns the class path of this job.
+         *
+         * @return The absolute class path entries, separated by the path separator.
+         */
+        private String getClassPath()
+        {
+            StringBuilder result = new StringBuilder();
+            for (String cp : this.classpath)
+            {
+                if (result.length() > 0)
+                {
+                    result.append(File.pathSeparatorChar);
+                }
+                result.append(new File(cp).getAbsolutePath());
+            }
+            return result.toString();
+        }
+
         /**
          * Internal helper method.
          *
@@ -1066,7 +1449,7 @@ public class CompileWorker implements Runnable
         public CompileResult checkCompiler(String compiler, ArrayList<String> arguments)
         {
             // don't do further checks for eclipse compiler - it would exit
-            if (compiler.equalsIgnoreCase(ECLIPSE_COMPILER_NAME))
+            if (compiler.equalsIgnoreCase(ECLIPSE_COMPILER_NAME) || compiler.equalsIgnoreCase(JAVA_COMPILER_NAME))
             {
                 return new CompileResult();
             }
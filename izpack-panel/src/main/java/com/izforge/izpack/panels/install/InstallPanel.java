@@ -26,7 +26,7 @@ import javax.swing.JProgressBar;
 import javax.swing.SwingUtilities;
 
 import com.izforge.izpack.api.data.Panel;
-import com.izforge.izpack.api.event.ProgressListener;
+import com.izforge.izpack.api.event.ByteProgressListener;
 import com.izforge.izpack.api.resource.Resources;
 import com.izforge.izpack.gui.IzPanelLayout;
 import com.izforge.izpack.gui.LabelFactory;
@@ -40,11 +40,16 @@ import com.izforge.izpack.installer.gui.IzPanel;
  *
  * @author Julien Ponge
  */
-public class InstallPanel extends IzPanel implements ProgressListener
+public class InstallPanel extends IzPanel implements ByteProgressListener
 {
 
     private static final long serialVersionUID = 3257282547959410992L;
 
+    /**
+     * The maximum of the pack progress bar, when it displays byte progress.
+     */
+    private static final int BYTE_PROGRESS_MAXIMUM = 1000;
+
     /**
      * The tip label.
      */
@@ -90,6 +95,12 @@ public class InstallPanel extends IzPanel implements ProgressListener
      */
     private int currentStep = 0;
 
+    /**
+     * Determines if the pack progress bar displays byte progress, rather than file progress.
+     * Only accessed on the event dispatch thread.
+     */
+    private boolean byteProgress = false;
+
     /**
      * Constructs an <tt>InstallPanel</tt>.
      *
@@ -236,12 +247,39 @@ public class InstallPanel extends IzPanel implements ProgressListener
             @Override
             public void run()
             {
-                packProgressBar.setValue(val + 1);
+                if (!byteProgress)
+                {
+                    packProgressBar.setValue(val + 1);
+                }
                 packOpLabel.setText(msg);
             }
         });
     }
 
+    /**
+     * Byte progress indicator. Once received for a pack, the pack progress bar tracks bytes rather than files.
+     *
+     * @param bytes      the no. of bytes unpacked
+     * @param totalBytes the total no. of bytes in the pack
+     */
+    @Override
+    public void byteProgress(final long bytes, final long totalBytes)
+    {
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (!byteProgress)
+                {
+                    byteProgress = true;
+                    packProgressBar.setMaximum(BYTE_PROGRESS_MAXIMUM);
+                }
+                packProgressBar.setValue((int) (bytes * BYTE_PROGRESS_MAXIMUM / Math.max(totalBytes, 1)));
+            }
+        });
+    }
+
     /**
      * Pack changing.
      *
@@ -258,6 +296,7 @@ public class InstallPanel extends IzPanel implements ProgressListener
             @Override
             public void run()
             {
+                byteProgress = false;
                 packProgressBar.setValue(0);
                 packProgressBar.setMinimum(0);
                 packProgressBar.setMaximum(max);
@@ -280,7 +319,10 @@ public class InstallPanel extends IzPanel implements ProgressListener
             @Override
             public void run()
             {
-                packProgressBar.setMaximum(no_of_substeps);
+                if (!byteProgress)
+                {
+                    packProgressBar.setMaximum(no_of_substeps);
+                }
             }
         });
     }
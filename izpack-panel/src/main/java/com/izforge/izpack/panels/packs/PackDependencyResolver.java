@@ -0,0 +1,333 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.panels.packs;
+
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.panels.packs.PacksModel.CbSelectionState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves which of the packs visible in a {@link PacksModel} are blocked by an unselected dependency.
+ * <p/>
+ * A pack is blocked if any pack it depends on, directly or transitively, is not selected. The dependency,
+ * dependant, exclude group and requirement relations between packs are indexed by row when the resolver is
+ * constructed. Each call to {@link #resolve(List)} only re-evaluates the packs that depend on a pack whose
+ * selection changed since the previous call.
+ */
+class PackDependencyResolver
+{
+    /**
+     * The rows of the packs that each pack depends on, indexed by row.
+     */
+    private final int[][] dependencies;
+
+    /**
+     * The rows of the packs that depend on each pack, indexed by row.
+     */
+    private final int[][] dependants;
+
+    /**
+     * The rows of the other packs in the same exclude group as each pack, indexed by row.
+     */
+    private final int[][] excludes;
+
+    /**
+     * The rows of the packs that each required pack propagates its required status to, indexed by row.
+     * Packs that aren't required have an empty array.
+     */
+    private final int[][] requirements;
+
+    /**
+     * The rows of the required packs.
+     */
+    private final int[] required;
+
+    /**
+     * Determines if each pack is blocked by an unselected dependency, indexed by row.
+     */
+    private final boolean[] blocked;
+
+    /**
+     * The selection that {@link #blocked} was resolved against, or {@code null} if it hasn't been resolved yet.
+     */
+    private boolean[] selected;
+
+    /**
+     * An empty row array.
+     */
+    private static final int[] NONE = new int[0];
+
+    /**
+     * Constructs a <tt>PackDependencyResolver</tt>.
+     *
+     * @param packs     the visible packs, in row order
+     * @param nameToRow mapping from pack names to rows. Dependencies on packs without a row are ignored
+     */
+    public PackDependencyResolver(List<Pack> packs, Map<String, Integer> nameToRow)
+    {
+        int count = packs.size();
+        dependencies = new int[count][];
+        blocked = new boolean[count];
+
+        List<List<Integer>> reverse = new ArrayList<List<Integer>>(count);
+        Map<String, List<Integer>> groups = new HashMap<String, List<Integer>>();
+        List<Integer> requiredRows = new ArrayList<Integer>();
+        for (int row = 0; row < count; ++row)
+        {
+            reverse.add(new ArrayList<Integer>());
+        }
+        for (int row = 0; row < count; ++row)
+        {
+            Pack pack = packs.get(row);
+            List<Integer> rows = new ArrayList<Integer>();
+            if (pack.hasDependencies())
+            {
+                for (String name : pack.getDependencies())
+                {
+                    Integer dependency = nameToRow.get(name);
+                    if (dependency != null && !rows.contains(dependency))
+                    {
+                        rows.add(dependency);
+                        reverse.get(dependency).add(row);
+                    }
+                }
+            }
+            dependencies[row] = toArray(rows);
+
+            String group = pack.getExcludeGroup();
+            if (group != null)
+            {
+                List<Integer> members = groups.get(group);
+                if (members == null)
+                {
+                    members = new ArrayList<Integer>();
+                    groups.put(group, members);
+                }
+                members.add(row);
+            }
+            if (pack.isRequired())
+            {
+                requiredRows.add(row);
+            }
+        }
+
+        dependants = new int[count][];
+        excludes = new int[count][];
+        requirements = new int[count][];
+        for (int row = 0; row < count; ++row)
+        {
+            dependants[row] = toArray(reverse.get(row));
+            String group = packs.get(row).getExcludeGroup();
+            excludes[row] = (group != null) ? getOtherMembers(row, groups.get(group)) : NONE;
+            requirements[row] = NONE;
+        }
+        required = toArray(requiredRows);
+        for (int row : required)
+        {
+            requirements[row] = getRequirementChain(row, packs, nameToRow);
+        }
+    }
+
+    /**
+     * Returns the rows of the packs that depend directly on a pack.
+     *
+     * @param row the row of the pack
+     * @return the rows of the dependant packs
+     */
+    public int[] getDependants(int row)
+    {
+        return dependants[row];
+    }
+
+    /**
+     * Returns the rows of the other packs in the same exclude group as a pack.
+     *
+     * @param row the row of the pack
+     * @return the rows of the excluded packs. Empty if the pack has no exclude group
+     */
+    public int[] getExcludes(int row)
+    {
+        return excludes[row];
+    }
+
+    /**
+     * Returns the rows of the required packs.
+     *
+     * @return the rows of the required packs
+     */
+    public int[] getRequired()
+    {
+        return required;
+    }
+
+    /**
+     * Returns the rows of the packs that a required pack propagates its required status to, starting with the
+     * pack itself.
+     *
+     * @param row the row of the required pack
+     * @return the rows of the packs to mark as required
+     */
+    public int[] getRequirements(int row)
+    {
+        return requirements[row];
+    }
+
+    /**
+     * Determines which packs are blocked by an unselected dependency.
+     * <p/>
+     * A pack counts as selected if its state is {@link CbSelectionState#isSelectedOrRequiredSelected()}.
+     * Only the packs reachable from a pack whose selection changed since the last call are re-evaluated.
+     *
+     * @param states the current states of the packs, indexed by row
+     * @return the blocked flags, indexed by row. This array is owned by the resolver, and is updated by
+     *         subsequent calls
+     */
+    public boolean[] resolve(List<CbSelectionState> states)
+    {
+        int count = blocked.length;
+        boolean[] current = new boolean[count];
+        for (int row = 0; row < count; ++row)
+        {
+            CbSelectionState state = states.get(row);
+            current[row] = state != null && state.isSelectedOrRequiredSelected();
+        }
+
+        // determine the packs affected by the change in selection
+        boolean[] affected = new boolean[count];
+        int[] queue = new int[count];
+        int size = 0;
+        for (int row = 0; row < count; ++row)
+        {
+            if (selected == null || selected[row] != current[row])
+            {
+                affected[row] = true;
+                queue[size++] = row;
+            }
+        }
+        for (int head = 0; head < size; ++head)
+        {
+            for (int dependant : dependants[queue[head]])
+            {
+                if (!affected[dependant])
+                {
+                    affected[dependant] = true;
+                    queue[size++] = dependant;
+                }
+            }
+        }
+        selected = current;
+        if (size == 0)
+        {
+            return blocked;
+        }
+
+        // re-evaluate the affected packs, seeding from their unselected or blocked unaffected dependencies
+        int affectedCount = size;
+        int[] rows = queue.clone();
+        size = 0;
+        for (int i = 0; i < affectedCount; ++i)
+        {
+            int row = rows[i];
+            blocked[row] = false;
+            for (int dependency : dependencies[row])
+            {
+                if (!current[dependency] || (!affected[dependency] && blocked[dependency]))
+                {
+                    blocked[row] = true;
+                    queue[size++] = row;
+                    break;
+                }
+            }
+        }
+        for (int head = 0; head < size; ++head)
+        {
+            for (int dependant : dependants[queue[head]])
+            {
+                if (affected[dependant] && !blocked[dependant])
+                {
+                    blocked[dependant] = true;
+                    queue[size++] = dependant;
+                }
+            }
+        }
+        return blocked;
+    }
+
+    /**
+     * Returns the rows of a required pack and the packs it propagates its required status to.
+     * <p/>
+     * The requirement is propagated along the first dependency of each pack.
+     *
+     * @param row       the row of the required pack
+     * @param packs     the visible packs, in row order
+     * @param nameToRow mapping from pack names to rows
+     * @return the rows of the packs to mark as required
+     */
+    private static int[] getRequirementChain(int row, List<Pack> packs, Map<String, Integer> nameToRow)
+    {
+        List<Integer> result = new ArrayList<Integer>();
+        Integer next = row;
+        while (next != null && !result.contains(next))
+        {
+            result.add(next);
+            List<String> deps = packs.get(next).getDependencies();
+            next = (deps != null && !deps.isEmpty()) ? nameToRow.get(deps.get(0)) : null;
+        }
+        return toArray(result);
+    }
+
+    /**
+     * Returns the rows of an exclude group, excluding a pack.
+     *
+     * @param row     the row of the pack to exclude
+     * @param members the rows of the exclude group
+     * @return the rows of the other packs in the group
+     */
+    private static int[] getOtherMembers(int row, List<Integer> members)
+    {
+        List<Integer> result = new ArrayList<Integer>(members);
+        result.remove(Integer.valueOf(row));
+        return toArray(result);
+    }
+
+    /**
+     * Converts a list of rows to an array.
+     *
+     * @param rows the rows
+     * @return the rows as an array
+     */
+    private static int[] toArray(List<Integer> rows)
+    {
+        if (rows.isEmpty())
+        {
+            return NONE;
+        }
+        int[] result = new int[rows.size()];
+        for (int i = 0; i < result.length; ++i)
+        {
+            result[i] = rows.get(i);
+        }
+        return result;
+    }
+}
@@ -26,7 +26,6 @@ package com.izforge.izpack.panels.packs;
 
 import com.izforge.izpack.api.data.InstallData;
 import com.izforge.izpack.api.data.Pack;
-import com.izforge.izpack.api.data.PackColor;
 import com.izforge.izpack.api.data.Variables;
 import com.izforge.izpack.api.exception.ResourceNotFoundException;
 import com.izforge.izpack.api.resource.Messages;
@@ -66,6 +65,8 @@ public class PacksModel extends AbstractTableModel
     private final Map<String, Pack> nameToPack;
     private final Map<String, Integer> nameToRow;
 
+    private final transient PackDependencyResolver resolver;
+
     private final boolean modifyInstallation;
 
     public PacksModel(InstallData idata)
@@ -89,6 +90,7 @@ public class PacksModel extends AbstractTableModel
         this.nameToPack = getNametoPackMapping(idata.getAvailablePacks());
 
         this.packs = setPackProperties(packs, nameToPack);
+        this.resolver = new PackDependencyResolver(packs, nameToRow);
         this.checkValues = initCheckValues(packs, packsToInstall);
 
         updateConditions(true);
@@ -222,10 +224,9 @@ public class PacksModel extends AbstractTableModel
         while (changes)
         {
             changes = false;
-            for (Pack pack : packs)
+            for (int pos = 0; pos < packs.size(); pos++)
             {
-                String packName = pack.getName();
-                int pos = getPos(packName);
+                String packName = packs.get(pos).getName();
                 if (!rules.canInstallPack(packName, variables))
                 {
                     logger.fine("Conditions for pack '" + packName + "' are not complied with");
@@ -277,12 +278,17 @@ public class PacksModel extends AbstractTableModel
     private List<CbSelectionState> initCheckValues(List<Pack> packs, List<Pack> packsToInstall)
     {
         CbSelectionState[] checkValues = new CbSelectionState[packs.size()];
+        Set<String> namesToInstall = new HashSet<String>();
+        for (Pack pack : packsToInstall)
+        {
+            namesToInstall.add(pack.getName());
+        }
 
         // If a pack is indicated to be installed checkbox value should be SELECTED
         for (int i = 0; i < packs.size(); i++)
         {
             Pack pack = packs.get(i);
-            if (packsToInstall.contains(pack))
+            if (namesToInstall.contains(pack.getName()))
             {
                 checkValues[i] = CbSelectionState.SELECTED;
             }
@@ -298,11 +304,8 @@ public class PacksModel extends AbstractTableModel
             Pack pack = packs.get(i);
             if (checkValues[i] == CbSelectionState.DESELECTED)
             {
-                List<String> deps = pack.getDependants();
-                for (int j = 0; deps != null && j < deps.size(); j++)
+                for (int pos : resolver.getDependants(i))
                 {
-                    String name = deps.get(j);
-                    int pos = getPos(name);
                     checkValues[pos] = CbSelectionState.DEPENDENT_DESELECTED;
                 }
             }
@@ -310,58 +313,41 @@ public class PacksModel extends AbstractTableModel
             // for mutual exclusion, uncheck uncompatible packs too
             // (if available in the current installGroup)
             CbSelectionState checkState = checkValues[i];
-            if (checkState != null && checkState.isFullyOrPartiallySelected() && pack.getExcludeGroup() != null)
+            if (checkState != null && checkState.isFullyOrPartiallySelected())
             {
-                for (int q = 0; q < packs.size(); q++)
+                for (int q : resolver.getExcludes(i))
                 {
-                    if (q != i)
+                    if (checkValues[q] == CbSelectionState.SELECTED)
                     {
-                        Pack otherPack = packs.get(q);
-                        if (pack.getExcludeGroup().equals(otherPack.getExcludeGroup()))
-                        {
-                            if (checkValues[q] == CbSelectionState.SELECTED)
-                            {
-                                checkValues[q] = CbSelectionState.DESELECTED;
-                            }
-                        }
+                        checkValues[q] = CbSelectionState.DESELECTED;
                     }
                 }
             }
         }
 
         // Configure required packs
-        for (Pack pack : packs)
+        List<CbSelectionState> result = Arrays.asList(checkValues);
+        for (int row : resolver.getRequired())
         {
-            if (pack.isRequired())
-            {
-                checkValues = propRequirement(pack.getName(), Arrays.asList(checkValues)).toArray(new CbSelectionState[checkValues.length]);
-            }
+            propRequirement(row, result);
         }
 
-        return Arrays.asList(checkValues);
+        return result;
     }
 
     /**
      * Configure required packs.
-     * @param name
-     * @param checkValues
-     * @return
+     * Marks a required pack, and the packs it propagates its requirement to, as {@code REQUIRED_SELECTED}.
+     *
+     * @param row         the row of the required pack
+     * @param checkValues the checkbox states to update
      */
-    private List<CbSelectionState> propRequirement(String name, List<CbSelectionState> checkValues)
+    private void propRequirement(int row, List<CbSelectionState> checkValues)
     {
-
-        final int pos = getPos(name);
-        checkValues.set(pos, CbSelectionState.REQUIRED_SELECTED);
-        List<String> deps = packs.get(pos).getDependencies();
-        if (deps != null)
+        for (int pos : resolver.getRequirements(row))
         {
-            for (String s : deps)
-            {
-                return propRequirement(s, checkValues);
-            }
+            checkValues.set(pos, CbSelectionState.REQUIRED_SELECTED);
         }
-        return checkValues;
-
     }
 
     /**
@@ -725,39 +711,35 @@ public class PacksModel extends AbstractTableModel
      * This function updates the checkboxes after a change by disabling packs that cannot be
      * installed anymore and enabling those that can after the change. This is accomplished by
      * running a search that pinpoints the packs that must be disabled by a non-fulfilled
-     * dependency.
+     * dependency. The search is incremental; see {@link PackDependencyResolver}.
      * TODO: Look into "+2" and "-2", doesn't look safe
      */
     private void updateDeps()
     {
-        int[] statusArray = new int[packs.size()];
-        dfs(statusArray);
-        for (int i = 0; i < statusArray.length; i++)
+        boolean[] blocked = resolver.resolve(checkValues);
+        for (int i = 0; i < blocked.length; i++)
         {
             CbSelectionState cbSelectionState = checkValues.get(i);
-            if (statusArray[i] == 0 && !cbSelectionState.isSelectable())
+            if (!blocked[i] && !cbSelectionState.isSelectable())
             {
                 // When dependency is selected, dependent should be marked as deselected to avoid double-clicking to
                 // select dependent, issue [IZPACK-1653]
                 checkValues.set(i, cbSelectionState == CbSelectionState.DEPENDENT_DESELECTED ?
                         CbSelectionState.DESELECTED : CbSelectionState.PARTIAL_SELECTED);
             }
-            if (statusArray[i] == 1 && cbSelectionState.isSelectable())
+            if (blocked[i] && cbSelectionState.isSelectable())
             {
                 checkValues.set(i, CbSelectionState.DEPENDENT_DESELECTED);
             }
 
         }
         // The required ones must propagate their required status to all the ones that they depend on
-        for (Pack pack : packs)
+        for (int row : resolver.getRequired())
         {
-            if (pack.isRequired())
+            String name = packs.get(row).getName();
+            if (!(!rules.canInstallPack(name, variables) && rules.canInstallPackOptional(name, variables)))
             {
-                String name = pack.getName();
-                if (!(!rules.canInstallPack(name, variables) && rules.canInstallPackOptional(name, variables)))
-                {
-                    checkValues = propRequirement(name, checkValues);
-                }
+                propRequirement(row, checkValues);
             }
         }
 
@@ -769,87 +751,19 @@ public class PacksModel extends AbstractTableModel
     private void updateExcludes(int rowindex)
     {
         CbSelectionState value = checkValues.get(rowindex);
-        Pack pack = packs.get(rowindex);
-        if (value != null && value.isFullyOrPartiallySelected() && pack.getExcludeGroup() != null)
+        if (value != null && value.isFullyOrPartiallySelected())
         {
-            for (int q = 0; q < packs.size(); q++)
+            for (int q : resolver.getExcludes(rowindex))
             {
-                if (rowindex != q)
+                if (checkValues.get(q) == CbSelectionState.SELECTED)
                 {
-                    Pack otherPack = packs.get(q);
-                    String name1 = otherPack.getExcludeGroup();
-                    String name2 = pack.getExcludeGroup();
-                    if (name2.equals(name1))
-                    {
-                        if (checkValues.get(q) == CbSelectionState.SELECTED)
-                        {
-                            checkValues.set(q, CbSelectionState.DESELECTED);
-                        }
-                    }
+                    checkValues.set(q, CbSelectionState.DESELECTED);
                 }
             }
         }
     }
 
 
-    /**
-     * We use a modified dfs graph search algorithm as described in: Thomas H. Cormen, Charles
-     * Leiserson, Ronald Rivest and Clifford Stein. Introduction to algorithms 2nd Edition
-     * 540-549,MIT Press, 2001
-     */
-    private void dfs(int[] status)
-    {
-        Map<String, PackColor> colours = new HashMap<String, PackColor>();
-        for (int i = 0; i < packs.size(); i++)
-        {
-            for (Pack pack : packs)
-            {
-                colours.put(pack.getName(), PackColor.WHITE);
-            }
-            Pack pack = packs.get(i);
-            boolean wipe = false;
-
-            if (dfsVisit(pack, status, wipe, colours) != 0)
-            {
-                return;
-            }
-
-        }
-    }
-
-    private int dfsVisit(Pack u, int[] status, boolean wipe, Map<String, PackColor> colours)
-    {
-        colours.put(u.getName(), PackColor.GREY);
-        CbSelectionState check = checkValues.get(getPos(u.getName()));
-
-        if (!check.isSelectedOrRequiredSelected())
-        {
-            wipe = true;
-        }
-        List<String> deps = u.getDependants();
-        if (deps != null)
-        {
-            for (String name : deps)
-            {
-                Pack v = nameToPack.get(name);
-                if (wipe)
-                {
-                    status[getPos(v.getName())] = 1;
-                }
-                if (colours.get(v.getName()) == PackColor.WHITE)
-                {
-                    final int result = dfsVisit(v, status, wipe, colours);
-                    if (result != 0)
-                    {
-                        return result;
-                    }
-                }
-            }
-        }
-        colours.put(u.getName(), PackColor.BLACK);
-        return 0;
-    }
-
     /**
      * Get previously installed packs on modifying a pre-installed application
      * @return the installedPacks
@@ -21,6 +21,15 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -66,6 +75,11 @@ public class ProcessPanelWorker implements Runnable
 
     private String logfiledir = null;
 
+    /**
+     * The maximum no. of <em>parallel</em> jobs that may run at the same time.
+     */
+    private int maxParallelJobs = Runtime.getRuntime().availableProcessors();
+
     private final InstallData idata;
 
     private final Map<Boolean, List<ButtonConfig>> buttonConfigs = new HashMap<Boolean, List<ButtonConfig>>();
@@ -146,6 +160,20 @@ public class ProcessPanelWorker implements Runnable
             logfiledir = logFileDirElement.getContent();
         }
 
+        IXMLElement maxParallelJobsElement = spec.getFirstChildNamed("maxParallelJobs");
+        if (maxParallelJobsElement != null)
+        {
+            String value = idata.getVariables().replace(maxParallelJobsElement.getContent());
+            try
+            {
+                maxParallelJobs = Math.max(1, Integer.parseInt(value.trim()));
+            }
+            catch (NumberFormatException e)
+            {
+                logger.warning("Invalid maxParallelJobs: " + value);
+            }
+        }
+
         for (IXMLElement job_el : spec.getChildrenNamed("job"))
         {
             // normally use condition attribute, but also read conditionid to not break older versions.
@@ -235,6 +263,13 @@ public class ProcessPanelWorker implements Runnable
 
                 Boolean isCatch = job_el.hasAttribute("catch") && Boolean.parseBoolean(job_el.getAttribute("catch"));
                 Boolean isFinal = job_el.hasAttribute("final") && Boolean.parseBoolean(job_el.getAttribute("final"));
+                boolean isParallel = Boolean.parseBoolean(job_el.getAttribute("parallel", "false"));
+                List<String> dependsOn = new ArrayList<String>();
+                StringTokenizer tokenizer = new StringTokenizer(job_el.getAttribute("dependsOn", ""), ", ");
+                while (tokenizer.hasMoreTokens())
+                {
+                    dependsOn.add(tokenizer.nextToken());
+                }
 
                 if (ef_list.isEmpty())
                 {
@@ -247,7 +282,7 @@ public class ProcessPanelWorker implements Runnable
                     } else if (isFinal) {
                         this.finalJobs.add(new ProcessingJob(job_name, ef_list));
                     } else {
-                        this.jobs.add(new ProcessingJob(job_name, ef_list));
+                        this.jobs.add(new ProcessingJob(job_name, ef_list, isParallel, dependsOn));
                     }
                 }
             }
@@ -345,20 +380,16 @@ public class ProcessPanelWorker implements Runnable
         /**
          * Process panel jobs.
          */
-        for (ProcessPanelWorker.ProcessingJob processingJob : this.jobs)
-        {
-            this.result = runJob(processingJob);
+        this.result = isScheduled() ? runScheduledJobs() : runJobs();
 
-            if (!this.result)
+        if (!this.result)
+        {
+            /**
+             * Jobs run in event of failure.
+             */
+            for (ProcessPanelWorker.ProcessingJob catchJob : this.catchJobs)
             {
-                /**
-                 * Jobs run in event of failure.
-                 */
-                for (ProcessPanelWorker.ProcessingJob catchJob : this.catchJobs)
-                {
-                    runJob(catchJob);
-                }
-                break;
+                runJob(catchJob);
             }
         }
 
@@ -401,20 +432,201 @@ public class ProcessPanelWorker implements Runnable
         }
     }
 
+    /**
+     * Runs the process panel jobs one after another, stopping at the first job that fails.
+     *
+     * @return true if all jobs succeeded, false otherwise.
+     */
+    private boolean runJobs()
+    {
+        for (ProcessPanelWorker.ProcessingJob processingJob : this.jobs)
+        {
+            if (!runJob(processingJob))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if the process panel jobs need to be scheduled, i.e. if more than one of them may run
+     * concurrently. Otherwise running the jobs in order also satisfies their dependencies.
+     *
+     * @return true if the jobs need to be scheduled, false if they can simply run in order.
+     */
+    private boolean isScheduled()
+    {
+        int parallel = 0;
+        for (ProcessPanelWorker.ProcessingJob job : this.jobs)
+        {
+            if (job.parallel)
+            {
+                parallel++;
+            }
+        }
+        return parallel > 1 && maxParallelJobs > 1;
+    }
+
+    /**
+     * Runs the process panel jobs on a pool of at most <em>maxParallelJobs</em> threads.
+     * <p/>
+     * A job starts once the jobs it depends on have completed. A <em>parallel</em> job depends on the jobs listed
+     * in its <em>dependsOn</em> attribute and on the closest preceding job that isn't <em>parallel</em>. Any other
+     * job depends on all jobs that precede it, as when the jobs run one after another.
+     * <p/>
+     * Once a job fails, no further jobs are started, but jobs that are already running are allowed to complete.
+     *
+     * @return true if all jobs succeeded, false otherwise.
+     */
+    private boolean runScheduledJobs()
+    {
+        int threads = Math.min(maxParallelJobs, this.jobs.size());
+        logger.fine("Running " + this.jobs.size() + " job(s) using " + threads + " thread(s)");
+
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "izpack-process-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final AtomicBoolean failed = new AtomicBoolean();
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        try
+        {
+            // jobs are started in order, so the jobs a job waits on have always been started before it
+            for (int i = 0; i < this.jobs.size(); ++i)
+            {
+                final ProcessPanelWorker.ProcessingJob job = this.jobs.get(i);
+                final List<Future<Boolean>> prerequisites = new ArrayList<Future<Boolean>>();
+                for (int j : getPrerequisites(i))
+                {
+                    prerequisites.add(futures.get(j));
+                }
+                final AbstractUIProcessHandler jobHandler = job.parallel ? new JobHandler(this.handler, job.name)
+                        : this.handler;
+                futures.add(executor.submit(new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call() throws Exception
+                    {
+                        for (Future<Boolean> prerequisite : prerequisites)
+                        {
+                            prerequisite.get();
+                        }
+                        if (failed.get())
+                        {
+                            return false;
+                        }
+                        boolean result = runJob(job, jobHandler);
+                        if (!result)
+                        {
+                            failed.set(true);
+                        }
+                        return result;
+                    }
+                }));
+            }
+
+            for (Future<Boolean> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+        }
+        catch (ExecutionException e)
+        {
+            logger.log(Level.WARNING, "Process panel job failed: " + e.getCause(), e.getCause());
+            failed.set(true);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        return !failed.get();
+    }
+
+    /**
+     * Returns the jobs that a job must wait for before it may start.
+     *
+     * @param index the index of the job
+     * @return the indexes of the preceding jobs to wait for
+     */
+    private Set<Integer> getPrerequisites(int index)
+    {
+        Set<Integer> result = new TreeSet<Integer>();
+        ProcessPanelWorker.ProcessingJob job = this.jobs.get(index);
+        if (!job.parallel)
+        {
+            for (int i = 0; i < index; ++i)
+            {
+                result.add(i);
+            }
+            return result;
+        }
+        for (int i = index - 1; i >= 0; --i)
+        {
+            if (!this.jobs.get(i).parallel)
+            {
+                result.add(i);
+                break;
+            }
+        }
+        for (String name : job.dependsOn)
+        {
+            boolean found = false;
+            for (int i = 0; i < index; ++i)
+            {
+                if (name.equals(this.jobs.get(i).name))
+                {
+                    result.add(i);
+                    found = true;
+                }
+            }
+            if (!found)
+            {
+                logger.warning("Job '" + job.name + "' depends on '" + name
+                                       + "', which doesn't precede it. The dependency is ignored");
+            }
+        }
+        return result;
+    }
+
     /**
      * Runs the specified process panel job.
      * @param job a ProcessPanelWorker job.
      * @return the job's return value.
      */
     private boolean runJob(ProcessPanelWorker.ProcessingJob job)
+    {
+        return runJob(job, this.handler);
+    }
+
+    /**
+     * Runs the specified process panel job.
+     * @param job a ProcessPanelWorker job.
+     * @param handler the handler to report to.
+     * @return the job's return value.
+     */
+    private boolean runJob(ProcessPanelWorker.ProcessingJob job, AbstractUIProcessHandler handler)
     {
         Boolean val;
 
-        this.handler.startProcess(job.name);
+        handler.startProcess(job.name);
 
-        val = job.run(this.handler, idata.getVariables());
+        val = job.run(handler, idata.getVariables());
 
-        this.handler.finishProcess();
+        handler.finishProcess();
 
         return val;
     }
@@ -455,12 +667,30 @@ public class ProcessPanelWorker implements Runnable
 
         public String name;
 
+        /**
+         * Determines if the job may run concurrently with other parallel jobs.
+         */
+        public final boolean parallel;
+
+        /**
+         * The names of the preceding jobs that the job depends on, when it is parallel.
+         */
+        public final List<String> dependsOn;
+
         private List<ProcessPanelWorker.Processable> processables;
 
         public ProcessingJob(String name, List<ProcessPanelWorker.Processable> processables)
+        {
+            this(name, processables, false, Collections.<String>emptyList());
+        }
+
+        public ProcessingJob(String name, List<ProcessPanelWorker.Processable> processables, boolean parallel,
+                             List<String> dependsOn)
         {
             this.name = name;
             this.processables = processables;
+            this.parallel = parallel;
+            this.dependsOn = dependsOn;
         }
 
         @Override
@@ -482,6 +712,11 @@ public class ProcessPanelWorker implements Runnable
     private class ExecutableFile implements ProcessPanelWorker.Processable
     {
 
+        /**
+         * The interval, in milliseconds, to wait for a process to write output or exit.
+         */
+        private static final long POLL_INTERVAL = 20;
+
         private String filename;
         private String workingDir;
         private final ErrorHandlingStrategy errorHandlingStrategy;
@@ -560,19 +795,32 @@ public class ProcessPanelWorker implements Runnable
                         this.handler, process.getInputStream(), false);
                 ProcessPanelWorker.ExecutableFile.OutputMonitor stderrMon = new ProcessPanelWorker.ExecutableFile.OutputMonitor(
                         this.handler, process.getErrorStream(), true);
-                Thread stdoutThread = new Thread(stdoutMon);
-                Thread stderrThread = new Thread(stderrMon);
-                stdoutThread.setDaemon(true);
-                stderrThread.setDaemon(true);
-                stdoutThread.start();
-                stderrThread.start();
 
                 try
                 {
-                    int exitStatus = process.waitFor();
+                    // read both streams on this thread, rather than on a thread per stream
+                    while (true)
+                    {
+                        if (stdoutMon.poll() | stderrMon.poll())
+                        {
+                            // more output may be waiting
+                            continue;
+                        }
+                        if (process.waitFor(POLL_INTERVAL, TimeUnit.MILLISECONDS))
+                        {
+                            break;
+                        }
+                    }
+                    int exitStatus = process.exitValue();
 
-                    stopMonitor(stdoutMon, stdoutThread);
-                    stopMonitor(stderrMon, stderrThread);
+                    // collect what the process wrote before exiting. Anything written by processes it started
+                    // and left running is ignored
+                    while (stdoutMon.poll() | stderrMon.poll())
+                    {
+                        // more output may be waiting
+                    }
+                    stdoutMon.doStop();
+                    stderrMon.doStop();
 
                     if (exitStatus != 0)
                     {
@@ -610,81 +858,77 @@ public class ProcessPanelWorker implements Runnable
             return true;
         }
 
-        private void stopMonitor(ProcessPanelWorker.ExecutableFile.OutputMonitor monitor, Thread thread)
-        {
-            // taken from com.izforge.izpack.util.FileExecutor
-            monitor.doStop();
-            long softTimeout = 500;
-            try
-            {
-                thread.join(softTimeout);
-            }
-            catch (InterruptedException e)
-            {
-            }
-
-            if (!thread.isAlive())
-            {
-                return;
-            }
-
-            thread.interrupt();
-            long hardTimeout = 500;
-            try
-            {
-                thread.join(hardTimeout);
-            }
-            catch (InterruptedException e)
-            {
-            }
-        }
-
-        public class OutputMonitor implements Runnable
+        /**
+         * Reads the output of a process, passing each complete line to the handler and the log file.
+         * <p/>
+         * The stream is only read as far as it can be without blocking, so that the output of several processes
+         * and streams can be read by a single thread.
+         */
+        public class OutputMonitor
         {
 
             private boolean stderr = false;
 
             private AbstractUIProcessHandler handler;
 
-            private BufferedReader reader;
+            private InputStream stream;
+
+            /**
+             * The current line, up to the last byte read.
+             */
+            private ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+            private byte[] buffer = new byte[4096];
 
-            private Boolean stop = false;
+            private boolean stop = false;
 
             public OutputMonitor(AbstractUIProcessHandler handler, InputStream is, boolean stderr)
             {
                 this.stderr = stderr;
-                this.reader = new BufferedReader(new InputStreamReader(is));
+                this.stream = is;
                 this.handler = handler;
             }
 
-            @Override
-            public void run()
+            /**
+             * Reads the output that is available without blocking.
+             *
+             * @return true if any output was read
+             */
+            public boolean poll()
             {
+                if (stop)
+                {
+                    return false;
+                }
                 try
                 {
-                    String line;
-                    while ((line = reader.readLine()) != null)
+                    int available = stream.available();
+                    int remaining = available;
+                    while (remaining > 0)
                     {
-                        this.handler.logOutput(line, stderr);
-
-                        // log output also to file given in ProcessPanelSpec
-
-                        if (logfile != null)
+                        int read = stream.read(buffer, 0, Math.min(buffer.length, remaining));
+                        if (read == -1)
                         {
-                            logfile.println(line);
+                            break;
                         }
-
-                        synchronized (this.stop)
+                        remaining -= read;
+                        for (int i = 0; i < read; ++i)
                         {
-                            if (stop)
+                            if (buffer[i] == '\n')
                             {
-                                return;
+                                logLine();
+                            }
+                            else
+                            {
+                                line.write(buffer[i]);
                             }
                         }
                     }
+                    return available > 0;
                 }
                 catch (IOException ioe)
                 {
+                    stop = true;
                     this.handler.logOutput(ioe.toString(), true);
 
                     // log errors also to file given in ProcessPanelSpec
@@ -693,16 +937,37 @@ public class ProcessPanelWorker implements Runnable
                     {
                         logfile.println(ioe.toString());
                     }
-
+                    return false;
                 }
-
             }
 
+            /**
+             * Stops monitoring, logging any incomplete last line.
+             */
             public void doStop()
             {
-                synchronized (this.stop)
+                if (!stop && line.size() > 0)
                 {
-                    this.stop = true;
+                    logLine();
+                }
+                stop = true;
+            }
+
+            private void logLine()
+            {
+                String text = line.toString();
+                line.reset();
+                if (text.endsWith("\r"))
+                {
+                    text = text.substring(0, text.length() - 1);
+                }
+                this.handler.logOutput(text, stderr);
+
+                // log output also to file given in ProcessPanelSpec, labelled like the handler output
+
+                if (logfile != null)
+                {
+                    logfile.println((handler instanceof JobHandler) ? ((JobHandler) handler).prefix + text : text);
                 }
             }
 
@@ -891,6 +1156,107 @@ public class ProcessPanelWorker implements Runnable
         return (false);
     }
 
+    /**
+     * Handler for a job that runs concurrently with other jobs.
+     * <p/>
+     * Output is prefixed with the job name, and output and progress notifications are serialized on the shared
+     * handler, so that the output of concurrent jobs is interleaved a line at a time. User interaction is
+     * passed through as is.
+     */
+    private static class JobHandler implements AbstractUIProcessHandler
+    {
+        private final AbstractUIProcessHandler handler;
+
+        private final String prefix;
+
+        JobHandler(AbstractUIProcessHandler handler, String name)
+        {
+            this.handler = handler;
+            this.prefix = "[" + name + "] ";
+        }
+
+        @Override
+        public void logOutput(String message, boolean stderr)
+        {
+            synchronized (handler)
+            {
+                handler.logOutput(prefix + message, stderr);
+            }
+        }
+
+        @Override
+        public void startProcessing(int no_of_processes)
+        {
+            synchronized (handler)
+            {
+                handler.startProcessing(no_of_processes);
+            }
+        }
+
+        @Override
+        public void startProcess(String name)
+        {
+            synchronized (handler)
+            {
+                handler.startProcess(name);
+            }
+        }
+
+        @Override
+        public void finishProcess()
+        {
+            synchronized (handler)
+            {
+                handler.finishProcess();
+            }
+        }
+
+        @Override
+        public void finishProcessing(boolean unlockPrev, boolean unlockNext)
+        {
+            synchronized (handler)
+            {
+                handler.finishProcessing(unlockPrev, unlockNext);
+            }
+        }
+
+        @Override
+        public void emitNotification(String message)
+        {
+            handler.emitNotification(message);
+        }
+
+        @Override
+        public boolean emitWarning(String title, String message)
+        {
+            return handler.emitWarning(title, message);
+        }
+
+        @Override
+        public void emitError(String title, String message)
+        {
+            handler.emitError(title, message);
+        }
+
+        @Override
+        public int askQuestion(String title, String question, int choices)
+        {
+            return handler.askQuestion(title, question, choices);
+        }
+
+        @Override
+        public int askQuestion(String title, String question, int choices, int default_choice)
+        {
+            return handler.askQuestion(title, question, choices, default_choice);
+        }
+
+        @Override
+        public int askWarningQuestion(String title, String question, int choices, int default_choice)
+        {
+            return handler.askWarningQuestion(title, question, choices, default_choice);
+        }
+    }
+
     private static class QuestionErrorDisplayer implements Runnable
     {
         private AbstractUIProcessHandler uiHandler;
@@ -0,0 +1,329 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.panels.compile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.izforge.izpack.api.data.InstallData;
+import com.izforge.izpack.api.resource.Messages;
+import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.util.PlatformModelMatcher;
+import com.izforge.izpack.util.Platforms;
+
+/**
+ * Tests the in-process compilation of {@link CompileWorker}.
+ */
+public class CompileWorkerTest
+{
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The name of the in-process compiler.
+     */
+    private static final String COMPILER = "Integrated Java Compiler";
+
+    /**
+     * The source directory.
+     */
+    private File src;
+
+    /**
+     * The directory classes are written to.
+     */
+    private File out;
+
+    /**
+     * The installation data.
+     */
+    private InstallData installData;
+
+    /**
+     * The compile handler.
+     */
+    private CompileHandler handler;
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        src = temporaryFolder.newFolder("src");
+        out = temporaryFolder.newFolder("out");
+        createSource("a/A.java", "package a; public class A { public static int value() { return 1; } }");
+        createSource("b/B.java", "package b; public class B { int value = a.A.value(); }");
+        createSource("c/C.java", "package c; public class C { int value = ; }");
+
+        installData = Mockito.mock(InstallData.class);
+        when(installData.getMessages()).thenReturn(Mockito.mock(Messages.class));
+        handler = Mockito.mock(CompileHandler.class);
+    }
+
+    /**
+     * Verifies that a job waits for the job whose classes it uses, that progress and errors are reported in job
+     * order, and that the remaining jobs are compiled if the handler continues after an error.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testContinueAfterError() throws IOException
+    {
+        assumeTrue("Requires a JDK", ToolProvider.getSystemJavaCompiler() != null);
+        handleErrors(CompileResult.ACTION_CONTINUE);
+        CompileWorker worker = createWorker(job("a", "a/A.java", false), job("c", "c/C.java", false),
+                                            job("b", "b/B.java", true));
+        worker.run();
+
+        CompileResult result = worker.getResult();
+        assertTrue(result.isSuccess());
+        assertTrue(new File(out, "a/A.class").exists());
+        assertTrue(new File(out, "b/B.class").exists());
+        assertFalse(new File(out, "c/C.class").exists());
+
+        ArgumentCaptor<CompileResult> error = ArgumentCaptor.forClass(CompileResult.class);
+        InOrder order = inOrder(handler);
+        order.verify(handler).startAction("Compilation", 3);
+        order.verify(handler).nextStep("a", 1, 0);
+        order.verify(handler).progress(1, "a");
+        order.verify(handler).nextStep("c", 1, 1);
+        order.verify(handler).progress(1, "c");
+        order.verify(handler).handleCompileError(error.capture());
+        order.verify(handler).nextStep("b", 1, 2);
+        order.verify(handler).progress(1, "b");
+        order.verify(handler).stopAction();
+        verify(handler).handleCompileError(any(CompileResult.class));
+
+        assertFalse(error.getValue().isSuccess());
+        assertTrue(error.getValue().getStderr().contains("C.java"));
+        assertTrue(error.getValue().getCmdline().startsWith(COMPILER));
+    }
+
+    /**
+     * Verifies that compilation stops at the failed job if the handler aborts, even though later jobs may already
+     * be running.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testAbortAfterError() throws IOException
+    {
+        assumeTrue("Requires a JDK", ToolProvider.getSystemJavaCompiler() != null);
+        handleErrors(CompileResult.ACTION_ABORT);
+        CompileWorker worker = createWorker(job("c", "c/C.java", false), job("a", "a/A.java", false),
+                                            job("b", "b/B.java", true));
+        worker.run();
+
+        CompileResult result = worker.getResult();
+        assertFalse(result.isSuccess());
+        assertTrue(result.isAbort());
+
+        InOrder order = inOrder(handler);
+        order.verify(handler).startAction("Compilation", 3);
+        order.verify(handler).nextStep("c", 1, 0);
+        order.verify(handler).progress(1, "c");
+        order.verify(handler).handleCompileError(result);
+        order.verify(handler).stopAction();
+        verify(handler, never()).nextStep(eq("a"), anyInt(), anyInt());
+        verify(handler, never()).nextStep(eq("b"), anyInt(), anyInt());
+    }
+
+    /**
+     * Verifies that a specification without jobs compiles successfully.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testNoJobs() throws IOException
+    {
+        assumeTrue("Requires a JDK", ToolProvider.getSystemJavaCompiler() != null);
+        CompileWorker worker = createWorker();
+        worker.run();
+
+        CompileResult result = worker.getResult();
+        assertTrue(result.isSuccess());
+        verify(handler).startAction("Compilation", 0);
+        verify(handler).stopAction();
+        verify(handler, never()).nextStep(any(String.class), anyInt(), anyInt());
+        verify(handler, never()).handleCompileError(any(CompileResult.class));
+    }
+
+    /**
+     * Verifies that an error is reported if the in-process compiler isn't available.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testCompilerNotFound() throws IOException
+    {
+        CompileWorker worker = new CompileWorker(installData, handler,
+                                                 new VariableSubstitutorImpl(new DefaultVariables()),
+                                                 createResources(job("a", "a/A.java", false)),
+                                                 new PlatformModelMatcher(new Platforms(), Platforms.LINUX))
+        {
+            @Override
+            protected JavaCompiler getSystemJavaCompiler()
+            {
+                return null;
+            }
+        };
+        assertFalse(worker.getAvailableCompilers().contains(COMPILER));
+        worker.setCompiler(COMPILER);
+        worker.setCompilerArguments("-d " + out.getPath());
+        worker.run();
+
+        CompileResult result = worker.getResult();
+        assertNotNull(result);
+        assertFalse(result.isContinue());
+        assertEquals(COMPILER, result.getCmdline().trim());
+        verify(handler).handleCompileError(result);
+        verify(handler, never()).nextStep(any(String.class), anyInt(), anyInt());
+        assertFalse(new File(out, "a/A.class").exists());
+    }
+
+    /**
+     * Makes the handler respond to compile errors with an action.
+     *
+     * @param action the action
+     */
+    private void handleErrors(final int action)
+    {
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                ((CompileResult) invocation.getArguments()[0]).setAction(action);
+                return null;
+            }
+        }).when(handler).handleCompileError(any(CompileResult.class));
+    }
+
+    /**
+     * Creates a worker that compiles jobs with the in-process compiler.
+     *
+     * @param jobs the job specifications
+     * @return a new worker
+     * @throws IOException for any I/O error
+     */
+    private CompileWorker createWorker(String... jobs) throws IOException
+    {
+        CompileWorker worker = new CompileWorker(installData, handler,
+                                                 new VariableSubstitutorImpl(new DefaultVariables()),
+                                                 createResources(jobs),
+                                                 new PlatformModelMatcher(new Platforms(), Platforms.LINUX));
+        assertTrue(worker.getAvailableCompilers().contains(COMPILER));
+        worker.setCompiler(COMPILER);
+        worker.setCompilerArguments("-d " + out.getPath());
+        return worker;
+    }
+
+    /**
+     * Creates resources that supply a compilation specification.
+     *
+     * @param jobs the job specifications
+     * @return the resources
+     */
+    private Resources createResources(String... jobs)
+    {
+        StringBuilder spec = new StringBuilder("<compilation><global><compiler><choice value=\"")
+                .append(COMPILER).append("\"/></compiler></global><jobs>");
+        for (String job : jobs)
+        {
+            spec.append(job);
+        }
+        spec.append("</jobs></compilation>");
+        Resources resources = Mockito.mock(Resources.class);
+        when(resources.getInputStream("CompilePanel.Spec.xml")).thenReturn(
+                new ByteArrayInputStream(spec.toString().getBytes(StandardCharsets.UTF_8)));
+        return resources;
+    }
+
+    /**
+     * Returns the specification of a job that compiles a single file.
+     *
+     * @param name       the job name
+     * @param path       the source file path, relative to the source directory
+     * @param useClasses if <tt>true</tt>, add the directory classes are written to, to the class path
+     * @return the job specification
+     */
+    private String job(String name, String path, boolean useClasses)
+    {
+        StringBuilder job = new StringBuilder("<job name=\"").append(name).append("\">");
+        if (useClasses)
+        {
+            job.append("<classpath add=\"").append(out.getPath()).append("\"/>");
+        }
+        job.append("<file name=\"").append(new File(src, path).getPath()).append("\"/></job>");
+        return job.toString();
+    }
+
+    /**
+     * Creates a source file.
+     *
+     * @param path    the file path, relative to the source directory
+     * @param content the file content
+     * @throws IOException for any I/O error
+     */
+    private void createSource(String path, String content) throws IOException
+    {
+        File file = new File(src, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.panels.packs;
+
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.panels.packs.PacksModel.CbSelectionState;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Tests the {@link PackDependencyResolver}.
+ */
+public class PackDependencyResolverTest
+{
+
+    /**
+     * Verifies that packs are blocked by transitive dependencies that aren't selected.
+     */
+    @Test
+    public void testTransitiveDependencies()
+    {
+        List<Pack> packs = Arrays.asList(createPack("a", false, null), createPack("b", false, null, "a"),
+                                         createPack("c", false, null, "b"), createPack("d", false, null));
+        PackDependencyResolver resolver = new PackDependencyResolver(packs, getNameToRow(packs));
+
+        List<CbSelectionState> states = Arrays.asList(CbSelectionState.SELECTED, CbSelectionState.SELECTED,
+                                                      CbSelectionState.SELECTED, CbSelectionState.DESELECTED);
+        assertArrayEquals(new boolean[]{false, false, false, false}, resolver.resolve(states).clone());
+
+        states.set(0, CbSelectionState.DESELECTED);
+        assertArrayEquals(new boolean[]{false, true, true, false}, resolver.resolve(states).clone());
+
+        states.set(0, CbSelectionState.REQUIRED_SELECTED);
+        states.set(1, CbSelectionState.PARTIAL_SELECTED);
+        assertArrayEquals(new boolean[]{false, false, true, false}, resolver.resolve(states).clone());
+
+        states.set(1, CbSelectionState.SELECTED);
+        assertArrayEquals(new boolean[]{false, false, false, false}, resolver.resolve(states).clone());
+    }
+
+    /**
+     * Verifies that dependency cycles are resolved.
+     */
+    @Test
+    public void testCycle()
+    {
+        List<Pack> packs = Arrays.asList(createPack("a", false, null, "c"), createPack("b", false, null, "a"),
+                                         createPack("c", false, null, "b"));
+        PackDependencyResolver resolver = new PackDependencyResolver(packs, getNameToRow(packs));
+
+        List<CbSelectionState> states = Arrays.asList(CbSelectionState.SELECTED, CbSelectionState.SELECTED,
+                                                      CbSelectionState.SELECTED);
+        assertArrayEquals(new boolean[]{false, false, false}, resolver.resolve(states).clone());
+
+        states.set(1, CbSelectionState.DESELECTED);
+        assertArrayEquals(new boolean[]{true, true, true}, resolver.resolve(states).clone());
+    }
+
+    /**
+     * Verifies the exclude group, dependant and requirement indexes.
+     */
+    @Test
+    public void testIndexes()
+    {
+        List<Pack> packs = Arrays.asList(createPack("a", false, "g"), createPack("b", true, null, "a", "c"),
+                                         createPack("c", false, "g"), createPack("d", false, "g", "hidden"));
+        PackDependencyResolver resolver = new PackDependencyResolver(packs, getNameToRow(packs));
+
+        assertArrayEquals(new int[]{2, 3}, resolver.getExcludes(0));
+        assertArrayEquals(new int[0], resolver.getExcludes(1));
+        assertArrayEquals(new int[]{0, 2}, resolver.getExcludes(3));
+
+        assertArrayEquals(new int[]{1}, resolver.getDependants(0));
+        assertArrayEquals(new int[]{1}, resolver.getDependants(2));
+        assertArrayEquals(new int[0], resolver.getDependants(3));
+
+        // requirements propagate along the first dependency only
+        assertArrayEquals(new int[]{1}, resolver.getRequired());
+        assertArrayEquals(new int[]{1, 0}, resolver.getRequirements(1));
+        assertArrayEquals(new int[0], resolver.getRequirements(0));
+    }
+
+    /**
+     * Verifies that incremental resolution gives the same result as resolving from scratch, for random changes to
+     * the selection of a synthetic pack graph.
+     */
+    @Test
+    public void testIncrementalResolution()
+    {
+        Random random = new Random(42);
+        List<Pack> packs = createPacks(300, 3, random);
+        Map<String, Integer> nameToRow = getNameToRow(packs);
+        PackDependencyResolver resolver = new PackDependencyResolver(packs, nameToRow);
+        List<CbSelectionState> states = createStates(packs.size(), random);
+
+        for (int i = 0; i < 500; ++i)
+        {
+            int row = random.nextInt(packs.size());
+            states.set(row, states.get(row) == CbSelectionState.SELECTED ? CbSelectionState.DESELECTED
+                    : CbSelectionState.SELECTED);
+            boolean[] incremental = resolver.resolve(states).clone();
+            boolean[] expected = getBlocked(packs, nameToRow, states);
+            assertArrayEquals(expected, incremental);
+            assertArrayEquals(expected, new PackDependencyResolver(packs, nameToRow).resolve(states));
+        }
+    }
+
+    /**
+     * Verifies that an unchanged selection returns the previous result.
+     */
+    @Test
+    public void testUnchangedSelection()
+    {
+        List<Pack> packs = Arrays.asList(createPack("a", false, null), createPack("b", false, null, "a"));
+        PackDependencyResolver resolver = new PackDependencyResolver(packs, getNameToRow(packs));
+        List<CbSelectionState> states = Arrays.asList(CbSelectionState.DESELECTED, CbSelectionState.SELECTED);
+
+        boolean[] first = resolver.resolve(states);
+        assertTrue(first[1]);
+        boolean[] second = resolver.resolve(states);
+        assertEquals(first, second);
+        assertFalse(second[0]);
+    }
+
+    /**
+     * Measures how long (in ms) it takes to resolve changes to the selection of a synthetic graph of 2000 packs and
+     * prints the result to standard output.
+     * <p/>
+     * This is only run if the <tt>izpack.benchmark</tt> system property is <tt>true</tt>.
+     */
+    @Test
+    public void measureResolution()
+    {
+        assumeTrue("Benchmarks are only run with -Dizpack.benchmark=true", Boolean.getBoolean("izpack.benchmark"));
+        Random random = new Random(42);
+        List<Pack> packs = createPacks(2000, 5, random);
+        Map<String, Integer> nameToRow = getNameToRow(packs);
+        List<CbSelectionState> states = createStates(packs.size(), random);
+        int iterations = 1000;
+
+        long startMillis = System.currentTimeMillis();
+        PackDependencyResolver resolver = new PackDependencyResolver(packs, nameToRow);
+        int blocked = 0;
+        for (int i = 0; i < iterations; ++i)
+        {
+            int row = random.nextInt(packs.size());
+            states.set(row, states.get(row) == CbSelectionState.SELECTED ? CbSelectionState.DESELECTED
+                    : CbSelectionState.SELECTED);
+            for (boolean value : resolver.resolve(states))
+            {
+                blocked += value ? 1 : 0;
+            }
+        }
+        long timeDiff = System.currentTimeMillis() - startMillis;
+        assertTrue(blocked > 0);
+
+        System.out.println("Resolving " + iterations + " selection changes of " + packs.size() + " packs took "
+                                   + timeDiff + "ms");
+    }
+
+    /**
+     * Brute force determination of the packs with a transitive dependency that isn't selected.
+     *
+     * @param packs     the packs
+     * @param nameToRow mapping from pack names to rows
+     * @param states    the pack states
+     * @return the blocked flags, indexed by row
+     */
+    private boolean[] getBlocked(List<Pack> packs, Map<String, Integer> nameToRow, List<CbSelectionState> states)
+    {
+        boolean[] result = new boolean[packs.size()];
+        for (int row = 0; row < packs.size(); ++row)
+        {
+            boolean[] visited = new boolean[packs.size()];
+            List<Integer> pending = new ArrayList<Integer>();
+            pending.add(row);
+            while (!pending.isEmpty() && !result[row])
+            {
+                Pack pack = packs.get(pending.remove(pending.size() - 1));
+                if (pack.hasDependencies())
+                {
+                    for (String name : pack.getDependencies())
+                    {
+                        int dependency = nameToRow.get(name);
+                        if (!states.get(dependency).isSelectedOrRequiredSelected())
+                        {
+                            result[row] = true;
+                        }
+                        else if (!visited[dependency])
+                        {
+                            visited[dependency] = true;
+                            pending.add(dependency);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a synthetic pack graph, where each pack depends on up to {@code maxDependencies} earlier packs.
+     *
+     * @param count           the no. of packs
+     * @param maxDependencies the maximum no. of dependencies of each pack
+     * @param random          the random number generator
+     * @return the packs
+     */
+    private List<Pack> createPacks(int count, int maxDependencies, Random random)
+    {
+        List<Pack> packs = new ArrayList<Pack>();
+        for (int i = 0; i < count; ++i)
+        {
+            int dependencies = (i == 0) ? 0 : random.nextInt(maxDependencies + 1);
+            String[] names = new String[dependencies];
+            for (int j = 0; j < dependencies; ++j)
+            {
+                names[j] = "pack" + random.nextInt(i);
+            }
+            String excludeGroup = (random.nextInt(10) == 0) ? "group" + random.nextInt(20) : null;
+            packs.add(createPack("pack" + i, false, excludeGroup, names));
+        }
+        return packs;
+    }
+
+    /**
+     * Creates random pack states, with most packs selected.
+     *
+     * @param count  the no. of packs
+     * @param random the random number generator
+     * @return the pack states
+     */
+    private List<CbSelectionState> createStates(int count, Random random)
+    {
+        CbSelectionState[] states = new CbSelectionState[count];
+        for (int i = 0; i < count; ++i)
+        {
+            states[i] = (random.nextInt(10) == 0) ? CbSelectionState.DESELECTED : CbSelectionState.SELECTED;
+        }
+        return Arrays.asList(states);
+    }
+
+    /**
+     * Creates a pack.
+     *
+     * @param name         the pack name
+     * @param required     determines if the pack is required
+     * @param excludeGroup the exclude group. May be {@code null}
+     * @param dependencies the names of the packs that the pack depends on
+     * @return a new pack
+     */
+    private Pack createPack(String name, boolean required, String excludeGroup, String... dependencies)
+    {
+        List<String> deps = (dependencies.length != 0) ? new ArrayList<String>(Arrays.asList(dependencies)) : null;
+        return new Pack(name, null, null, null, deps, required, true, false, excludeGroup, true, 0);
+    }
+
+    /**
+     * Returns a mapping from pack names to rows.
+     *
+     * @param packs the packs
+     * @return the mapping
+     */
+    private Map<String, Integer> getNameToRow(List<Pack> packs)
+    {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (int i = 0; i < packs.size(); ++i)
+        {
+            result.put(packs.get(i).getName(), i);
+        }
+        return result;
+    }
+}
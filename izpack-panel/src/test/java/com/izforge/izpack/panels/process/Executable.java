@@ -54,7 +54,7 @@ public class Executable
     /**
      * Initialises statics.
      */
-    public static void init()
+    public static synchronized void init()
     {
         result = false;
         exception = false;
@@ -67,7 +67,7 @@ public class Executable
      *
      * @param result the result
      */
-    public static void setReturn(boolean result)
+    public static synchronized void setReturn(boolean result)
     {
         Executable.result = result;
     }
@@ -77,7 +77,7 @@ public class Executable
      *
      * @param exception if {@code true}, throw an exception on invocation
      */
-    public static void setException(boolean exception)
+    public static synchronized void setException(boolean exception)
     {
         Executable.exception = exception;
     }
@@ -87,7 +87,7 @@ public class Executable
      *
      * @return the no. of invocations
      */
-    public static int getInvocations()
+    public static synchronized int getInvocations()
     {
         return invocations;
     }
@@ -98,7 +98,7 @@ public class Executable
      * @param invocation the invocation (starts at 0)
      * @return the arguments for the invocation, or {@code null} if there was no invocation
      */
-    public static String[] getArgs(int invocation)
+    public static synchronized String[] getArgs(int invocation)
     {
         return args.get(invocation);
     }
@@ -112,11 +112,14 @@ public class Executable
      */
     public boolean run(AbstractUIProcessHandler handler, String... args)
     {
-        Executable.args.put(invocations, args);
-        ++invocations;
-        if (exception) {
-            throw new RuntimeException("Executable exception");
+        synchronized (Executable.class)
+        {
+            Executable.args.put(invocations, args);
+            ++invocations;
+            if (exception) {
+                throw new RuntimeException("Executable exception");
+            }
+            return result;
         }
-        return result;
     }
 }
@@ -24,6 +24,10 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -132,5 +136,26 @@ public class ProcessPanelAutomationTest
         assertArrayEquals(Executable.getArgs(0), new String[]{"run0"});
     }
 
+    /**
+     * Verifies that <em>parallel</em> jobs run after the preceding sequential job, and that a job waits for the
+     * jobs it depends on.
+     */
+    @Test
+    public void testParallelJobs()
+    {
+        Executable.init();
+        Executable.setReturn(true);
+        resources.setResourceBasePath("/com/izforge/izpack/panels/process/parallel/");
+
+        ProcessPanelAutomation panel = new ProcessPanelAutomation(installData, rules, resources, matcher);
+        panel.runAutomated(installData, new XMLElementImpl("root"));   // XML element not used
+
+        assertEquals(4, Executable.getInvocations());
+        assertArrayEquals(new String[]{"setup"}, Executable.getArgs(0));
+        Set<String> parallel = new HashSet<String>(Arrays.asList(Executable.getArgs(1)[0],
+                                                                 Executable.getArgs(2)[0]));
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), parallel);
+        assertArrayEquals(new String[]{"c"}, Executable.getArgs(3));
+    }
 
 }
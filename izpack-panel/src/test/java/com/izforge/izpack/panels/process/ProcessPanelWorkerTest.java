@@ -0,0 +1,203 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.izforge.izpack.panels.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+import com.izforge.izpack.api.data.InstallData;
+import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.core.resource.ResourceManager;
+import com.izforge.izpack.panels.test.TestConsolePanelContainer;
+import com.izforge.izpack.test.Container;
+import com.izforge.izpack.test.junit.PicoRunner;
+import com.izforge.izpack.util.PlatformModelMatcher;
+
+/**
+ * Tests how {@link ProcessPanelWorker} passes the output of <em>executefile</em> processes to the handler.
+ */
+@RunWith(PicoRunner.class)
+@Container(TestConsolePanelContainer.class)
+public class ProcessPanelWorkerTest
+{
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The installation data.
+     */
+    private final InstallData installData;
+
+    /**
+     * The rules.
+     */
+    private final RulesEngine rules;
+
+    /**
+     * The resources.
+     */
+    private final ResourceManager resources;
+
+    /**
+     * The platform-model matcher.
+     */
+    private final PlatformModelMatcher matcher;
+
+    /**
+     * The handler.
+     */
+    private AbstractUIProcessHandler handler;
+
+    /**
+     * Constructs a {@code ProcessPanelWorkerTest}.
+     *
+     * @param installData the installation data
+     * @param rules       the rules
+     * @param resources   the resources
+     * @param matcher     the platform-model matcher
+     */
+    public ProcessPanelWorkerTest(InstallData installData, RulesEngine rules, ResourceManager resources,
+                                  PlatformModelMatcher matcher)
+    {
+        this.installData = installData;
+        this.rules = rules;
+        this.resources = resources;
+        this.matcher = matcher;
+        resources.setResourceBasePath("/com/izforge/izpack/panels/process/executefile/");
+    }
+
+    /**
+     * Sets up the test case.
+     */
+    @Before
+    public void setUp()
+    {
+        assumeTrue("Requires /bin/sh", new File("/bin/sh").canExecute());
+        handler = mock(AbstractUIProcessHandler.class);
+    }
+
+    /**
+     * Verifies that multi-line stdout and stderr output is passed on line by line, including line terminated by
+     * <tt>\r\n</tt>, and last lines without a line terminator.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testOutputLines() throws IOException
+    {
+        run("printf 'out1\\nout2\\n'\n"
+                    + "printf 'err1\\r\\nerr2\\n' >&2\n"
+                    + "printf 'out3'\n"
+                    + "printf 'err3' >&2\n");
+
+        assertEquals(Arrays.asList("out1", "out2", "out3"), getOutput(false));
+        assertEquals(Arrays.asList("err1", "err2", "err3"), getOutput(true));
+    }
+
+    /**
+     * Verifies that output written just before the process exits is passed on, even if it exceeds the capacity of
+     * the pipe.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testOutputBeforeExit() throws IOException
+    {
+        run("i=0\n"
+                    + "while [ $i -lt 20000 ]; do echo \"line $i\"; i=$((i+1)); done\n"
+                    + "echo error >&2\n"
+                    + "printf 'last'\n");
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20000; ++i)
+        {
+            expected.add("line " + i);
+        }
+        expected.add("last");
+        assertEquals(expected, getOutput(false));
+        assertEquals(Arrays.asList("error"), getOutput(true));
+    }
+
+    /**
+     * Runs a shell script via <em>executefile</em>, and verifies it succeeds.
+     *
+     * @param script the script
+     * @throws IOException for any I/O error
+     */
+    private void run(String script) throws IOException
+    {
+        File file = temporaryFolder.newFile("script.sh");
+        Files.write(file.toPath(), script.getBytes(StandardCharsets.UTF_8));
+        installData.setVariable("SCRIPT", file.getPath());
+
+        ProcessPanelWorker worker = new ProcessPanelWorker(installData, rules, resources, matcher);
+        worker.setHandler(handler);
+        worker.run();
+
+        assertTrue(worker.getResult());
+        verify(handler, never()).emitError(anyString(), anyString());
+    }
+
+    /**
+     * Returns the lines logged to the handler.
+     *
+     * @param stderr if <tt>true</tt>, return the stderr lines, otherwise return the stdout lines
+     * @return the lines
+     */
+    private List<String> getOutput(boolean stderr)
+    {
+        ArgumentCaptor<String> lines = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Boolean> streams = ArgumentCaptor.forClass(Boolean.class);
+        verify(handler, atLeastOnce()).logOutput(lines.capture(), streams.capture());
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < lines.getAllValues().size(); ++i)
+        {
+            if (streams.getAllValues().get(i) == stderr)
+            {
+                result.add(lines.getAllValues().get(i));
+            }
+        }
+        return result;
+    }
+}
@@ -33,6 +33,8 @@ import com.izforge.izpack.compiler.listener.PackagerListener;
 import com.izforge.izpack.compiler.merge.CompilerPathResolver;
 import com.izforge.izpack.compiler.packager.impl.MultiVolumePackager;
 import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.core.io.FileSpanningOutputStream;
+import com.izforge.izpack.core.io.PackIndexReader;
 import com.izforge.izpack.core.io.VolumeLocator;
 import com.izforge.izpack.core.resource.ResourceManager;
 import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
@@ -49,6 +51,7 @@ import com.izforge.izpack.util.Housekeeper;
 import com.izforge.izpack.util.Librarian;
 import com.izforge.izpack.util.PlatformModelMatcher;
 import com.izforge.izpack.util.Platforms;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.io.FilenameUtils;
 import org.junit.Rule;
 import org.junit.Test;
@@ -61,7 +64,6 @@ import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.jar.JarOutputStream;
 
 import static com.izforge.izpack.test.util.TestHelper.assertFileEquals;
 import static com.izforge.izpack.test.util.TestHelper.assertFileNotExists;
@@ -85,6 +87,28 @@ public class MultiVolumeUnpackerTest
      */
     @Test
     public void testUnpack() throws Exception
+    {
+        checkUnpack(FileSpanningOutputStream.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Tests unpacking of multiple volume installation, where the volumes are written as a single compressed stream.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testUnpackWithoutBlocks() throws Exception
+    {
+        checkUnpack(0);
+    }
+
+    /**
+     * Packages and unpacks a multiple volume installation.
+     *
+     * @param blockSize the block size, or <tt>0</tt> to write the volumes as a single compressed stream
+     * @throws Exception for any error
+     */
+    private void checkUnpack(int blockSize) throws Exception
     {
         File baseDir = temporaryFolder.getRoot();
         File packageDir = new File(baseDir, "package");
@@ -119,6 +143,7 @@ public class MultiVolumeUnpackerTest
         long maxVolumeSize = 100000;
         packager.setMaxFirstVolumeSize(firstVolumeSize);
         packager.setMaxVolumeSize(maxVolumeSize);
+        packager.setBlockSize(blockSize);
 
         packager.addPack(base);
         packager.addPack(pack1);
@@ -428,7 +453,7 @@ public class MultiVolumeUnpackerTest
     {
         Properties properties = new Properties();
         PackagerListener packagerListener = Mockito.mock(PackagerListener.class);
-        JarOutputStream jar = new JarOutputStream(new FileOutputStream(installerJar));
+        ZipArchiveOutputStream jar = new ZipArchiveOutputStream(installerJar);
         MergeManager mergeManager = Mockito.mock(MergeManager.class);
         CompilerPathResolver resolver = Mockito.mock(CompilerPathResolver.class);
         MergeableResolver mergeableResolver = Mockito.mock(MergeableResolver.class);
@@ -472,22 +497,14 @@ public class MultiVolumeUnpackerTest
      *
      * @param resources the resources
      * @return the pack meta-data
-     * @throws IOException            for any I/O error
-     * @throws ClassNotFoundException if the class of a serialized object cannot be found
+     * @throws IOException for any I/O error
      */
-    private List<Pack> getPacks(Resources resources) throws IOException, ClassNotFoundException
+    private List<Pack> getPacks(Resources resources) throws IOException
     {
         // We read the packs data
-        InputStream in = resources.getInputStream("packs.info");
-        ObjectInputStream objIn = new ObjectInputStream(in);
-        List<PackInfo> packsInfo = (List<PackInfo>) objIn.readObject();
-        objIn.close();
-        List<Pack> packs = new ArrayList<Pack>();
-        for (PackInfo packInfo : packsInfo)
-        {
-            Pack pack = packInfo.getPack();
-            packs.add(pack);
-        }
+        PackIndexReader index = new PackIndexReader(resources.getInputStream("packs.info"));
+        List<Pack> packs = new ArrayList<Pack>(index.getPacks());
+        index.close();
         return packs;
     }
 
@@ -0,0 +1,604 @@
+/*
+ * IzPack - Copyright 2001-2012 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.installer.unpacker;
+
+import com.izforge.izpack.api.data.AutomatedInstallData;
+import com.izforge.izpack.api.data.Blockable;
+import com.izforge.izpack.api.data.Info;
+import com.izforge.izpack.api.data.LocaleDatabase;
+import com.izforge.izpack.api.data.OverrideType;
+import com.izforge.izpack.api.data.Pack;
+import com.izforge.izpack.api.data.PackCompression;
+import com.izforge.izpack.api.data.PackFile;
+import com.izforge.izpack.api.data.PackInfo;
+import com.izforge.izpack.api.event.AbstractInstallerListener;
+import com.izforge.izpack.api.event.ByteProgressListener;
+import com.izforge.izpack.api.event.ProgressListener;
+import com.izforge.izpack.api.handler.Prompt;
+import com.izforge.izpack.api.resource.Locales;
+import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.api.rules.RulesEngine;
+import com.izforge.izpack.api.substitutor.VariableSubstitutor;
+import com.izforge.izpack.compiler.data.CompilerData;
+import com.izforge.izpack.compiler.listener.PackagerListener;
+import com.izforge.izpack.compiler.merge.CompilerPathResolver;
+import com.izforge.izpack.compiler.packager.impl.Packager;
+import com.izforge.izpack.core.data.DefaultVariables;
+import com.izforge.izpack.core.io.PackIndexReader;
+import com.izforge.izpack.core.resource.ResourceManager;
+import com.izforge.izpack.core.substitutor.VariableSubstitutorImpl;
+import com.izforge.izpack.installer.data.InstallData;
+import com.izforge.izpack.installer.data.UninstallData;
+import com.izforge.izpack.installer.event.InstallerListeners;
+import com.izforge.izpack.merge.MergeManager;
+import com.izforge.izpack.merge.resolve.MergeableResolver;
+import com.izforge.izpack.test.util.TestHelper;
+import com.izforge.izpack.util.Housekeeper;
+import com.izforge.izpack.util.Librarian;
+import com.izforge.izpack.util.PlatformModelMatcher;
+import com.izforge.izpack.util.Platforms;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import static com.izforge.izpack.test.util.TestHelper.assertFileEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests the {@link ParallelUnpacker}.
+ */
+public class ParallelUnpackerTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Verifies that files are unpacked concurrently with the same result as the sequential unpacker, and that
+     * listeners are notified in pack order.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testUnpack() throws Exception
+    {
+        File baseDir = temporaryFolder.newFolder("base");
+        File installerJar = new File(temporaryFolder.getRoot(), "installer.jar");
+        File installDir = new File(temporaryFolder.getRoot(), "install");
+
+        List<File> files = new ArrayList<File>();
+        PackInfo base = new PackInfo("base", "base", "The base package", false, false, null, true, 0);
+        for (int i = 0; i < 20; ++i)
+        {
+            File file = TestHelper.createFile(new File(baseDir, "file" + i + ".dat"), 1024 * (i + 1));
+            addFile(base, baseDir, file, file.getName());
+            files.add(file);
+        }
+        File large = TestHelper.createFile(new File(baseDir, "large.dat"), ParallelUnpacker.MEMORY_THRESHOLD + 1024);
+        addFile(base, baseDir, large, large.getName());
+        addFile(base, baseDir, files.get(3), "copy/" + files.get(3).getName()); // back reference
+
+        File extraFile = TestHelper.createFile(new File(baseDir, "extra.dat"), 8192);
+        PackInfo extra = new PackInfo("extra", "extra", "The extra package", false, false, null, true, 0);
+        addFile(extra, baseDir, extraFile, extraFile.getName());
+
+        createPackager(baseDir, installerJar, base, extra).createInstaller();
+
+        Resources resources = createResources(installerJar);
+        AutomatedInstallData installData = createInstallData(installDir, resources);
+        installData.setVariable(com.izforge.izpack.api.data.InstallData.UNPACKER_THREADS, "4");
+        Prompt prompt = Mockito.mock(Prompt.class);
+        InstallerListeners listeners = new InstallerListeners(installData, prompt);
+        FileListener listener = new FileListener();
+        listeners.add(listener);
+        listeners.initialise();
+
+        ParallelUnpacker unpacker = createUnpacker(resources, installData, listeners, prompt);
+        ByteProgressListener progress = Mockito.mock(ByteProgressListener.class);
+        unpacker.setProgressListener(progress);
+        assertEquals(4, unpacker.getThreads());
+        unpacker.unpack();
+        assertTrue(unpacker.getResult());
+
+        // the final byte progress of each pack is always delivered
+        long baseBytes = large.length() + files.get(3).length();
+        for (File file : files)
+        {
+            baseBytes += file.length();
+        }
+        Mockito.verify(progress).byteProgress(baseBytes, baseBytes);
+        Mockito.verify(progress).byteProgress(extraFile.length(), extraFile.length());
+
+        for (File file : files)
+        {
+            assertFileEquals(file, new File(installDir, file.getName()));
+        }
+        assertFileEquals(large, new File(installDir, large.getName()));
+        assertFileEquals(files.get(3), new File(installDir, "copy/" + files.get(3).getName()));
+        assertFileEquals(extraFile, new File(installDir, extraFile.getName()));
+
+        assertEquals(23, listener.before.size());
+        assertEquals(listener.before, listener.after);
+    }
+
+    /**
+     * Verifies that when {@link com.izforge.izpack.api.data.InstallData#SKIP_UNCHANGED_FILES} is set, installed
+     * files that are identical to the pack files are left untouched, while changed files are extracted again.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSkipUnchanged() throws Exception
+    {
+        File baseDir = temporaryFolder.newFolder("base");
+        File installerJar = new File(temporaryFolder.getRoot(), "installer.jar");
+        File installDir = new File(temporaryFolder.getRoot(), "install");
+
+        List<File> files = new ArrayList<File>();
+        PackInfo base = new PackInfo("base", "base", "The base package", false, false, null, true, 0);
+        for (int i = 0; i < 5; ++i)
+        {
+            File file = TestHelper.createFile(new File(baseDir, "file" + i + ".dat"), 4096);
+            addFile(base, baseDir, file, file.getName());
+            files.add(file);
+        }
+        createPackager(baseDir, installerJar, base).createInstaller();
+        Resources resources = createResources(installerJar);
+
+        AutomatedInstallData installData = createInstallData(installDir, resources);
+        Prompt prompt = Mockito.mock(Prompt.class);
+        createUnpacker(resources, installData, new InstallerListeners(installData, prompt), prompt).unpack();
+
+        long timestamp = 1000000000L;
+        for (File file : files)
+        {
+            assertTrue(new File(installDir, file.getName()).setLastModified(timestamp));
+        }
+        File changed = new File(installDir, files.get(2).getName());
+        TestHelper.createFile(changed, 4096);
+        assertTrue(changed.setLastModified(timestamp));
+
+        installData = createInstallData(installDir, resources);
+        installData.setVariable(com.izforge.izpack.api.data.InstallData.SKIP_UNCHANGED_FILES, "true");
+        ParallelUnpacker unpacker = createUnpacker(resources, installData,
+                                                   new InstallerListeners(installData, prompt), prompt);
+        unpacker.unpack();
+        assertTrue(unpacker.getResult());
+
+        for (File file : files)
+        {
+            File installed = new File(installDir, file.getName());
+            assertFileEquals(file, installed);
+            if (installed.equals(changed))
+            {
+                assertEquals(file.lastModified(), installed.lastModified());
+            }
+            else
+            {
+                assertEquals(timestamp, installed.lastModified());
+            }
+        }
+    }
+
+    /**
+     * Verifies that small files compressed in solid blocks are unpacked, including files of a block that are
+     * skipped, and back references to a block in the stream of another pack.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSolidBlocks() throws Exception
+    {
+        File baseDir = temporaryFolder.newFolder("base");
+        File installerJar = new File(temporaryFolder.getRoot(), "installer.jar");
+        File installDir = new File(temporaryFolder.getRoot(), "install");
+
+        List<File> files = new ArrayList<File>();
+        PackInfo base = new PackInfo("base", "base", "The base package", false, false, null, true, 0);
+        File skipped = TestHelper.createFile(new File(baseDir, "skipped.dat"), 200);
+        File large = TestHelper.createFile(new File(baseDir, "large.dat"), 8192);
+        for (int i = 0; i < 30; ++i)
+        {
+            File file = TestHelper.createFile(new File(baseDir, "small" + i + ".dat"), 100 + 20 * i);
+            addFile(base, baseDir, file, file.getName());
+            files.add(file);
+            if (i == 7)
+            {
+                base.addFile(baseDir, skipped, "$INSTALL_PATH/" + skipped.getName(), null,
+                             OverrideType.OVERRIDE_TRUE, null, Blockable.BLOCKABLE_NONE, null, "never", null);
+            }
+            else if (i == 15)
+            {
+                addFile(base, baseDir, large, large.getName());
+            }
+        }
+
+        File copy = new File(baseDir, "copy.dat");
+        Files.copy(files.get(5).toPath(), copy.toPath());
+        PackInfo extra = new PackInfo("extra", "extra", "The extra package", false, false, null, true, 0);
+        addFile(extra, baseDir, copy, copy.getName());
+
+        Packager packager = createPackager(baseDir, installerJar, base, extra);
+        packager.setSolidBlockSize(8192);
+        packager.createInstaller();
+
+        PackFile first = base.getPackFiles().iterator().next();
+        PackFile linked = extra.getPackFiles().iterator().next();
+        assertTrue(first.isInBlock());
+        assertTrue(linked.isBackReference());
+        assertTrue(linked.isInBlock());
+
+        Resources resources = createResources(installerJar);
+        AutomatedInstallData installData = createInstallData(installDir, resources);
+        installData.setVariable(com.izforge.izpack.api.data.InstallData.UNPACKER_THREADS, "4");
+        Prompt prompt = Mockito.mock(Prompt.class);
+        ParallelUnpacker unpacker = createUnpacker(resources, installData,
+                                                   new InstallerListeners(installData, prompt), prompt);
+        unpacker.unpack();
+        assertTrue(unpacker.getResult());
+
+        for (File file : files)
+        {
+            assertFileEquals(file, new File(installDir, file.getName()));
+        }
+        assertFileEquals(large, new File(installDir, large.getName()));
+        assertFileEquals(copy, new File(installDir, copy.getName()));
+        assertFalse(new File(installDir, skipped.getName()).exists());
+    }
+
+    /**
+     * Verifies that files compressed with each compression format are installed unchanged.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCodecRoundTrip() throws Exception
+    {
+        File baseDir = temporaryFolder.newFolder("base");
+        List<File> files = createCodecFiles(baseDir, 20, 2, 256 * 1024);
+
+        for (PackCompression compression : PackCompression.values())
+        {
+            Resources resources = createCodecInstaller(compression, baseDir, files);
+            File installDir = temporaryFolder.newFolder("install-" + compression.toName());
+            AutomatedInstallData installData = createInstallData(compression, installDir, resources);
+            Prompt prompt = Mockito.mock(Prompt.class);
+            ParallelUnpacker unpacker = createUnpacker(resources, installData,
+                                                       new InstallerListeners(installData, prompt), prompt);
+            unpacker.unpack();
+            assertTrue(unpacker.getResult());
+
+            for (File file : files)
+            {
+                assertFileEquals(file, new File(installDir, file.getName()));
+            }
+        }
+    }
+
+    /**
+     * Measures the install throughput of each compression format on a pack of text and binary files, and prints the
+     * result to standard output.
+     * <p/>
+     * Files are extracted on a single thread, so that the time is dominated by decompression.
+     * <p/>
+     * This is only run if the <tt>izpack.benchmark</tt> system property is <tt>true</tt>.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void measureCodecThroughput() throws Exception
+    {
+        assumeTrue("Benchmarks are only run with -Dizpack.benchmark=true", Boolean.getBoolean("izpack.benchmark"));
+        File baseDir = temporaryFolder.newFolder("base");
+        List<File> files = createCodecFiles(baseDir, 200, 4, 1024 * 1024);
+        long length = 0;
+        for (File file : files)
+        {
+            length += file.length();
+        }
+
+        for (PackCompression compression : PackCompression.values())
+        {
+            Resources resources = createCodecInstaller(compression, baseDir, files);
+            File installerJar = new File(temporaryFolder.getRoot(), "installer-" + compression.toName() + ".jar");
+
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; ++run)
+            {
+                File installDir = temporaryFolder.newFolder("install-" + compression.toName() + "-" + run);
+                AutomatedInstallData installData = createInstallData(compression, installDir, resources);
+                installData.setVariable(com.izforge.izpack.api.data.InstallData.UNPACKER_THREADS, "1");
+                Prompt prompt = Mockito.mock(Prompt.class);
+                ParallelUnpacker unpacker = createUnpacker(resources, installData,
+                                                           new InstallerListeners(installData, prompt), prompt);
+                long start = System.nanoTime();
+                unpacker.unpack();
+                best = Math.min(best, System.nanoTime() - start);
+                assertTrue(unpacker.getResult());
+            }
+            long millis = Math.max(1, best / 1000000);
+            System.out.println("Installing " + length + " bytes compressed with " + compression.toName() + " ("
+                                       + installerJar.length() + " byte installer) took " + millis + "ms, "
+                                       + (length * 1000 / millis / 1024) + " KiB/s");
+        }
+    }
+
+    /**
+     * Creates text and binary files to compress.
+     *
+     * @param baseDir     the directory to create the files in
+     * @param textFiles   the number of 20KiB text files
+     * @param binaryFiles the number of binary files
+     * @param binarySize  the size of each binary file
+     * @return the files
+     * @throws IOException for any I/O error
+     */
+    private List<File> createCodecFiles(File baseDir, int textFiles, int binaryFiles, int binarySize)
+            throws IOException
+    {
+        Random random = new Random(42);
+        String[] words = {"install", "pack", "file", "panel", "variable", "condition", "target", "source"};
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < textFiles; ++i)
+        {
+            StringBuilder text = new StringBuilder();
+            while (text.length() < 20 * 1024)
+            {
+                text.append(words[random.nextInt(words.length)]).append('.').append(random.nextInt(1000))
+                        .append(" = ").append(words[random.nextInt(words.length)]).append(' ')
+                        .append(random.nextInt()).append('\n');
+            }
+            File file = new File(baseDir, "text" + i + ".properties");
+            Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        for (int i = 0; i < binaryFiles; ++i)
+        {
+            files.add(TestHelper.createFile(new File(baseDir, "binary" + i + ".dat"), binarySize));
+        }
+        return files;
+    }
+
+    /**
+     * Creates an installer with a single pack of files, compressed with a compression format.
+     *
+     * @param compression the compression format
+     * @param baseDir     the base directory
+     * @param files       the files to add to the pack
+     * @return resources to read the installer
+     * @throws Exception for any error
+     */
+    private Resources createCodecInstaller(PackCompression compression, File baseDir, List<File> files)
+            throws Exception
+    {
+        PackInfo pack = new PackInfo("base", "base", "The base package", false, false, null, true, 0);
+        for (File file : files)
+        {
+            addFile(pack, baseDir, file, file.getName());
+        }
+        File installerJar = new File(temporaryFolder.getRoot(), "installer-" + compression.toName() + ".jar");
+        createPackager(compression, baseDir, installerJar, pack).createInstaller();
+        return createResources(installerJar);
+    }
+
+    /**
+     * Verifies that the thread count defaults to the number of processors.
+     */
+    @Test
+    public void testDefaultThreads() throws Exception
+    {
+        AutomatedInstallData installData = new InstallData(new DefaultVariables(), Platforms.LINUX);
+        installData.setInfo(new Info());
+        Prompt prompt = Mockito.mock(Prompt.class);
+        ParallelUnpacker unpacker = createUnpacker(Mockito.mock(Resources.class), installData,
+                                                   new InstallerListeners(installData, prompt), prompt);
+        int processors = Runtime.getRuntime().availableProcessors();
+        assertEquals(processors, unpacker.getThreads());
+
+        installData.setVariable(com.izforge.izpack.api.data.InstallData.UNPACKER_THREADS, "0");
+        assertEquals(processors, unpacker.getThreads());
+
+        installData.setVariable(com.izforge.izpack.api.data.InstallData.UNPACKER_THREADS, "1");
+        assertEquals(1, unpacker.getThreads());
+    }
+
+    /**
+     * Helper to add a file to a pack.
+     *
+     * @param pack    the pack
+     * @param baseDir the base directory
+     * @param file    the file to add
+     * @param target  the target path, relative to the installation directory
+     * @throws IOException for any I/O error
+     */
+    private void addFile(PackInfo pack, File baseDir, File file, String target) throws IOException
+    {
+        pack.addFile(baseDir, file, "$INSTALL_PATH/" + target, null, OverrideType.OVERRIDE_TRUE, null,
+                     Blockable.BLOCKABLE_NONE, null, null, null);
+    }
+
+    /**
+     * Creates a packager that compresses files, with the specified packs.
+     *
+     * @param baseDir      the base directory
+     * @param installerJar the jar to create
+     * @param packs        the packs
+     * @return a new packager
+     * @throws IOException for any I/O error
+     */
+    private Packager createPackager(File baseDir, File installerJar, PackInfo... packs) throws IOException
+    {
+        return createPackager(PackCompression.GZIP, baseDir, installerJar, packs);
+    }
+
+    /**
+     * Creates a packager that compresses files with the specified format, with the specified packs.
+     *
+     * @param compression  the compression format
+     * @param baseDir      the base directory
+     * @param installerJar the jar to create
+     * @param packs        the packs
+     * @return a new packager
+     * @throws IOException for any I/O error
+     */
+    private Packager createPackager(PackCompression compression, File baseDir, File installerJar, PackInfo... packs)
+            throws IOException
+    {
+        CompilerData data = new CompilerData(null, baseDir.getPath(), installerJar.getPath(), true);
+        Packager packager = new Packager(new Properties(), Mockito.mock(PackagerListener.class),
+                                         new ZipArchiveOutputStream(installerJar),
+                                         Mockito.mock(MergeManager.class), Mockito.mock(CompilerPathResolver.class),
+                                         Mockito.mock(MergeableResolver.class), data,
+                                         Mockito.mock(RulesEngine.class));
+        Info info = new Info();
+        info.setCompressionFormat(compression);
+        packager.setInfo(info);
+        for (PackInfo pack : packs)
+        {
+            packager.addPack(pack);
+        }
+        return packager;
+    }
+
+    /**
+     * Creates a new {@link Resources} that reads resources from the supplied jar.
+     *
+     * @param installerJar the installer jar
+     * @return a new resource manager
+     * @throws IOException for any I/O error
+     */
+    private Resources createResources(File installerJar) throws IOException
+    {
+        URLClassLoader loader = new URLClassLoader(new URL[]{installerJar.toURI().toURL()},
+                                                   getClass().getClassLoader());
+        return new ResourceManager(loader);
+    }
+
+    /**
+     * Creates the installation data, with all packs selected.
+     *
+     * @param installDir the installation directory
+     * @param resources  the resources
+     * @return the installation data
+     * @throws Exception for any error
+     */
+    private AutomatedInstallData createInstallData(File installDir, Resources resources) throws Exception
+    {
+        return createInstallData(PackCompression.GZIP, installDir, resources);
+    }
+
+    /**
+     * Creates the installation data for packs compressed with the specified format, with all packs selected.
+     *
+     * @param compression the compression format
+     * @param installDir  the installation directory
+     * @param resources   the resources
+     * @return the installation data
+     * @throws Exception for any error
+     */
+    @SuppressWarnings("unchecked")
+    private AutomatedInstallData createInstallData(PackCompression compression, File installDir,
+                                                   Resources resources) throws Exception
+    {
+        AutomatedInstallData installData = new InstallData(new DefaultVariables(), Platforms.LINUX);
+        installData.setInstallPath(installDir.getPath());
+        installData.setInfo(new Info());
+        installData.getInfo().setCompressionFormat(compression);
+        InputStream langPack = getClass().getResourceAsStream("/com/izforge/izpack/bin/langpacks/installer/eng.xml");
+        assertNotNull(langPack);
+        installData.setMessages(new LocaleDatabase(langPack, Mockito.mock(Locales.class)));
+
+        PackIndexReader index = new PackIndexReader(resources.getInputStream("packs.info"));
+        List<Pack> packs = new ArrayList<Pack>(index.getPacks());
+        index.close();
+        installData.setAvailablePacks(packs);
+        installData.setSelectedPacks(new ArrayList<Pack>(packs));
+        return installData;
+    }
+
+    /**
+     * Creates a new unpacker.
+     *
+     * @param resources   the resources
+     * @param installData the installation data
+     * @param listeners   the installer listeners
+     * @param prompt      the prompt
+     * @return a new unpacker
+     */
+    private ParallelUnpacker createUnpacker(Resources resources, AutomatedInstallData installData,
+                                            InstallerListeners listeners, Prompt prompt)
+    {
+        VariableSubstitutor replacer = new VariableSubstitutorImpl(installData.getVariables());
+        PackResources packResources = new ConsolePackResources(resources, installData);
+        FileQueueFactory queue = new FileQueueFactory(Platforms.LINUX, Mockito.mock(Librarian.class));
+        PlatformModelMatcher matcher = new PlatformModelMatcher(new Platforms(), Platforms.LINUX);
+        ParallelUnpacker unpacker = new ParallelUnpacker(installData, packResources, Mockito.mock(RulesEngine.class),
+                                                         replacer, new UninstallData(), queue,
+                                                         Mockito.mock(Housekeeper.class), listeners, prompt, matcher);
+        unpacker.setProgressListener(Mockito.mock(ProgressListener.class));
+        return unpacker;
+    }
+
+    /**
+     * Records file notifications, verifying that each file is written before {@code afterFile} is invoked.
+     */
+    private static class FileListener extends AbstractInstallerListener
+    {
+        private final List<String> before = new ArrayList<String>();
+
+        private final List<String> after = new ArrayList<String>();
+
+        @Override
+        public boolean isFileListener()
+        {
+            return true;
+        }
+
+        @Override
+        public void beforeFile(File file, PackFile packFile, Pack pack)
+        {
+            before.add(file.getPath());
+        }
+
+        @Override
+        public void afterFile(File file, PackFile packFile, Pack pack)
+        {
+            assertEquals(packFile.length(), file.length());
+            after.add(file.getPath());
+        }
+    }
+}
@@ -25,7 +25,21 @@ import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,6 +53,11 @@ import com.izforge.izpack.uninstaller.resource.RootScripts;
 
 /**
  * The files destroyer class.
+ * <p/>
+ * If no uninstaller listener needs to be notified of each file, the installed files are deleted on a pool of worker
+ * threads. Files are deleted in batches of the same directory, and each installed directory is deleted as soon as
+ * the installed files it contains have been. The number of threads defaults to the number of processors, and may be
+ * changed with the {@link #THREADS_PROPERTY} system property. A value of <tt>1</tt> deletes files one at a time.
  *
  * @author Julien Ponge
  * @author Tim Anderson
@@ -46,6 +65,21 @@ import com.izforge.izpack.uninstaller.resource.RootScripts;
 public class Destroyer implements Runnable
 {
 
+    /**
+     * The system property that specifies the number of threads used to delete files.
+     */
+    public static final String THREADS_PROPERTY = "izpack.uninstaller.threads";
+
+    /**
+     * The maximum number of files of a directory deleted by a single task.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The interval between progress notifications when files are deleted concurrently, in milliseconds.
+     */
+    private static final long PROGRESS_INTERVAL = 100;
+
     /**
      * The log of installed files.
      */
@@ -81,6 +115,11 @@ public class Destroyer implements Runnable
      */
     private boolean forceDelete;
 
+    /**
+     * The number of threads used to delete files.
+     */
+    private int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+
     /**
      * Tracks the no. of files that couldn't be deleted.
      */
@@ -138,6 +177,18 @@ public class Destroyer implements Runnable
         this.forceDelete = force;
     }
 
+    /**
+     * Sets the number of threads used to delete files.
+     * <p/>
+     * Files are always deleted one at a time if an uninstaller listener needs to be notified of each file.
+     *
+     * @param threads the number of threads. Values less than <tt>2</tt> delete files one at a time
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
     /**
      * Runs the destroyer.
      */
@@ -195,17 +246,25 @@ public class Destroyer implements Runnable
             listener.startAction("destroy", size);
         }
 
-        for (int i = 0; i < size; i++)
+        List<File> candidates = null;
+        if (threads > 1 && !listeners.isFileListener())
         {
-            File file = files.get(i);
-            listeners.beforeDelete(file, listener);
+            candidates = deleteConcurrently(files);
+        }
+        else
+        {
+            for (int i = 0; i < size; i++)
+            {
+                File file = files.get(i);
+                listeners.beforeDelete(file, listener);
 
-            delete(file);
+                delete(file);
 
-            listeners.afterDelete(file, listener);
-            if (listener != null)
-            {
-                listener.progress(i, file.getAbsolutePath());
+                listeners.afterDelete(file, listener);
+                if (listener != null)
+                {
+                    listener.progress(i, file.getAbsolutePath());
+                }
             }
         }
 
@@ -223,7 +282,8 @@ public class Destroyer implements Runnable
         cleanup(installPath);
 
         // verify that the files no longer exist. Check this here, as the root scripts may have performed cleanup.
-        checkDeletion(files, installPath);
+        // When files are deleted concurrently, only those that failed to delete need to be checked
+        checkDeletion((candidates != null) ? candidates : files, installPath);
 
         if (listener != null)
         {
@@ -231,6 +291,100 @@ public class Destroyer implements Runnable
         }
     }
 
+    /**
+     * Deletes the installed files on a pool of worker threads.
+     * <p/>
+     * The files are grouped by directory, and each group is deleted by a single task. An installed directory is only
+     * deleted once all installed files within it have been processed, so that directories are removed bottom-up as
+     * they become empty.
+     * <p/>
+     * The progress listener is notified periodically from the calling thread.
+     *
+     * @param files the installed files, in leaf first order
+     * @return the files that couldn't be deleted, in the order they appear in {@code files}
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    private List<File> deleteConcurrently(List<File> files) throws InterruptedException
+    {
+        int size = files.size();
+        Map<File, Entry> entries = new HashMap<File, Entry>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; ++i)
+        {
+            File file = files.get(i);
+            entries.put(file, new Entry(file, i));
+        }
+        for (Entry entry : entries.values())
+        {
+            File parent = entry.file.getParentFile();
+            entry.parent = (parent != null) ? entries.get(parent) : null;
+            if (entry.parent != null)
+            {
+                entry.parent.pending.incrementAndGet();
+            }
+        }
+
+        // group the entries that can be deleted immediately by directory, in the order of the log
+        Map<File, List<Entry>> ready = new LinkedHashMap<File, List<Entry>>();
+        for (File file : files)
+        {
+            Entry entry = entries.get(file);
+            if (entry.pending.get() == 0)
+            {
+                List<Entry> group = ready.get(file.getParentFile());
+                if (group == null)
+                {
+                    group = new ArrayList<Entry>();
+                    ready.put(file.getParentFile(), group);
+                }
+                group.add(entry);
+            }
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "izpack-uninstall-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Deletion deletion = new Deletion(executor, size);
+        try
+        {
+            for (List<Entry> group : ready.values())
+            {
+                for (int i = 0; i < group.size(); i += BATCH_SIZE)
+                {
+                    deletion.submit(group.subList(i, Math.min(i + BATCH_SIZE, group.size())));
+                }
+            }
+            deletion.await();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        List<Entry> failures = new ArrayList<Entry>(deletion.failures);
+        Collections.sort(failures, new Comparator<Entry>()
+        {
+            @Override
+            public int compare(Entry o1, Entry o2)
+            {
+                return (o1.index < o2.index) ? -1 : ((o1.index == o2.index) ? 0 : 1);
+            }
+        });
+        List<File> result = new ArrayList<File>(failures.size());
+        for (Entry entry : failures)
+        {
+            result.add(entry.file);
+        }
+        return result;
+    }
+
     /**
      * Verifies that the installed files have been deleted.
      *
@@ -291,4 +445,177 @@ public class Destroyer implements Runnable
         }
     }
 
+    /**
+     * An installed file, and the installed files that must be deleted before it.
+     */
+    private static class Entry
+    {
+        /**
+         * The file.
+         */
+        private final File file;
+
+        /**
+         * The index of the file in the install log.
+         */
+        private final int index;
+
+        /**
+         * The number of installed files within this file that haven't been processed yet.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * The installed directory containing this file, or {@code null} if it wasn't installed.
+         */
+        private Entry parent;
+
+        /**
+         * Constructs an {@code Entry}.
+         *
+         * @param file  the file
+         * @param index the index of the file in the install log
+         */
+        Entry(File file, int index)
+        {
+            this.file = file;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Tracks the deletion of the installed files by the worker threads.
+     */
+    private class Deletion
+    {
+        /**
+         * The worker threads.
+         */
+        private final ExecutorService executor;
+
+        /**
+         * The total number of files.
+         */
+        private final int size;
+
+        /**
+         * Counts down the files that haven't been processed yet.
+         */
+        private final CountDownLatch remaining;
+
+        /**
+         * The files that couldn't be deleted.
+         */
+        private final Queue<Entry> failures = new ConcurrentLinkedQueue<Entry>();
+
+        /**
+         * The last file processed.
+         */
+        private volatile File last;
+
+        /**
+         * The first unexpected error thrown by a task.
+         */
+        private final AtomicReference<RuntimeException> error = new AtomicReference<RuntimeException>();
+
+        /**
+         * Constructs a {@code Deletion}.
+         *
+         * @param executor the worker threads
+         * @param size     the total number of files
+         */
+        Deletion(ExecutorService executor, int size)
+        {
+            this.executor = executor;
+            this.size = size;
+            remaining = new CountDownLatch(size);
+        }
+
+        /**
+         * Submits a batch of files to be deleted.
+         *
+         * @param batch the files. These must be in the same directory
+         */
+        void submit(final List<Entry> batch)
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (Entry entry : batch)
+                    {
+                        delete(entry);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Waits for all files to be processed, notifying the progress listener periodically.
+         *
+         * @throws InterruptedException if the calling thread is interrupted
+         * @throws RuntimeException     if a task failed unexpectedly
+         */
+        void await() throws InterruptedException
+        {
+            while (!remaining.await(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS))
+            {
+                progress();
+                if (error.get() != null)
+                {
+                    break;
+                }
+            }
+            if (error.get() != null)
+            {
+                throw error.get();
+            }
+            progress();
+        }
+
+        /**
+         * Notifies the progress listener of the number of files processed.
+         */
+        private void progress()
+        {
+            File file = last;
+            if (listener != null && file != null)
+            {
+                listener.progress((int) (size - remaining.getCount()), file.getAbsolutePath());
+            }
+        }
+
+        /**
+         * Deletes a file, and submits its installed directory once all the installed files within it have been
+         * processed.
+         *
+         * @param entry the file to delete
+         */
+        private void delete(Entry entry)
+        {
+            try
+            {
+                if (!entry.file.delete() && entry.file.exists())
+                {
+                    logger.info("Failed to delete: " + entry.file);
+                    failures.add(entry);
+                }
+                last = entry.file;
+            }
+            catch (RuntimeException exception)
+            {
+                error.compareAndSet(null, exception);
+            }
+            finally
+            {
+                remaining.countDown();
+                if (entry.parent != null && entry.parent.pending.decrementAndGet() == 0)
+                {
+                    submit(Collections.singletonList(entry.parent));
+                }
+            }
+        }
+    }
+
 }
@@ -80,6 +80,16 @@ public class UninstallerListeners
         }
     }
 
+    /**
+     * Determines if any listener should be notified of file and directory events.
+     *
+     * @return <tt>true</tt> if a listener's {@link UninstallerListener#isFileListener()} returns <tt>true</tt>
+     */
+    public boolean isFileListener()
+    {
+        return fileListener;
+    }
+
     /**
      * Initialises the listeners.
      *
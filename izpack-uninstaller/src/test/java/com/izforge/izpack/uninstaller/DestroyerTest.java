@@ -0,0 +1,270 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.uninstaller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import com.izforge.izpack.api.event.ProgressListener;
+import com.izforge.izpack.api.event.UninstallerListener;
+import com.izforge.izpack.api.handler.Prompt;
+import com.izforge.izpack.api.resource.Resources;
+import com.izforge.izpack.uninstaller.event.UninstallerListeners;
+import com.izforge.izpack.uninstaller.resource.Executables;
+import com.izforge.izpack.uninstaller.resource.InstallLog;
+import com.izforge.izpack.uninstaller.resource.RootScripts;
+
+/**
+ * Tests the {@link Destroyer} class.
+ */
+public class DestroyerTest
+{
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The installation directory.
+     */
+    private File installPath;
+
+    /**
+     * The executables.
+     */
+    private Executables executables;
+
+    /**
+     * The root scripts.
+     */
+    private RootScripts rootScripts;
+
+    /**
+     * The prompt.
+     */
+    private Prompt prompt;
+
+    /**
+     * Sets up the test case.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        installPath = temporaryFolder.newFolder("myapp");
+        executables = Mockito.mock(Executables.class);
+        when(executables.run()).thenReturn(true);
+        rootScripts = Mockito.mock(RootScripts.class);
+        prompt = Mockito.mock(Prompt.class);
+    }
+
+    /**
+     * Verifies that installed files and directories are deleted concurrently, along with the directories that
+     * weren't logged.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testDeleteConcurrently() throws IOException
+    {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 10; ++i)
+        {
+            // the lib directories aren't logged, as they are created with their parents
+            File dir = new File(installPath, "module" + i);
+            files.add(dir);
+            for (int j = 0; j < 300; ++j)
+            {
+                files.add(createFile(new File(dir, "lib/file" + j + ".jar")));
+            }
+        }
+
+        ProgressListener listener = Mockito.mock(ProgressListener.class);
+        Destroyer destroyer = createDestroyer(files, new UninstallerListeners(prompt));
+        destroyer.setProgressListener(listener);
+        destroyer.setThreads(4);
+        destroyer.run();
+
+        assertTrue(destroyer.getFailedToDelete().isEmpty());
+        assertFalse(installPath.exists());
+        verify(listener).startAction("destroy", files.size());
+        verify(listener).progress(files.size(), "[ cleanups ]");
+        verify(listener).stopAction();
+    }
+
+    /**
+     * Verifies that the files that cannot be deleted are reported.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testFailedToDelete() throws IOException
+    {
+        File dir1 = new File(installPath, "dir1");
+        File dir2 = new File(installPath, "dir2");
+        File file1 = createFile(new File(dir1, "file1"));
+        File file2 = createFile(new File(dir2, "file2"));
+        createFile(new File(dir2, "userfile"));
+
+        Destroyer destroyer = createDestroyer(Arrays.asList(dir1, dir2, file1, file2),
+                                              new UninstallerListeners(prompt));
+        destroyer.setThreads(4);
+        destroyer.run();
+
+        // dir2 holds a file that wasn't installed, so it isn't deleted
+        assertEquals(Arrays.asList(dir2, installPath), destroyer.getFailedToDelete());
+        assertFalse(dir1.exists());
+        assertFalse(file2.exists());
+
+        // remaining files are deleted if the deletion is forced
+        destroyer = createDestroyer(Arrays.asList(dir1, dir2, file1, file2), new UninstallerListeners(prompt));
+        destroyer.setThreads(4);
+        destroyer.setForceDelete(true);
+        destroyer.run();
+
+        assertTrue(destroyer.getFailedToDelete().isEmpty());
+        assertFalse(installPath.exists());
+    }
+
+    /**
+     * Verifies that files are deleted one at a time if a listener needs to be notified of each file.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testFileListener() throws IOException
+    {
+        File dir = new File(installPath, "dir");
+        File file1 = createFile(new File(dir, "file1"));
+        File file2 = createFile(new File(dir, "file2"));
+
+        UninstallerListener uninstallerListener = Mockito.mock(UninstallerListener.class);
+        when(uninstallerListener.isFileListener()).thenReturn(true);
+        UninstallerListeners listeners = new UninstallerListeners(prompt);
+        listeners.add(uninstallerListener);
+
+        Destroyer destroyer = createDestroyer(Arrays.asList(dir, file1, file2), listeners);
+        destroyer.setThreads(4);
+        destroyer.run();
+
+        assertTrue(destroyer.getFailedToDelete().isEmpty());
+        InOrder order = inOrder(uninstallerListener);
+        for (File file : Arrays.asList(file2, file1, dir))
+        {
+            order.verify(uninstallerListener).beforeDelete(file);
+            order.verify(uninstallerListener).afterDelete(file);
+        }
+    }
+
+    /**
+     * Measures uninstalling a generated tree of 20000 files with 1 and 4 threads, and prints the results to standard
+     * output.
+     * <p/>
+     * This is only run if the <tt>izpack.benchmark</tt> system property is <tt>true</tt>.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void measureDestroy() throws IOException
+    {
+        assumeTrue("Benchmarks are only run with -Dizpack.benchmark=true", Boolean.getBoolean("izpack.benchmark"));
+        for (int threads : new int[]{1, 4})
+        {
+            List<File> files = new ArrayList<File>();
+            for (int i = 0; i < 200; ++i)
+            {
+                File dir = new File(installPath, "module" + i);
+                files.add(dir);
+                for (int j = 0; j < 100; ++j)
+                {
+                    files.add(createFile(new File(dir, "file" + j + ".txt")));
+                }
+            }
+
+            Destroyer destroyer = createDestroyer(files, new UninstallerListeners(prompt));
+            destroyer.setThreads(threads);
+            long start = System.currentTimeMillis();
+            destroyer.run();
+            long timeDiff = System.currentTimeMillis() - start;
+
+            assertTrue(destroyer.getFailedToDelete().isEmpty());
+            System.out.println("Deleting " + files.size() + " files with " + threads + " thread(s) took "
+                                       + timeDiff + "ms");
+            assertTrue(installPath.mkdir());
+        }
+    }
+
+    /**
+     * Creates a destroyer for an install log.
+     *
+     * @param files     the installed files
+     * @param listeners the uninstaller listeners
+     * @return a new destroyer
+     */
+    private Destroyer createDestroyer(List<File> files, UninstallerListeners listeners)
+    {
+        StringBuilder installLog = new StringBuilder(installPath.getPath()).append('\n');
+        for (File file : files)
+        {
+            installLog.append(file.getPath()).append('\n');
+        }
+        Resources resources = Mockito.mock(Resources.class);
+        when(resources.getInputStream("install.log")).thenReturn(
+                new ByteArrayInputStream(installLog.toString().getBytes(StandardCharsets.UTF_8)));
+        return new Destroyer(new InstallLog(resources), listeners, executables, rootScripts, prompt);
+    }
+
+    /**
+     * Creates a file, and its parent directories.
+     *
+     * @param file the file to create
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    private static File createFile(File file) throws IOException
+    {
+        File parent = file.getParentFile();
+        assertTrue(parent.isDirectory() || parent.mkdirs());
+        assertTrue(file.createNewFile());
+        return file;
+    }
+}
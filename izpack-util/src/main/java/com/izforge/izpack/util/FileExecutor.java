@@ -30,8 +30,11 @@ import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -306,10 +309,12 @@ public class FileExecutor
     {
         int exitStatus = 0;
         String[] output = new String[2];
-        // String permissions = (System.getProperty("user.name").equals("root"))
-        // ? "a+x" : "u+x";
-        String permissions = "a+x";
         boolean isUnix = matcher.getCurrentPlatform().isA(UNIX);
+        Set<File> notExecutable = Collections.emptySet();
+        if (currentStage != ExecutableFile.UNINSTALL && isUnix)
+        {
+            notExecutable = makeExecutable(matcher);
+        }
 
         // loop through all executables
         Iterator<ExecutableFile> efileIterator = this.files.iterator();
@@ -328,18 +333,11 @@ public class FileExecutor
                 continue;
             }
 
-            if (ExecutableFile.BIN == efile.type && currentStage != ExecutableFile.UNINSTALL && isUnix)
+            if (ExecutableFile.BIN == efile.type && notExecutable.contains(file))
             {
-                // fix executable permission for unix systems
-                logger.fine("Making file executable (setting executable flag)");
-                String[] params = {"/bin/chmod", permissions, file.toString()};
-                exitStatus = executeCommand(params, output);
-                if (exitStatus != 0)
-                {
-                    handler.emitWarning("file execution error", "Error executing \n" + params[0]
-                            + " " + params[1] + " " + params[2]);
-                    continue;
-                }
+                exitStatus = 1;
+                handler.emitWarning("file execution error", "Error executing \nchmod a+x " + file);
+                continue;
             }
 
             // execute command in POSTINSTALL stage
@@ -435,6 +433,27 @@ public class FileExecutor
         return exitStatus;
     }
 
+    /**
+     * Sets the executable flag of all binary executables for the current platform in one batch, rather than forking a
+     * <tt>chmod</tt> per file.
+     *
+     * @param matcher the platform-model matcher
+     * @return the files that couldn't be made executable
+     */
+    private Set<File> makeExecutable(PlatformModelMatcher matcher)
+    {
+        FilePermissions permissions = new FilePermissions();
+        for (ExecutableFile efile : files)
+        {
+            if (ExecutableFile.BIN == efile.type && matcher.matchesCurrentPlatform(efile.osList))
+            {
+                permissions.add(new File(efile.path), FilePermissions.EXECUTE);
+            }
+        }
+        logger.fine("Making files executable (setting executable flag)");
+        return new HashSet<File>(permissions.apply());
+    }
+
     /**
      * Transform classpath as specified in targetFile attribute into
      * OS specific classpath. This method also resolves directories
@@ -0,0 +1,411 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects changes to the POSIX permissions of files and directories, and applies them in one batch.
+ * <p/>
+ * Where the default file system supports {@link PosixFileAttributeView}, permissions are changed in-process.
+ * Otherwise, files requiring the same change are passed to a single <tt>chmod</tt> invocation, rather than forking
+ * a process per file.
+ * <p/>
+ * Modes are specified as octal permission bits, as used by <tt>chmod</tt>. A mode may either replace the existing
+ * permissions, via {@link #set(File, int)}, or be added to them, via {@link #add(File, int)}.
+ * <p/>
+ * This class is thread safe.
+ */
+public class FilePermissions
+{
+    /**
+     * The permission bits that enable execution by the owner, group and others, i.e. <tt>a+x</tt>.
+     */
+    public static final int EXECUTE = 0111;
+
+    /**
+     * The maximum number of files passed to a single <tt>chmod</tt> invocation.
+     */
+    static final int MAX_FILES_PER_COMMAND = 256;
+
+    /**
+     * The permission bits that can be changed via {@link PosixFileAttributeView}.
+     */
+    private static final int PERMISSION_BITS = 0777;
+
+    /**
+     * The POSIX permissions, in order of their bits, most significant first.
+     */
+    private static final PosixFilePermission[] PERMISSIONS = {
+            PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE,
+            PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE};
+
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(FilePermissions.class.getName());
+
+    /**
+     * Determines if permissions are changed via {@link PosixFileAttributeView}.
+     */
+    private final boolean posix;
+
+    /**
+     * The pending changes.
+     */
+    private final List<Change> changes = new ArrayList<Change>();
+
+    /**
+     * Constructs a <tt>FilePermissions</tt>.
+     */
+    public FilePermissions()
+    {
+        this(isPosixSupported());
+    }
+
+    /**
+     * Constructs a <tt>FilePermissions</tt>.
+     *
+     * @param posix if <tt>true</tt>, change permissions via {@link PosixFileAttributeView}, else invoke <tt>chmod</tt>
+     */
+    FilePermissions(boolean posix)
+    {
+        this.posix = posix;
+    }
+
+    /**
+     * Determines if the default file system supports {@link PosixFileAttributeView}.
+     *
+     * @return <tt>true</tt> if POSIX permissions can be changed in-process
+     */
+    public static boolean isPosixSupported()
+    {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+
+    /**
+     * Requests that the permissions of a file be replaced, as per <tt>chmod &lt;mode&gt; file</tt>.
+     *
+     * @param file the file or directory
+     * @param mode the octal mode, e.g. <tt>0755</tt>
+     */
+    public synchronized void set(File file, int mode)
+    {
+        changes.add(new Change(file, mode, false));
+    }
+
+    /**
+     * Requests that permissions be added to a file, as per <tt>chmod a+x file</tt> for a mode of {@link #EXECUTE}.
+     *
+     * @param file the file or directory
+     * @param mode the octal permission bits to add
+     */
+    public synchronized void add(File file, int mode)
+    {
+        changes.add(new Change(file, mode, true));
+    }
+
+    /**
+     * Determines if there are no pending changes.
+     *
+     * @return <tt>true</tt> if there are no pending changes
+     */
+    public synchronized boolean isEmpty()
+    {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Applies the pending changes.
+     * <p/>
+     * When falling back to <tt>chmod</tt>, changes are grouped by mode, so a file should have at most one change
+     * pending. On return, there are no pending changes.
+     *
+     * @return the files whose permissions couldn't be changed. Empty if all changes succeeded
+     */
+    public List<File> apply()
+    {
+        List<Change> pending;
+        synchronized (this)
+        {
+            pending = new ArrayList<Change>(changes);
+            changes.clear();
+        }
+        List<File> failed = new ArrayList<File>();
+        Map<String, List<File>> commands = new LinkedHashMap<String, List<File>>();
+        for (Change change : pending)
+        {
+            if (posix && (change.mode & ~PERMISSION_BITS) == 0)
+            {
+                if (!apply(change))
+                {
+                    failed.add(change.file);
+                }
+            }
+            else
+            {
+                String mode = change.add ? getSymbolicMode(change.mode) : Integer.toOctalString(change.mode);
+                List<File> files = commands.get(mode);
+                if (files == null)
+                {
+                    files = new ArrayList<File>();
+                    commands.put(mode, files);
+                }
+                files.add(change.file);
+            }
+        }
+        for (Map.Entry<String, List<File>> entry : commands.entrySet())
+        {
+            List<File> files = entry.getValue();
+            for (int i = 0; i < files.size(); i += MAX_FILES_PER_COMMAND)
+            {
+                chmod(entry.getKey(), files.subList(i, Math.min(i + MAX_FILES_PER_COMMAND, files.size())), failed);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Converts an octal mode to the equivalent POSIX permissions.
+     *
+     * @param mode the octal mode
+     * @return the permissions
+     */
+    public static Set<PosixFilePermission> getPermissions(int mode)
+    {
+        Set<PosixFilePermission> result = EnumSet.noneOf(PosixFilePermission.class);
+        for (int i = 0; i < PERMISSIONS.length; ++i)
+        {
+            if ((mode & (0400 >> i)) != 0)
+            {
+                result.add(PERMISSIONS[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts POSIX permissions to the equivalent octal mode.
+     *
+     * @param permissions the permissions
+     * @return the octal mode
+     */
+    public static int getMode(Set<PosixFilePermission> permissions)
+    {
+        int result = 0;
+        for (int i = 0; i < PERMISSIONS.length; ++i)
+        {
+            if (permissions.contains(PERMISSIONS[i]))
+            {
+                result |= 0400 >> i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the symbolic <tt>chmod</tt> mode that adds permission bits, e.g. <tt>a+x</tt> for <tt>0111</tt>.
+     *
+     * @param mode the octal permission bits to add
+     * @return the symbolic mode
+     */
+    static String getSymbolicMode(int mode)
+    {
+        String user = getSymbolicPermissions(mode >> 6);
+        String group = getSymbolicPermissions(mode >> 3);
+        String other = getSymbolicPermissions(mode);
+        if (user.equals(group) && user.equals(other))
+        {
+            return "a+" + user;
+        }
+        StringBuilder result = new StringBuilder();
+        appendSymbolicMode(result, 'u', user);
+        appendSymbolicMode(result, 'g', group);
+        appendSymbolicMode(result, 'o', other);
+        return result.toString();
+    }
+
+    /**
+     * Changes the permissions of a file via {@link PosixFileAttributeView}.
+     *
+     * @param change the change to apply
+     * @return <tt>true</tt> if the permissions were changed, or didn't need changing
+     */
+    private boolean apply(Change change)
+    {
+        try
+        {
+            PosixFileAttributeView view = Files.getFileAttributeView(change.file.toPath(),
+                                                                     PosixFileAttributeView.class);
+            if (view == null)
+            {
+                return false;
+            }
+            Set<PosixFilePermission> permissions = getPermissions(change.mode);
+            if (change.add)
+            {
+                Set<PosixFilePermission> existing = view.readAttributes().permissions();
+                if (existing.containsAll(permissions))
+                {
+                    return true;
+                }
+                permissions.addAll(existing);
+            }
+            view.setPermissions(permissions);
+            return true;
+        }
+        catch (IOException | UnsupportedOperationException | SecurityException exception)
+        {
+            logger.log(Level.FINE, "Failed to change permissions of " + change.file, exception);
+            return false;
+        }
+    }
+
+    /**
+     * Changes the permissions of files via a single <tt>chmod</tt> invocation.
+     * <p/>
+     * If the invocation fails, the files are retried individually to determine which failed.
+     *
+     * @param mode   the <tt>chmod</tt> mode
+     * @param files  the files to change
+     * @param failed collects the files whose permissions couldn't be changed
+     */
+    private void chmod(String mode, List<File> files, List<File> failed)
+    {
+        if (chmod(mode, files))
+        {
+            return;
+        }
+        if (files.size() == 1)
+        {
+            failed.add(files.get(0));
+            return;
+        }
+        for (File file : files)
+        {
+            if (!chmod(mode, Collections.singletonList(file)))
+            {
+                failed.add(file);
+            }
+        }
+    }
+
+    /**
+     * Invokes <tt>chmod</tt>.
+     *
+     * @param mode  the <tt>chmod</tt> mode
+     * @param files the files to change
+     * @return <tt>true</tt> if <tt>chmod</tt> succeeded
+     */
+    private boolean chmod(String mode, List<File> files)
+    {
+        String[] params = new String[files.size() + 2];
+        params[0] = "chmod";
+        params[1] = mode;
+        for (int i = 0; i < files.size(); ++i)
+        {
+            params[i + 2] = files.get(i).getAbsolutePath();
+        }
+        String[] output = new String[2];
+        int exitStatus = new FileExecutor().executeCommand(params, output);
+        if (exitStatus != 0)
+        {
+            logger.fine("chmod " + mode + " failed with exit status " + exitStatus + ": " + output[1]);
+        }
+        return exitStatus == 0;
+    }
+
+    /**
+     * Appends a clause to a symbolic <tt>chmod</tt> mode, if there are permissions to add.
+     *
+     * @param mode        the mode to append to
+     * @param who         the class of user; one of <tt>u</tt>, <tt>g</tt> or <tt>o</tt>
+     * @param permissions the symbolic permissions to add
+     */
+    private static void appendSymbolicMode(StringBuilder mode, char who, String permissions)
+    {
+        if (!permissions.isEmpty())
+        {
+            if (mode.length() != 0)
+            {
+                mode.append(',');
+            }
+            mode.append(who).append('+').append(permissions);
+        }
+    }
+
+    /**
+     * Returns the symbolic permissions for the lowest 3 bits of a mode, e.g. <tt>rx</tt> for <tt>5</tt>.
+     *
+     * @param bits the bits
+     * @return the symbolic permissions
+     */
+    private static String getSymbolicPermissions(int bits)
+    {
+        StringBuilder result = new StringBuilder();
+        if ((bits & 04) != 0)
+        {
+            result.append('r');
+        }
+        if ((bits & 02) != 0)
+        {
+            result.append('w');
+        }
+        if ((bits & 01) != 0)
+        {
+            result.append('x');
+        }
+        return result.toString();
+    }
+
+    /**
+     * A requested permission change.
+     */
+    private static class Change
+    {
+        private final File file;
+
+        private final int mode;
+
+        private final boolean add;
+
+        Change(File file, int mode, boolean add)
+        {
+            this.file = file;
+            this.mode = mode;
+            this.add = add;
+        }
+    }
+}
@@ -25,6 +25,10 @@ import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.commons.compress.compressors.deflate.DeflateCompressorInputStream;
 import org.apache.commons.compress.compressors.deflate.DeflateCompressorOutputStream;
 import org.apache.commons.compress.compressors.deflate.DeflateParameters;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.snappy.FramedSnappyCompressorInputStream;
+import org.apache.commons.compress.compressors.snappy.FramedSnappyCompressorOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -43,6 +47,10 @@ public final class StreamSupport
                 DeflateParameters deflateParameters = new DeflateParameters();
                 deflateParameters.setCompressionLevel(Deflater.BEST_COMPRESSION);
                 return new DeflateCompressorOutputStream(outputStream, deflateParameters);
+            case LZ4:
+                return new FramedLZ4CompressorOutputStream(outputStream);
+            case SNAPPY:
+                return new FramedSnappyCompressorOutputStream(outputStream);
             default:
                 try
                 {
@@ -65,6 +73,10 @@ public final class StreamSupport
                 DeflateParameters deflateParameters = new DeflateParameters();
                 deflateParameters.setCompressionLevel(Deflater.BEST_COMPRESSION);
                 return new DeflateCompressorInputStream(inputStream, deflateParameters);
+            case LZ4:
+                return new FramedLZ4CompressorInputStream(inputStream);
+            case SNAPPY:
+                return new FramedSnappyCompressorInputStream(inputStream);
             default:
                 try
                 {
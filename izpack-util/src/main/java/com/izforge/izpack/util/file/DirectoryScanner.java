@@ -25,7 +25,16 @@ import com.izforge.izpack.util.file.types.selectors.SelectorUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Class for scanning a directory for files/directories which match certain
@@ -108,6 +117,16 @@ import java.util.*;
  * </pre>
  * This will scan a directory called test for .class files, but excludes all
  * files in all proper subdirectories of a directory called "modules"
+ * <p/>
+ * Directories are listed with {@link DirectoryStream}s, and independent
+ * subdirectories are scanned concurrently on a fork/join pool dedicated to
+ * directory scans. If selectors are supplied, directories are scanned
+ * sequentially on the calling thread instead, as selectors need not be
+ * thread safe. The results of each directory are recorded in place once its scan
+ * completes, so that they are the same, and in the same order, as those
+ * of a sequential depth-first scan. Patterns are tokenized once per scan,
+ * and arranged in {@link PatternTrie}s so that each path is only matched
+ * against the patterns whose literal leading segments it starts with.
  */
 public class DirectoryScanner
         implements FileScanner, /*SelectorScanner, */ResourceFactory
@@ -167,6 +186,12 @@ public class DirectoryScanner
      */
     private static final boolean[] CS_THEN_NON_CS = new boolean[]{true, false};
 
+    /**
+     * The pool that subdirectories are scanned on concurrently. Its threads
+     * are daemon threads, and end when idle.
+     */
+    private static final ForkJoinPool SCAN_POOL = new ForkJoinPool();
+
     /**
      * Patterns which should be excluded by default.
      *
@@ -203,47 +228,59 @@ public class DirectoryScanner
      * The files which matched at least one include and no excludes
      * and were selected.
      */
-    private Vector<String> filesIncluded;
+    private List<String> filesIncluded;
 
     /**
      * The files which did not match any includes or selectors.
      */
-    private Vector<String> filesNotIncluded;
+    private List<String> filesNotIncluded;
 
     /**
      * The files which matched at least one include and at least
      * one exclude.
      */
-    private Vector<String> filesExcluded;
+    private List<String> filesExcluded;
 
     /**
      * The directories which matched at least one include and no excludes
      * and were selected.
      */
-    private Vector<String> dirsIncluded;
+    private List<String> dirsIncluded;
 
     /**
      * The directories which were found and did not match any includes.
      */
-    private Vector<String> dirsNotIncluded;
+    private List<String> dirsNotIncluded;
 
     /**
      * The directories which matched at least one include and at least one
      * exclude.
      */
-    private Vector<String> dirsExcluded;
+    private List<String> dirsExcluded;
 
     /**
      * The files which matched at least one include and no excludes and
      * which a selector discarded.
      */
-    private Vector<String> filesDeselected;
+    private List<String> filesDeselected;
 
     /**
      * The directories which matched at least one include and no excludes
      * but which a selector discarded.
      */
-    private Vector<String> dirsDeselected;
+    private List<String> dirsDeselected;
+
+    /**
+     * The files which are either included, excluded or deselected,
+     * to avoid accounting for a file twice.
+     */
+    private Set<String> accountedFiles;
+
+    /**
+     * The directories which are either included, excluded or deselected,
+     * to avoid accounting for a directory twice.
+     */
+    private Set<String> accountedDirs;
 
     /**
      * Whether or not our results were built by a slow scan.
@@ -273,8 +310,11 @@ public class DirectoryScanner
 
     /**
      * List of all scanned directories.
+     * <p/>
+     * <p>Directories are scanned concurrently, so this is thread safe.</p>
      */
-    private final Set<String> scannedDirs = new HashSet<String>();
+    private final Set<String> scannedDirs
+            = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     /**
      * Set of all include patterns that are full file names and don't
@@ -303,22 +343,45 @@ public class DirectoryScanner
     private final Set<String> excludeNonPatterns = new HashSet<String>();
 
     /**
-     * Array of all include patterns that contain wildcards.
+     * All include patterns that contain wildcards.
      * <p/>
      * <p>Gets lazily initialized on the first invocation of
      * isIncluded or isExcluded and cleared at the end of the scan
      * method (cleared in clearCaches, actually).</p>
      */
-    private String[] includePatterns;
+    private PatternTrie includePatterns;
 
     /**
-     * Array of all exclude patterns that contain wildcards.
+     * All exclude patterns that contain wildcards.
      * <p/>
      * <p>Gets lazily initialized on the first invocation of
      * isIncluded or isExcluded and cleared at the end of the scan
      * method (cleared in clearCaches, actually).</p>
      */
-    private String[] excludePatterns;
+    private PatternTrie excludePatterns;
+
+    /**
+     * All include patterns, to determine which directories could hold
+     * included files.
+     * <p/>
+     * <p>Initialized and cleared along with the include patterns.</p>
+     */
+    private PatternTrie includeStartPatterns;
+
+    /**
+     * The exclude patterns ending with "**", without the "**", to
+     * determine which directories have all of their contents excluded.
+     * <p/>
+     * <p>Initialized and cleared along with the exclude patterns.</p>
+     */
+    private PatternTrie contentsExcludedPatterns;
+
+    /**
+     * Set of all exclude patterns.
+     * <p/>
+     * <p>Initialized and cleared along with the exclude patterns.</p>
+     */
+    private final Set<String> allExcludes = new HashSet<String>();
 
     /**
      * Have the non-pattern sets and pattern arrays for in- and
@@ -804,21 +867,22 @@ public class DirectoryScanner
                     {
                         if (isSelected("", basedir))
                         {
-                            dirsIncluded.addElement("");
+                            dirsIncluded.add("");
                         }
                         else
                         {
-                            dirsDeselected.addElement("");
+                            dirsDeselected.add("");
                         }
                     }
                     else
                     {
-                        dirsExcluded.addElement("");
+                        dirsExcluded.add("");
                     }
+                    accountedDirs.add("");
                 }
                 else
                 {
-                    dirsNotIncluded.addElement("");
+                    dirsNotIncluded.add("");
                 }
                 checkIncludePatterns();
                 clearCaches();
@@ -925,7 +989,10 @@ public class DirectoryScanner
                         if (isIncluded(currentelement)
                                 && currentelement.length() > 0)
                         {
-                            accountForIncludedDir(currentelement, myfile, true);
+                            DirectoryScan scan = new DirectoryScan(null, "", new String[0], true);
+                            accountForIncludedDir(currentelement, SelectorUtils.tokenizePathAsArray(currentelement),
+                                    myfile, true, scan);
+                            run(scan);
                         }
                         else
                         {
@@ -949,7 +1016,10 @@ public class DirectoryScanner
                                 : originalpattern.equalsIgnoreCase(currentelement);
                         if (included)
                         {
-                            accountForIncludedFile(currentelement, myfile);
+                            DirectoryScan scan = new DirectoryScan(null, "", new String[0], true);
+                            accountForIncludedFile(currentelement, SelectorUtils.tokenizePathAsArray(currentelement),
+                                    myfile, scan);
+                            run(scan);
                         }
                     }
                 }
@@ -962,14 +1032,16 @@ public class DirectoryScanner
      */
     private synchronized void clearResults()
     {
-        filesIncluded = new Vector<String>();
-        filesNotIncluded = new Vector<String>();
-        filesExcluded = new Vector<String>();
-        filesDeselected = new Vector<String>();
-        dirsIncluded = new Vector<String>();
-        dirsNotIncluded = new Vector<String>();
-        dirsExcluded = new Vector<String>();
-        dirsDeselected = new Vector<String>();
+        filesIncluded = new ArrayList<String>();
+        filesNotIncluded = new ArrayList<String>();
+        filesExcluded = new ArrayList<String>();
+        filesDeselected = new ArrayList<String>();
+        dirsIncluded = new ArrayList<String>();
+        dirsNotIncluded = new ArrayList<String>();
+        dirsExcluded = new ArrayList<String>();
+        dirsDeselected = new ArrayList<String>();
+        accountedFiles = new HashSet<String>();
+        accountedDirs = new HashSet<String>();
         everythingIncluded = (basedir != null);
         scannedDirs.clear();
     }
@@ -1015,11 +1087,10 @@ public class DirectoryScanner
                 boolean nullExcludes = (excludes == null);
                 excludes = nullExcludes ? new String[0] : excludes;
 
-                String[] excl = new String[dirsExcluded.size()];
-                dirsExcluded.copyInto(excl);
+                ensureNonPatternSetsReady();
 
-                String[] notIncl = new String[dirsNotIncluded.size()];
-                dirsNotIncluded.copyInto(notIncl);
+                String[] excl = dirsExcluded.toArray(new String[dirsExcluded.size()]);
+                String[] notIncl = dirsNotIncluded.toArray(new String[dirsNotIncluded.size()]);
 
                 for (String anExcl : excl)
                 {
@@ -1086,91 +1157,70 @@ public class DirectoryScanner
         {
             throw new Exception(dir + " is not a directory.");
         }
-        // avoid double scanning of directories, can only happen in fast mode
-        if (fast && hasBeenScanned(vpath))
+        run(new DirectoryScan(dir, vpath, SelectorUtils.tokenizePathAsArray(vpath), fast));
+    }
+
+    /**
+     * Runs a directory scan and its subdirectory scans, and records their
+     * results.
+     * <p/>
+     * The scans run on the {@link #SCAN_POOL}, unless selectors are
+     * supplied, in which case they run sequentially on the calling thread.
+     *
+     * @param scan the scan to run
+     * @throws Exception if a directory couldn't be scanned
+     */
+    private void run(DirectoryScan scan) throws Exception
+    {
+        if (isConcurrent())
         {
-            return;
+            SCAN_POOL.invoke(scan);
         }
-        String[] newfiles = dir.list();
-
-        if (newfiles == null)
+        else
         {
-            /*
-             * two reasons are mentioned in the API docs for File.list
-             * (1) dir is not a directory. This is impossible as
-             *     we wouldn't get here in this case.
-             * (2) an IO error occurred (why doesn't it throw an exception
-             *     then???)
-             */
-            throw new Exception("IO error scanning directory "
-                    + dir.getAbsolutePath());
+            scan.compute();
         }
-        if (!followSymlinks)
+        record(scan);
+    }
+
+    /**
+     * Determines if subdirectories may be scanned concurrently.
+     *
+     * @return <code>true</code> if no selectors are supplied
+     */
+    private boolean isConcurrent()
+    {
+        return selectors == null;
+    }
+
+    /**
+     * Records the results of a completed directory scan, with the results
+     * of each subdirectory scan in place.
+     *
+     * @param scan the completed scan
+     * @throws Exception if a directory couldn't be scanned
+     */
+    private void record(DirectoryScan scan) throws Exception
+    {
+        if (scan.failure != null)
         {
-            Vector<String> noLinks = new Vector<String>();
-            for (String newfile : newfiles)
-            {
-                try
-                {
-                    if (FileUtils.isSymbolicLink(dir, newfile))
-                    {
-                        String name = vpath + newfile;
-                        File file = new File(dir, newfile);
-                        (file.isDirectory()
-                                ? dirsExcluded : filesExcluded).addElement(name);
-                    }
-                    else
-                    {
-                        noLinks.addElement(newfile);
-                    }
-                }
-                catch (IOException ioe)
-                {
-                    String msg = "IOException caught while checking "
-                            + "for links, couldn't get canonical path!";
-                    // will be caught and redirected to Ant's logging system
-                    System.err.println(msg);
-                    noLinks.addElement(newfile);
-                }
-            }
-            newfiles = new String[noLinks.size()];
-            noLinks.copyInto(newfiles);
+            throw scan.failure;
         }
-        for (String newfile : newfiles)
+        for (Object result : scan.results)
         {
-            String name = vpath + newfile;
-            File file = new File(dir, newfile);
-            if (file.isDirectory())
+            if (result instanceof DirectoryScan)
             {
-                if (isIncluded(name))
-                {
-                    accountForIncludedDir(name, file, fast);
-                }
-                else
-                {
-                    everythingIncluded = false;
-                    dirsNotIncluded.addElement(name);
-                    if (fast && couldHoldIncluded(name))
-                    {
-                        scandir(file, name + File.separator, fast);
-                    }
-                }
-                if (!fast)
-                {
-                    scandir(file, name + File.separator, fast);
-                }
+                record((DirectoryScan) result);
             }
-            else if (file.isFile())
+            else
             {
-                if (isIncluded(name))
+                Result found = (Result) result;
+                found.list.add(found.name);
+                if (found.accounted != null)
                 {
-                    accountForIncludedFile(name, file);
-                }
-                else
-                {
-                    everythingIncluded = false;
-                    filesNotIncluded.addElement(name);
+                    found.accounted.add(found.name);
                 }
+                everythingIncluded &= !found.partial;
             }
         }
     }
@@ -1178,69 +1228,64 @@ public class DirectoryScanner
     /**
      * Process included file.
      *
-     * @param name path of the file relative to the directory of the FileSet.
-     * @param file included File.
+     * @param name   path of the file relative to the directory of the FileSet.
+     * @param tokens the tokens of the path.
+     * @param file   included File.
+     * @param scan   the scan to add the results to.
      */
-    private void accountForIncludedFile(String name, File file) throws Exception
+    private void accountForIncludedFile(String name, String[] tokens, File file, DirectoryScan scan)
+            throws Exception
     {
-        if (filesIncluded.contains(name)
-                || filesExcluded.contains(name)
-                || filesDeselected.contains(name))
+        if (accountedFiles.contains(name))
         {
             return;
         }
-        boolean included = false;
-        if (isExcluded(name))
+        if (isExcluded(name, tokens))
         {
-            filesExcluded.addElement(name);
+            scan.add(name, filesExcluded, accountedFiles, true);
         }
         else if (isSelected(name, file))
         {
-            included = true;
-            filesIncluded.addElement(name);
+            scan.add(name, filesIncluded, accountedFiles, false);
         }
         else
         {
-            filesDeselected.addElement(name);
+            scan.add(name, filesDeselected, accountedFiles, true);
         }
-        everythingIncluded &= included;
     }
 
     /**
      * Process included directory.
      *
-     * @param name path of the directory relative to the directory of
-     *             the FileSet.
-     * @param file directory as File.
-     * @param fast whether to perform fast scans.
-     */
-    private void accountForIncludedDir(String name, File file, boolean fast)
+     * @param name   path of the directory relative to the directory of
+     *               the FileSet.
+     * @param tokens the tokens of the path.
+     * @param file   directory as File.
+     * @param fast   whether to perform fast scans.
+     * @param scan   the scan to add the results to.
+     */
+    private void accountForIncludedDir(String name, String[] tokens, File file, boolean fast, DirectoryScan scan)
             throws Exception
     {
-        if (dirsIncluded.contains(name)
-                || dirsExcluded.contains(name)
-                || dirsDeselected.contains(name))
+        if (accountedDirs.contains(name))
         {
             return;
         }
-        boolean included = false;
-        if (isExcluded(name))
+        if (isExcluded(name, tokens))
         {
-            dirsExcluded.addElement(name);
+            scan.add(name, dirsExcluded, accountedDirs, true);
         }
         else if (isSelected(name, file))
         {
-            included = true;
-            dirsIncluded.addElement(name);
+            scan.add(name, dirsIncluded, accountedDirs, false);
         }
         else
         {
-            dirsDeselected.addElement(name);
+            scan.add(name, dirsDeselected, accountedDirs, true);
         }
-        everythingIncluded &= included;
-        if (fast && couldHoldIncluded(name) && !contentsExcluded(name))
+        if (fast && couldHoldIncluded(name, tokens) && !contentsExcluded(name, tokens))
         {
-            scandir(file, name + File.separator, fast);
+            scan.fork(file, name, tokens, fast);
         }
     }
 
@@ -1255,21 +1300,31 @@ public class DirectoryScanner
     private boolean isIncluded(String name)
     {
         ensureNonPatternSetsReady();
+        return isIncluded(name, SelectorUtils.tokenizePathAsArray(name));
+    }
 
-        if (isCaseSensitive()
+    /**
+     * Test whether or not a name matches against at least one include
+     * pattern.
+     * <p/>
+     * <p>The patterns must have been prepared by
+     * {@link #ensureNonPatternSetsReady()}. As this is called while
+     * scanning concurrently, it must not synchronize on the scanner.</p>
+     *
+     * @param name   The name to match. Must not be <code>null</code>.
+     * @param tokens The tokens of the name.
+     * @return <code>true</code> when the name matches against at least one
+     *         include pattern, or <code>false</code> otherwise.
+     */
+    private boolean isIncluded(String name, String[] tokens)
+    {
+        if (isCaseSensitive
                 ? includeNonPatterns.contains(name)
                 : includeNonPatterns.contains(name.toUpperCase()))
         {
             return true;
         }
-        for (String includePattern : includePatterns)
-        {
-            if (matchPath(includePattern, name, isCaseSensitive()))
-            {
-                return true;
-            }
-        }
-        return false;
+        return includePatterns.matches(name, tokens);
     }
 
     /**
@@ -1282,36 +1337,26 @@ public class DirectoryScanner
      */
     private boolean couldHoldIncluded(String name)
     {
-        for (String include : includes)
-        {
-            if (matchPatternStart(include, name, isCaseSensitive())
-                    && isMorePowerfulThanExcludes(name, include)
-                    && isDeeper(include, name))
-            {
-                return true;
-            }
-        }
-        return false;
+        return couldHoldIncluded(name, SelectorUtils.tokenizePathAsArray(name));
     }
 
     /**
-     * Verify that a pattern specifies files deeper
-     * than the level of the specified file.
+     * Test whether or not a name matches the start of at least one include
+     * pattern that is deeper than the name.
      *
-     * @param pattern the pattern to check.
-     * @param name    the name to check.
-     * @return whether the pattern is deeper than the name.
+     * @param name   The name to match. Must not be <code>null</code>.
+     * @param tokens The tokens of the name.
+     * @return <code>true</code> when the name matches against the start of at
+     *         least one include pattern, or <code>false</code> otherwise.
      */
-    private boolean isDeeper(String pattern, String name)
+    private boolean couldHoldIncluded(String name, String[] tokens)
     {
-        Vector<?> p = SelectorUtils.tokenizePath(pattern);
-        Vector<?> n = SelectorUtils.tokenizePath(name);
-        return p.contains("**") || p.size() > n.size();
+        return isMorePowerfulThanExcludes(name) && includeStartPatterns.couldHold(name, tokens);
     }
 
     /**
-     * Find out whether one particular include pattern is more powerful
-     * than all the excludes.
+     * Find out whether the include patterns are more powerful than all
+     * the excludes for a directory.
      * Note:  the power comparison is based on the length of the include pattern
      * and of the exclude patterns without the wildcards.
      * Ideally the comparison should be done based on the depth
@@ -1320,41 +1365,25 @@ public class DirectoryScanner
      * <p/>
      * IMPORTANT : this function should return false "with care".
      *
-     * @param name           the relative path to test.
-     * @param includepattern one include pattern.
-     * @return true if there is no exclude pattern more powerful than this include pattern.
+     * @param name the relative path to test.
+     * @return true if there is no exclude pattern more powerful than the include patterns.
      */
-    private boolean isMorePowerfulThanExcludes(String name, String includepattern)
+    private boolean isMorePowerfulThanExcludes(String name)
     {
-        String soughtexclude = name + File.separator + "**";
-        for (String exclude : excludes)
-        {
-            if (exclude.equals(soughtexclude))
-            {
-                return false;
-            }
-        }
-        return true;
+        return !allExcludes.contains(name + File.separator + "**");
     }
 
     /**
      * Test whether all contents of the specified directory must be excluded.
      *
-     * @param name the directory name to check.
+     * @param name   the directory name to check.
+     * @param tokens the tokens of the name.
      * @return whether all the specified directory's contents are excluded.
      */
-    private boolean contentsExcluded(String name)
+    private boolean contentsExcluded(String name, String[] tokens)
     {
         name = (name.endsWith(File.separator)) ? name : name + File.separator;
-        for (String e : excludes)
-        {
-            if (e.endsWith("**") && SelectorUtils.matchPath(
-                    e.substring(0, e.length() - 2), name, isCaseSensitive()))
-            {
-                return true;
-            }
-        }
-        return false;
+        return contentsExcludedPatterns.matches(name, tokens);
     }
 
     /**
@@ -1368,21 +1397,31 @@ public class DirectoryScanner
     private boolean isExcluded(String name)
     {
         ensureNonPatternSetsReady();
+        return isExcluded(name, SelectorUtils.tokenizePathAsArray(name));
+    }
 
-        if (isCaseSensitive()
+    /**
+     * Test whether or not a name matches against at least one exclude
+     * pattern.
+     * <p/>
+     * <p>The patterns must have been prepared by
+     * {@link #ensureNonPatternSetsReady()}. As this is called while
+     * scanning concurrently, it must not synchronize on the scanner.</p>
+     *
+     * @param name   The name to match. Must not be <code>null</code>.
+     * @param tokens The tokens of the name.
+     * @return <code>true</code> when the name matches against at least one
+     *         exclude pattern, or <code>false</code> otherwise.
+     */
+    private boolean isExcluded(String name, String[] tokens)
+    {
+        if (isCaseSensitive
                 ? excludeNonPatterns.contains(name)
                 : excludeNonPatterns.contains(name.toUpperCase()))
         {
             return true;
         }
-        for (String excludePattern : excludePatterns)
-        {
-            if (matchPath(excludePattern, name, isCaseSensitive()))
-            {
-                return true;
-            }
-        }
-        return false;
+        return excludePatterns.matches(name, tokens);
     }
 
     /**
@@ -1422,8 +1461,7 @@ public class DirectoryScanner
         {
             throw new Exception();
         }
-        String[] files = new String[filesIncluded.size()];
-        filesIncluded.copyInto(files);
+        String[] files = filesIncluded.toArray(new String[filesIncluded.size()]);
         Arrays.sort(files);
         return files;
     }
@@ -1454,8 +1492,7 @@ public class DirectoryScanner
     public synchronized String[] getNotIncludedFiles() throws Exception
     {
         slowScan();
-        String[] files = new String[filesNotIncluded.size()];
-        filesNotIncluded.copyInto(files);
+        String[] files = filesNotIncluded.toArray(new String[filesNotIncluded.size()]);
         return files;
     }
 
@@ -1472,8 +1509,7 @@ public class DirectoryScanner
     public synchronized String[] getExcludedFiles() throws Exception
     {
         slowScan();
-        String[] files = new String[filesExcluded.size()];
-        filesExcluded.copyInto(files);
+        String[] files = filesExcluded.toArray(new String[filesExcluded.size()]);
         return files;
     }
 
@@ -1490,8 +1526,7 @@ public class DirectoryScanner
     public synchronized String[] getDeselectedFiles() throws Exception
     {
         slowScan();
-        String[] files = new String[filesDeselected.size()];
-        filesDeselected.copyInto(files);
+        String[] files = filesDeselected.toArray(new String[filesDeselected.size()]);
         return files;
     }
 
@@ -1509,8 +1544,7 @@ public class DirectoryScanner
         {
             throw new Exception();
         }
-        String[] directories = new String[dirsIncluded.size()];
-        dirsIncluded.copyInto(directories);
+        String[] directories = dirsIncluded.toArray(new String[dirsIncluded.size()]);
         Arrays.sort(directories);
         return directories;
     }
@@ -1541,8 +1575,7 @@ public class DirectoryScanner
     public synchronized String[] getNotIncludedDirectories() throws Exception
     {
         slowScan();
-        String[] directories = new String[dirsNotIncluded.size()];
-        dirsNotIncluded.copyInto(directories);
+        String[] directories = dirsNotIncluded.toArray(new String[dirsNotIncluded.size()]);
         return directories;
     }
 
@@ -1559,8 +1592,7 @@ public class DirectoryScanner
     public synchronized String[] getExcludedDirectories() throws Exception
     {
         slowScan();
-        String[] directories = new String[dirsExcluded.size()];
-        dirsExcluded.copyInto(directories);
+        String[] directories = dirsExcluded.toArray(new String[dirsExcluded.size()]);
         return directories;
     }
 
@@ -1577,8 +1609,7 @@ public class DirectoryScanner
     public synchronized String[] getDeselectedDirectories() throws Exception
     {
         slowScan();
-        String[] directories = new String[dirsDeselected.size()];
-        dirsDeselected.copyInto(directories);
+        String[] directories = dirsDeselected.toArray(new String[dirsDeselected.size()]);
         return directories;
     }
 
@@ -1767,6 +1798,9 @@ public class DirectoryScanner
         excludeNonPatterns.clear();
         includePatterns = null;
         excludePatterns = null;
+        includeStartPatterns = null;
+        contentsExcludedPatterns = null;
+        allExcludes.clear();
         areNonPatternSetsReady = false;
     }
 
@@ -1778,8 +1812,21 @@ public class DirectoryScanner
     {
         if (!areNonPatternSetsReady)
         {
-            includePatterns = fillNonPatternSet(includeNonPatterns, includes);
-            excludePatterns = fillNonPatternSet(excludeNonPatterns, excludes);
+            boolean cs = isCaseSensitive();
+            includePatterns = new PatternTrie(fillNonPatternSet(includeNonPatterns, includes), cs);
+            excludePatterns = new PatternTrie(fillNonPatternSet(excludeNonPatterns, excludes), cs);
+            includeStartPatterns = new PatternTrie(includes, cs);
+            List<String> contentsExcludes = new ArrayList<String>();
+            for (String exclude : excludes)
+            {
+                if (exclude.endsWith("**"))
+                {
+                    contentsExcludes.add(exclude.substring(0, exclude.length() - 2));
+                }
+            }
+            contentsExcludedPatterns = new PatternTrie(contentsExcludes.toArray(new String[contentsExcludes.size()]),
+                    cs);
+            allExcludes.addAll(Arrays.asList(excludes));
             areNonPatternSetsReady = true;
         }
     }
@@ -1809,4 +1856,266 @@ public class DirectoryScanner
                 : al.toArray(new String[al.size()]);
     }
 
+    /**
+     * Scans a directory for files and directories, without recording the results.
+     * <p/>
+     * The results, and the scans of subdirectories, are held in scan order, and are recorded by
+     * {@link DirectoryScanner#record(DirectoryScan)} once all scans have completed. Subdirectories are scanned
+     * concurrently, as forked tasks, unless selectors are supplied.
+     * <p/>
+     * Scans only read the result collections and caches of the scanner. They must not synchronize on the scanner, as
+     * the thread that runs the scan holds its lock.
+     */
+    private class DirectoryScan extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The directory to scan, or <code>null</code> if this only runs its subdirectory scans.
+         */
+        private final File dir;
+
+        /**
+         * The path of the directory relative to the base directory, including a trailing separator.
+         */
+        private final String vpath;
+
+        /**
+         * The tokens of the relative path.
+         */
+        private final String[] tokens;
+
+        /**
+         * Whether or not this is part of a fast scan.
+         */
+        private final boolean fast;
+
+        /**
+         * The results and subdirectory scans, in scan order.
+         */
+        private final List<Object> results = new ArrayList<Object>();
+
+        /**
+         * The subdirectory scans.
+         */
+        private final List<DirectoryScan> subdirs = new ArrayList<DirectoryScan>();
+
+        /**
+         * The exception thrown while scanning the directory, or <code>null</code> if it was scanned successfully.
+         */
+        private Exception failure;
+
+        /**
+         * Constructs a <code>DirectoryScan</code>.
+         *
+         * @param dir    the directory to scan. May be <code>null</code>
+         * @param vpath  the path of the directory relative to the base directory
+         * @param tokens the tokens of the relative path
+         * @param fast   whether or not this is part of a fast scan
+         */
+        DirectoryScan(File dir, String vpath, String[] tokens, boolean fast)
+        {
+            this.dir = dir;
+            this.vpath = vpath;
+            this.tokens = tokens;
+            this.fast = fast;
+        }
+
+        /**
+         * Adds a file or directory to a result collection.
+         *
+         * @param name      the relative path of the file or directory
+         * @param list      the result collection
+         * @param accounted the set of files or directories accounted for, or <code>null</code> if the result doesn't
+         *                  account for the file or directory
+         * @param partial   whether the result means that not everything is included
+         */
+        void add(String name, List<String> list, Set<String> accounted, boolean partial)
+        {
+            results.add(new Result(name, list, accounted, partial));
+        }
+
+        /**
+         * Adds a scan of a subdirectory.
+         *
+         * @param subdir the subdirectory
+         * @param name   the relative path of the subdirectory
+         * @param tokens the tokens of the relative path
+         * @param fast   whether or not this is part of a fast scan
+         */
+        void fork(File subdir, String name, String[] tokens, boolean fast)
+        {
+            DirectoryScan scan = new DirectoryScan(subdir, name + File.separator, tokens, fast);
+            results.add(scan);
+            subdirs.add(scan);
+        }
+
+        /**
+         * Scans the directory, and then the subdirectories, concurrently if
+         * the scanner {@link DirectoryScanner#isConcurrent() allows} it.
+         */
+        @Override
+        protected void compute()
+        {
+            try
+            {
+                // avoid double scanning of directories, can only happen in fast mode
+                if (dir != null && !(fast && hasBeenScanned(vpath)))
+                {
+                    scan();
+                }
+            }
+            catch (Exception exception)
+            {
+                failure = exception;
+            }
+            if (isConcurrent())
+            {
+                invokeAll(subdirs);
+            }
+            else
+            {
+                for (DirectoryScan subdir : subdirs)
+                {
+                    subdir.compute();
+                }
+            }
+        }
+
+        /**
+         * Scans the directory.
+         *
+         * @throws Exception for any error
+         */
+        private void scan() throws Exception
+        {
+            List<Path> entries = new ArrayList<Path>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath()))
+            {
+                for (Path entry : stream)
+                {
+                    entries.add(entry);
+                }
+            }
+            catch (IOException | DirectoryIteratorException exception)
+            {
+                throw new Exception("IO error scanning directory " + dir.getAbsolutePath(), exception);
+            }
+            List<Path> paths = new ArrayList<Path>(entries.size());
+            List<BasicFileAttributes> attributes = new ArrayList<BasicFileAttributes>(entries.size());
+            for (Path entry : entries)
+            {
+                try
+                {
+                    // links are only read as such when they aren't followed
+                    BasicFileAttributes attrs = followSymlinks
+                            ? Files.readAttributes(entry, BasicFileAttributes.class)
+                            : Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isSymbolicLink())
+                    {
+                        String name = vpath + entry.getFileName();
+                        if (Files.isDirectory(entry))
+                        {
+                            add(name, dirsExcluded, accountedDirs, false);
+                        }
+                        else
+                        {
+                            add(name, filesExcluded, accountedFiles, false);
+                        }
+                    }
+                    else
+                    {
+                        paths.add(entry);
+                        attributes.add(attrs);
+                    }
+                }
+                catch (IOException ignore)
+                {
+                    // the entry has gone, or is a broken link. Neither a directory nor a file
+                }
+            }
+            for (int i = 0; i < paths.size(); ++i)
+            {
+                String fileName = paths.get(i).getFileName().toString();
+                String name = vpath + fileName;
+                String[] nameTokens = Arrays.copyOf(tokens, tokens.length + 1);
+                nameTokens[tokens.length] = fileName;
+                BasicFileAttributes attrs = attributes.get(i);
+                if (attrs.isDirectory())
+                {
+                    File file = new File(dir, fileName);
+                    if (isIncluded(name, nameTokens))
+                    {
+                        accountForIncludedDir(name, nameTokens, file, fast, this);
+                    }
+                    else
+                    {
+                        add(name, dirsNotIncluded, null, true);
+                        if (fast && couldHoldIncluded(name, nameTokens))
+                        {
+                            fork(file, name, nameTokens, fast);
+                        }
+                    }
+                    if (!fast)
+                    {
+                        fork(file, name, nameTokens, fast);
+                    }
+                }
+                else if (attrs.isRegularFile())
+                {
+                    if (isIncluded(name, nameTokens))
+                    {
+                        accountForIncludedFile(name, nameTokens, new File(dir, fileName), this);
+                    }
+                    else
+                    {
+                        add(name, filesNotIncluded, null, true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A file or directory found by a {@link DirectoryScan}.
+     */
+    private static class Result
+    {
+        /**
+         * The path of the file or directory relative to the base directory.
+         */
+        private final String name;
+
+        /**
+         * The result collection to add the path to.
+         */
+        private final List<String> list;
+
+        /**
+         * The set of files or directories accounted for, or <code>null</code> if the result doesn't account for
+         * the file or directory.
+         */
+        private final Set<String> accounted;
+
+        /**
+         * Whether the result means that not everything is included.
+         */
+        private final boolean partial;
+
+        /**
+         * Constructs a <code>Result</code>.
+         *
+         * @param name      the relative path of the file or directory
+         * @param list      the result collection
+         * @param accounted the set of files or directories accounted for. May be <code>null</code>
+         * @param partial   whether the result means that not everything is included
+         */
+        Result(String name, List<String> list, Set<String> accounted, boolean partial)
+        {
+            this.name = name;
+            this.list = list;
+            this.accounted = accounted;
+            this.partial = partial;
+        }
+    }
 }
@@ -0,0 +1,271 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.izforge.izpack.util.file;
+
+import com.izforge.izpack.util.file.types.selectors.SelectorUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of path patterns, pre-tokenized and arranged in a trie of their leading literal path segments.
+ * <p/>
+ * A pattern such as <tt>src/main/**&#47;*.java</tt> is stored under the <tt>src</tt> and <tt>main</tt> nodes, so
+ * that it is only ever matched against paths that start with those segments. The remaining tokens are matched with
+ * {@link SelectorUtils#matchPath(String[], int, String[], int, boolean)}, so the results are those of
+ * {@link SelectorUtils#matchPath(String, String, boolean)} and
+ * {@link SelectorUtils#matchPatternStart(String, String, boolean)} on the original patterns.
+ * <p/>
+ * Literal segments are only indexed when matching is case sensitive. Patterns that start with a separator are never
+ * indexed, as they can only match paths that start with one too.
+ * <p/>
+ * Instances are immutable, and may be shared between threads.
+ */
+class PatternTrie
+{
+    /**
+     * Determines if matching is case sensitive.
+     */
+    private final boolean caseSensitive;
+
+    /**
+     * The root node.
+     */
+    private final Node root = new Node();
+
+    /**
+     * The patterns that start with a separator.
+     */
+    private final List<String> absolute = new ArrayList<String>();
+
+    /**
+     * Constructs a <tt>PatternTrie</tt>.
+     *
+     * @param patterns      the patterns
+     * @param caseSensitive if <tt>true</tt>, match case sensitively
+     */
+    PatternTrie(String[] patterns, boolean caseSensitive)
+    {
+        this.caseSensitive = caseSensitive;
+        for (String pattern : patterns)
+        {
+            if (pattern.startsWith(File.separator))
+            {
+                absolute.add(pattern);
+            }
+            else
+            {
+                add(pattern);
+            }
+        }
+    }
+
+    /**
+     * Determines if a path matches at least one of the patterns.
+     *
+     * @param name   the path
+     * @param tokens the tokens of the path
+     * @return <tt>true</tt> if {@link SelectorUtils#matchPath(String, String, boolean)} holds for a pattern
+     */
+    boolean matches(String name, String[] tokens)
+    {
+        if (name.startsWith(File.separator))
+        {
+            for (String pattern : absolute)
+            {
+                if (SelectorUtils.matchPath(pattern, name, caseSensitive))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        Node node = root;
+        for (int depth = 0; node != null; ++depth)
+        {
+            for (Pattern pattern : node.patterns)
+            {
+                if (SelectorUtils.matchPath(pattern.tokens, depth, tokens, depth, caseSensitive))
+                {
+                    return true;
+                }
+            }
+            node = (depth < tokens.length) ? node.get(tokens[depth]) : null;
+        }
+        return false;
+    }
+
+    /**
+     * Determines if a directory could hold paths that match at least one of the patterns.
+     * <p/>
+     * This holds if the directory matches the start of a pattern up to its first <tt>**</tt>, and the pattern is
+     * either deeper than the directory or contains <tt>**</tt>.
+     *
+     * @param name   the directory path
+     * @param tokens the tokens of the path
+     * @return <tt>true</tt> if a pattern could match paths below the directory
+     */
+    boolean couldHold(String name, String[] tokens)
+    {
+        if (name.startsWith(File.separator))
+        {
+            for (String pattern : absolute)
+            {
+                if (SelectorUtils.matchPatternStart(pattern, name, caseSensitive)
+                        && new Pattern(pattern, 0).isDeeper(tokens))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        Node node = root;
+        for (int depth = 0; node != null; ++depth)
+        {
+            for (Pattern pattern : node.patterns)
+            {
+                if (SelectorUtils.matchPatternStart(pattern.tokens, depth, tokens, depth, caseSensitive)
+                        && pattern.isDeeper(tokens))
+                {
+                    return true;
+                }
+            }
+            if (depth == tokens.length)
+            {
+                // the path is a prefix of the literal segments of every pattern below this node
+                return !node.children.isEmpty();
+            }
+            node = node.get(tokens[depth]);
+        }
+        return false;
+    }
+
+    /**
+     * Adds a pattern that doesn't start with a separator.
+     *
+     * @param pattern the pattern
+     */
+    private void add(String pattern)
+    {
+        String[] tokens = SelectorUtils.tokenizePathAsArray(pattern);
+        Node node = root;
+        int depth = 0;
+        if (caseSensitive)
+        {
+            while (depth < tokens.length && !SelectorUtils.hasWildcards(tokens[depth]))
+            {
+                Node child = node.get(tokens[depth]);
+                if (child == null)
+                {
+                    child = new Node();
+                    node.children.put(tokens[depth], child);
+                }
+                node = child;
+                ++depth;
+            }
+        }
+        node.patterns.add(new Pattern(tokens, depth));
+    }
+
+    /**
+     * A node of the trie.
+     */
+    private static class Node
+    {
+        /**
+         * The patterns whose literal segments end at this node.
+         */
+        private final List<Pattern> patterns = new ArrayList<Pattern>(1);
+
+        /**
+         * The child nodes, keyed on the next literal segment.
+         */
+        private final Map<String, Node> children = new HashMap<String, Node>(4);
+
+        /**
+         * Returns the child node for a path segment.
+         *
+         * @param token the path segment
+         * @return the child node, or <tt>null</tt> if no pattern continues with the segment
+         */
+        Node get(String token)
+        {
+            return children.isEmpty() ? null : children.get(token);
+        }
+    }
+
+    /**
+     * A tokenized pattern.
+     */
+    private static class Pattern
+    {
+        /**
+         * The pattern tokens.
+         */
+        private final String[] tokens;
+
+        /**
+         * Determines if the pattern contains <tt>**</tt>.
+         */
+        private final boolean recursive;
+
+        /**
+         * Constructs a <tt>Pattern</tt>.
+         *
+         * @param pattern the pattern
+         * @param depth   the number of leading literal tokens
+         */
+        Pattern(String pattern, int depth)
+        {
+            this(SelectorUtils.tokenizePathAsArray(pattern), depth);
+        }
+
+        /**
+         * Constructs a <tt>Pattern</tt>.
+         *
+         * @param tokens the pattern tokens
+         * @param depth  the number of leading literal tokens, which contain no <tt>**</tt>
+         */
+        Pattern(String[] tokens, int depth)
+        {
+            this.tokens = tokens;
+            boolean found = false;
+            for (int i = depth; i < tokens.length && !found; ++i)
+            {
+                found = tokens[i].equals("**");
+            }
+            recursive = found;
+        }
+
+        /**
+         * Determines if the pattern specifies paths deeper than a path.
+         *
+         * @param path the path tokens
+         * @return <tt>true</tt> if the pattern contains <tt>**</tt> or has more tokens than the path
+         */
+        boolean isDeeper(String[] path)
+        {
+            return recursive || tokens.length > path.length;
+        }
+    }
+}
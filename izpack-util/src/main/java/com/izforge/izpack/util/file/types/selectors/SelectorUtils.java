@@ -103,12 +103,34 @@ public final class SelectorUtils
             return false;
         }
 
-        String[] patDirs = tokenizePathAsArray(pattern);
-        String[] strDirs = tokenizePathAsArray(str);
+        return matchPatternStart(tokenizePathAsArray(pattern), 0,
+                tokenizePathAsArray(str), 0, isCaseSensitive);
+    }
 
-        int patIdxStart = 0;
+    /**
+     * Tests whether or not the tokens of a path match the start of the
+     * tokens of a pattern up to the first "**".
+     * <p/>
+     * This is {@link #matchPatternStart(String, String, boolean)} on
+     * paths that have already been tokenized, starting at the given
+     * indexes. It doesn't check for leading separators.
+     *
+     * @param patDirs         The pattern tokens. Must not be
+     *                        <code>null</code>.
+     * @param patIdxStart     The index of the first pattern token to match.
+     * @param strDirs         The path tokens. Must not be
+     *                        <code>null</code>.
+     * @param strIdxStart     The index of the first path token to match.
+     * @param isCaseSensitive Whether or not matching should be performed
+     *                        case sensitively.
+     * @return whether or not the path tokens match the start of the
+     *         pattern tokens up to the first "**".
+     */
+    public static boolean matchPatternStart(String[] patDirs, int patIdxStart,
+                                            String[] strDirs, int strIdxStart,
+                                            boolean isCaseSensitive)
+    {
         int patIdxEnd = patDirs.length - 1;
-        int strIdxStart = 0;
         int strIdxEnd = strDirs.length - 1;
 
         // up to first '**'
@@ -185,12 +207,34 @@ public final class SelectorUtils
             return false;
         }
 
-        String[] patDirs = tokenizePathAsArray(pattern);
-        String[] strDirs = tokenizePathAsArray(str);
+        return matchPath(tokenizePathAsArray(pattern), 0,
+                tokenizePathAsArray(str), 0, isCaseSensitive);
+    }
 
-        int patIdxStart = 0;
+    /**
+     * Tests whether or not the tokens of a path match the tokens of a
+     * pattern.
+     * <p/>
+     * This is {@link #matchPath(String, String, boolean)} on paths that
+     * have already been tokenized, starting at the given indexes. It
+     * doesn't check for leading separators.
+     *
+     * @param patDirs         The pattern tokens. Must not be
+     *                        <code>null</code>.
+     * @param patIdxStart     The index of the first pattern token to match.
+     * @param strDirs         The path tokens. Must not be
+     *                        <code>null</code>.
+     * @param strIdxStart     The index of the first path token to match.
+     * @param isCaseSensitive Whether or not matching should be performed
+     *                        case sensitively.
+     * @return <code>true</code> if the pattern tokens match the path tokens,
+     *         or <code>false</code> otherwise.
+     */
+    public static boolean matchPath(String[] patDirs, int patIdxStart,
+                                    String[] strDirs, int strIdxStart,
+                                    boolean isCaseSensitive)
+    {
         int patIdxEnd = patDirs.length - 1;
-        int strIdxStart = 0;
         int strIdxEnd = strDirs.length - 1;
 
         // up to first '**'
@@ -582,8 +626,11 @@ public final class SelectorUtils
 
     /**
      * Same as {@link #tokenizePath tokenizePath} but hopefully faster.
+     *
+     * @param path Path to tokenize. Must not be <code>null</code>.
+     * @return an array of path elements from the tokenized path
      */
-    private static String[] tokenizePathAsArray(String path)
+    public static String[] tokenizePathAsArray(String path)
     {
         char sep = File.separatorChar;
         int start = 0;
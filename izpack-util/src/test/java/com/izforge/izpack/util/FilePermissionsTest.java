@@ -0,0 +1,185 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.izforge.izpack.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link FilePermissions}.
+ */
+public class FilePermissionsTest
+{
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Tests conversion between octal modes and POSIX permissions.
+     */
+    @Test
+    public void testModeConversion()
+    {
+        for (int mode = 0; mode <= 0777; ++mode)
+        {
+            assertEquals(mode, FilePermissions.getMode(FilePermissions.getPermissions(mode)));
+        }
+        assertEquals(9, FilePermissions.getPermissions(0777).size());
+        assertTrue(FilePermissions.getPermissions(0).isEmpty());
+    }
+
+    /**
+     * Tests conversion of permission bits to symbolic <tt>chmod</tt> modes.
+     */
+    @Test
+    public void testSymbolicMode()
+    {
+        assertEquals("a+x", FilePermissions.getSymbolicMode(FilePermissions.EXECUTE));
+        assertEquals("a+rwx", FilePermissions.getSymbolicMode(0777));
+        assertEquals("u+x", FilePermissions.getSymbolicMode(0100));
+        assertEquals("u+rwx,g+rx", FilePermissions.getSymbolicMode(0750));
+        assertEquals("g+w,o+r", FilePermissions.getSymbolicMode(0024));
+    }
+
+    /**
+     * Verifies that permissions are changed in-process where POSIX permissions are supported.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testPosix() throws IOException
+    {
+        assumeTrue(FilePermissions.isPosixSupported());
+        checkPermissions(new FilePermissions(true), 10);
+    }
+
+    /**
+     * Verifies that permissions are changed via <tt>chmod</tt> where POSIX permissions aren't supported, and that
+     * large batches are split across invocations.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testChmod() throws IOException
+    {
+        assumeTrue(FilePermissions.isPosixSupported());
+        checkPermissions(new FilePermissions(false), FilePermissions.MAX_FILES_PER_COMMAND + 10);
+    }
+
+    /**
+     * Verifies that files whose permissions can't be changed are reported, without affecting other files.
+     *
+     * @throws IOException for any I/O error
+     */
+    @Test
+    public void testMissingFiles() throws IOException
+    {
+        assumeTrue(FilePermissions.isPosixSupported());
+        for (boolean posix : new boolean[]{true, false})
+        {
+            FilePermissions permissions = new FilePermissions(posix);
+            File missing = new File(temporaryFolder.getRoot(), "missing" + posix);
+            File file = createFile("file" + posix, 0644);
+            permissions.add(missing, FilePermissions.EXECUTE);
+            permissions.add(file, FilePermissions.EXECUTE);
+
+            assertEquals(Collections.singletonList(missing), permissions.apply());
+            assertEquals(0755, getMode(file));
+            assertTrue(permissions.isEmpty());
+        }
+    }
+
+    /**
+     * Makes files executable, and replaces the permissions of others.
+     *
+     * @param permissions the permissions to use
+     * @param count       the number of files of each kind
+     * @throws IOException for any I/O error
+     */
+    private void checkPermissions(FilePermissions permissions, int count) throws IOException
+    {
+        List<File> executables = new ArrayList<File>();
+        List<File> privates = new ArrayList<File>();
+        for (int i = 0; i < count; ++i)
+        {
+            File executable = createFile("executable" + i, 0640);
+            permissions.add(executable, FilePermissions.EXECUTE);
+            executables.add(executable);
+
+            File file = createFile("private" + i, 0644);
+            permissions.set(file, 0600);
+            privates.add(file);
+        }
+        File directory = temporaryFolder.newFolder("dir");
+        permissions.set(directory, 0750);
+
+        assertTrue(permissions.apply().isEmpty());
+        assertTrue(permissions.isEmpty());
+        for (File executable : executables)
+        {
+            assertEquals(0751, getMode(executable));
+        }
+        for (File file : privates)
+        {
+            assertEquals(0600, getMode(file));
+        }
+        assertEquals(0750, getMode(directory));
+    }
+
+    /**
+     * Creates a file with the specified permissions.
+     *
+     * @param name the file name
+     * @param mode the octal mode
+     * @return the file
+     * @throws IOException for any I/O error
+     */
+    private File createFile(String name, int mode) throws IOException
+    {
+        File file = temporaryFolder.newFile(name);
+        Files.setPosixFilePermissions(file.toPath(), FilePermissions.getPermissions(mode));
+        return file;
+    }
+
+    /**
+     * Returns the permissions of a file.
+     *
+     * @param file the file
+     * @return the octal mode
+     * @throws IOException for any I/O error
+     */
+    private static int getMode(File file) throws IOException
+    {
+        return FilePermissions.getMode(Files.getPosixFilePermissions(file.toPath()));
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * IzPack - Copyright 2001-2016 Julien Ponge, All Rights Reserved.
+ *
+ * http://izpack.org/
+ * http://izpack.codehaus.org/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.izforge.izpack.util.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link DirectoryScanner}.
+ */
+public class DirectoryScannerTest
+{
+    /**
+     * Temporary folder.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Verifies that files and directories are included and excluded by patterns, and that directories whose
+     * contents are all excluded aren't scanned.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testIncludesAndExcludes() throws Exception
+    {
+        File base = temporaryFolder.getRoot();
+        createFiles(base, "src/main/A.java", "src/main/B.txt", "src/test/T.java", "build/out/A.class",
+                    "CVS/Entries");
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(base);
+        scanner.setIncludes(new String[]{"**/*.java", "build/**", "CVS/**"});
+        scanner.setExcludes(new String[]{"build/out/**"});
+        scanner.addDefaultExcludes();
+        scanner.scan();
+
+        assertArrayEquals(paths("src/main/A.java", "src/test/T.java"), scanner.getIncludedFiles());
+        assertArrayEquals(paths("build"), scanner.getIncludedDirectories());
+        assertArrayEquals(paths("CVS", "build/out"), sort(scanner.getExcludedDirectories()));
+        assertFalse(scanner.getScannedDirs().contains(path("build/out/")));
+        assertFalse(scanner.isEverythingIncluded());
+    }
+
+    /**
+     * Verifies that case insensitive patterns match.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testCaseInsensitive() throws Exception
+    {
+        File base = temporaryFolder.getRoot();
+        createFiles(base, "src/main/A.java", "src/main/B.txt");
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(base);
+        scanner.setIncludes(new String[]{"SRC/**/*.JAVA"});
+        scanner.setCaseSensitive(false);
+        scanner.scan();
+
+        assertArrayEquals(paths("src/main/A.java"), scanner.getIncludedFiles());
+    }
+
+    /**
+     * Verifies that symbolic links are excluded when they aren't followed.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testSymlinks() throws Exception
+    {
+        File base = temporaryFolder.getRoot();
+        createFiles(base, "src/A.java");
+        try
+        {
+            Files.createSymbolicLink(new File(base, "link").toPath(), new File(base, "src").toPath());
+        }
+        catch (IOException | UnsupportedOperationException exception)
+        {
+            assumeTrue("Symbolic links are not supported", false);
+        }
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(base);
+        scanner.scan();
+        assertArrayEquals(paths("link/A.java", "src/A.java"), scanner.getIncludedFiles());
+
+        scanner = new DirectoryScanner();
+        scanner.setBasedir(base);
+        scanner.setFollowSymlinks(false);
+        scanner.scan();
+        assertArrayEquals(paths("src/A.java"), scanner.getIncludedFiles());
+        assertArrayEquals(paths("link"), scanner.getExcludedDirectories());
+    }
+
+    /**
+     * Verifies that the results that aren't sorted are in the order of a sequential depth-first scan, although
+     * directories are scanned concurrently.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void testScanOrder() throws Exception
+    {
+        File base = temporaryFolder.getRoot();
+        for (int i = 0; i < 10; ++i)
+        {
+            for (int j = 0; j < 10; ++j)
+            {
+                createFiles(base, "d" + i + "/e" + j + "/A.java", "d" + i + "/e" + j + "/B.txt", "d" + i + "/C.txt");
+            }
+        }
+
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(base);
+        scanner.setIncludes(new String[]{"**/*.java"});
+        scanner.scan();
+
+        List<String> files = new ArrayList<String>();
+        List<String> dirs = new ArrayList<String>();
+        walk(base, "", files, dirs);
+        dirs.add(0, "");
+        assertEquals(files, toList(scanner.getNotIncludedFiles()));
+        assertEquals(dirs, toList(scanner.getNotIncludedDirectories()));
+        assertEquals(100, scanner.getIncludedFilesCount());
+    }
+
+    /**
+     * Measures scanning a generated tree of 20000 files, and prints the result to standard output.
+     * <p/>
+     * This is only run if the <tt>izpack.benchmark</tt> system property is <tt>true</tt>.
+     *
+     * @throws Exception for any error
+     */
+    @Test
+    public void measureScan() throws Exception
+    {
+        assumeTrue("Benchmarks are only run with -Dizpack.benchmark=true", Boolean.getBoolean("izpack.benchmark"));
+        File base = temporaryFolder.getRoot();
+        for (int i = 0; i < 200; ++i)
+        {
+            File dir = new File(base, "module" + i + "/src/main/java");
+            assertTrue(dir.mkdirs());
+            for (int j = 0; j < 100; ++j)
+            {
+                assertTrue(new File(dir, "Class" + j + ((j % 5 == 0) ? ".txt" : ".java")).createNewFile());
+            }
+        }
+
+        for (String include : new String[]{"**", "**/*.java", "module1*/**"})
+        {
+            long start = System.currentTimeMillis();
+            DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(base);
+            scanner.setIncludes(new String[]{include});
+            scanner.addDefaultExcludes();
+            scanner.scan();
+            int files = scanner.getIncludedFiles().length;
+            long timeDiff = System.currentTimeMillis() - start;
+
+            System.out.println("Scanning " + include + " included " + files + " files and took " + timeDiff + "ms");
+        }
+    }
+
+    /**
+     * Lists the files and directories that aren't included by <tt>**&#47;*.java</tt>, in depth-first order.
+     *
+     * @param dir   the directory to walk
+     * @param vpath the path of the directory relative to the base directory
+     * @param files the files not included
+     * @param dirs  the directories not included
+     */
+    private static void walk(File dir, String vpath, List<String> files, List<String> dirs)
+    {
+        String[] names = dir.list();
+        assertTrue(names != null);
+        for (String name : names)
+        {
+            File file = new File(dir, name);
+            if (file.isDirectory())
+            {
+                dirs.add(vpath + name);
+                walk(file, vpath + name + File.separator, files, dirs);
+            }
+            else if (!name.endsWith(".java"))
+            {
+                files.add(vpath + name);
+            }
+        }
+    }
+
+    /**
+     * Creates empty files, and their parent directories.
+     *
+     * @param base  the base directory
+     * @param paths the file paths, relative to the base directory
+     * @throws IOException for any I/O error
+     */
+    private static void createFiles(File base, String... paths) throws IOException
+    {
+        for (String path : paths)
+        {
+            File file = new File(base, path);
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), new byte[0]);
+        }
+    }
+
+    /**
+     * Converts paths to use the platform separator.
+     *
+     * @param paths the paths, separated with <tt>/</tt>
+     * @return the sorted paths
+     */
+    private static String[] paths(String... paths)
+    {
+        String[] result = new String[paths.length];
+        for (int i = 0; i < paths.length; ++i)
+        {
+            result[i] = path(paths[i]);
+        }
+        return sort(result);
+    }
+
+    /**
+     * Converts a path to use the platform separator.
+     *
+     * @param path the path, separated with <tt>/</tt>
+     * @return the converted path
+     */
+    private static String path(String path)
+    {
+        return path.replace('/', File.separatorChar);
+    }
+
+    /**
+     * Sorts paths.
+     *
+     * @param paths the paths
+     * @return the sorted paths
+     */
+    private static String[] sort(String[] paths)
+    {
+        Arrays.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Converts an array to a list.
+     *
+     * @param values the values
+     * @return the list
+     */
+    private static List<String> toList(String[] values)
+    {
+        return Arrays.asList(values);
+    }
+}